@@ -0,0 +1,262 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl;
+
+import au.csiro.fhir.owl.benchmark.BenchmarkOntologies;
+import au.csiro.fhir.owl.metrics.ProgressReporter;
+import au.csiro.fhir.owl.metrics.TransformationMetrics;
+import au.csiro.fhir.owl.util.AnnotationIndex;
+import au.csiro.fhir.owl.util.IriDictionary;
+import au.csiro.fhir.owl.util.OntologyGenerator;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hl7.fhir.r4.model.CodeSystem;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.semanticweb.elk.owlapi.ElkReasonerFactory;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import uk.ac.manchester.cs.jfact.JFactFactory;
+
+/**
+ * Benchmarks of the creation of the concepts of a code system from a classified ontology. The
+ * ontology is loaded and classified once per trial, so only the hierarchy and entity phases of the
+ * transformation are measured.
+ *
+ * <p>The {@code createCodeSystem} benchmark reports the number of code systems per second and,
+ * through the {@code entities} counter, the number of entities per second. The
+ * {@code annotationIndex} benchmark measures the single pass over the annotations that fills the
+ * {@link AnnotationIndex}, also in entities per second. The lookups in the index are measured in
+ * isolation on a sample of {@value #SAMPLE} entities, so their scores and the
+ * {@code gc.alloc.rate.norm} reported by {@code -prof gc} are per entity.
+ *
+ * <p>This class is in the same package as {@link FhirOwlService} because the method it measures
+ * is package-private. It has to be run from the root of the project, where it finds the test
+ * ontologies.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class EntityProcessingBenchmark {
+
+  private static final Log log = LogFactory.getLog(EntityProcessingBenchmark.class);
+
+  /**
+   * The number of entities the annotation helpers are measured on in each invocation.
+   */
+  static final int SAMPLE = 1000;
+
+  /**
+   * The ontology: "pizza" or "duo" for the test ontologies, or the name of a shape of the
+   * {@link OntologyGenerator}.
+   */
+  @Param({ "pizza", "duo", "GO", "SNOMED", "FLAT" })
+  public String ontology;
+
+  /**
+   * The annotation property that contains the codes, e.g.
+   * {@code http://www.geneontology.org/formats/oboInOwl#id} for DUO, or empty to use the IRIs.
+   */
+  @Param("")
+  public String codeProperty;
+
+  @Param("42")
+  public long seed;
+
+  private final FhirOwlService service = new FhirOwlService();
+
+  private final CodeSystemProperties csp = new CodeSystemProperties();
+
+  private final ConceptProperties cp = new ConceptProperties();
+
+  private OWLOntology ont;
+
+  private OWLDataFactory factory;
+
+  private OWLReasoner reasoner;
+
+  private IriDictionary dictionary;
+
+  private BitSet irisInMain;
+
+  private AnnotationIndex annotations;
+
+  private String[] displays;
+
+  private int entityCount;
+
+  private int[] sample;
+
+  private String[] samplePreferredTerms;
+
+  private List<String> labelsToExclude;
+
+  /**
+   * Counts the entities turned into concepts, so JMH reports them per second.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class EntityCounter {
+    public long entities;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      entities = 0;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() throws OWLOntologyCreationException {
+    if (!codeProperty.isEmpty()) {
+      cp.setCode(codeProperty);
+    }
+    final OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    ont = BenchmarkOntologies.create(ontology, manager, -1, seed);
+    factory = manager.getOWLDataFactory();
+    if (BenchmarkOntologies.isGenerated(ont)) {
+      cp.setDesignations(OntologyGenerator.SYNONYM_PROPERTY);
+    }
+
+    // The pizza ontology is not in the EL profile, as in the tests
+    if ("pizza".equals(ontology)) {
+      csp.setReasoner("jfact");
+      reasoner = new JFactFactory().createReasoner(ont);
+    } else {
+      reasoner = new ElkReasonerFactory().createReasoner(ont);
+    }
+    reasoner.precomputeInferences();
+
+    dictionary = IriDictionary.forOntology(ont);
+    irisInMain = service.calculateIrisInMain(Collections.emptySet(), ont, dictionary);
+    annotations = createAnnotationIndex();
+    displays = new String[dictionary.size()];
+
+    final List<OWLEntity> entities = new ArrayList<>(ont.getClassesInSignature(Imports.INCLUDED));
+    if ("jfact".equals(csp.getReasoner())) {
+      entities.addAll(ont.getObjectPropertiesInSignature(Imports.INCLUDED));
+      entities.addAll(ont.getDataPropertiesInSignature(Imports.INCLUDED));
+    }
+    entityCount = entities.size();
+
+    labelsToExclude = cp.getLabelsToExclude();
+    sample = new int[SAMPLE];
+    samplePreferredTerms = new String[SAMPLE];
+    for (int i = 0; i < SAMPLE; i++) {
+      sample[i] = dictionary.getId(entities.get(i % entities.size()).getIRI());
+      samplePreferredTerms[i] = annotations.getPreferredTerm(sample[i], labelsToExclude);
+    }
+    log.info(ontology + ": " + entityCount + " entities, " + ont.getAxiomCount(Imports.INCLUDED)
+        + " axioms");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    reasoner.dispose();
+  }
+
+  /**
+   * The hierarchy and entity phases of the transformation.
+   */
+  @Benchmark
+  public CodeSystem createCodeSystem(EntityCounter counter) {
+    final CodeSystem cs = service.createCodeSystem(ont, factory, reasoner, Collections.emptySet(),
+        dictionary, irisInMain, annotations, displays, csp, cp, new TransformationMetrics(),
+        ProgressReporter.none());
+    counter.entities += entityCount;
+    return cs;
+  }
+
+  /**
+   * The single pass over the annotation assertion axioms of the ontology.
+   */
+  @Benchmark
+  public AnnotationIndex annotationIndex(EntityCounter counter) {
+    final AnnotationIndex res = createAnnotationIndex();
+    counter.entities += entityCount;
+    return res;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SAMPLE)
+  public void isDeprecated(Blackhole bh) {
+    for (int id : sample) {
+      bh.consume(annotations.isDeprecated(id));
+    }
+  }
+
+  /**
+   * The code of an entity: the value of the code property or, if it has none, the short form of
+   * its IRI, as the transformation does for the entities of the main ontology.
+   */
+  @Benchmark
+  @OperationsPerInvocation(SAMPLE)
+  public void getCode(Blackhole bh) {
+    for (int id : sample) {
+      final String code = annotations.getCode(id);
+      bh.consume(code != null ? code : dictionary.getIri(id).getShortForm());
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SAMPLE)
+  public void getPreferredTerm(Blackhole bh) {
+    for (int id : sample) {
+      bh.consume(annotations.getPreferredTerm(id, labelsToExclude));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SAMPLE)
+  public void getSynonyms(Blackhole bh) {
+    for (int i = 0; i < SAMPLE; i++) {
+      final Set<String> synonyms = annotations.getSynonyms(sample[i], samplePreferredTerms[i],
+          labelsToExclude);
+      bh.consume(synonyms);
+    }
+  }
+
+  /**
+   * Creates the annotation index of the ontology, as the transformation does.
+   */
+  private AnnotationIndex createAnnotationIndex() {
+    final AnnotationIndex res = new AnnotationIndex(dictionary, cp.getCode(factory),
+        cp.getDisplay(factory), cp.getDefinition(factory), cp.getDesignations(factory),
+        cp.getDeprecated(factory));
+    res.addAll(ont);
+    return res;
+  }
+
+}
@@ -0,0 +1,359 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl;
+
+import au.csiro.fhir.owl.benchmark.BenchmarkOntologies;
+import au.csiro.fhir.owl.loader.InputFormat;
+import au.csiro.fhir.owl.loader.OntologyLoader;
+import au.csiro.fhir.owl.loader.RemoteImportCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.MissingImportHandlingStrategy;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.OWLOntologyStorageException;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import org.semanticweb.owlapi.reasoner.SimpleConfiguration;
+import org.semanticweb.owlapi.reasoner.TimeOutException;
+
+/**
+ * Measures how long it takes to load each fixture ontology in each of the supported input
+ * formats, and to classify it with each of the supported reasoners, and writes the results as
+ * CSV. Each row records the load or classification time and the peak heap usage of one run.
+ *
+ * <p>The fixtures are the ontologies used in the tests and generated ontologies (see
+ * {@link BenchmarkOntologies}). Each fixture is loaded once, merged with its imports and written in
+ * every format to a temporary directory, so the runs do not depend on the network. Imports are
+ * skipped unless an import cache is provided. Formats that cannot represent a fixture, e.g. OBO
+ * for the pizza ontology, are recorded as errors. Every run uses a new ontology manager, and a
+ * garbage collection is requested before it starts so the peak heap usage is not affected by
+ * previous runs.
+ *
+ * <p>This is a plain program rather than a JMH benchmark because loading and classifying a large
+ * ontology can take minutes, so a few runs of each are enough and the results need to be kept
+ * as data rather than as a report. It has to be run from the root of the project, where it finds
+ * the test ontologies.
+ */
+public class LoadAndClassifyHarness {
+
+  private static final Log log = LogFactory.getLog(LoadAndClassifyHarness.class);
+
+  private static final String HEADER = "fixture,axioms,operation,variant,run,millis,"
+      + "peakHeapBytes,documentBytes,status";
+
+  private final List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+
+  private final File workDir;
+
+  private final File importCache;
+
+  private final int size;
+
+  private final long seed;
+
+  private final int runs;
+
+  private final int warmupRuns;
+
+  private final long timeoutMillis;
+
+  private final PrintWriter csv;
+
+  private LoadAndClassifyHarness(File workDir, File importCache, int size, long seed, int runs,
+      int warmupRuns, long timeoutMillis, PrintWriter csv) {
+    this.workDir = workDir;
+    this.importCache = importCache;
+    this.size = size;
+    this.seed = seed;
+    this.runs = runs;
+    this.warmupRuns = warmupRuns;
+    this.timeoutMillis = timeoutMillis;
+    this.csv = csv;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        heapPools.add(pool);
+      }
+    }
+  }
+
+  /**
+   * Main method.
+   *
+   * @param args Arguments.
+   * @throws IOException If the results cannot be written.
+   */
+  public static void main(String[] args) throws IOException {
+    final Options options = new Options();
+    options.addOption("fixtures", true, "Comma-separated list of fixtures: pizza, duo, EL, ALC or "
+        + "the name of a synthetic shape (GO, SNOMED or FLAT). Defaults to pizza,duo,EL,ALC.");
+    options.addOption("formats", true, "Comma-separated list of input formats. Defaults to all "
+        + "of them.");
+    options.addOption("reasoners", true, "Comma-separated list of reasoners. Defaults to "
+        + "elk,jfact,asserted.");
+    options.addOption("size", true, "The number of classes of the generated fixtures. Defaults to "
+        + "5000.");
+    options.addOption("seed", true, "The seed used to generate the fixtures. Defaults to 42.");
+    options.addOption("runs", true, "The number of measured runs of each operation. Defaults to "
+        + "3.");
+    options.addOption("warmup", true, "The number of runs of each operation before the measured "
+        + "ones. Defaults to 1.");
+    options.addOption("timeout", true, "The classification timeout in seconds. Only honoured by "
+        + "reasoners that support timeouts. Defaults to 600.");
+    options.addOption("importCache", true, "A directory used to cache the imports of the fixtures. "
+        + "If not set, imports are skipped.");
+    options.addOption("o", "output", true, "The CSV file. Defaults to load-and-classify.csv.");
+
+    final CommandLine line;
+    try {
+      line = new DefaultParser().parse(options, args);
+    } catch (ParseException e) {
+      System.err.println(e.getLocalizedMessage());
+      new HelpFormatter().printHelp("LoadAndClassifyHarness", options);
+      System.exit(1);
+      return;
+    }
+
+    final List<String> fixtures = split(line.getOptionValue("fixtures", "pizza,duo,EL,ALC"));
+    final List<InputFormat> formats = new ArrayList<>();
+    if (line.hasOption("formats")) {
+      for (String name : split(line.getOptionValue("formats"))) {
+        final InputFormat format = InputFormat.fromName(name);
+        if (format == null) {
+          throw new InvalidPropertyException("Invalid format " + name);
+        }
+        formats.add(format);
+      }
+    } else {
+      formats.addAll(Arrays.asList(InputFormat.values()));
+    }
+    final List<String> reasoners = split(line.getOptionValue("reasoners", "elk,jfact,asserted"));
+    final File output = new File(line.getOptionValue("o", "load-and-classify.csv"));
+    final File importCache = line.hasOption("importCache")
+        ? new File(line.getOptionValue("importCache")) : null;
+
+    final File workDir = Files.createTempDirectory("fhir-owl-harness").toFile();
+    try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(output.toPath(),
+        StandardCharsets.UTF_8))) {
+      final LoadAndClassifyHarness harness = new LoadAndClassifyHarness(workDir, importCache,
+          Integer.parseInt(line.getOptionValue("size", "5000")),
+          Long.parseLong(line.getOptionValue("seed", "42")),
+          Integer.parseInt(line.getOptionValue("runs", "3")),
+          Integer.parseInt(line.getOptionValue("warmup", "1")),
+          Long.parseLong(line.getOptionValue("timeout", "600")) * 1000, csv);
+      csv.println(HEADER);
+      for (String fixture : fixtures) {
+        harness.run(fixture, formats, reasoners);
+      }
+    } finally {
+      for (File f : workDir.listFiles()) {
+        f.delete();
+      }
+      workDir.delete();
+    }
+    log.info("Results written to " + output.getAbsolutePath());
+  }
+
+  private void run(String fixture, List<InputFormat> formats, List<String> reasoners)
+      throws IOException {
+    final OWLOntology ont;
+    try {
+      ont = prepare(fixture);
+    } catch (OWLOntologyCreationException | RuntimeException e) {
+      log.error("Could not create fixture " + fixture, e);
+      write(fixture, 0, "prepare", "", 0, 0, 0, 0, "error: " + e.getLocalizedMessage());
+      return;
+    }
+    final int axioms = ont.getAxiomCount();
+    log.info("Fixture " + fixture + " has " + axioms + " axioms");
+
+    File rdfXml = null;
+    for (InputFormat format : formats) {
+      final File document = new File(workDir, fixture + "." + format.getName());
+      try {
+        ont.getOWLOntologyManager().saveOntology(ont, format.createDocumentFormat(),
+            IRI.create(document));
+      } catch (OWLOntologyStorageException | RuntimeException e) {
+        log.warn("Could not write " + fixture + " as " + format.getName() + ": "
+            + e.getLocalizedMessage());
+        write(fixture, axioms, "load", format.getName(), 0, 0, 0, 0, "error: "
+            + e.getLocalizedMessage());
+        continue;
+      }
+      if (format == InputFormat.RDFXML) {
+        rdfXml = document;
+      }
+      for (int run = 1 - warmupRuns; run <= runs; run++) {
+        load(fixture, axioms, format, document, run);
+      }
+    }
+
+    if (rdfXml == null) {
+      rdfXml = new File(workDir, fixture + ".rdfxml");
+      try {
+        ont.getOWLOntologyManager().saveOntology(ont, InputFormat.RDFXML.createDocumentFormat(),
+            IRI.create(rdfXml));
+      } catch (OWLOntologyStorageException e) {
+        throw new IOException("Could not write " + fixture, e);
+      }
+    }
+    for (String reasoner : reasoners) {
+      for (int run = 1 - warmupRuns; run <= runs; run++) {
+        classify(fixture, axioms, reasoner, rdfXml, run);
+      }
+    }
+  }
+
+  /**
+   * Loads or generates a fixture, and merges it with its imports, so it can be written to a
+   * single document.
+   */
+  private OWLOntology prepare(String fixture) throws OWLOntologyCreationException {
+    final OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    manager.setOntologyLoaderConfiguration(manager.getOntologyLoaderConfiguration()
+        .setMissingImportHandlingStrategy(MissingImportHandlingStrategy.SILENT));
+    manager.addMissingImportListener(e -> log.warn("Skipping import "
+        + e.getImportedOntologyURI() + " of " + fixture));
+    if (importCache != null) {
+      manager.getIRIMappers().add(new RemoteImportCache(importCache, Long.MAX_VALUE, false));
+    } else {
+      // Imports resolve to a document that does not exist, so they are skipped
+      final IRI missing = IRI.create(new File(workDir, "missing-import.owl"));
+      manager.getIRIMappers().add(iri -> missing);
+    }
+    final OWLOntology ont = BenchmarkOntologies.create(fixture, manager, size, seed);
+    final IRI iri = ont.getOntologyID().getOntologyIRI()
+        .or(IRI.create("http://example.org/fixture/" + fixture));
+    final OWLOntologyManager merged = OWLManager.createOWLOntologyManager();
+    return merged.createOntology(ont.getAxioms(Imports.INCLUDED), iri);
+  }
+
+  private void load(String fixture, int axioms, InputFormat format, File document, int run)
+      throws IOException {
+    final OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    resetPeakHeap();
+    final long start = System.nanoTime();
+    String status = "ok";
+    try {
+      final OWLOntology ont = OntologyLoader.forFormat(format).load(manager, document);
+      if (ont.getAxiomCount() == 0) {
+        status = "empty";
+      }
+    } catch (OWLOntologyCreationException | RuntimeException e) {
+      status = "error: " + e.getLocalizedMessage();
+    }
+    final long millis = (System.nanoTime() - start) / 1000000;
+    log.info("Loaded " + fixture + " as " + format.getName() + " in " + millis + " ms ("
+        + status + ")");
+    if (run > 0) {
+      write(fixture, axioms, "load", format.getName(), run, millis, getPeakHeap(),
+          document.length(), status);
+    }
+  }
+
+  private void classify(String fixture, int axioms, String reasonerName, File document, int run)
+      throws IOException {
+    final OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    final OWLOntology ont;
+    try {
+      ont = OntologyLoader.forFormat(InputFormat.RDFXML).load(manager, document);
+    } catch (OWLOntologyCreationException e) {
+      throw new IOException("Could not load " + document.getAbsolutePath(), e);
+    }
+    resetPeakHeap();
+    final long start = System.nanoTime();
+    String status = "ok";
+    OWLReasoner reasoner = null;
+    try {
+      reasoner = FhirOwlService.createReasonerFactory(reasonerName).createReasoner(ont,
+          new SimpleConfiguration(timeoutMillis));
+      reasoner.precomputeInferences();
+    } catch (TimeOutException e) {
+      status = "timeout";
+    } catch (RuntimeException | OutOfMemoryError e) {
+      status = "error: " + e.getLocalizedMessage();
+    }
+    final long millis = (System.nanoTime() - start) / 1000000;
+    final long peak = getPeakHeap();
+    if (reasoner != null) {
+      reasoner.dispose();
+    }
+    log.info("Classified " + fixture + " with " + reasonerName + " in " + millis + " ms ("
+        + status + ")");
+    if (run > 0) {
+      write(fixture, axioms, "classify", reasonerName, run, millis, peak, document.length(),
+          status);
+    }
+  }
+
+  private void resetPeakHeap() {
+    System.gc();
+    for (MemoryPoolMXBean pool : heapPools) {
+      pool.resetPeakUsage();
+    }
+  }
+
+  private long getPeakHeap() {
+    long peak = 0;
+    for (MemoryPoolMXBean pool : heapPools) {
+      peak += pool.getPeakUsage().getUsed();
+    }
+    return peak;
+  }
+
+  private void write(String fixture, int axioms, String operation, String variant, int run,
+      long millis, long peakHeapBytes, long documentBytes, String status) throws IOException {
+    csv.println(String.join(",", quote(fixture), String.valueOf(axioms), operation,
+        quote(variant), String.valueOf(run), String.valueOf(millis), String.valueOf(peakHeapBytes),
+        String.valueOf(documentBytes), quote(status)));
+    csv.flush();
+    if (csv.checkError()) {
+      throw new IOException("Could not write results");
+    }
+  }
+
+  private static String quote(String value) {
+    if (value == null) {
+      return "";
+    }
+    final String s = value.replace('\n', ' ').replace('\r', ' ');
+    if (s.contains(",") || s.contains("\"")) {
+      return "\"" + s.replace("\"", "\"\"") + "\"";
+    }
+    return s;
+  }
+
+  private static List<String> split(String value) {
+    final List<String> res = new ArrayList<>();
+    for (String s : value.split(",")) {
+      if (!s.trim().isEmpty()) {
+        res.add(s.trim());
+      }
+    }
+    return res;
+  }
+
+}
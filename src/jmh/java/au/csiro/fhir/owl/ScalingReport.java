@@ -0,0 +1,319 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl;
+
+import au.csiro.fhir.owl.util.OntologyGenerator;
+import ca.uhn.fhir.context.FhirContext;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+
+/**
+ * Transforms generated ontologies of increasing size end to end and reports how the time of each
+ * phase grows with the size, so phases that do not scale linearly are easy to spot.
+ *
+ * <p>Each size is transformed in a new JVM, so the peak resident set size, which is read from
+ * <code>/proc/self/status</code> and is only available on Linux, belongs to that size alone. The
+ * times of the phases come from the metrics report written by the transformation (see
+ * {@link au.csiro.fhir.owl.metrics.TransformationMetrics}). The results are written to
+ * <code>scaling.csv</code>, with a row for the whole transformation and one for each phase at
+ * each size, and to <code>scaling-summary.txt</code>, which gives the growth exponent of each
+ * phase, i.e. the slope of its time against the size on a log-log scale, and flags the phases
+ * where it is above the threshold.
+ *
+ * <p>It has to be run with the benchmarks jar on the classpath, which is also the classpath of
+ * the child JVMs.
+ */
+public class ScalingReport {
+
+  private static final Log log = LogFactory.getLog(ScalingReport.class);
+
+  /**
+   * The name of the row for the whole transformation.
+   */
+  private static final String TOTAL = "total";
+
+  /**
+   * Phases that take less than this at the largest size are never flagged, because their times
+   * are dominated by noise.
+   */
+  private static final long MIN_FLAGGED_MILLIS = 1000;
+
+  /**
+   * The results of one size: the time of each phase and the whole transformation, in order.
+   */
+  private static class Result {
+    private final int size;
+    private final Map<String, long[]> phases = new LinkedHashMap<>();
+    private long peakHeapBytes = -1;
+    private long peakRssBytes = -1;
+
+    private Result(int size) {
+      this.size = size;
+    }
+  }
+
+  /**
+   * Main method.
+   *
+   * @param args Arguments.
+   * @throws IOException If the ontologies or the report cannot be written.
+   * @throws InterruptedException If interrupted while waiting for a transformation.
+   */
+  public static void main(String[] args) throws IOException, InterruptedException {
+    final Options options = new Options();
+    options.addOption("sizes", true, "Comma-separated list of numbers of classes. Defaults to "
+        + "10000,100000,500000,1000000.");
+    options.addOption("reasoner", true, "The reasoner. Defaults to elk.");
+    options.addOption("xmx", true, "The maximum heap of each transformation. Defaults to 16g.");
+    options.addOption("seed", true, "The seed used to generate the ontologies. Defaults to 42.");
+    options.addOption("threshold", true, "Phases that grow faster than the size to this power "
+        + "are flagged. Defaults to 1.2.");
+    options.addOption("o", "output", true, "The directory where the ontologies, outputs and "
+        + "reports are written. Defaults to target/scaling.");
+
+    final CommandLine line;
+    try {
+      line = new DefaultParser().parse(options, args);
+    } catch (ParseException e) {
+      System.err.println(e.getLocalizedMessage());
+      new HelpFormatter().printHelp("ScalingReport", options);
+      System.exit(1);
+      return;
+    }
+
+    final List<Integer> sizes = new ArrayList<>();
+    for (String s : line.getOptionValue("sizes", "10000,100000,500000,1000000").split(",")) {
+      sizes.add(Integer.parseInt(s.trim()));
+    }
+    final String reasoner = line.getOptionValue("reasoner", "elk");
+    final String xmx = line.getOptionValue("xmx", "16g");
+    final long seed = Long.parseLong(line.getOptionValue("seed", "42"));
+    final double threshold = Double.parseDouble(line.getOptionValue("threshold", "1.2"));
+    final File dir = new File(line.getOptionValue("o", "target/scaling"));
+
+    final List<Result> results = new ArrayList<>();
+    for (int size : sizes) {
+      results.add(run(dir, size, reasoner, xmx, seed));
+    }
+
+    final File csv = new File(dir, "scaling.csv");
+    writeCsv(csv, results);
+    final File summary = new File(dir, "scaling-summary.txt");
+    final String text = createSummary(results, threshold);
+    Files.write(summary.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    System.out.println(text);
+    log.info("Results written to " + csv.getAbsolutePath() + " and " + summary.getAbsolutePath());
+  }
+
+  private static Result run(File dir, int size, String reasoner, String xmx, long seed)
+      throws IOException, InterruptedException {
+    final String name = "scaling-" + size;
+    final OntologyGenerator generator = new OntologyGenerator(seed);
+    generator.setClasses(size);
+    log.info("Generating ontology with " + size + " classes");
+    final File input = generator.generate(dir, name);
+    final File output = new File(dir, name + ".json");
+    final File rss = new File(dir, name + ".rss");
+    rss.delete();
+
+    final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator
+        + "java";
+    final Process process = new ProcessBuilder(java, "-Xmx" + xmx, "-cp",
+        System.getProperty("java.class.path"), Child.class.getName(), input.getAbsolutePath(),
+        output.getAbsolutePath(), reasoner, rss.getAbsolutePath()).inheritIO().start();
+    final int exit = process.waitFor();
+    if (exit != 0) {
+      throw new IOException("Transformation of " + input.getName() + " failed with exit code "
+          + exit);
+    }
+
+    final Result result = new Result(size);
+    final JsonObject report;
+    try (Reader reader = Files.newBufferedReader(new File(dir, output.getName()
+        + ".metrics.json").toPath(), StandardCharsets.UTF_8)) {
+      report = JsonParser.parseReader(reader).getAsJsonObject();
+    }
+    result.phases.put(TOTAL, new long[] { report.get("wallMillis").getAsLong(),
+        report.get("cpuMillis").getAsLong(), report.get("allocatedBytes").getAsLong() });
+    for (JsonElement e : report.getAsJsonArray("phases")) {
+      final JsonObject phase = e.getAsJsonObject();
+      result.phases.put(phase.get("name").getAsString(), new long[] {
+          phase.get("wallMillis").getAsLong(), phase.get("cpuMillis").getAsLong(),
+          phase.get("allocatedBytes").getAsLong() });
+    }
+    result.peakHeapBytes = report.get("peakHeapBytes").getAsLong();
+    if (rss.exists()) {
+      result.peakRssBytes = Long.parseLong(new String(Files.readAllBytes(rss.toPath()),
+          StandardCharsets.UTF_8).trim());
+    }
+    return result;
+  }
+
+  private static void writeCsv(File file, List<Result> results) throws IOException {
+    try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(file.toPath(),
+        StandardCharsets.UTF_8))) {
+      pw.println("classes,phase,wallMillis,cpuMillis,allocatedBytes,peakHeapBytes,peakRssBytes");
+      for (Result result : results) {
+        for (Map.Entry<String, long[]> e : result.phases.entrySet()) {
+          final long[] v = e.getValue();
+          final boolean total = TOTAL.equals(e.getKey());
+          pw.println(result.size + "," + e.getKey() + "," + v[0] + "," + v[1] + "," + v[2] + ","
+              + (total ? String.valueOf(result.peakHeapBytes) : "") + ","
+              + (total ? String.valueOf(result.peakRssBytes) : ""));
+        }
+      }
+    }
+  }
+
+  /**
+   * Creates a summary with the growth exponent of each phase. Phases that grow faster than the
+   * threshold are flagged as super-linear.
+   *
+   * @param results The results of each size.
+   * @param threshold The highest exponent that is not flagged.
+   * @return The summary.
+   */
+  private static String createSummary(List<Result> results, double threshold) {
+    final StringBuilder sb = new StringBuilder();
+    sb.append("Scaling of the transformation between ").append(results.get(0).size)
+      .append(" and ").append(results.get(results.size() - 1).size).append(" classes\n");
+    final Map<String, Boolean> phases = new LinkedHashMap<>();
+    for (Result result : results) {
+      for (String phase : result.phases.keySet()) {
+        phases.put(phase, true);
+      }
+    }
+    final List<String> flagged = new ArrayList<>();
+    for (String phase : phases.keySet()) {
+      final List<double[]> points = new ArrayList<>();
+      long largest = 0;
+      for (Result result : results) {
+        final long[] v = result.phases.get(phase);
+        if (v != null && v[0] > 0) {
+          points.add(new double[] { Math.log(result.size), Math.log(v[0]) });
+          largest = v[0];
+        }
+      }
+      sb.append(String.format(Locale.ROOT, "  %-15s", phase));
+      if (points.size() < 2) {
+        sb.append("not enough data\n");
+        continue;
+      }
+      final double exponent = slope(points);
+      sb.append(String.format(Locale.ROOT, "exponent %.2f, %d ms at the largest size", exponent,
+          largest));
+      if (exponent > threshold && largest >= MIN_FLAGGED_MILLIS) {
+        sb.append("  SUPER-LINEAR");
+        flagged.add(phase);
+      }
+      sb.append('\n');
+    }
+    final Result last = results.get(results.size() - 1);
+    if (last.peakRssBytes > 0) {
+      sb.append(String.format(Locale.ROOT, "Peak RSS at %d classes: %d MB\n", last.size,
+          last.peakRssBytes / (1024 * 1024)));
+    }
+    sb.append(flagged.isEmpty() ? "No super-linear phases\n" : "Super-linear phases: "
+        + String.join(", ", flagged) + "\n");
+    return sb.toString();
+  }
+
+  /**
+   * Returns the slope of the least squares line through some points.
+   */
+  private static double slope(List<double[]> points) {
+    double sx = 0;
+    double sy = 0;
+    for (double[] p : points) {
+      sx += p[0];
+      sy += p[1];
+    }
+    final double mx = sx / points.size();
+    final double my = sy / points.size();
+    double num = 0;
+    double den = 0;
+    for (double[] p : points) {
+      num += (p[0] - mx) * (p[1] - my);
+      den += (p[0] - mx) * (p[0] - mx);
+    }
+    return den == 0 ? 0 : num / den;
+  }
+
+  /**
+   * Transforms one ontology, in its own JVM, and records its peak resident set size.
+   */
+  public static class Child {
+
+    /**
+     * Main method.
+     *
+     * @param args The input, the output, the reasoner and the file where the peak resident set
+     *     size is written.
+     * @throws IOException If there is an I/O issue.
+     * @throws OWLOntologyCreationException If the ontology cannot be loaded.
+     */
+    public static void main(String[] args) throws IOException, OWLOntologyCreationException {
+      final FhirOwlService service = new FhirOwlService();
+      service.setCtx(FhirContext.forR4());
+      final CodeSystemProperties csp = new CodeSystemProperties();
+      csp.setInput(new File(args[0]));
+      csp.setOutput(new File(args[1]));
+      csp.setReasoner(args[2]);
+      final ConceptProperties cp = new ConceptProperties();
+      cp.setDesignations(OntologyGenerator.SYNONYM_PROPERTY);
+      service.transform(csp, cp);
+
+      final long rss = readPeakRss();
+      if (rss > 0) {
+        Files.write(new File(args[3]).toPath(), String.valueOf(rss).getBytes(
+            StandardCharsets.UTF_8));
+      }
+    }
+
+    /**
+     * Returns the peak resident set size of this process, or -1 if it is not available.
+     */
+    private static long readPeakRss() {
+      final File status = new File("/proc/self/status");
+      if (!status.exists()) {
+        return -1;
+      }
+      try {
+        for (String line : Files.readAllLines(status.toPath(), StandardCharsets.UTF_8)) {
+          if (line.startsWith("VmHWM:")) {
+            final String[] parts = line.substring(6).trim().split("\\s+");
+            return Long.parseLong(parts[0]) * 1024;
+          }
+        }
+      } catch (IOException | RuntimeException e) {
+        log.warn("Could not read the peak resident set size: " + e.getLocalizedMessage());
+      }
+      return -1;
+    }
+  }
+
+}
@@ -0,0 +1,106 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.benchmark;
+
+import au.csiro.fhir.owl.util.OntologyGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Locale;
+
+import org.semanticweb.owlapi.io.FileDocumentSource;
+import org.semanticweb.owlapi.io.OWLOntologyCreationIOException;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.MissingImportHandlingStrategy;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyLoaderConfiguration;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+/**
+ * Creates the ontologies of the benchmarks, either by loading one of the ontologies used in the
+ * tests or by generating one with the {@link OntologyGenerator}.
+ */
+public class BenchmarkOntologies {
+
+  private BenchmarkOntologies() {
+  }
+
+  /**
+   * Loads an ontology used in the tests, e.g. "pizza" or "duo", or generates one. The name of a
+   * shape, e.g. "GO", generates a class hierarchy with that shape, with labels, synonyms and
+   * deprecated classes. "EL" generates the GO shape with existential restrictions, to give the
+   * reasoners some work, and "ALC" adds universal restrictions, unions and disjoint siblings.
+   * Imports of the test ontologies that cannot be loaded are ignored.
+   *
+   * @param name The name of the ontology, the shape, "EL" or "ALC".
+   * @param manager The manager that will hold the ontology.
+   * @param size The number of classes of a generated ontology, or -1 to use the size of the shape.
+   * @param seed The seed used to generate the ontology.
+   * @return The ontology.
+   * @throws OWLOntologyCreationException If the ontology cannot be loaded or generated.
+   */
+  public static OWLOntology create(String name, OWLOntologyManager manager, int size, long seed)
+      throws OWLOntologyCreationException {
+    final File file = new File("src/test/resources", name + ".owl");
+    if (file.exists()) {
+      // Imports that cannot be downloaded, e.g. IAO for DUO, should not stop the benchmarks
+      final OWLOntologyLoaderConfiguration config = manager.getOntologyLoaderConfiguration()
+          .setMissingImportHandlingStrategy(MissingImportHandlingStrategy.SILENT);
+      return manager.loadOntologyFromOntologyDocument(new FileDocumentSource(file), config);
+    }
+    final OntologyGenerator generator = createGenerator(name, size, seed);
+    File dir = null;
+    try {
+      dir = Files.createTempDirectory("benchmark").toFile();
+      return manager.loadOntologyFromOntologyDocument(generator.generate(dir, name));
+    } catch (IOException e) {
+      throw new OWLOntologyCreationIOException(e);
+    } finally {
+      if (dir != null) {
+        for (File f : dir.listFiles()) {
+          f.delete();
+        }
+        dir.delete();
+      }
+    }
+  }
+
+  /**
+   * Returns true if an ontology was generated by {@link #create(String, OWLOntologyManager, int,
+   * long)}, rather than loaded from the test ontologies.
+   *
+   * @param ont The ontology.
+   * @return True if the ontology was generated.
+   */
+  public static boolean isGenerated(OWLOntology ont) {
+    return ont.getOntologyID().getOntologyIRI().transform(IRI::toString).or("")
+        .startsWith(OntologyGenerator.BASE);
+  }
+
+  private static OntologyGenerator createGenerator(String name, int size, long seed) {
+    final String upper = name.toUpperCase(Locale.ROOT);
+    final boolean el = "EL".equals(upper) || "ALC".equals(upper);
+    final OntologyGenerator.Shape shape;
+    try {
+      shape = el ? OntologyGenerator.Shape.GO : OntologyGenerator.Shape.valueOf(upper);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Unknown ontology " + name + ". Benchmarks need to be "
+          + "run from the root of the project to find the ontologies in src/test/resources");
+    }
+    final OntologyGenerator generator = new OntologyGenerator(seed);
+    generator.setShape(shape);
+    if (size > 0) {
+      generator.setClasses(size);
+    }
+    if (el) {
+      generator.setObjectProperties(8);
+    }
+    generator.setAlc("ALC".equals(upper));
+    return generator;
+  }
+
+}
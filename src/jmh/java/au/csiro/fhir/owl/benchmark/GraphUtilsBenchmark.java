@@ -0,0 +1,150 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.benchmark;
+
+import au.csiro.fhir.owl.util.GraphUtils;
+import au.csiro.fhir.owl.util.OntologyGenerator;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the hierarchy algorithms in {@link GraphUtils}, on hierarchies generated by the
+ * {@link OntologyGenerator} with the shape of real ontologies. The size, depth, fan-out and polyhierarchy ratio of a shape can be
+ * overridden with the corresponding parameters, e.g. {@code -p shape=SNOMED -p size=350000}.
+ * Allocation can be measured with {@code -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class GraphUtilsBenchmark {
+
+  @Param({ "GO", "SNOMED", "FLAT" })
+  public OntologyGenerator.Shape shape;
+
+  /**
+   * The number of classes, or -1 to use the size of the shape.
+   */
+  @Param("-1")
+  public int size;
+
+  /**
+   * The number of levels below owl:Thing, or -1 to use the depth of the shape.
+   */
+  @Param("-1")
+  public int depth;
+
+  /**
+   * The growth in the number of nodes from one level to the next, or -1 to use the fan-out of the
+   * shape.
+   */
+  @Param("-1")
+  public double fanOut;
+
+  /**
+   * The probability of a node having a second parent, or -1 to use the ratio of the shape.
+   */
+  @Param("-1")
+  public double polyhierarchy;
+
+  @Param("42")
+  public long seed;
+
+  private OntologyGenerator.Hierarchy hierarchy;
+
+  private int[] nodes;
+
+  private Set<Integer> nodeSet;
+
+  private Map<Integer, Set<Integer>> ancestorSets;
+
+  /**
+   * The parents of each node. The transitive closure methods modify their input, so these are
+   * created again before each invocation.
+   */
+  private Map<Integer, Set<Integer>> parentSets;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    final OntologyGenerator generator = new OntologyGenerator(seed);
+    generator.setShape(shape);
+    if (size > 0) {
+      generator.setClasses(size);
+    }
+    if (depth > 0) {
+      generator.setDepth(depth);
+    }
+    if (fanOut > 0) {
+      generator.setFanOut(fanOut);
+    }
+    if (polyhierarchy >= 0) {
+      generator.setPolyhierarchy(polyhierarchy);
+    }
+    hierarchy = generator.generateHierarchy();
+    nodes = hierarchy.nodes();
+    ancestorSets = hierarchy.getAncestorSets();
+    nodeSet = Collections.unmodifiableSet(ancestorSets.keySet());
+  }
+
+  @Setup(Level.Invocation)
+  public void setUpParents() {
+    parentSets = hierarchy.getParentSets();
+  }
+
+  /**
+   * The int-specialised transitive reduction used by the transformation.
+   */
+  @Benchmark
+  public int[][] transitiveReductionInt() {
+    return GraphUtils.transitiveReduction(hierarchy.size(), nodes, hierarchy::getAncestors);
+  }
+
+  /**
+   * The generic transitive reduction, which uses the {@link GraphUtils.TransitiveReduction} class.
+   */
+  @Benchmark
+  public Map<Integer, Set<Integer>> transitiveReductionGeneric() {
+    return GraphUtils.transitiveReduction(nodeSet, ancestorSets::get);
+  }
+
+  /**
+   * The transitive closure of the parents, with the edges given by a function.
+   */
+  @Benchmark
+  public Map<Integer, Set<Integer>> transitiveClosureFunction() {
+    final Map<Integer, Set<Integer>> edges = parentSets;
+    GraphUtils.transitiveClosure(edges.keySet(), edges::get);
+    return edges;
+  }
+
+  /**
+   * The transitive closure of the parents, with the edges given by an index.
+   */
+  @Benchmark
+  public Map<Integer, Set<Integer>> transitiveClosureIndex() {
+    final Map<Integer, Set<Integer>> edges = parentSets;
+    GraphUtils.transitiveClosure(edges);
+    return edges;
+  }
+
+}
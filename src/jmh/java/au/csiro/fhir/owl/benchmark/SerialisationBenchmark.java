@@ -0,0 +1,235 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.benchmark;
+
+import au.csiro.fhir.owl.util.CustomBundleSerialiser;
+import au.csiro.fhir.owl.util.OntologyGenerator;
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hl7.fhir.r4.model.BooleanType;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.CodeSystem;
+import org.hl7.fhir.r4.model.CodeSystem.ConceptDefinitionComponent;
+import org.hl7.fhir.r4.model.CodeSystem.ConceptDefinitionDesignationComponent;
+import org.hl7.fhir.r4.model.CodeSystem.PropertyType;
+import org.hl7.fhir.r4.model.CodeType;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.Enumerations.PublicationStatus;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the ways a code system can be serialised: the pretty printed JSON written by the
+ * transformation, compact JSON, encoding to a string instead of a writer, and a bundle encoded
+ * through Gson with the {@link CustomBundleSerialiser}.
+ *
+ * <p>The code systems look like the ones created by the transformation: every concept has a code,
+ * a display, the imported, root and deprecated properties, its parents and, sometimes, a synonym.
+ * The output is discarded, so disk speed does not affect the results. Allocation can be measured
+ * with {@code -prof gc}. The {@code peakHeapBytes} counter reports the peak heap usage during each
+ * iteration. It includes the code system and any garbage that has not been collected, so it is
+ * only comparable between paths run with the same heap settings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = { "-Xms8g", "-Xmx8g" })
+public class SerialisationBenchmark {
+
+  private static final List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+
+  static {
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        heapPools.add(pool);
+      }
+    }
+  }
+
+  @Param({ "10000", "100000", "1000000" })
+  public int concepts;
+
+  @Param("42")
+  public long seed;
+
+  private final FhirContext ctx = FhirContext.forR4();
+
+  private final Gson gson = new GsonBuilder()
+      .registerTypeAdapter(Bundle.class, new CustomBundleSerialiser(ctx))
+      .create();
+
+  private CodeSystem codeSystem;
+
+  private Bundle bundle;
+
+  /**
+   * Records the peak heap usage of each iteration.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class PeakHeap {
+    public long peakHeapBytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      System.gc();
+      for (MemoryPoolMXBean pool : heapPools) {
+        pool.resetPeakUsage();
+      }
+      peakHeapBytes = 0;
+    }
+
+    void update() {
+      long peak = 0;
+      for (MemoryPoolMXBean pool : heapPools) {
+        peak += pool.getPeakUsage().getUsed();
+      }
+      peakHeapBytes = Math.max(peakHeapBytes, peak);
+    }
+  }
+
+  /**
+   * A writer that discards its output.
+   */
+  private static class NullWriter extends Writer {
+    private long length;
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+      length += len;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    final OntologyGenerator generator = new OntologyGenerator(seed);
+    generator.setShape(OntologyGenerator.Shape.SNOMED);
+    // owl:Thing is a concept too
+    generator.setClasses(concepts - 1);
+    codeSystem = createCodeSystem(generator.generateHierarchy());
+    bundle = new Bundle();
+    bundle.setType(Bundle.BundleType.COLLECTION);
+    bundle.addEntry().setResource(codeSystem);
+  }
+
+  /**
+   * The path used by the transformation.
+   */
+  @Benchmark
+  public long prettyWriter(PeakHeap peak) throws IOException {
+    return write(ctx.newJsonParser().setPrettyPrint(true), peak);
+  }
+
+  @Benchmark
+  public long compactWriter(PeakHeap peak) throws IOException {
+    return write(ctx.newJsonParser(), peak);
+  }
+
+  @Benchmark
+  public String prettyString(PeakHeap peak) {
+    final String res = ctx.newJsonParser().setPrettyPrint(true).encodeResourceToString(codeSystem);
+    peak.update();
+    return res;
+  }
+
+  @Benchmark
+  public String compactString(PeakHeap peak) {
+    final String res = ctx.newJsonParser().encodeResourceToString(codeSystem);
+    peak.update();
+    return res;
+  }
+
+  /**
+   * A bundle with the code system, serialised with Gson, which encodes the bundle to a string and
+   * parses it again.
+   */
+  @Benchmark
+  public long bundleGson(PeakHeap peak) throws IOException {
+    final NullWriter writer = new NullWriter();
+    try (BufferedWriter bw = new BufferedWriter(writer)) {
+      gson.toJson(bundle, Bundle.class, bw);
+    }
+    peak.update();
+    return writer.length;
+  }
+
+  private long write(IParser parser, PeakHeap peak) throws IOException {
+    final NullWriter writer = new NullWriter();
+    try (BufferedWriter bw = new BufferedWriter(writer)) {
+      parser.encodeResourceToWriter(codeSystem, bw);
+    }
+    peak.update();
+    return writer.length;
+  }
+
+  private static CodeSystem createCodeSystem(OntologyGenerator.Hierarchy hierarchy) {
+    final CodeSystem cs = new CodeSystem();
+    cs.setUrl("http://example.org/synthetic");
+    cs.setVersion("1.0.0");
+    cs.setName("Synthetic");
+    cs.setStatus(PublicationStatus.ACTIVE);
+    cs.setContent(CodeSystem.CodeSystemContentMode.COMPLETE);
+    cs.addProperty().setCode("parent").setType(PropertyType.CODE);
+    cs.addProperty().setCode("imported").setType(PropertyType.BOOLEAN);
+    cs.addProperty().setCode("root").setType(PropertyType.BOOLEAN);
+    cs.addProperty().setCode("deprecated").setType(PropertyType.BOOLEAN);
+
+    final Coding synonymUse = new Coding("http://snomed.info/sct", "900000000000013009",
+        "Synonym (core metadata concept)");
+    for (int node = 0; node < hierarchy.size(); node++) {
+      final ConceptDefinitionComponent cdc = cs.addConcept();
+      cdc.setCode("C" + node);
+      cdc.setDisplay("Synthetic concept number " + node);
+      cdc.addProperty().setCode("imported").setValue(new BooleanType(false));
+      for (int parent : hierarchy.getParents(node)) {
+        cdc.addProperty().setCode("parent").setValue(new CodeType("C" + parent));
+      }
+      cdc.addProperty().setCode("root").setValue(new BooleanType(hierarchy.getLevel(node) == 1));
+      cdc.addProperty().setCode("deprecated").setValue(new BooleanType(false));
+      if (node % 3 == 0) {
+        final ConceptDefinitionDesignationComponent cddc = cdc.addDesignation();
+        cddc.setValue("Synonym of synthetic concept " + node);
+        cddc.setUse(synonymUse);
+      }
+    }
+    cs.setCount(hierarchy.size());
+    return cs;
+  }
+
+}
@@ -154,6 +154,10 @@ public class Application implements CommandLineRunner {
     options.addOption("definition", true, "Indicates which annotation property contains the "
         + "concepts' definitions.");
     
+    options.addOption("deprecatedProp", true, "Comma-separated list of annotation properties "
+        + "that indicate that a concept is deprecated, such as owl:deprecated or an obsolescence "
+        + "marker. By default any property whose short form is deprecated is used.");
+    
     options.addOption("description", true, "The description of the code system. This option takes "
         + "precedence over -descriptionProp.");
     
@@ -172,7 +176,8 @@ public class Application implements CommandLineRunner {
         .required(true)
         .hasArg(true)
         .longOpt("input")
-        .desc("The input OWL file.")
+        .desc("The input OWL file. Can be compressed (.gz, .zst) or a zip archive that contains "
+            + "the ontology and its imports.")
         .build()
     );
     
@@ -253,7 +258,8 @@ public class Application implements CommandLineRunner {
         .required(false)
         .hasArg(true)
         .longOpt("reasoner")
-        .desc("The reasoner to use. Valid values are 'elk' and 'jfact'. Default is 'elk'.")
+        .desc("The reasoner to use. Valid values are 'elk', 'jfact' and 'asserted'. 'asserted' "
+          + "skips classification and uses the asserted hierarchy. Default is 'elk'.")
         .build()
     );
 
@@ -266,6 +272,60 @@ public class Application implements CommandLineRunner {
       "useful if the ontology version is a URI that contains a date but only the date wants to be used as the " +
       "version of the code system.");
     
+    options.addOption("snapshotCache", true, "A directory used to cache binary snapshots of the "
+        + "parsed input ontology and its imports. Documents that have not changed since the last "
+        + "run are loaded from the cache instead of being parsed again.");
+    
+    options.addOption("snapshotCacheSize", true, "The maximum size of the snapshot cache, in "
+        + "megabytes. The least recently used snapshots are evicted when it is exceeded. Defaults "
+        + "to 4096.");
+    
+    options.addOption("parallelImports", false, "Flag to indicate that the documents in the "
+        + "imports closure should be parsed concurrently.");
+    
+    options.addOption("threads", true, "The maximum number of threads used by the steps of the "
+        + "transformation that run in parallel. Defaults to the number of available processors.");
+    
+    options.addOption("fastLoad", false, "Flag to indicate that OBO-style RDF/XML, N-Triples "
+        + "and N-Quads documents should be streamed and only the axioms and annotations needed to "
+        + "build the code system should be kept. Documents that cannot be handled are parsed with "
+        + "the standard parser.");
+    
+    options.addOption("catalog", true, "An XML catalog (e.g. catalog-v001.xml) or a directory of "
+        + "ontologies used to resolve imports to local files. An index of the ontology and version "
+        + "IRIs is stored next to the catalog, or in the directory, and refreshed when it changes.");
+    
+    options.addOption("importCache", true, "A directory used to cache the imports that are "
+        + "downloaded from the web. Cached imports are only downloaded again if they change.");
+    
+    options.addOption("importCacheSize", true, "The maximum size of the import cache, in "
+        + "megabytes. The least recently used imports are evicted when it is exceeded. Defaults "
+        + "to 1024.");
+    
+    options.addOption("offline", false, "Flag to indicate that imports should never be "
+        + "downloaded. Remote imports are loaded from the import cache and fail if they are not "
+        + "cached. Requires -importCache.");
+    
+    options.addOption("inputFormat", true, "The format of the input file. Valid values are "
+        + "rdfxml, owlxml, functional, manchester, turtle and obo. If not set, the format is "
+        + "detected from the header of the file. Only the parser for this format is used.");
+    
+    options.addOption("silentMissingImports", false, "Flag to indicate that imports that cannot "
+        + "be loaded should be ignored, instead of failing the transformation.");
+    
+    options.addOption("importTimeout", true, "The timeout used when downloading imports, in "
+        + "seconds.");
+    
+    options.addOption("progressInterval", true, "The interval between progress reports, in "
+        + "seconds. Progress is only logged when running in a terminal. Defaults to 30.");
+    
+    options.addOption("statusFile", true, "A JSON file where the status of the transformation "
+        + "is written at every progress interval, so that schedulers can tell if it is stuck.");
+    
+    options.addOption("profile", false, "Flag to indicate that the heap should be sampled at the "
+        + "end of each phase and the size of the main intermediate structures estimated. The "
+        + "results are written to a .profile.json file next to the output.");
+    
     CommandLineParser parser = new DefaultParser();
 
     try {
@@ -326,6 +386,11 @@ public class Application implements CommandLineRunner {
       res.setDesignations(val);
     }
     
+    val = line.getOptionValue("deprecatedProp");
+    if (val != null) {
+      res.setDeprecated(val);
+    }
+    
     val = line.getOptionValue("codeReplace");
     if (val != null) {
       String[] parts = val.split("[,]");
@@ -471,6 +536,68 @@ public class Application implements CommandLineRunner {
       res.setDateRegex(val);
     }
     
+    res.setParallelImports(line.hasOption("parallelImports"));
+    res.setFastLoad(line.hasOption("fastLoad"));
+    
+    val = line.getOptionValue("threads");
+    if (val != null) {
+      res.setThreads(val);
+    }
+    
+    val = line.getOptionValue("snapshotCache");
+    if (val != null) {
+      res.setSnapshotCache(new File(val));
+    }
+    
+    val = line.getOptionValue("snapshotCacheSize");
+    if (val != null) {
+      res.setSnapshotCacheSize(val);
+    }
+    
+    val = line.getOptionValue("catalog");
+    if (val != null) {
+      res.setCatalog(new File(val));
+    }
+    
+    val = line.getOptionValue("importCache");
+    if (val != null) {
+      res.setImportCache(new File(val));
+    }
+    
+    val = line.getOptionValue("importCacheSize");
+    if (val != null) {
+      res.setImportCacheSize(val);
+    }
+    
+    val = line.getOptionValue("inputFormat");
+    if (val != null) {
+      res.setInputFormat(val);
+    }
+    
+    res.setSilentMissingImports(line.hasOption("silentMissingImports"));
+    
+    val = line.getOptionValue("importTimeout");
+    if (val != null) {
+      res.setImportTimeout(val);
+    }
+    
+    val = line.getOptionValue("progressInterval");
+    if (val != null) {
+      res.setProgressInterval(val);
+    }
+    
+    val = line.getOptionValue("statusFile");
+    if (val != null) {
+      res.setStatusFile(new File(val));
+    }
+    
+    res.setProfile(line.hasOption("profile"));
+    
+    res.setOffline(line.hasOption("offline"));
+    if (res.isOffline() && res.getImportCache() == null) {
+      throw new InvalidPropertyException("The -offline flag requires -importCache.");
+    }
+    
     return res;
   }
 
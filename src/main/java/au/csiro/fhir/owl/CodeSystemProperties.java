@@ -5,6 +5,7 @@
 
 package au.csiro.fhir.owl;
 
+import au.csiro.fhir.owl.loader.InputFormat;
 import java.io.File;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -57,8 +58,24 @@ public class CodeSystemProperties extends OwlProperties {
   private String reasoner = "elk";
   private boolean useFhirExtension = false;
   private String dateRegex = null;
+  private File snapshotCache = null;
+  private long snapshotCacheSize = 4096L * 1024 * 1024;
+  private boolean parallelImports = false;
+  private boolean fastLoad = false;
+  private File catalog;
+  private File importCache;
+  private long importCacheSize = 1024L * 1024 * 1024;
+  private boolean offline = false;
+  private InputFormat inputFormat;
+  private boolean silentMissingImports = false;
+  private int importTimeout = 0;
+  private int threads = Runtime.getRuntime().availableProcessors();
+  private int progressInterval = 30;
+  private File statusFile;
+  private boolean profile = false;
 
-  private final Set<String> reasonerValues = new HashSet<>(Arrays.asList("elk", "jfact"));
+  private final Set<String> reasonerValues = new HashSet<>(Arrays.asList("elk", "jfact",
+      "asserted"));
 
   private final Set<String> contentValues = new HashSet<>(Arrays.asList(
     "not-present", "example", "fragment", "complete", "supplement")
@@ -294,7 +311,8 @@ public class CodeSystemProperties extends OwlProperties {
   }
 
   /**
-   * Sets the input file.
+   * Sets the input file. The file can be compressed (.gz, .zst) or be a zip archive, optionally
+   * followed by <code>!/</code> and the path of the root ontology in the archive.
    * 
    * @param input the input to set
    */
@@ -634,7 +652,7 @@ public class CodeSystemProperties extends OwlProperties {
    * @return the publisherProps
    */
   public List<OWLAnnotationProperty> getPublisherProps(OWLDataFactory factory) {
-    return loadProps(factory, this.publisherProps, defaultPublisherProps, null);
+    return loadProps(factory, this.publisherProps, defaultPublisherProps, null, "publishers");
   }
 
   /**
@@ -656,7 +674,8 @@ public class CodeSystemProperties extends OwlProperties {
    * @return the descriptionProps
    */
   public List<OWLAnnotationProperty> getDescriptionProps(OWLDataFactory factory) {
-    return loadProps(factory, this.descriptionProps, defaultDescriptionProps, null);
+    return loadProps(factory, this.descriptionProps, defaultDescriptionProps, null,
+        "descriptions");
   }
 
   /**
@@ -743,4 +762,335 @@ public class CodeSystemProperties extends OwlProperties {
   public void setDateRegex(String dateRegex) {
     this.dateRegex = dateRegex;
   }
+
+  /**
+   * Returns the directory where parsed ontology snapshots are cached.
+   *
+   * @return the snapshot cache directory or null if snapshots should not be used
+   */
+  public File getSnapshotCache() {
+    return snapshotCache;
+  }
+
+  /**
+   * Sets the directory where parsed ontology snapshots are cached.
+   *
+   * @param snapshotCache the snapshot cache directory
+   */
+  public void setSnapshotCache(File snapshotCache) {
+    this.snapshotCache = snapshotCache;
+  }
+
+  /**
+   * Returns the maximum size of the snapshot cache, in bytes.
+   *
+   * @return the snapshotCacheSize
+   */
+  public long getSnapshotCacheSize() {
+    return snapshotCacheSize;
+  }
+
+  /**
+   * Sets the maximum size of the snapshot cache.
+   *
+   * @param snapshotCacheSize the maximum size in megabytes
+   */
+  public void setSnapshotCacheSize(String snapshotCacheSize) {
+    long val;
+    try {
+      val = Long.parseLong(snapshotCacheSize);
+    } catch (NumberFormatException e) {
+      val = 0;
+    }
+    if (val < 1) {
+      throw new InvalidPropertyException("Invalid snapshotCacheSize value '" + snapshotCacheSize
+          + "'. It should be a positive number of megabytes.");
+    }
+    this.snapshotCacheSize = val * 1024 * 1024;
+  }
+
+  /**
+   * Indicates if the documents in the imports closure should be parsed concurrently.
+   *
+   * @return the parallelImports
+   */
+  public boolean isParallelImports() {
+    return parallelImports;
+  }
+
+  /**
+   * Sets the flag that indicates if the documents in the imports closure should be parsed
+   * concurrently.
+   *
+   * @param parallelImports the parallelImports to set
+   */
+  public void setParallelImports(boolean parallelImports) {
+    this.parallelImports = parallelImports;
+  }
+
+  /**
+   * Returns the maximum number of threads used by the steps of the transformation that run in
+   * parallel.
+   *
+   * @return the threads
+   */
+  public int getThreads() {
+    return threads;
+  }
+
+  /**
+   * Sets and validates the maximum number of threads used by the steps of the transformation that
+   * run in parallel.
+   *
+   * @param threads the threads to set
+   * @throws InvalidPropertyException If the value is not a positive integer.
+   */
+  public void setThreads(String threads) {
+    try {
+      this.threads = Integer.parseInt(threads);
+    } catch (NumberFormatException e) {
+      throw new InvalidPropertyException("Invalid threads value '" + threads
+          + "'. It should be a positive integer.");
+    }
+    if (this.threads < 1) {
+      throw new InvalidPropertyException("Invalid threads value '" + threads
+          + "'. It should be a positive integer.");
+    }
+  }
+
+  /**
+   * Indicates if OBO-style RDF/XML documents should be loaded with the fast loader.
+   *
+   * @return the fastLoad
+   */
+  public boolean isFastLoad() {
+    return fastLoad;
+  }
+
+  /**
+   * Sets the flag that indicates if OBO-style RDF/XML documents should be loaded with the fast
+   * loader.
+   *
+   * @param fastLoad the fastLoad to set
+   */
+  public void setFastLoad(boolean fastLoad) {
+    this.fastLoad = fastLoad;
+  }
+
+  /**
+   * Returns the XML catalog or directory used to resolve imports.
+   *
+   * @return the catalog or null if not set
+   */
+  public File getCatalog() {
+    return catalog;
+  }
+
+  /**
+   * Sets the XML catalog or directory used to resolve imports.
+   *
+   * @param catalog the catalog to set
+   */
+  public void setCatalog(File catalog) {
+    this.catalog = catalog;
+  }
+
+  /**
+   * Returns the directory where remote imports are cached.
+   *
+   * @return the import cache directory or null if not set
+   */
+  public File getImportCache() {
+    return importCache;
+  }
+
+  /**
+   * Sets the directory where remote imports are cached.
+   *
+   * @param importCache the importCache to set
+   */
+  public void setImportCache(File importCache) {
+    this.importCache = importCache;
+  }
+
+  /**
+   * Returns the maximum size of the import cache, in bytes.
+   *
+   * @return the importCacheSize
+   */
+  public long getImportCacheSize() {
+    return importCacheSize;
+  }
+
+  /**
+   * Sets the maximum size of the import cache.
+   *
+   * @param importCacheSize the maximum size in megabytes
+   */
+  public void setImportCacheSize(String importCacheSize) {
+    long val;
+    try {
+      val = Long.parseLong(importCacheSize);
+    } catch (NumberFormatException e) {
+      val = 0;
+    }
+    if (val < 1) {
+      throw new InvalidPropertyException("Invalid importCacheSize value '" + importCacheSize
+          + "'. It should be a positive number of megabytes.");
+    }
+    this.importCacheSize = val * 1024 * 1024;
+  }
+
+  /**
+   * Indicates if remote imports should only be loaded from the import cache.
+   *
+   * @return the offline
+   */
+  public boolean isOffline() {
+    return offline;
+  }
+
+  /**
+   * Sets the flag that indicates if remote imports should only be loaded from the import cache.
+   *
+   * @param offline the offline to set
+   */
+  public void setOffline(boolean offline) {
+    this.offline = offline;
+  }
+
+  /**
+   * Returns the format of the input file.
+   *
+   * @return the input format or null if it should be detected
+   */
+  public InputFormat getInputFormat() {
+    return inputFormat;
+  }
+
+  /**
+   * Sets the format of the input file.
+   *
+   * @param inputFormat the name of the input format
+   */
+  public void setInputFormat(String inputFormat) {
+    this.inputFormat = InputFormat.fromName(inputFormat);
+    if (this.inputFormat == null) {
+      final StringBuilder sb = new StringBuilder();
+      for (InputFormat f : InputFormat.values()) {
+        if (sb.length() > 0) {
+          sb.append(", ");
+        }
+        sb.append(f.getName());
+      }
+      throw new InvalidPropertyException("Invalid inputFormat value '" + inputFormat
+          + "'. Valid values are: " + sb.toString() + ".");
+    }
+  }
+
+  /**
+   * Indicates if imports that cannot be loaded should be ignored.
+   *
+   * @return the silentMissingImports
+   */
+  public boolean isSilentMissingImports() {
+    return silentMissingImports;
+  }
+
+  /**
+   * Sets the flag that indicates if imports that cannot be loaded should be ignored.
+   *
+   * @param silentMissingImports the silentMissingImports to set
+   */
+  public void setSilentMissingImports(boolean silentMissingImports) {
+    this.silentMissingImports = silentMissingImports;
+  }
+
+  /**
+   * Returns the timeout used when downloading imports.
+   *
+   * @return the timeout in seconds, or 0 if the default should be used
+   */
+  public int getImportTimeout() {
+    return importTimeout;
+  }
+
+  /**
+   * Sets the timeout used when downloading imports.
+   *
+   * @param importTimeout the timeout in seconds
+   */
+  public void setImportTimeout(String importTimeout) {
+    try {
+      this.importTimeout = Integer.parseInt(importTimeout);
+    } catch (NumberFormatException e) {
+      this.importTimeout = 0;
+    }
+    if (this.importTimeout < 1) {
+      throw new InvalidPropertyException("Invalid importTimeout value '" + importTimeout
+          + "'. It should be a positive number of seconds.");
+    }
+  }
+
+  /**
+   * Returns the interval between progress reports.
+   *
+   * @return the interval in seconds
+   */
+  public int getProgressInterval() {
+    return progressInterval;
+  }
+
+  /**
+   * Sets and validates the interval between progress reports.
+   *
+   * @param progressInterval the interval in seconds
+   */
+  public void setProgressInterval(String progressInterval) {
+    try {
+      this.progressInterval = Integer.parseInt(progressInterval);
+    } catch (NumberFormatException e) {
+      this.progressInterval = 0;
+    }
+    if (this.progressInterval < 1) {
+      throw new InvalidPropertyException("Invalid progressInterval value '" + progressInterval
+          + "'. It should be a positive number of seconds.");
+    }
+  }
+
+  /**
+   * Returns the file where the status of the transformation is written.
+   *
+   * @return the status file, or null if it should not be written
+   */
+  public File getStatusFile() {
+    return statusFile;
+  }
+
+  /**
+   * Sets the file where the status of the transformation is written.
+   *
+   * @param statusFile the status file
+   */
+  public void setStatusFile(File statusFile) {
+    this.statusFile = statusFile;
+  }
+
+  /**
+   * Returns the flag that indicates if the heap usage of the transformation should be profiled.
+   *
+   * @return the profile flag
+   */
+  public boolean isProfile() {
+    return profile;
+  }
+
+  /**
+   * Sets the flag that indicates if the heap usage of the transformation should be profiled.
+   *
+   * @param profile the profile flag
+   */
+  public void setProfile(boolean profile) {
+    this.profile = profile;
+  }
 }
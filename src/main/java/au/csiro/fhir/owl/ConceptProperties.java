@@ -25,6 +25,7 @@ public class ConceptProperties extends OwlProperties {
   private String display = null;
   private String definition = null;
   private List<String> designations = new ArrayList<>();
+  private List<String> deprecated = new ArrayList<>();
   private String stringToReplaceInCodes = null;
   private String replacementStringInCodes = null;
   private List<String> labelsToExclude = new ArrayList<>();
@@ -100,7 +101,7 @@ public class ConceptProperties extends OwlProperties {
    * @return the designations
    */
   public List<OWLAnnotationProperty> getDesignations(OWLDataFactory factory) {
-    return loadProps(factory, designations, defaultDesignationProps, null);
+    return loadProps(factory, designations, defaultDesignationProps, null, "synonyms");
   }
   
   /**
@@ -114,6 +115,30 @@ public class ConceptProperties extends OwlProperties {
     designations.addAll(args);
   }
 
+  /**
+   * Returns the annotation properties that indicate that a concept is deprecated. If empty then
+   * any annotation property whose short form is <code>deprecated</code> is used.
+   * 
+   * @param factory
+   * 
+   * @return the deprecation properties
+   */
+  public List<OWLAnnotationProperty> getDeprecated(OWLDataFactory factory) {
+    return loadProps(factory, deprecated, null, null, "deprecation flags");
+  }
+  
+  /**
+   * Sets the annotation properties that indicate that a concept is deprecated, such as 
+   * owl:deprecated or an obsolescence marker.
+   * 
+   * @param deprecated A comma-separated list of annotation properties.
+   */
+  public void setDeprecated(String deprecated) {
+    this.deprecated.clear();
+    final List<String> args = Arrays.asList(deprecated.split("[,]"));
+    this.deprecated.addAll(args);
+  }
+
   /**
    * Returns the string to look for in all codes to replace.
    * 
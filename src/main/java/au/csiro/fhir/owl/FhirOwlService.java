@@ -4,7 +4,28 @@
  */
 package au.csiro.fhir.owl;
 
+import au.csiro.fhir.owl.loader.CompressedInputLoader;
+import au.csiro.fhir.owl.loader.ImportCatalog;
+import au.csiro.fhir.owl.loader.LoaderUtils;
+import au.csiro.fhir.owl.loader.NTriplesLoader;
+import au.csiro.fhir.owl.loader.OboLoader;
+import au.csiro.fhir.owl.loader.OntologyLoader;
+import au.csiro.fhir.owl.loader.ParallelImportsLoader;
+import au.csiro.fhir.owl.loader.ReducedOntologyBuilder;
+import au.csiro.fhir.owl.loader.RemoteImportCache;
+import au.csiro.fhir.owl.loader.SnapshotCache;
+import au.csiro.fhir.owl.loader.StaxRdfXmlLoader;
+import au.csiro.fhir.owl.metrics.ClassificationEvent;
+import au.csiro.fhir.owl.metrics.EntityBatchEvent;
+import au.csiro.fhir.owl.metrics.HeapProfiler;
+import au.csiro.fhir.owl.metrics.ImportResolutionEvent;
+import au.csiro.fhir.owl.metrics.OntologyLoadEvent;
+import au.csiro.fhir.owl.metrics.ProgressReporter;
+import au.csiro.fhir.owl.metrics.SerialisationEvent;
+import au.csiro.fhir.owl.metrics.TransformationMetrics;
+import au.csiro.fhir.owl.util.AnnotationIndex;
 import au.csiro.fhir.owl.util.GraphUtils;
+import au.csiro.fhir.owl.util.IriDictionary;
 import ca.uhn.fhir.context.FhirContext;
 
 import com.google.common.base.Optional;
@@ -17,6 +38,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -48,8 +74,9 @@ import org.semanticweb.owlapi.model.parameters.Imports;
 import org.semanticweb.owlapi.reasoner.Node;
 import org.semanticweb.owlapi.reasoner.OWLReasoner;
 import org.semanticweb.owlapi.reasoner.OWLReasonerFactory;
-import org.semanticweb.owlapi.search.EntitySearcher;
-import org.semanticweb.owlapi.util.SimpleIRIMapper;
+import org.semanticweb.owlapi.reasoner.SimpleConfiguration;
+import org.semanticweb.owlapi.reasoner.structural.StructuralReasonerFactory;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -66,6 +93,10 @@ public class FhirOwlService {
   
   private static final Log log = LogFactory.getLog(FhirOwlService.class);
   
+  private static final Set<IRI> BOTTOM_ENTITIES = new HashSet<>(Arrays.asList(
+      OWLRDFVocabulary.OWL_NOTHING.getIRI(), OWLRDFVocabulary.OWL_BOTTOM_OBJECT_PROPERTY.getIRI(),
+      OWLRDFVocabulary.OWL_BOTTOM_DATA_PROPERTY.getIRI()));
+  
   @Value("#{'${ontoserver.owl.defaults.publisher}'.split(',')}")
   private List<String> defaultPublisherProps;
 
@@ -81,7 +112,7 @@ public class FhirOwlService {
   @Autowired
   private FhirContext ctx;
   
-  private final Map<IRI, IRI> iriMap = new HashMap<>();
+  private final Map<IRI, File> iriMap = new HashMap<>();
   
   @PostConstruct
   private void init() {
@@ -94,22 +125,16 @@ public class FhirOwlService {
         return;
       }
       
+      // Files are only checked when an import is resolved, see ImportCatalog
       final String[] lines = getLinesFromInputStream(input);
       for (String line : lines) {
-        if (line.startsWith("#")) {
+        if (line.startsWith("#") || line.trim().isEmpty()) {
           continue;
         }
         String[] parts = line.split("[,]");
-        
-        // Check file exists
-        final File tgtFile = new File(System.getProperty("user.home") + parts[1]);
-        if (tgtFile.exists()) {
-          iriMap.put(IRI.create(parts[0]), IRI.create(tgtFile));
-          log.info("Adding mapping " + parts[0] + " -> " +  tgtFile.toString());
-        } else {
-          log.warn("Mapping was not added because file " +  tgtFile.toString() + " does not exist.");
-        }
+        iriMap.put(IRI.create(parts[0]), new File(System.getProperty("user.home") + parts[1]));
       }
+      log.info("Added " + iriMap.size() + " IRI mappings from iri_mappings.txt");
       
     } catch (Throwable t) {
       log.warn("There was a problem loading IRI mappings.", t);
@@ -130,14 +155,69 @@ public class FhirOwlService {
       throws IOException, OWLOntologyCreationException {
     log.info("Creating code systems");
     
-    final CodeSystem codeSystem = createCodeSystem(csp, cp, mainNamespaces);
+    final TransformationMetrics metrics = new TransformationMetrics();
+    metrics.setAttribute("input", csp.getInput().getAbsolutePath());
+    metrics.setAttribute("output", csp.getOutput().getAbsolutePath());
+    metrics.setAttribute("reasoner", csp.getReasoner());
+    if (csp.isProfile()) {
+      log.info("Profiling heap usage, this makes the transformation slower");
+      metrics.setProfiler(new HeapProfiler());
+    }
     
+    final ProgressReporter progress = new ProgressReporter(csp.getProgressInterval(), 
+        csp.getStatusFile());
     final File output = csp.getOutput();
-    try (BufferedWriter bw = new BufferedWriter(new FileWriter(output))) {
-      log.info("Writing code system to file: " + output.getAbsolutePath());
-      ctx.newJsonParser().setPrettyPrint(true).encodeResourceToWriter(codeSystem, bw);
-      log.info("Done!");
+    try {
+      final CodeSystem codeSystem = createCodeSystem(csp, cp, mainNamespaces, metrics, progress);
+      metrics.measure("code system", codeSystem);
+      
+      progress.startTask(TransformationMetrics.SERIALISATION, 0);
+      final SerialisationEvent event = new SerialisationEvent();
+      event.begin();
+      try (TransformationMetrics.Phase phase = 
+          metrics.startPhase(TransformationMetrics.SERIALISATION);
+          BufferedWriter bw = new BufferedWriter(new FileWriter(output))) {
+        log.info("Writing code system to file: " + output.getAbsolutePath());
+        ctx.newJsonParser().setPrettyPrint(true).encodeResourceToWriter(codeSystem, bw);
+        phase.addCount("concepts", codeSystem.getConcept().size());
+      }
+      if (event.shouldCommit()) {
+        event.output = output.getAbsolutePath();
+        event.concepts = codeSystem.getConcept().size();
+        event.outputSize = output.length();
+        event.commit();
+      }
+    } catch (Throwable t) {
+      progress.fail();
+      throw t;
+    }
+    progress.close();
+    
+    // The report goes next to the output so slow runs can be looked into after the fact
+    metrics.finish();
+    final File report = new File(output.getAbsoluteFile().getParentFile(), 
+        output.getName() + ".metrics.json");
+    try {
+      metrics.writeReport(report);
+    } catch (IOException e) {
+      log.warn("Could not write metrics report to " + report.getAbsolutePath() + ": " 
+          + e.getLocalizedMessage());
     }
+    log.info(metrics.getSummary());
+    
+    final HeapProfiler profiler = metrics.getProfiler();
+    if (profiler != null) {
+      final File profile = new File(output.getAbsoluteFile().getParentFile(), 
+          output.getName() + ".profile.json");
+      try {
+        profiler.writeReport(profile);
+      } catch (IOException e) {
+        log.warn("Could not write heap profile to " + profile.getAbsolutePath() + ": " 
+            + e.getLocalizedMessage());
+      }
+      log.info(profiler.getSummary());
+    }
+    log.info("Done!");
   }
   
   /**
@@ -175,107 +255,341 @@ public class FhirOwlService {
     return res.toArray(new String[0]);
   }
   
-  private void addIriMappings(OWLOntologyManager manager) {
-    for (IRI key : iriMap.keySet()) {
-      manager.getIRIMappers().add(new SimpleIRIMapper(key, iriMap.get(key)));
+  private void addIriMappings(OWLOntologyManager manager, CodeSystemProperties csp) 
+      throws OWLOntologyCreationException {
+    final ImportCatalog catalog = new ImportCatalog();
+    final File catalogFile = csp.getCatalog();
+    if (catalogFile != null) {
+      try {
+        catalog.addCatalog(catalogFile);
+      } catch (IOException e) {
+        throw new OWLOntologyCreationException("Unable to open catalog " 
+            + catalogFile.getAbsolutePath(), e);
+      }
+    }
+    for (Map.Entry<IRI, File> e : iriMap.entrySet()) {
+      catalog.addMapping(e.getKey(), e.getValue());
+    }
+    manager.getIRIMappers().add(catalog);
+    
+    // Remote imports are only cached if they are not available locally
+    final File importCache = csp.getImportCache();
+    if (importCache != null) {
+      log.info("Using import cache in " + importCache.getAbsolutePath() 
+          + (csp.isOffline() ? " in offline mode" : ""));
+      final int timeout = csp.getImportTimeout() > 0 ? csp.getImportTimeout() * 1000 : 60000;
+      manager.getIRIMappers().add(new RemoteImportCache(importCache, csp.getImportCacheSize(), 
+          csp.isOffline(), timeout));
+    }
+  }
+  
+  /**
+   * Sets the loader configuration options of the ontology manager.
+   * 
+   * @param manager The ontology manager.
+   * @param csp The code system properties.
+   */
+  private void configureLoader(OWLOntologyManager manager, CodeSystemProperties csp) {
+    OWLOntologyLoaderConfiguration config = manager.getOntologyLoaderConfiguration();
+    if (csp.isSilentMissingImports()) {
+      config = config.setMissingImportHandlingStrategy(MissingImportHandlingStrategy.SILENT);
+      manager.addMissingImportListener(e -> log.warn("Ignoring import " 
+          + e.getImportedOntologyURI() + " because it could not be loaded: " 
+          + e.getCreationException().getLocalizedMessage()));
+    }
+    if (csp.getImportTimeout() > 0) {
+      config = config.setConnectionTimeout(csp.getImportTimeout() * 1000);
+    }
+    manager.setOntologyLoaderConfiguration(config);
+  }
+  
+  /**
+   * Creates the loader used to load the input ontology, based on the code system properties.
+   * 
+   * @param csp The code system properties.
+   * @param cp The concept properties.
+   * @param metrics Records the time it takes to load each import.
+   * @return The ontology loader.
+   */
+  private OntologyLoader createLoader(CodeSystemProperties csp, ConceptProperties cp, 
+      TransformationMetrics metrics) {
+    if (csp.getInputFormat() != null) {
+      log.info("Parsing input as " + csp.getInputFormat().getName());
     }
+    OntologyLoader loader = OntologyLoader.forFormat(csp.getInputFormat());
+    
+    if (csp.isParallelImports()) {
+      log.info("Loading imports in parallel using " + csp.getThreads() + " threads");
+      final ParallelImportsLoader parallelLoader = new ParallelImportsLoader(csp.getThreads(), 
+          csp.getInputFormat());
+      loader = (m, f) -> {
+        try {
+          return parallelLoader.load(m, f);
+        } finally {
+          for (ParallelImportsLoader.ImportTiming timing : parallelLoader.getTimings()) {
+            metrics.recordImportTime(timing.getDocumentIri().toString(), 
+                timing.getDurationMillis());
+          }
+        }
+      };
+    }
+    
+    String variant = "";
+    if (csp.isFastLoad()) {
+      final Set<IRI> props = getAnnotationPropertiesInUse(csp, cp);
+      log.info("Using fast loader, keeping annotation properties " + props);
+      loader = new OboLoader(props, new NTriplesLoader(props, csp.getThreads(),
+          new StaxRdfXmlLoader(props, loader)));
+      variant = ReducedOntologyBuilder.VERSION + ":" 
+          + props.stream().map(IRI::toString).sorted().collect(Collectors.joining(","));
+    }
+    
+    final File snapshotCache = csp.getSnapshotCache();
+    if (snapshotCache != null) {
+      log.info("Using ontology snapshot cache in " + snapshotCache.getAbsolutePath());
+      loader = new SnapshotCache(snapshotCache, csp.getSnapshotCacheSize(), variant, loader);
+    }
+    
+    // Compressed files and archives are streamed into the OWL API parsers
+    if (CompressedInputLoader.isCompressed(csp.getInput())) {
+      final List<String> ignored = new ArrayList<>();
+      if (csp.isParallelImports()) {
+        ignored.add("-parallelImports");
+      }
+      if (csp.isFastLoad()) {
+        ignored.add("-fastLoad");
+      }
+      if (snapshotCache != null) {
+        ignored.add("-snapshotCache");
+      }
+      if (!ignored.isEmpty()) {
+        log.warn("The input is compressed or archived, so " + String.join(", ", ignored)
+            + " will be ignored");
+      }
+    }
+    return new CompressedInputLoader(loader, csp.getInputFormat());
   }
   
-  private Set<IRI> getIris(Set<OWLClass> classes) {
+  /**
+   * Returns the annotation properties that are read during the transformation, either from the
+   * entities or from the ontology header.
+   * 
+   * @param csp The code system properties.
+   * @param cp The concept properties.
+   * @return The IRIs of the annotation properties.
+   */
+  private Set<IRI> getAnnotationPropertiesInUse(CodeSystemProperties csp, ConceptProperties cp) {
+    final OWLDataFactory factory = OWLManager.getOWLDataFactory();
+    final List<OWLAnnotationProperty> props = new ArrayList<>();
+    props.add(cp.getCode(factory));
+    props.add(cp.getDisplay(factory));
+    props.add(cp.getDefinition(factory));
+    props.addAll(cp.getDesignations(factory));
+    props.addAll(cp.getDeprecated(factory));
+    props.add(csp.getNameProp(factory));
+    props.addAll(csp.getPublisherProps(factory));
+    props.addAll(csp.getDescriptionProps(factory));
+    
     final Set<IRI> res = new HashSet<>();
-    for (OWLClass oc : classes) {
-      res.add(oc.getIRI());
+    for (OWLAnnotationProperty prop : props) {
+      if (prop != null) {
+        res.add(prop.getIRI());
+      }
     }
     return res;
   }
   
   private CodeSystem createCodeSystem(CodeSystemProperties csp, ConceptProperties cp, 
-      Set<String> mainNamespaces)
+      Set<String> mainNamespaces, TransformationMetrics metrics, ProgressReporter progress)
       throws OWLOntologyCreationException {
     
     final File input = csp.getInput();
     
     log.info("Loading ontology from file " + input.getAbsolutePath());
     OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
-    addIriMappings(manager);
-    final OWLOntology rootOnt = manager.loadOntologyFromOntologyDocument(input);
+    final OWLOntology rootOnt;
+    progress.startTask(TransformationMetrics.LOAD, 0);
+    final OntologyLoadEvent loadEvent = new OntologyLoadEvent();
+    loadEvent.begin();
+    try (TransformationMetrics.Phase phase = metrics.startPhase(TransformationMetrics.LOAD)) {
+      addIriMappings(manager, csp);
+      configureLoader(manager, csp);
+      addImportTimer(manager, metrics);
+      rootOnt = createLoader(csp, cp, metrics).load(manager, input);
+      
+      for (OWLOntology ont : manager.getImportsClosure(rootOnt)) {
+        final Optional<IRI> ontIri = ont.getOntologyID().getOntologyIRI();
+        final IRI documentIri = manager.getOntologyDocumentIRI(ont);
+        metrics.addImport(ontIri.isPresent() ? ontIri.get().toString() : null, 
+            documentIri != null ? documentIri.toString() : null, ont.getAxiomCount());
+        phase.addCount("axioms", ont.getAxiomCount());
+        phase.addCount("ontologies", 1);
+        loadEvent.axioms += ont.getAxiomCount();
+        loadEvent.ontologies++;
+      }
+    }
+    if (loadEvent.shouldCommit()) {
+      loadEvent.input = input.getAbsolutePath();
+      loadEvent.inputSize = CompressedInputLoader.getFile(input).length();
+      loadEvent.commit();
+    }
+    if (metrics.getProfiler() != null) {
+      // The reasoner references the ontologies directly, so they are boundaries too
+      final List<Object> ontologies = new ArrayList<>(manager.getImportsClosure(rootOnt));
+      ontologies.add(manager.getOWLDataFactory());
+      metrics.measure("ontologies", manager, ontologies.toArray());
+    }
     
-    // We only need the preferred term property here
     final OWLDataFactory factory = manager.getOWLDataFactory();
     final OWLAnnotationProperty preferredTermProp = cp.getDisplay(factory);
     
-    // We implement the two supported mechanisms to determine which concepts belong in the
-    // main ontology. If the main namespaces are provided then those are used. Otherwise
-    // we need to calculate which concepts are defined in the main file and are not
-    // defined in the imported ontologies
-    final Set<IRI> irisInMain = calculateIrisInMain(mainNamespaces, rootOnt);
-    
-    // Extract labels for all classes
-    final Map<IRI, String> iriDisplayMap = new HashMap<>();
-    for (OWLClass owlClass : rootOnt.getClassesInSignature(Imports.INCLUDED)) {
-      iriDisplayMap.put(owlClass.getIRI(), null);
-    }
-    
-    final Set<OWLOntology> closure = manager.getImportsClosure(rootOnt);
-    for (OWLOntology ont : closure) {
-      for (OWLClass oc : ont.getClassesInSignature()) {
-        if (iriDisplayMap.containsKey(oc.getIRI())) {
-          String pt = getPreferedTerm(oc, ont, preferredTermProp, Collections.emptyList());
-          if (pt != null) {
-            iriDisplayMap.put(oc.getIRI(), pt);
-          }
+    final IriDictionary dictionary;
+    final BitSet irisInMain;
+    final AnnotationIndex annotations;
+    final String[] displays;
+    progress.startTask(TransformationMetrics.LABELS, 0);
+    try (TransformationMetrics.Phase phase = metrics.startPhase(TransformationMetrics.LABELS)) {
+      // From here on entities are identified by dense int ids, so per-entity data can be kept in
+      // arrays and bit sets instead of maps keyed by IRI
+      dictionary = IriDictionary.forOntology(rootOnt);
+      
+      // We implement the two supported mechanisms to determine which concepts belong in the
+      // main ontology. If the main namespaces are provided then those are used. Otherwise
+      // we need to calculate which concepts are defined in the main file and are not
+      // defined in the imported ontologies
+      irisInMain = calculateIrisInMain(mainNamespaces, rootOnt, dictionary);
+      
+      // The annotations of the root ontology are used to create the concepts, so they are
+      // indexed in a single pass. Only the labels are needed from the imported ontologies.
+      annotations = new AnnotationIndex(dictionary, cp.getCode(factory), preferredTermProp,
+          cp.getDefinition(factory), cp.getDesignations(factory), cp.getDeprecated(factory));
+      
+      // Extract labels for all classes
+      displays = extractLabels(rootOnt, annotations, dictionary, preferredTermProp, 
+          csp.getThreads(), phase);
+      
+      // Make sure there are no null labels
+      for (OWLClass owlClass : rootOnt.getClassesInSignature(Imports.INCLUDED)) {
+        final int id = dictionary.getId(owlClass.getIRI());
+        if (displays[id] == null) {
+          log.warn("Could not find label for class " + owlClass.getIRI().toString());
+          displays[id] = owlClass.getIRI().toString();
         }
+        phase.addCount("classes", 1);
       }
+      metrics.addCount("entities", dictionary.size());
+      metrics.addCount("deprecated", annotations.getDeprecated().cardinality());
     }
+    metrics.measure("entity ids", dictionary);
+    metrics.measure("displays", displays);
+    metrics.measure("annotations", annotations);
     
-    // Make sure there are no null labels
-    final Set<IRI> unnamed = new HashSet<>();
-    for (IRI key : iriDisplayMap.keySet()) {
-      String display = iriDisplayMap.get(key);
-      if (display == null) {
-        log.warn("Could not find label for class " + key.toString());
-        unnamed.add(key);
-      }
+    // Classify root ontology
+    final String reasonerName = csp.getReasoner();
+    final OWLReasonerFactory reasonerFactory = createReasonerFactory(reasonerName);
+
+    log.info("Classifying ontology " + getOntologyName(csp, rootOnt, factory) + " with " + reasonerName);
+    OWLReasoner reasoner;
+    progress.startTask(TransformationMetrics.CLASSIFICATION, 0);
+    final ClassificationEvent classificationEvent = new ClassificationEvent();
+    classificationEvent.begin();
+    try (TransformationMetrics.Phase phase = 
+        metrics.startPhase(TransformationMetrics.CLASSIFICATION)) {
+      reasoner = reasonerFactory.createReasoner(rootOnt, 
+          new SimpleConfiguration(progress.getReasonerMonitor()));
+      reasoner.precomputeInferences();
     }
-    
-    for (IRI un : unnamed) {
-      iriDisplayMap.put(un, un.toString());
+    if (classificationEvent.shouldCommit()) {
+      classificationEvent.reasoner = reasonerName;
+      classificationEvent.classes = rootOnt.getClassesInSignature(Imports.INCLUDED).size();
+      classificationEvent.axioms = rootOnt.getAxiomCount(Imports.INCLUDED);
+      classificationEvent.commit();
     }
-    
-    // Classify root ontology
-    OWLReasonerFactory reasonerFactory;
-    String reasonerName = csp.getReasoner();
+    metrics.measure("reasoner", reasoner);
+
+    // Create code system
+    return createCodeSystem(rootOnt, manager.getOWLDataFactory(), reasoner, mainNamespaces, 
+        dictionary, irisInMain, annotations, displays, csp, cp, metrics, progress);
+  }
+
+  /**
+   * Creates the factory of one of the supported reasoners.
+   * 
+   * @param reasonerName The name of the reasoner: elk, jfact or asserted.
+   * @return The reasoner factory.
+   */
+  static OWLReasonerFactory createReasonerFactory(String reasonerName) {
     if (reasonerName.equals("elk")) {
-      reasonerFactory = new ElkReasonerFactory();
+      return new ElkReasonerFactory();
     } else if (reasonerName.equals("jfact")) {
-      reasonerFactory = new JFactFactory();
+      return new JFactFactory();
+    } else if (reasonerName.equals("asserted")) {
+      // Only uses the asserted hierarchy, which is reduced when the code system is created
+      return new StructuralReasonerFactory();
     } else {
       throw new RuntimeException("Invalid reasoner " + reasonerName);
     }
+  }
+  
+  /**
+   * Records the time it takes the ontology manager to load each ontology document, and emits an
+   * import resolution event for it. The time of an ontology includes the time it takes to load
+   * its own imports.
+   * 
+   * @param manager The ontology manager.
+   * @param metrics The metrics where the times are recorded.
+   */
+  private void addImportTimer(OWLOntologyManager manager, TransformationMetrics metrics) {
+    final Map<IRI, Long> starts = new ConcurrentHashMap<>();
+    final Map<IRI, ImportResolutionEvent> events = new ConcurrentHashMap<>();
+    manager.addOntologyLoaderListener(new OWLOntologyLoaderListener() {
+      @Override
+      public void startedLoadingOntology(LoadingStartedEvent event) {
+        starts.put(event.getDocumentIRI(), System.nanoTime());
+        final ImportResolutionEvent jfrEvent = new ImportResolutionEvent();
+        jfrEvent.begin();
+        events.put(event.getDocumentIRI(), jfrEvent);
+      }
 
-    log.info("Classifying ontology " + getOntologyName(csp, rootOnt, factory) + " with " + reasonerName);
-    OWLReasoner reasoner = reasonerFactory.createReasoner(rootOnt);
-    reasoner.precomputeInferences();
-
-    // Create code system
-    return createCodeSystem(rootOnt, manager.getOWLDataFactory(), reasoner, mainNamespaces, 
-        irisInMain, iriDisplayMap, csp, cp);
+      @Override
+      public void finishedLoadingOntology(LoadingFinishedEvent event) {
+        final Long start = starts.remove(event.getDocumentIRI());
+        if (start != null) {
+          metrics.recordImportTime(event.getDocumentIRI().toString(), 
+              (System.nanoTime() - start) / 1000000);
+        }
+        final ImportResolutionEvent jfrEvent = events.remove(event.getDocumentIRI());
+        if (jfrEvent != null && jfrEvent.shouldCommit()) {
+          final Optional<IRI> ontIri = event.getOntologyID().getOntologyIRI();
+          if (event.isImported() && ontIri.isPresent()) {
+            jfrEvent.importIri = ontIri.get().toString();
+          }
+          jfrEvent.documentIri = event.getDocumentIRI().toString();
+          final OWLOntology ont = event.isSuccessful() 
+              ? manager.getOntology(event.getOntologyID()) : null;
+          jfrEvent.axioms = ont != null ? ont.getAxiomCount() : 0;
+          jfrEvent.successful = event.isSuccessful();
+          jfrEvent.commit();
+        }
+      }
+    });
   }
 
-  Set<IRI> calculateIrisInMain(Set<String> mainNamespaces, OWLOntology rootOnt) {
-    final Set<IRI> irisInMain = new HashSet<>();
+  BitSet calculateIrisInMain(Set<String> mainNamespaces, OWLOntology rootOnt,
+      IriDictionary dictionary) {
+    final BitSet irisInMain = new BitSet(dictionary.size());
     if (mainNamespaces == null || mainNamespaces.isEmpty()) {
       // Get concepts in main ontology
-      irisInMain.addAll(getIris(rootOnt.getClassesInSignature(Imports.EXCLUDED)));
-
-      // Get all concepts in imported ontologies
-      final Set<IRI> importedIris = new HashSet<>();
-      for (OWLOntology io : rootOnt.getImports()) {
-        importedIris.addAll(getIris(io.getClassesInSignature(Imports.INCLUDED)));
+      for (OWLClass oc : rootOnt.getClassesInSignature(Imports.EXCLUDED)) {
+        irisInMain.set(dictionary.getId(oc.getIRI()));
       }
 
       // Remove concepts in imported ontologies from the ones in the main ontology
-      irisInMain.removeAll(importedIris);
+      for (OWLOntology io : rootOnt.getImports()) {
+        for (OWLClass oc : io.getClassesInSignature(Imports.INCLUDED)) {
+          irisInMain.clear(dictionary.getId(oc.getIRI()));
+        }
+      }
     }
     return irisInMain;
   }
@@ -305,6 +619,56 @@ public class FhirOwlService {
       Map<IRI, String> iriDisplayMap,
       CodeSystemProperties csp,
       ConceptProperties cp) {
+    final IriDictionary dictionary = IriDictionary.forOntology(ont);
+    final String[] displays = new String[dictionary.size()];
+    for (Map.Entry<IRI, String> entry : iriDisplayMap.entrySet()) {
+      final int id = dictionary.getId(entry.getKey());
+      if (id != IriDictionary.NO_ID) {
+        displays[id] = entry.getValue();
+      }
+    }
+    final AnnotationIndex annotations = new AnnotationIndex(dictionary, cp.getCode(factory),
+        cp.getDisplay(factory), cp.getDefinition(factory), cp.getDesignations(factory),
+        cp.getDeprecated(factory));
+    annotations.addAll(ont);
+    return createCodeSystem(ont, factory, reasoner, mainNamespaces, dictionary,
+        dictionary.toBitSet(irisInMain), annotations, displays, csp, cp, 
+        new TransformationMetrics(), ProgressReporter.none());
+  }
+
+  /**
+   * Creates a code system from an ontology, using the entity ids assigned by a dictionary.
+   * 
+   * @param ont The ontology.
+   * @param factory The OWL factory.
+   * @param reasoner The OWL reasoner.
+   * @param mainNamespaces The namespaces of concepts that belong in the main ontology. Might be 
+   *     empty.
+   * @param dictionary The dictionary that contains the ids of all the entities in the ontology.
+   * @param irisInMain The ids of the IRIs that belong in the main namespaces. Only populated if
+   *     mainNamespaces is empty.
+   * @param annotations The annotations of the entities in the ontology.
+   * @param displays The displays of the classes, indexed by id.
+   * @param csp The code system properties.
+   * @param cp The concept properties.
+   * @param metrics The metrics where the hierarchy and entity phases are recorded.
+   * @param progress Reports the progress of the hierarchy and entity phases.
+   * 
+   * @return The code system.
+   */
+  CodeSystem createCodeSystem(
+      OWLOntology ont, 
+      final OWLDataFactory factory, 
+      OWLReasoner reasoner, 
+      Set<String> mainNamespaces, 
+      IriDictionary dictionary,
+      BitSet irisInMain,
+      AnnotationIndex annotations,
+      String[] displays,
+      CodeSystemProperties csp,
+      ConceptProperties cp,
+      TransformationMetrics metrics,
+      ProgressReporter progress) {
     
     // Populate basic code system info
     final CodeSystem cs = new CodeSystem();
@@ -505,39 +869,59 @@ public class FhirOwlService {
     final boolean hasImports = !ont.getImportsDeclarations().isEmpty();
     
     final boolean includeDeprecated = csp.isIncludeDeprecated();
-    final OWLAnnotationProperty codeProp = cp.getCode(factory);
-    final OWLAnnotationProperty preferredTermProp = cp.getDisplay(factory);
-    final List<OWLAnnotationProperty> synonymProps = cp.getDesignations(factory);
+    // Computed once, when the annotations were indexed, and used for entities and their parents
+    final BitSet deprecated = annotations.getDeprecated();
     final String stringToReplaceInCodes = cp.getStringToReplaceInCodes();
     final String replacementStringInCodes = cp.getReplacementStringInCodes();
     final List<String> labelsToExclude = cp.getLabelsToExclude();
     
     int count = 0;
 
+    final BitSet imported = calculateImported(dictionary, mainNamespaces, irisInMain, hasImports);
+
     // Add classes
     Set<OWLClass> classes = ont.getClassesInSignature(Imports.INCLUDED);
     classes.add(factory.getOWLThing());
     Node<OWLClass> nothing = reasoner.getEquivalentClasses(factory.getOWLNothing());
 
     // Need to filter equivalents to OWLNothing
-    classes = classes.stream()
+    final List<OWLClass> classList = classes.stream()
       .filter(x -> {
         return !nothing.contains(x);
       })
-      .collect(Collectors.toSet());
+      .collect(Collectors.toList());
+    final int[] classIds = classList.stream().mapToInt(c -> dictionary.getId(c.getIRI())).toArray();
 
     /* Shouldn't need to calculate transitive reduction because the reasoner should take care of it. However, JFact
      * doesn't seem to do this properly with object properties calculating for everything just in case.
      */
-    Map<OWLClass, Set<OWLClass>> classParents = GraphUtils.transitiveReduction(
-      classes, c -> reasoner.getSuperClasses(c, false).getFlattened());
+    final int[][] classParents;
+    progress.startTask(TransformationMetrics.REDUCTION + ": classes", classIds.length);
+    try (TransformationMetrics.Phase phase = metrics.startPhase(TransformationMetrics.REDUCTION)) {
+      classParents = GraphUtils.transitiveReduction(dictionary.size(), classIds, node -> {
+        progress.increment();
+        return dictionary.getIds(reasoner.getSuperClasses(
+            factory.getOWLClass(dictionary.getIri(node)), false).getFlattened());
+      });
+      phase.addCount("classes", classIds.length);
+    }
+    metrics.measure("class hierarchy", classParents);
     
-    for (OWLClass owlClass : classes) {
-      if (processEntity(owlClass, cs, ont, mainNamespaces, irisInMain, iriDisplayMap,
-          includeDeprecated, codeProp, preferredTermProp, synonymProps, hasImports,
-          stringToReplaceInCodes, replacementStringInCodes, labelsToExclude, classParents)) {
-        count++;
+    progress.startTask(TransformationMetrics.ENTITIES + ": classes", classIds.length);
+    try (TransformationMetrics.Phase phase = metrics.startPhase(TransformationMetrics.ENTITIES)) {
+      EntityBatchEvent batch = new EntityBatchEvent("class");
+      for (int i = 0; i < classIds.length; i++) {
+        final boolean added = processEntity(classList.get(i), classIds[i], cs, dictionary,
+            imported, deprecated, annotations, displays, includeDeprecated,
+            stringToReplaceInCodes, replacementStringInCodes, labelsToExclude, classParents);
+        if (added) {
+          count++;
+        }
+        progress.increment();
+        batch = batch.processed(added);
       }
+      batch.finish();
+      phase.addCount("classes", classIds.length);
     }
 
     if (csp.getReasoner().equals("jfact")) {
@@ -545,20 +929,42 @@ public class FhirOwlService {
       final Set<OWLObjectProperty> objectProps = ont.getObjectPropertiesInSignature(Imports.INCLUDED);
       if (!objectProps.isEmpty()) {
         objectProps.add(factory.getOWLTopObjectProperty());
+        final List<OWLObjectProperty> propList = new ArrayList<>(objectProps);
+        final int[] propIds = propList.stream().mapToInt(p -> dictionary.getId(p.getIRI())).toArray();
+
+        final int[][] opParents;
+        progress.startTask(TransformationMetrics.REDUCTION + ": object properties", propIds.length);
+        try (TransformationMetrics.Phase phase = 
+            metrics.startPhase(TransformationMetrics.REDUCTION)) {
+          opParents = GraphUtils.transitiveReduction(dictionary.size(), propIds, node -> {
+            progress.increment();
+            return dictionary.getIds(reasoner.getSuperObjectProperties(
+                factory.getOWLObjectProperty(dictionary.getIri(node)), false).getFlattened()
+              .stream()
+              .filter(o -> !o.isAnonymous())
+              .map(OWLObjectPropertyExpression::asOWLObjectProperty)
+              .collect(Collectors.toSet()));
+          });
+          phase.addCount("objectProperties", propIds.length);
+        }
+        metrics.measure("object property hierarchy", opParents);
 
-        Map<OWLObjectProperty, Set<OWLObjectProperty>> opParents =
-          GraphUtils.transitiveReduction(objectProps, p -> reasoner.getSuperObjectProperties(p, false).getFlattened()
-            .stream()
-            .filter(o -> !o.isAnonymous())
-            .map(OWLObjectPropertyExpression::asOWLObjectProperty)
-            .collect(Collectors.toSet()));
-
-        for (OWLObjectProperty prop : objectProps) {
-          if (processEntity(prop, cs, ont, mainNamespaces, irisInMain, iriDisplayMap,
-            includeDeprecated, codeProp, preferredTermProp, synonymProps, hasImports,
-            stringToReplaceInCodes, replacementStringInCodes, labelsToExclude, opParents)) {
-            count++;
+        progress.startTask(TransformationMetrics.ENTITIES + ": object properties", propIds.length);
+        try (TransformationMetrics.Phase phase = 
+            metrics.startPhase(TransformationMetrics.ENTITIES)) {
+          EntityBatchEvent batch = new EntityBatchEvent("object property");
+          for (int i = 0; i < propIds.length; i++) {
+            final boolean added = processEntity(propList.get(i), propIds[i], cs, dictionary,
+                imported, deprecated, annotations, displays, includeDeprecated,
+                stringToReplaceInCodes, replacementStringInCodes, labelsToExclude, opParents);
+            if (added) {
+              count++;
+            }
+            progress.increment();
+            batch = batch.processed(added);
           }
+          batch.finish();
+          phase.addCount("objectProperties", propIds.length);
         }
       }
 
@@ -566,26 +972,49 @@ public class FhirOwlService {
       final Set<OWLDataProperty> dataProps = ont.getDataPropertiesInSignature(Imports.INCLUDED);
       if (!dataProps.isEmpty()) {
         dataProps.add(factory.getOWLTopDataProperty());
+        final List<OWLDataProperty> propList = new ArrayList<>(dataProps);
+        final int[] propIds = propList.stream().mapToInt(p -> dictionary.getId(p.getIRI())).toArray();
 
-        Map<OWLDataProperty, Set<OWLDataProperty>> dpParents =
-          GraphUtils.transitiveReduction(dataProps, p -> reasoner.getSuperDataProperties(p, false).getFlattened()
-            .stream()
-            .filter(o -> !o.isAnonymous())
-            .map(OWLDataPropertyExpression::asOWLDataProperty)
-            .collect(Collectors.toSet()));
-
-        for (OWLDataProperty prop : dataProps) {
-          if (processEntity(prop, cs, ont, mainNamespaces, irisInMain, iriDisplayMap,
-            includeDeprecated, codeProp, preferredTermProp, synonymProps, hasImports,
-            stringToReplaceInCodes, replacementStringInCodes, labelsToExclude, dpParents)) {
-            count++;
+        final int[][] dpParents;
+        progress.startTask(TransformationMetrics.REDUCTION + ": data properties", propIds.length);
+        try (TransformationMetrics.Phase phase = 
+            metrics.startPhase(TransformationMetrics.REDUCTION)) {
+          dpParents = GraphUtils.transitiveReduction(dictionary.size(), propIds, node -> {
+            progress.increment();
+            return dictionary.getIds(reasoner.getSuperDataProperties(
+                factory.getOWLDataProperty(dictionary.getIri(node)), false).getFlattened()
+              .stream()
+              .filter(o -> !o.isAnonymous())
+              .map(OWLDataPropertyExpression::asOWLDataProperty)
+              .collect(Collectors.toSet()));
+          });
+          phase.addCount("dataProperties", propIds.length);
+        }
+        metrics.measure("data property hierarchy", dpParents);
+
+        progress.startTask(TransformationMetrics.ENTITIES + ": data properties", propIds.length);
+        try (TransformationMetrics.Phase phase = 
+            metrics.startPhase(TransformationMetrics.ENTITIES)) {
+          EntityBatchEvent batch = new EntityBatchEvent("data property");
+          for (int i = 0; i < propIds.length; i++) {
+            final boolean added = processEntity(propList.get(i), propIds[i], cs, dictionary,
+                imported, deprecated, annotations, displays, includeDeprecated,
+                stringToReplaceInCodes, replacementStringInCodes, labelsToExclude, dpParents);
+            if (added) {
+              count++;
+            }
+            progress.increment();
+            batch = batch.processed(added);
           }
+          batch.finish();
+          phase.addCount("dataProperties", propIds.length);
         }
       }
     }
     
     // Count
     cs.setCount(count);
+    metrics.addCount("concepts", count);
 
     return cs;
   }
@@ -598,16 +1027,15 @@ public class FhirOwlService {
     }
   }
 
-  private <T extends OWLEntity> boolean addHierarchyFields(OWLEntity owlEntity,
-                                                           Set<T> parents,
-                                                           OWLOntology rootOntology,
-                                                           ConceptDefinitionComponent cdc,
-                                                           Set<String> mainNamespaces,
-                                                           Set<IRI> irisInMain,
-                                                           boolean includeDeprecated,
-                                                           String stringToReplaceInCodes,
-                                                           String replacementStringInCodes,
-                                                           boolean hasImports) {
+  private boolean addHierarchyFields(OWLEntity owlEntity,
+                                     int[] parents,
+                                     ConceptDefinitionComponent cdc,
+                                     IriDictionary dictionary,
+                                     BitSet importedIds,
+                                     BitSet deprecatedIds,
+                                     boolean includeDeprecated,
+                                     String stringToReplaceInCodes,
+                                     String replacementStringInCodes) {
     if (owlEntity.isTopEntity()) {
       return true;
     }
@@ -616,25 +1044,25 @@ public class FhirOwlService {
       throw new RuntimeException("Got null parents. This should not happen!");
     }
     
-    log.debug("Found " + parents.size() + " parents for concept " + owlEntity.getIRI());
-    for (OWLEntity parent : parents) {
-      if (parent.isBottomEntity()) {
+    log.debug("Found " + parents.length + " parents for concept " + owlEntity.getIRI());
+    for (int parent : parents) {
+      final IRI iri = dictionary.getIri(parent);
+      if (BOTTOM_ENTITIES.contains(iri)) {
         continue;
       }
       
       // If excluding deprecated class then also exclude from parents. In some ontologies
       // deprecated classes are still in the hierarchy, e.g. MONDO.
       if (!includeDeprecated) {
-        if (isDeprecated(parent, rootOntology)) {
+        if (deprecatedIds.get(parent)) {
           continue;
         }
       }
       
-      final IRI iri = parent.getIRI();
       final ConceptPropertyComponent parentProp = cdc.addProperty();
       parentProp.setCode("parent");
       
-      final boolean imported = isImported(iri, mainNamespaces, irisInMain, hasImports);
+      final boolean imported = importedIds.get(parent);
       if (!imported) {
         String code = iri.getShortForm();
         if (stringToReplaceInCodes != null && replacementStringInCodes != null) {
@@ -651,33 +1079,6 @@ public class FhirOwlService {
     return false;
   }
   
-  /**
-   * Determines if an OWL class is deprecated based on annotations.
-   * 
-   * @param owlEntity The OWL entity.
-   * @param ont The ontology it belongs to.
-   * @return boolean True if deprecated, false otherwise.
-   */
-  private boolean isDeprecated(OWLEntity owlEntity, OWLOntology ont) {
-    boolean isDeprecated = false;
-    for (OWLAnnotation ann : EntitySearcher.getAnnotationObjects(owlEntity, ont)) {
-      OWLAnnotationProperty prop = ann.getProperty();
-      if (prop.getIRI().getShortForm().equals("deprecated")) {
-        OWLAnnotationValue val = ann.getValue();
-        Optional<OWLLiteral> lit = val.asLiteral();
-        if (lit.isPresent()) {
-          final OWLLiteral l = lit.get();
-          if (l.isBoolean()) {
-            isDeprecated = l.parseBoolean();
-          } else {
-            log.warn("Found deprecated attribute but it is not boolean: " + l.toString());
-          }
-        }
-      }
-    }
-    return isDeprecated;
-  }
-  
   private String getOntologyAnnotationValue(OWLOntology ont, 
       Collection<OWLAnnotationProperty> props) {
     for (OWLAnnotation ann : ont.getAnnotations()) {
@@ -692,55 +1093,6 @@ public class FhirOwlService {
   }
   
   
-  private String getCode(OWLEntity owlEntity, OWLOntology ont, OWLAnnotationProperty prop) {
-    for (OWLAnnotation a : EntitySearcher.getAnnotations(owlEntity, ont, prop)) {
-      OWLAnnotationValue val = a.getValue();
-      if (val instanceof OWLLiteral) {
-        return ((OWLLiteral) val).getLiteral();
-      }
-    }
-    
-    return null;
-  }
-  
-  private String getPreferedTerm(OWLEntity owlEntity, OWLOntology ont,
-      OWLAnnotationProperty preferredTermAnnotationProperty, List<String> labelsToExclude) {
-    
-    SortedSet<String> candidates = new TreeSet<>();
-    for (OWLAnnotation a : EntitySearcher.getAnnotations(owlEntity, ont, preferredTermAnnotationProperty)) {
-      OWLAnnotationValue val = a.getValue();
-      if (val instanceof OWLLiteral) {
-        String label = ((OWLLiteral) val).getLiteral();
-        if (!labelsToExclude.contains(label)) {
-          candidates.add(label);
-        }
-      }
-    }
-    if (!candidates.isEmpty()) {
-      return candidates.first();
-    } else {
-      return null;
-    }
-  }
-  
-  private Set<String> getSynonyms(OWLEntity owlEntity, OWLOntology ont, String preferredTerm,
-      List<OWLAnnotationProperty> synonymAnnotationProperties, List<String> labelsToExclude) {
-    final Set<String> synonyms = new HashSet<>();
-    for (OWLAnnotationProperty prop : synonymAnnotationProperties) {
-      for (OWLAnnotation a : EntitySearcher.getAnnotations(owlEntity, ont, prop)) {
-        OWLAnnotationValue val = a.getValue();
-        if (val instanceof OWLLiteral) {
-          final String label = ((OWLLiteral) val).getLiteral();
-          if (!labelsToExclude.contains(label)) {
-            synonyms.add(label);
-          }
-        }
-      }
-    }
-    synonyms.remove(preferredTerm);
-    return synonyms;
-  }
-
   /**
    * Returns the name of an ontology.
    * 
@@ -781,61 +1133,158 @@ public class FhirOwlService {
     }
   }
   
-  private boolean isImported(IRI iri, Set<String> mainNamespaces, Set<IRI> irisInMain, 
-      boolean hasImports) {
-    if (mainNamespaces != null && ! mainNamespaces.isEmpty()) {
-      String s = iri.toString();
-      for (String ns : mainNamespaces) {
-        if (s.startsWith(ns)) {
-          return false;
+  /**
+   * Extracts the labels of the classes in the imports closure of an ontology. The annotations of
+   * each ontology are indexed in a separate task, and the labels are then merged in order of
+   * precedence, so the result does not depend on how the tasks are scheduled.
+   * 
+   * @param rootOnt The root ontology.
+   * @param annotations The index of the annotations of the root ontology, which is filled here.
+   * @param dictionary The dictionary with the ids of the entities.
+   * @param preferredTermProp The annotation property that contains the labels.
+   * @param threads The number of threads.
+   * @param phase The phase where the annotations are counted.
+   * @return The labels, indexed by id. The entries of the classes without a label are null.
+   */
+  private String[] extractLabels(OWLOntology rootOnt, AnnotationIndex annotations, 
+      IriDictionary dictionary, OWLAnnotationProperty preferredTermProp, int threads, 
+      TransformationMetrics.Phase phase) {
+    final List<OWLOntology> ontologies = getLabelPrecedence(rootOnt);
+    final ExecutorService executor = Executors.newFixedThreadPool(
+        Math.min(threads, ontologies.size()), LoaderUtils.daemonThreadFactory("label-extractor"));
+    try {
+      final List<Future<ClassLabels>> futures = new ArrayList<>();
+      for (OWLOntology ont : ontologies) {
+        // Imports can be small, so their labels are not indexed by the ids of the whole closure
+        futures.add(executor.submit(() -> ont == rootOnt 
+            ? new ClassLabels(ont, annotations, dictionary) 
+            : new ClassLabels(ont, preferredTermProp, dictionary)));
+      }
+      
+      // Merged from the lowest precedence to the highest, so the label of a class comes from the
+      // first ontology that labels it
+      final String[] displays = new String[dictionary.size()];
+      for (int i = futures.size() - 1; i >= 0; i--) {
+        final ClassLabels labels = getLabels(futures.get(i));
+        phase.addCount("annotations", labels.annotations);
+        for (int j = 0; j < labels.size; j++) {
+          displays[labels.ids[j]] = labels.labels[j];
         }
       }
-      return true;
-    } else {
-      if (!hasImports) {
-        return false;
-      } else {
-        return !irisInMain.contains(iri);
+      return displays;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+  
+  /**
+   * Returns the ontologies in the imports closure of an ontology in order of precedence for
+   * labels: the ontology itself and then its imports, breadth first, so an ontology takes 
+   * precedence over the ontologies it imports. The direct imports of an ontology are sorted by 
+   * IRI, so the order does not depend on the order of the import declarations.
+   * 
+   * @param rootOnt The root ontology.
+   * @return The ontologies in the imports closure.
+   */
+  private List<OWLOntology> getLabelPrecedence(OWLOntology rootOnt) {
+    final List<OWLOntology> res = new ArrayList<>();
+    final Set<OWLOntology> visited = new HashSet<>();
+    res.add(rootOnt);
+    visited.add(rootOnt);
+    for (int i = 0; i < res.size(); i++) {
+      final List<OWLOntology> imports = new ArrayList<>(res.get(i).getDirectImports());
+      imports.sort(Comparator.comparing(this::getPrecedenceKey));
+      for (OWLOntology imported : imports) {
+        if (visited.add(imported)) {
+          res.add(imported);
+        }
       }
     }
+    return res;
   }
   
-  private <T extends OWLEntity> boolean processEntity(
+  private String getPrecedenceKey(OWLOntology ont) {
+    final IRI iri = getOntologyIri(ont);
+    if (iri != null) {
+      return iri.toString();
+    }
+    final IRI documentIri = ont.getOWLOntologyManager().getOntologyDocumentIRI(ont);
+    return documentIri != null ? documentIri.toString() : ont.getOntologyID().toString();
+  }
+  
+  private ClassLabels getLabels(Future<ClassLabels> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while extracting labels.", e);
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+  
+  /**
+   * Determines which entities are imported, i.e. do not belong in the main ontology.
+   * 
+   * @param dictionary The dictionary with the ids of the entities.
+   * @param mainNamespaces The namespaces of concepts that belong in the main ontology. Might be 
+   *     empty.
+   * @param irisInMain The ids of the IRIs in the main ontology. Only used if mainNamespaces is
+   *     empty.
+   * @param hasImports True if the ontology has imports.
+   * @return The ids of the imported entities.
+   */
+  private BitSet calculateImported(IriDictionary dictionary, Set<String> mainNamespaces,
+      BitSet irisInMain, boolean hasImports) {
+    final BitSet imported = new BitSet(dictionary.size());
+    if (mainNamespaces != null && ! mainNamespaces.isEmpty()) {
+      for (int id = 0; id < dictionary.size(); id++) {
+        final String s = dictionary.getIri(id).toString();
+        if (mainNamespaces.stream().noneMatch(s::startsWith)) {
+          imported.set(id);
+        }
+      }
+    } else if (hasImports) {
+      imported.set(0, dictionary.size());
+      imported.andNot(irisInMain);
+    }
+    return imported;
+  }
+  
+  private boolean processEntity(
     OWLEntity owlEntity,
+    int id,
     CodeSystem cs,
-    OWLOntology ont,
-    Set<String> mainNamespaces,
-    Set<IRI> irisInMain,
-    Map<IRI, String> iriDisplayMap,
+    IriDictionary dictionary,
+    BitSet importedIds,
+    BitSet deprecatedIds,
+    AnnotationIndex annotations,
+    String[] displays,
     boolean includeDeprecated,
-    OWLAnnotationProperty codeProp,
-    OWLAnnotationProperty preferredTermProp,
-    List<OWLAnnotationProperty> synonymProps,
-    boolean hasImports,
     String stringToReplaceInCodes,
     String replacementStringInCodes,
     List<String> labelsToExclude,
-    Map<T, Set<T>> parents) {
+    int[][] parents) {
 
     if (owlEntity.isBottomEntity()) {
       return false;
     }
     
-    final boolean isDeprecated = isDeprecated(owlEntity, ont);
+    final IRI iri = owlEntity.getIRI();
+    final boolean isDeprecated = deprecatedIds.get(id);
     if (!includeDeprecated && isDeprecated) {
       return false; // Skip this concept because it is deprecated
     }
     
-    final IRI iri = owlEntity.getIRI();
-    
     // Determine if concept is imported or not
-    boolean imported = isImported(iri, mainNamespaces, irisInMain, hasImports);
+    boolean imported = importedIds.get(id);
     
     // The code might come from an annotation property
-    String code = null;
-    if (codeProp != null) {
-      code = getCode(owlEntity, ont, codeProp);
-    } 
+    String code = annotations.getCode(id);
     if (code == null) {
       code = imported ? iri.toString() : iri.getShortForm();
     }
@@ -847,6 +1296,11 @@ public class FhirOwlService {
     
     final ConceptDefinitionComponent cdc = new ConceptDefinitionComponent();
     cdc.setCode(code);
+    
+    final String definition = annotations.getDefinition(id);
+    if (definition != null) {
+      cdc.setDefinition(definition);
+    }
 
     // Special cases: OWL:Thing, top object property and top data property
     if ("http://www.w3.org/2002/07/owl#Thing".equals(cdc.getCode())) {
@@ -864,8 +1318,8 @@ public class FhirOwlService {
     importedProp.setValue(new BooleanType(imported));
 
 
-    boolean isRoot = addHierarchyFields(owlEntity, parents.get(owlEntity), ont, cdc, mainNamespaces, irisInMain,
-        includeDeprecated, stringToReplaceInCodes, replacementStringInCodes, hasImports);
+    boolean isRoot = addHierarchyFields(owlEntity, parents[id], cdc, dictionary, importedIds,
+        deprecatedIds, includeDeprecated, stringToReplaceInCodes, replacementStringInCodes);
 
     ConceptPropertyComponent prop = cdc.addProperty();
     prop.setCode("root");
@@ -875,12 +1329,11 @@ public class FhirOwlService {
     prop.setCode("deprecated");
     prop.setValue(new BooleanType(isDeprecated));
     
-    String preferredTerm = getPreferedTerm(owlEntity, ont, preferredTermProp, labelsToExclude);
-    final Set<String> synonyms = getSynonyms(owlEntity, ont, preferredTerm, synonymProps,
-        labelsToExclude);
+    String preferredTerm = annotations.getPreferredTerm(id, labelsToExclude);
+    final Set<String> synonyms = annotations.getSynonyms(id, preferredTerm, labelsToExclude);
     
     if (preferredTerm == null && synonyms.isEmpty()) {
-      String label = iriDisplayMap.get(iri);
+      String label = displays[id];
       if (label != null) {
         cdc.setDisplay(label);
       } else if(!cdc.hasDisplay()) {
@@ -915,4 +1368,73 @@ public class FhirOwlService {
   public void setCtx(FhirContext ctx) {
     this.ctx = ctx;
   }
+  
+  /**
+   * The labels of the classes in the signature of an ontology. Only the classes that have a label
+   * are included.
+   */
+  private static class ClassLabels {
+    
+    private final int[] ids;
+    
+    private final String[] labels;
+    
+    private final int size;
+    
+    private final int annotations;
+    
+    /**
+     * Fills the index of the annotations of an ontology and reads the labels of its classes from
+     * it.
+     */
+    private ClassLabels(OWLOntology ont, AnnotationIndex index, IriDictionary dictionary) {
+      annotations = index.addAll(ont);
+      final Set<OWLClass> classes = ont.getClassesInSignature();
+      ids = new int[classes.size()];
+      labels = new String[classes.size()];
+      int count = 0;
+      for (OWLClass oc : classes) {
+        final int id = dictionary.getId(oc.getIRI());
+        final String pt = index.getPreferredTerm(id, Collections.emptyList());
+        if (pt != null) {
+          ids[count] = id;
+          labels[count] = pt;
+          count++;
+        }
+      }
+      size = count;
+    }
+    
+    /**
+     * Reads the labels of the classes of an ontology straight from its annotations, so the memory
+     * used only depends on the number of classes in the ontology. The label of a class is the 
+     * first value of the display property in alphabetical order, as in {@link AnnotationIndex}.
+     */
+    private ClassLabels(OWLOntology ont, OWLAnnotationProperty displayProp, 
+        IriDictionary dictionary) {
+      annotations = ont.getAxiomCount(AxiomType.ANNOTATION_ASSERTION);
+      final Set<OWLClass> classes = ont.getClassesInSignature();
+      ids = new int[classes.size()];
+      labels = new String[classes.size()];
+      int count = 0;
+      for (OWLClass oc : classes) {
+        String pt = null;
+        for (OWLAnnotationAssertionAxiom ax : ont.getAnnotationAssertionAxioms(oc.getIRI())) {
+          if (ax.getProperty().equals(displayProp) && ax.getValue() instanceof OWLLiteral) {
+            final String label = ((OWLLiteral) ax.getValue()).getLiteral();
+            if (pt == null || label.compareTo(pt) < 0) {
+              pt = label;
+            }
+          }
+        }
+        if (pt != null) {
+          ids[count] = dictionary.getId(oc.getIRI());
+          labels[count] = pt;
+          count++;
+        }
+      }
+      size = count;
+    }
+  }
+
 }
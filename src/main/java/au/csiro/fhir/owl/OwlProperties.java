@@ -35,22 +35,22 @@ public abstract class OwlProperties {
   protected static final String DC_PUBLISHER = "http://purl.org/dc/elements/1.1/publisher";
   
   protected List<OWLAnnotationProperty> loadProps(OWLDataFactory factory, List<String> args, 
-      List<String> defaults, OWLAnnotationProperty lastResort) {
+      List<String> defaults, OWLAnnotationProperty lastResort, String what) {
     final List<OWLAnnotationProperty> res = new ArrayList<>();
     if (args != null && !args.isEmpty()) {
       for (String prop : args) {
         res.add(factory.getOWLAnnotationProperty(IRI.create(prop)));
-        log.info("Loading synonyms from OWL annotation property " + prop);
+        log.info("Loading " + what + " from OWL annotation property " + prop);
       }      
     } else if (defaults != null && !defaults.isEmpty()) {
       for (String prop : defaults) {
         res.add(factory.getOWLAnnotationProperty(IRI.create(prop)));
-        log.info("Loading synonyms from OWL annotation property " + prop);
+        log.info("Loading " + what + " from OWL annotation property " + prop);
       }  
     } else {
       if (lastResort != null) {
         res.add(lastResort);
-        log.info("Loading synonyms from " + lastResort.toStringID());
+        log.info("Loading " + what + " from " + lastResort.toStringID());
       }
     }
     return res;
@@ -0,0 +1,434 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.loader;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.semanticweb.owlapi.model.IRI;
+
+/**
+ * A persistent index from ontology IRIs to local files, built from an XML catalog (in the format
+ * used by Protégé, <code>catalog-v001.xml</code>) or from a directory of mirrored ontologies.
+ *
+ * <p>Each file is indexed by the names it has in the catalog and by the ontology and version IRIs
+ * found in its header (see {@link DocumentHeader}). The index is stored next to the catalog, or
+ * inside the directory, and is only rebuilt when the catalog changes. For directories, only the
+ * subdirectories whose modification time has changed are listed again, so opening an index does
+ * not require reading every file. Files that change in place are detected when they are resolved.
+ */
+class CatalogIndex implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final Log log = LogFactory.getLog(CatalogIndex.class);
+
+  private static final String MAGIC = "FHIR-OWL-CATALOG-INDEX";
+
+  private static final int FORMAT_VERSION = 1;
+
+  /**
+   * The name of the index file stored in indexed directories.
+   */
+  static final String DIRECTORY_INDEX_NAME = ".fhir-owl-index";
+
+  private static final Set<String> EXTENSIONS = new HashSet<>(Arrays.asList(
+      "owl", "ofn", "omn", "owx", "ttl", "rdf", "obo", "nt", "nq", "xml"));
+
+  private final File source;
+
+  private final File indexFile;
+
+  private final boolean directory;
+
+  /**
+   * The modification time of the indexed directories, or of the catalog file.
+   */
+  private final Map<File, Long> sources = new HashMap<>();
+
+  /**
+   * The indexed files, sorted by path so that conflicts are resolved deterministically.
+   */
+  private final TreeMap<File, FileEntry> files = new TreeMap<>();
+
+  private final Map<IRI, File> iris = new HashMap<>();
+
+  private CatalogIndex(File source) {
+    this.source = source.getAbsoluteFile();
+    this.directory = this.source.isDirectory();
+    this.indexFile = directory ? new File(this.source, DIRECTORY_INDEX_NAME)
+        : new File(this.source.getPath() + ".index");
+  }
+
+  /**
+   * Opens the index of a catalog or directory, creating or refreshing it if needed.
+   *
+   * @param source An XML catalog or a directory.
+   * @return The index.
+   * @throws IOException If the catalog or directory cannot be read.
+   */
+  static CatalogIndex open(File source) throws IOException {
+    if (!source.exists()) {
+      throw new IOException("Catalog " + source.getAbsolutePath() + " does not exist.");
+    }
+    final long start = System.currentTimeMillis();
+    final CatalogIndex res = new CatalogIndex(source);
+    boolean dirty = !res.readIndex();
+    if (res.directory) {
+      dirty |= res.refreshDirectories();
+    } else if (dirty || !Long.valueOf(res.source.lastModified()).equals(
+        res.sources.get(res.source))) {
+      res.files.clear();
+      res.sources.clear();
+      res.readCatalog();
+      dirty = true;
+    }
+    res.rebuildIris();
+    if (dirty) {
+      res.writeIndex();
+    }
+    log.info("Opened catalog " + res.source + " with " + res.iris.size() + " IRIs in "
+        + res.files.size() + " files in " + (System.currentTimeMillis() - start) + "ms"
+        + (dirty ? ", index was updated" : ""));
+    return res;
+  }
+
+  /**
+   * Resolves an ontology IRI to a file. If the file has changed since it was indexed then its
+   * header is scanned again.
+   *
+   * @param iri The ontology IRI.
+   * @return The file or null if the IRI is not in the index.
+   */
+  synchronized File resolve(IRI iri) {
+    final File file = iris.get(iri);
+    if (file == null) {
+      return null;
+    }
+    final FileEntry entry = files.get(file);
+    if (entry.isCurrent(file)) {
+      return file;
+    }
+
+    // The file changed or was deleted since it was indexed
+    if (!file.isFile()) {
+      files.remove(file);
+    } else {
+      files.put(file, scanFile(file, entry.names));
+    }
+    rebuildIris();
+    writeIndex();
+    return file.equals(iris.get(iri)) ? file : null;
+  }
+
+  /**
+   * Returns the number of IRIs in the index.
+   *
+   * @return The number of IRIs.
+   */
+  synchronized int size() {
+    return iris.size();
+  }
+
+  private void rebuildIris() {
+    iris.clear();
+    // Explicit names take precedence over IRIs found in headers
+    for (Map.Entry<File, FileEntry> e : files.entrySet()) {
+      for (IRI iri : e.getValue().names) {
+        iris.putIfAbsent(iri, e.getKey());
+      }
+    }
+    for (Map.Entry<File, FileEntry> e : files.entrySet()) {
+      for (IRI iri : e.getValue().headerIris) {
+        iris.putIfAbsent(iri, e.getKey());
+      }
+    }
+  }
+
+  /**
+   * Lists the directories that have changed since the index was written.
+   *
+   * @return True if the index changed.
+   */
+  private boolean refreshDirectories() {
+    if (sources.isEmpty()) {
+      indexDirectory(source);
+      return true;
+    }
+    boolean changed = false;
+    for (File dir : new ArrayList<>(sources.keySet())) {
+      if (!dir.isDirectory()) {
+        removeDirectory(dir);
+        changed = true;
+      } else if (dir.lastModified() != sources.get(dir)) {
+        indexDirectory(dir);
+        changed = true;
+      }
+    }
+    return changed;
+  }
+
+  private void removeDirectory(File dir) {
+    sources.remove(dir);
+    files.keySet().removeIf(f -> dir.equals(f.getParentFile()));
+  }
+
+  /**
+   * Indexes the files in a directory that are new or have changed. New subdirectories are indexed
+   * recursively.
+   */
+  private void indexDirectory(File dir) {
+    final File[] children = dir.listFiles();
+    if (children == null) {
+      return;
+    }
+    sources.put(dir, dir.lastModified());
+    final Set<File> present = new HashSet<>();
+    for (File child : children) {
+      if (child.getName().startsWith(".")) {
+        continue;
+      }
+      if (child.isDirectory()) {
+        if (!sources.containsKey(child)) {
+          indexDirectory(child);
+        }
+      } else if (isOntologyFile(child)) {
+        present.add(child);
+        final FileEntry entry = files.get(child);
+        if (entry == null || !entry.isCurrent(child)) {
+          files.put(child, scanFile(child, new ArrayList<>()));
+        }
+      }
+    }
+    files.keySet().removeIf(f -> dir.equals(f.getParentFile()) && !present.contains(f));
+  }
+
+  private static boolean isOntologyFile(File file) {
+    final String name = file.getName().toLowerCase(Locale.ROOT);
+    final int dot = name.lastIndexOf('.');
+    return dot > 0 && EXTENSIONS.contains(name.substring(dot + 1))
+        && !name.endsWith("catalog-v001.xml");
+  }
+
+  private FileEntry scanFile(File file, List<IRI> names) {
+    final List<IRI> headerIris = new ArrayList<>();
+    try {
+      final DocumentHeader header = DocumentHeader.scan(file);
+      if (header.getOntologyIri() != null) {
+        headerIris.add(header.getOntologyIri());
+      }
+      if (header.getVersionIri() != null) {
+        headerIris.add(header.getVersionIri());
+      }
+    } catch (IOException e) {
+      log.warn("Unable to scan " + file + ": " + e.getLocalizedMessage());
+    }
+    // Files can always be referenced by their location
+    headerIris.add(IRI.create(file));
+    return new FileEntry(file.lastModified(), file.length(), names, headerIris);
+  }
+
+  /**
+   * Reads the <code>uri</code> entries of an XML catalog. Entries that do not point to local files
+   * are ignored.
+   */
+  private void readCatalog() throws IOException {
+    sources.put(source, source.lastModified());
+    final Map<File, List<IRI>> names = new TreeMap<>();
+    try (InputStream is = new FileInputStream(source)) {
+      final XMLInputFactory factory = XMLInputFactory.newInstance();
+      factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+      final XMLStreamReader reader = factory.createXMLStreamReader(is);
+      final Deque<URI> bases = new ArrayDeque<>();
+      bases.push(source.getParentFile().toURI());
+      while (reader.hasNext()) {
+        final int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          final String base = reader.getAttributeValue("http://www.w3.org/XML/1998/namespace",
+              "base");
+          bases.push(base != null ? bases.peek().resolve(base) : bases.peek());
+          if ("uri".equals(reader.getLocalName())) {
+            final String name = reader.getAttributeValue(null, "name");
+            final String uri = reader.getAttributeValue(null, "uri");
+            if (name != null && uri != null) {
+              final File file = toFile(bases.peek(), uri);
+              if (file != null) {
+                names.computeIfAbsent(file, k -> new ArrayList<>()).add(IRI.create(name));
+              }
+            }
+          }
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+          bases.pop();
+        }
+      }
+      reader.close();
+    } catch (XMLStreamException | IllegalArgumentException e) {
+      throw new IOException("Unable to read catalog " + source + ": " + e.getLocalizedMessage(),
+          e);
+    }
+    for (Map.Entry<File, List<IRI>> e : names.entrySet()) {
+      if (e.getKey().isFile()) {
+        files.put(e.getKey(), scanFile(e.getKey(), e.getValue()));
+      } else {
+        log.warn("File " + e.getKey() + " in catalog " + source + " does not exist.");
+      }
+    }
+  }
+
+  private static File toFile(URI base, String uri) {
+    try {
+      final URI resolved = base.resolve(new URI(uri));
+      if (!"file".equalsIgnoreCase(resolved.getScheme())) {
+        return null;
+      }
+      return new File(resolved).getAbsoluteFile();
+    } catch (URISyntaxException | IllegalArgumentException e) {
+      log.warn("Ignoring invalid catalog entry " + uri);
+      return null;
+    }
+  }
+
+  /**
+   * Reads the index file, if it exists.
+   *
+   * @return True if the index was read.
+   */
+  private boolean readIndex() {
+    if (!indexFile.isFile()) {
+      return false;
+    }
+    try (BufferedReader br = Files.newBufferedReader(indexFile.toPath(),
+        StandardCharsets.UTF_8)) {
+      if (!(MAGIC + " " + FORMAT_VERSION).equals(br.readLine())) {
+        log.info("Ignoring index " + indexFile + " because it has a different format");
+        return false;
+      }
+      String line;
+      FileEntry current = null;
+      boolean complete = false;
+      while ((line = br.readLine()) != null && !complete) {
+        final String[] parts = line.split(" ", line.startsWith("F ") ? 4 : 3);
+        switch (parts[0]) {
+          case "D":
+            sources.put(new File(parts[2]), Long.parseLong(parts[1]));
+            break;
+          case "F":
+            current = new FileEntry(Long.parseLong(parts[1]), Long.parseLong(parts[2]),
+                new ArrayList<>(), new ArrayList<>());
+            files.put(new File(parts[3]), current);
+            break;
+          case "N":
+            current.names.add(IRI.create(parts[1]));
+            break;
+          case "I":
+            current.headerIris.add(IRI.create(parts[1]));
+            break;
+          case "E":
+            complete = true;
+            break;
+          default:
+            throw new IOException("Invalid line " + line);
+        }
+      }
+      if (!complete) {
+        throw new IOException("the index is truncated");
+      }
+      return true;
+    } catch (IOException | RuntimeException e) {
+      log.warn("Ignoring invalid index " + indexFile + ": " + e.getLocalizedMessage());
+      sources.clear();
+      files.clear();
+      return false;
+    }
+  }
+
+  /**
+   * Writes the index file. The file is overwritten rather than replaced because creating a file in
+   * an indexed directory changes its modification time. A truncated file is detected when it is
+   * read because it has no end marker.
+   */
+  private void writeIndex() {
+    try {
+      try (BufferedWriter bw = Files.newBufferedWriter(indexFile.toPath(),
+          StandardCharsets.UTF_8)) {
+        bw.write(MAGIC + " " + FORMAT_VERSION);
+        bw.newLine();
+        for (Map.Entry<File, Long> e : sources.entrySet()) {
+          bw.write("D " + e.getValue() + " " + e.getKey().getPath());
+          bw.newLine();
+        }
+        for (Map.Entry<File, FileEntry> e : files.entrySet()) {
+          final FileEntry entry = e.getValue();
+          bw.write("F " + entry.lastModified + " " + entry.length + " " + e.getKey().getPath());
+          bw.newLine();
+          for (IRI iri : entry.names) {
+            bw.write("N " + iri);
+            bw.newLine();
+          }
+          for (IRI iri : entry.headerIris) {
+            bw.write("I " + iri);
+            bw.newLine();
+          }
+        }
+        bw.write("E");
+        bw.newLine();
+      }
+    } catch (IOException e) {
+      log.warn("Unable to write catalog index " + indexFile + ", it will be rebuilt next time: "
+          + e.getLocalizedMessage());
+    }
+  }
+
+  /**
+   * An indexed file.
+   */
+  private static class FileEntry implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long lastModified;
+    private final long length;
+    private final List<IRI> names;
+    private final List<IRI> headerIris;
+
+    private FileEntry(long lastModified, long length, List<IRI> names, List<IRI> headerIris) {
+      this.lastModified = lastModified;
+      this.length = length;
+      this.names = names;
+      this.headerIris = headerIris;
+    }
+
+    private boolean isCurrent(File file) {
+      return file.lastModified() == lastModified && file.length() == length;
+    }
+  }
+
+}
@@ -0,0 +1,308 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.loader;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLImportsDeclaration;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyIRIMapper;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+/**
+ * Loads ontologies from compressed files and zip archives without decompressing them to disk.
+ *
+ * <ul>
+ *   <li>Files ending in <code>.gz</code> or <code>.zst</code> are decompressed as a stream straight
+ *   into the parser.</li>
+ *   <li>Zip archives (<code>.zip</code>) are expected to contain the root ontology and (some of) its
+ *   imports. The imports found in the archive are loaded from it, taking precedence over any other
+ *   IRI mapping. The root ontology is the one that is not imported by any other document in the
+ *   archive. If there are several, one can be selected using the
+ *   <code>archive.zip!/path/to/root.owl</code> syntax.</li>
+ * </ul>
+ *
+ * <p>The format hint, if any, applies to the input, i.e. the compressed file or the root ontology
+ * of the archive. The format of the other documents is detected from their first few lines, so
+ * only one parser is tried. Any other file is loaded with the delegate loader.
+ */
+public class CompressedInputLoader implements OntologyLoader {
+
+  private static final Log log = LogFactory.getLog(CompressedInputLoader.class);
+
+  private static final String ENTRY_SEPARATOR = "!/";
+
+  private final OntologyLoader delegate;
+
+  private final InputFormat hint;
+
+  /**
+   * Creates a new loader that detects the format of the documents.
+   *
+   * @param delegate The loader used for files that are not compressed.
+   */
+  public CompressedInputLoader(OntologyLoader delegate) {
+    this(delegate, null);
+  }
+
+  /**
+   * Creates a new loader.
+   *
+   * @param delegate The loader used for files that are not compressed.
+   * @param hint The format of the input or null to detect it.
+   */
+  public CompressedInputLoader(OntologyLoader delegate, InputFormat hint) {
+    this.delegate = delegate;
+    this.hint = hint;
+  }
+
+  private static boolean isCompressedName(String name) {
+    final String lower = name.toLowerCase(Locale.ROOT);
+    return lower.endsWith(".gz") || lower.endsWith(".zst");
+  }
+
+  /**
+   * Returns true if an input is loaded by this loader rather than by the delegate, i.e. if it is a
+   * compressed file, a zip archive or an entry of one.
+   *
+   * @param input The input.
+   * @return True if the input is compressed or archived.
+   */
+  public static boolean isCompressed(File input) {
+    final String path = input.getPath();
+    return path.contains(ENTRY_SEPARATOR) || path.toLowerCase(Locale.ROOT).endsWith(".zip")
+        || isCompressedName(path);
+  }
+
+  /**
+   * Returns the file that holds an input, i.e. the archive for an
+   * <code>archive.zip!/path/to/root.owl</code> input and the input itself otherwise.
+   *
+   * @param input The input.
+   * @return The file on disk.
+   */
+  public static File getFile(File input) {
+    final String path = input.getPath();
+    final int sep = path.indexOf(ENTRY_SEPARATOR);
+    return sep >= 0 ? new File(path.substring(0, sep)) : input;
+  }
+
+  @Override
+  public OWLOntology load(OWLOntologyManager manager, File input)
+      throws OWLOntologyCreationException {
+    final String path = input.getPath();
+    final int sep = path.indexOf(ENTRY_SEPARATOR);
+    if (sep >= 0) {
+      return loadArchive(manager, new File(path.substring(0, sep)),
+          path.substring(sep + ENTRY_SEPARATOR.length()));
+    } else if (path.toLowerCase(Locale.ROOT).endsWith(".zip")) {
+      return loadArchive(manager, input, null);
+    } else if (isCompressedName(path)) {
+      return loadCompressed(manager, input);
+    } else {
+      return delegate.load(manager, input);
+    }
+  }
+
+  private OWLOntology loadCompressed(OWLOntologyManager manager, File input)
+      throws OWLOntologyCreationException {
+    final long start = System.currentTimeMillis();
+    try {
+      final OWLOntology ont = InputFormat.loadOntology(manager,
+          () -> new BufferedInputStream(decompress(input.getName(),
+              new BufferedInputStream(new FileInputStream(input), 1 << 16)), 1 << 16),
+          IRI.create(input.getAbsoluteFile()), hint, manager.getOntologyLoaderConfiguration());
+      log.info("Loaded " + input.getAbsolutePath() + " in "
+          + (System.currentTimeMillis() - start) + "ms");
+      return ont;
+    } catch (IOException e) {
+      throw new OWLOntologyCreationException("Unable to read " + input.getAbsolutePath(), e);
+    }
+  }
+
+  /**
+   * Wraps a stream in a decompressing stream, based on the name of the document.
+   *
+   * @param name The name of the document.
+   * @param is The stream.
+   * @return The decompressed stream, or the original stream if the document is not compressed.
+   * @throws IOException If the stream is not compressed in the expected format.
+   */
+  static InputStream decompress(String name, InputStream is) throws IOException {
+    final String lower = name.toLowerCase(Locale.ROOT);
+    if (lower.endsWith(".gz")) {
+      return new GZIPInputStream(is, 1 << 16);
+    } else if (lower.endsWith(".zst")) {
+      return new ZstdInputStream(is);
+    } else {
+      return is;
+    }
+  }
+
+  private OWLOntology loadArchive(OWLOntologyManager manager, File archive, String rootEntry)
+      throws OWLOntologyCreationException {
+    final long start = System.currentTimeMillis();
+    try (ZipFile zip = new ZipFile(archive)) {
+      final Map<String, DocumentHeader> headers = scanEntries(zip);
+      if (headers.isEmpty()) {
+        throw new OWLOntologyCreationException("Archive " + archive.getAbsolutePath()
+            + " does not contain any ontologies.");
+      }
+
+      // Index the ontologies in the archive by ontology and version IRI
+      final Map<IRI, String> entriesByIri = new HashMap<>();
+      for (Map.Entry<String, DocumentHeader> e : headers.entrySet()) {
+        final DocumentHeader header = e.getValue();
+        if (header.getOntologyIri() != null) {
+          entriesByIri.putIfAbsent(header.getOntologyIri(), e.getKey());
+        }
+        if (header.getVersionIri() != null) {
+          entriesByIri.putIfAbsent(header.getVersionIri(), e.getKey());
+        }
+      }
+
+      final String root = rootEntry != null ? rootEntry : findRoot(archive, headers, entriesByIri);
+      if (!headers.containsKey(root)) {
+        throw new OWLOntologyCreationException("Archive " + archive.getAbsolutePath()
+            + " does not contain entry " + root);
+      }
+      log.info("Loading root ontology " + root + " from archive " + archive.getAbsolutePath());
+
+      // Imports that form a cycle cannot be loaded in order, so the archive is also registered as
+      // an IRI mapper, ahead of any other mappings
+      final OWLOntologyIRIMapper mapper = iri -> {
+        final String entry = entriesByIri.get(iri);
+        return entry != null ? entryIri(archive, entry) : null;
+      };
+      final List<OWLOntologyIRIMapper> mappers = new ArrayList<>();
+      manager.getIRIMappers().forEach(mappers::add);
+      manager.getIRIMappers().clear();
+      manager.getIRIMappers().add(mapper);
+      for (OWLOntologyIRIMapper m : mappers) {
+        manager.getIRIMappers().add(m);
+      }
+
+      // The imports in the archive are loaded first, so the OWL API finds them already loaded
+      final List<String> order = new ArrayList<>();
+      sortImports(root, headers, entriesByIri, new HashSet<>(), order);
+      OWLOntology res = null;
+      for (String entry : order) {
+        final DocumentHeader header = headers.get(entry);
+        if (!entry.equals(root) && isLoaded(manager, header)) {
+          continue;
+        }
+        res = InputFormat.loadOntology(manager, () -> new BufferedInputStream(
+            decompress(entry, zip.getInputStream(zip.getEntry(entry))), 1 << 16),
+            entryIri(archive, entry), entry.equals(root) ? hint : null,
+            manager.getOntologyLoaderConfiguration());
+      }
+      log.info("Loaded " + order.size() + " documents from archive " + archive.getAbsolutePath()
+          + " in " + (System.currentTimeMillis() - start) + "ms");
+      return res;
+    } catch (IOException e) {
+      throw new OWLOntologyCreationException("Unable to read archive "
+          + archive.getAbsolutePath(), e);
+    }
+  }
+
+  private Map<String, DocumentHeader> scanEntries(ZipFile zip) throws IOException {
+    final Map<String, DocumentHeader> res = new LinkedHashMap<>();
+    final Enumeration<? extends ZipEntry> entries = zip.entries();
+    while (entries.hasMoreElements()) {
+      final ZipEntry entry = entries.nextElement();
+      final String name = entry.getName();
+      if (entry.isDirectory() || name.startsWith("__MACOSX/") || name.endsWith("catalog-v001.xml")
+          || name.toLowerCase(Locale.ROOT).endsWith(".zip")) {
+        continue;
+      }
+      try (InputStream is = decompress(name, zip.getInputStream(entry))) {
+        res.put(name, DocumentHeader.scan(is));
+      }
+    }
+    return res;
+  }
+
+  /**
+   * Finds the entry that is not imported by any other entry of the archive.
+   */
+  private String findRoot(File archive, Map<String, DocumentHeader> headers,
+      Map<IRI, String> entriesByIri) throws OWLOntologyCreationException {
+    final Set<String> imported = new HashSet<>();
+    for (DocumentHeader header : headers.values()) {
+      for (IRI imp : header.getImports()) {
+        final String entry = entriesByIri.get(imp);
+        if (entry != null) {
+          imported.add(entry);
+        }
+      }
+    }
+    final List<String> candidates = new ArrayList<>();
+    for (String entry : headers.keySet()) {
+      if (!imported.contains(entry)) {
+        candidates.add(entry);
+      }
+    }
+    if (candidates.size() != 1) {
+      throw new OWLOntologyCreationException("Unable to determine the root ontology of archive "
+          + archive.getAbsolutePath() + ", candidates are " + (candidates.isEmpty()
+          ? headers.keySet() : candidates) + ". Select one using " + archive.getPath()
+          + ENTRY_SEPARATOR + "<entry>.");
+    }
+    return candidates.get(0);
+  }
+
+  /**
+   * Adds the entries of the imports closure of an entry that are in the archive, imports first.
+   */
+  private void sortImports(String entry, Map<String, DocumentHeader> headers,
+      Map<IRI, String> entriesByIri, Set<String> visited, List<String> order) {
+    if (!visited.add(entry)) {
+      return;
+    }
+    for (IRI imp : headers.get(entry).getImports()) {
+      final String importEntry = entriesByIri.get(imp);
+      if (importEntry != null) {
+        sortImports(importEntry, headers, entriesByIri, visited, order);
+      }
+    }
+    order.add(entry);
+  }
+
+  private boolean isLoaded(OWLOntologyManager manager, DocumentHeader header) {
+    if (header.getOntologyIri() == null) {
+      return false;
+    }
+    final OWLImportsDeclaration decl = manager.getOWLDataFactory()
+        .getOWLImportsDeclaration(header.getOntologyIri());
+    return manager.getImportedOntology(decl) != null;
+  }
+
+  private static IRI entryIri(File archive, String entry) {
+    return IRI.create("jar:" + archive.getAbsoluteFile().toURI() + ENTRY_SEPARATOR + entry);
+  }
+
+}
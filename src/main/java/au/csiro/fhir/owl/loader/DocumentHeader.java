@@ -0,0 +1,237 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.loader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.semanticweb.owlapi.model.IRI;
+
+/**
+ * The header of an ontology document, i.e., its ontology IRI, version IRI and imports. The header
+ * is found by scanning the beginning of the document with a few regular expressions that cover
+ * the common OWL syntaxes, which is much cheaper than parsing it. The result is a best effort:
+ * callers must cope with headers that are incomplete.
+ */
+public class DocumentHeader {
+
+  /**
+   * The maximum number of characters that are scanned.
+   */
+  private static final int MAX_CHARS = 1 << 20;
+
+  private static final int BUFFER_SIZE = 8192;
+
+  /**
+   * Markers that indicate the header of the ontology is over.
+   */
+  private static final String[] END_MARKERS = new String[] {
+    "</owl:Ontology>", "owl:Class", "Declaration(", "<Declaration", "Class:", "[Term]"
+  };
+
+  private static final Pattern XML_BASE = Pattern.compile("xml:base\\s*=\\s*\"([^\"]+)\"");
+
+  private static final Pattern[] ONTOLOGY_IRI_PATTERNS = new Pattern[] {
+    // RDF/XML
+    Pattern.compile("<(?:\\w+:)?Ontology\\s+(?:\\w+:)?about\\s*=\\s*\"([^\"]*)\""),
+    // OWL/XML
+    Pattern.compile("<(?:\\w+:)?Ontology\\b[^>]*\\sontologyIRI\\s*=\\s*\"([^\"]+)\""),
+    // Functional and Manchester
+    Pattern.compile("^\\s*Ontology\\s*[(:]\\s*<([^>]+)>", Pattern.MULTILINE),
+    // Turtle
+    Pattern.compile("<([^>]+)>\\s+(?:a|rdf:type)\\s+owl:Ontology"),
+    // OBO
+    Pattern.compile("^ontology:\\s*(\\S+)", Pattern.MULTILINE)
+  };
+
+  private static final Pattern[] VERSION_IRI_PATTERNS = new Pattern[] {
+    Pattern.compile("<(?:\\w+:)?versionIRI\\s+(?:\\w+:)?resource\\s*=\\s*\"([^\"]+)\""),
+    Pattern.compile("<(?:\\w+:)?Ontology\\b[^>]*\\sversionIRI\\s*=\\s*\"([^\"]+)\""),
+    Pattern.compile("^\\s*Ontology\\s*[(:]\\s*<[^>]+>\\s*<([^>]+)>", Pattern.MULTILINE),
+    Pattern.compile("owl:versionIRI\\s+<([^>]+)>")
+  };
+
+  private static final Pattern[] IMPORT_PATTERNS = new Pattern[] {
+    // RDF/XML
+    Pattern.compile("<(?:\\w+:)?imports\\s+(?:\\w+:)?resource\\s*=\\s*\"([^\"]+)\""),
+    // OWL/XML
+    Pattern.compile("<(?:\\w+:)?Import>\\s*([^<\\s]+)\\s*</"),
+    // Functional
+    Pattern.compile("Import\\(\\s*<([^>]+)>\\s*\\)"),
+    // Manchester
+    Pattern.compile("Import:\\s*<([^>]+)>"),
+    // Turtle
+    Pattern.compile("owl:imports\\s+<([^>]+)>"),
+    // OBO
+    Pattern.compile("^import:\\s*(\\S+)", Pattern.MULTILINE)
+  };
+
+  private final IRI ontologyIri;
+
+  private final IRI versionIri;
+
+  private final List<IRI> imports;
+
+  private DocumentHeader(IRI ontologyIri, IRI versionIri, List<IRI> imports) {
+    this.ontologyIri = ontologyIri;
+    this.versionIri = versionIri;
+    this.imports = Collections.unmodifiableList(imports);
+  }
+
+  /**
+   * Scans the header of an ontology document.
+   *
+   * @param document The ontology document.
+   * @return The header.
+   * @throws IOException If the document cannot be read.
+   */
+  public static DocumentHeader scan(File document) throws IOException {
+    try (InputStream is = new FileInputStream(document)) {
+      return scan(is);
+    }
+  }
+
+  /**
+   * Scans the header of an ontology document. The stream is not closed.
+   *
+   * @param is The contents of the ontology document.
+   * @return The header.
+   * @throws IOException If the document cannot be read.
+   */
+  public static DocumentHeader scan(InputStream is) throws IOException {
+    return scan(new InputStreamReader(is, StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Scans the header of an ontology document. The reader is not closed.
+   *
+   * @param reader The contents of the ontology document.
+   * @return The header.
+   * @throws IOException If the document cannot be read.
+   */
+  public static DocumentHeader scan(Reader reader) throws IOException {
+    // The document is read into a bounded buffer rather than line by line, so a document without
+    // line breaks, e.g. minified RDF/XML, is not read completely
+    final StringBuilder sb = new StringBuilder();
+    final char[] buffer = new char[BUFFER_SIZE];
+    int lineStart = 0;
+    boolean inHeader = false;
+    int read;
+    scan:
+    while (sb.length() < MAX_CHARS && (read = reader.read(buffer, 0, 
+        Math.min(buffer.length, MAX_CHARS - sb.length()))) != -1) {
+      sb.append(buffer, 0, read);
+      int lineEnd;
+      while ((lineEnd = sb.indexOf("\n", lineStart)) != -1) {
+        final String line = sb.substring(lineStart, lineEnd);
+        lineStart = lineEnd + 1;
+        if (line.contains("Ontology")) {
+          inHeader = true;
+        }
+        if (inHeader && isEndOfHeader(line)) {
+          sb.setLength(lineStart);
+          break scan;
+        }
+      }
+    }
+    final String text = sb.toString();
+
+    String base = null;
+    final Matcher baseMatcher = XML_BASE.matcher(text);
+    if (baseMatcher.find()) {
+      base = baseMatcher.group(1);
+    }
+
+    final IRI ontologyIri = findFirst(text, ONTOLOGY_IRI_PATTERNS, base);
+    final IRI versionIri = findFirst(text, VERSION_IRI_PATTERNS, base);
+    final List<IRI> imports = new ArrayList<>();
+    for (Pattern p : IMPORT_PATTERNS) {
+      final Matcher m = p.matcher(text);
+      while (m.find()) {
+        final IRI iri = resolve(m.group(1), base);
+        if (iri != null && !imports.contains(iri)) {
+          imports.add(iri);
+        }
+      }
+    }
+    return new DocumentHeader(ontologyIri, versionIri, imports);
+  }
+
+  private static boolean isEndOfHeader(String line) {
+    for (String marker : END_MARKERS) {
+      if (line.contains(marker)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static IRI findFirst(String text, Pattern[] patterns, String base) {
+    for (Pattern p : patterns) {
+      final Matcher m = p.matcher(text);
+      if (m.find()) {
+        final IRI iri = resolve(m.group(1), base);
+        if (iri != null) {
+          return iri;
+        }
+      }
+    }
+    return null;
+  }
+
+  private static IRI resolve(String value, String base) {
+    if (value.isEmpty() && base == null) {
+      return null;
+    }
+    try {
+      final URI uri = new URI(value);
+      if (!uri.isAbsolute() && base != null) {
+        return IRI.create(new URI(base).resolve(uri));
+      }
+      return IRI.create(uri);
+    } catch (Exception e) {
+      return IRI.create(value);
+    }
+  }
+
+  /**
+   * Returns the ontology IRI.
+   *
+   * @return the ontology IRI or null if it was not found
+   */
+  public IRI getOntologyIri() {
+    return ontologyIri;
+  }
+
+  /**
+   * Returns the version IRI.
+   *
+   * @return the version IRI or null if it was not found
+   */
+  public IRI getVersionIri() {
+    return versionIri;
+  }
+
+  /**
+   * Returns the IRIs of the imported ontologies, in the order they were found.
+   *
+   * @return the imports
+   */
+  public List<IRI> getImports() {
+    return imports;
+  }
+
+}
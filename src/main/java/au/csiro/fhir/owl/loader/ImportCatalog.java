@@ -0,0 +1,79 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.loader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLOntologyIRIMapper;
+
+/**
+ * An IRI mapper that resolves imports to local files using one or more indexed catalogs (see
+ * {@link CatalogIndex}) and a set of individual mappings. Catalogs are searched in the order they
+ * were added, before the individual mappings. Nothing is checked until an IRI is resolved, so the
+ * cost of creating the mapper does not depend on the number of mappings.
+ *
+ * <p>This class is thread safe.
+ */
+public class ImportCatalog implements OWLOntologyIRIMapper {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final Log log = LogFactory.getLog(ImportCatalog.class);
+
+  private final List<CatalogIndex> catalogs = new CopyOnWriteArrayList<>();
+
+  private final Map<IRI, File> mappings = new ConcurrentHashMap<>();
+
+  /**
+   * Adds an XML catalog or a directory of mirrored ontologies. Its index is created or refreshed
+   * if needed.
+   *
+   * @param source The catalog file or directory.
+   * @throws IOException If the catalog or directory cannot be read.
+   */
+  public void addCatalog(File source) throws IOException {
+    catalogs.add(CatalogIndex.open(source));
+  }
+
+  /**
+   * Adds a mapping from an ontology IRI to a file. The file does not need to exist until the IRI
+   * is resolved.
+   *
+   * @param iri The ontology IRI.
+   * @param file The file.
+   */
+  public void addMapping(IRI iri, File file) {
+    mappings.put(iri, file);
+  }
+
+  @Override
+  public IRI getDocumentIRI(IRI ontologyIri) {
+    for (CatalogIndex catalog : catalogs) {
+      final File file = catalog.resolve(ontologyIri);
+      if (file != null) {
+        log.debug("Resolved " + ontologyIri + " to " + file + " using catalog");
+        return IRI.create(file);
+      }
+    }
+    final File file = mappings.get(ontologyIri);
+    if (file != null) {
+      if (file.isFile()) {
+        return IRI.create(file);
+      }
+      log.warn("Mapping for " + ontologyIri + " was ignored because file " + file
+          + " does not exist.");
+    }
+    return null;
+  }
+
+}
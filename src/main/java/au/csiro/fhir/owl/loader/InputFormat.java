@@ -0,0 +1,307 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.loader;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.semanticweb.owlapi.formats.FunctionalSyntaxDocumentFormat;
+import org.semanticweb.owlapi.formats.ManchesterSyntaxDocumentFormat;
+import org.semanticweb.owlapi.formats.OBODocumentFormat;
+import org.semanticweb.owlapi.formats.OWLXMLDocumentFormat;
+import org.semanticweb.owlapi.formats.RDFXMLDocumentFormat;
+import org.semanticweb.owlapi.formats.TurtleDocumentFormat;
+import org.semanticweb.owlapi.io.FileDocumentSource;
+import org.semanticweb.owlapi.io.OWLOntologyDocumentSource;
+import org.semanticweb.owlapi.io.StreamDocumentSource;
+import org.semanticweb.owlapi.io.UnparsableOntologyException;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLDocumentFormat;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyLoaderConfiguration;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+/**
+ * The syntaxes of the documents that can be loaded. When the format of a document is known, the
+ * OWL API only tries the parser for that format, instead of trying every registered parser until
+ * one succeeds. A format given by the user is trusted, but a format detected from the first few
+ * lines of a document is only a guess, so if the document cannot be parsed in that format it is
+ * parsed again with every parser.
+ */
+public enum InputFormat {
+  RDFXML("rdfxml"),
+  OWLXML("owlxml"),
+  FUNCTIONAL("functional"),
+  MANCHESTER("manchester"),
+  TURTLE("turtle"),
+  OBO("obo");
+
+  private static final Log log = LogFactory.getLog(InputFormat.class);
+
+  /**
+   * The number of characters read to detect the format of a document.
+   */
+  private static final int SNIFF_CHARS = 8192;
+
+  /**
+   * Matches a document that starts with an XML element, as opposed to a Turtle or N-Triples
+   * document that starts with an IRI.
+   */
+  private static final Pattern XML_START = Pattern.compile(
+      "^<[A-Za-z_][\\w.\\-]*(?::[A-Za-z_][\\w.\\-]*)?(?:\\s|>|/>)");
+
+  /**
+   * Matches the root element of an XML document, skipping the declaration, the document type and
+   * comments, and captures its local name.
+   */
+  private static final Pattern ROOT_ELEMENT = Pattern.compile(
+      "<(?:[A-Za-z_][\\w.\\-]*:)?([A-Za-z_][\\w.\\-]*)(?:\\s|>|/>)");
+
+  private final String name;
+
+  private InputFormat(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Returns the name used in the command line.
+   *
+   * @return the name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns a new instance of the corresponding OWL API document format.
+   *
+   * @return The document format.
+   */
+  public OWLDocumentFormat createDocumentFormat() {
+    switch (this) {
+      case RDFXML:
+        return new RDFXMLDocumentFormat();
+      case OWLXML:
+        return new OWLXMLDocumentFormat();
+      case FUNCTIONAL:
+        return new FunctionalSyntaxDocumentFormat();
+      case MANCHESTER:
+        return new ManchesterSyntaxDocumentFormat();
+      case TURTLE:
+        return new TurtleDocumentFormat();
+      case OBO:
+        return new OBODocumentFormat();
+      default:
+        throw new IllegalStateException("Unknown format " + this);
+    }
+  }
+
+  /**
+   * Returns the format with a given name.
+   *
+   * @param name The name of the format.
+   * @return The format or null if there is no format with this name.
+   */
+  public static InputFormat fromName(String name) {
+    for (InputFormat f : values()) {
+      if (f.name.equalsIgnoreCase(name)) {
+        return f;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Detects the format of a document by looking at its first few lines.
+   *
+   * @param document The document.
+   * @return The format or null if it could not be detected.
+   */
+  public static InputFormat detect(File document) {
+    try (Reader reader = new InputStreamReader(new FileInputStream(document),
+        StandardCharsets.UTF_8)) {
+      return detect(reader);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Detects the format of a document by looking at its first few lines. The stream must support
+   * mark and reset, and is reset to where it was.
+   *
+   * @param is The contents of the document.
+   * @return The format or null if it could not be detected.
+   * @throws IOException If the document cannot be read.
+   */
+  public static InputFormat detect(InputStream is) throws IOException {
+    // A UTF-8 character is at most four bytes
+    final byte[] buffer = new byte[SNIFF_CHARS * 4];
+    is.mark(buffer.length);
+    int len = 0;
+    int read;
+    while (len < buffer.length && (read = is.read(buffer, len, buffer.length - len)) != -1) {
+      len += read;
+    }
+    is.reset();
+    return detect(new StringReader(new String(buffer, 0, len, StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * Detects the format of a document by looking at its first few lines. The reader is not closed.
+   *
+   * @param reader The contents of the document.
+   * @return The format or null if it could not be detected.
+   * @throws IOException If the document cannot be read.
+   */
+  public static InputFormat detect(Reader reader) throws IOException {
+    final BufferedReader br = new BufferedReader(reader);
+    final StringBuilder sb = new StringBuilder();
+    String line;
+    while (sb.length() < SNIFF_CHARS && (line = br.readLine()) != null) {
+      // Skip blank lines and comments, and the byte order mark
+      final String trimmed = line.replace("\uFEFF", "").trim();
+      if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+        continue;
+      }
+      sb.append(trimmed).append('\n');
+    }
+    final String text = sb.toString();
+    if (text.isEmpty()) {
+      return null;
+    }
+
+    if (text.startsWith("<?xml") || text.startsWith("<!") || XML_START.matcher(text).find()) {
+      // OWL/XML documents have an Ontology root element, whatever its prefix, while RDF/XML
+      // documents usually have an RDF one, whose children may well be owl:Ontology elements
+      final Matcher root = ROOT_ELEMENT.matcher(stripComments(text));
+      return root.find() && "Ontology".equals(root.group(1)) ? OWLXML : RDFXML;
+    }
+    final String lower = text.toLowerCase(Locale.ROOT);
+    if (text.startsWith("Prefix(") || text.startsWith("Ontology(")) {
+      return FUNCTIONAL;
+    } else if (text.startsWith("Prefix:") || text.startsWith("Ontology:")) {
+      return MANCHESTER;
+    } else if (lower.startsWith("@prefix") || lower.startsWith("@base")
+        || lower.startsWith("prefix ") || lower.startsWith("base ") || text.startsWith("<")) {
+      return TURTLE;
+    } else if (text.startsWith("format-version:") || text.startsWith("[Term]")
+        || text.startsWith("ontology:") || text.startsWith("data-version:")) {
+      return OBO;
+    }
+    return null;
+  }
+
+  private static String stripComments(String xml) {
+    return xml.replaceAll("(?s)<!--.*?-->", "");
+  }
+
+  /**
+   * Creates a document source for a stream that only uses the parser for a format, if known.
+   */
+  private static OWLOntologyDocumentSource createDocumentSource(InputStream is, IRI documentIri,
+      InputFormat format) {
+    return format != null
+        ? new StreamDocumentSource(is, documentIri, format.createDocumentFormat(), null)
+        : new StreamDocumentSource(is, documentIri);
+  }
+
+  /**
+   * Loads a file, only with the parser for its format if it is known. If the format was detected
+   * rather than given, and the file cannot be parsed in that format, every parser is tried.
+   *
+   * @param manager The manager the ontology is loaded into.
+   * @param file The file.
+   * @param hint The format of the file, or null to detect it.
+   * @param config The loader configuration.
+   * @return The ontology.
+   * @throws OWLOntologyCreationException If the ontology cannot be loaded.
+   */
+  public static OWLOntology loadOntology(OWLOntologyManager manager, File file, InputFormat hint,
+      OWLOntologyLoaderConfiguration config) throws OWLOntologyCreationException {
+    final InputFormat format = hint != null ? hint : detect(file);
+    if (format == null) {
+      return manager.loadOntologyFromOntologyDocument(new FileDocumentSource(file), config);
+    }
+    try {
+      return manager.loadOntologyFromOntologyDocument(
+          new FileDocumentSource(file, format.createDocumentFormat()), config);
+    } catch (UnparsableOntologyException e) {
+      if (hint != null) {
+        throw e;
+      }
+      log.warn("Unable to parse " + file.getAbsolutePath() + " as " + format.getName()
+          + ", trying every parser");
+      return manager.loadOntologyFromOntologyDocument(new FileDocumentSource(file), config);
+    }
+  }
+
+  /**
+   * Loads a document from a stream, such as a decompressed document, only with the parser for its
+   * format if it is known. If the format was detected rather than given, and the document cannot
+   * be parsed in that format, the stream is opened again and every parser is tried.
+   *
+   * @param manager The manager the ontology is loaded into.
+   * @param opener Opens the contents of the document. The streams must support mark and reset.
+   * @param documentIri The IRI of the document.
+   * @param hint The format of the document, or null to detect it.
+   * @param config The loader configuration.
+   * @return The ontology.
+   * @throws OWLOntologyCreationException If the ontology cannot be loaded.
+   * @throws IOException If the document cannot be read.
+   */
+  public static OWLOntology loadOntology(OWLOntologyManager manager, StreamOpener opener,
+      IRI documentIri, InputFormat hint, OWLOntologyLoaderConfiguration config)
+      throws OWLOntologyCreationException, IOException {
+    final InputFormat format;
+    try (InputStream is = opener.open()) {
+      format = hint != null ? hint : detect(is);
+      try {
+        return manager.loadOntologyFromOntologyDocument(
+            createDocumentSource(is, documentIri, format), config);
+      } catch (UnparsableOntologyException e) {
+        if (hint != null || format == null) {
+          throw e;
+        }
+      }
+    }
+    log.warn("Unable to parse " + documentIri + " as " + format.getName()
+        + ", trying every parser");
+    try (InputStream is = opener.open()) {
+      return manager.loadOntologyFromOntologyDocument(new StreamDocumentSource(is, documentIri),
+          config);
+    }
+  }
+
+  /**
+   * Opens the contents of a document, which might have to be read more than once.
+   */
+  @FunctionalInterface
+  public interface StreamOpener {
+
+    /**
+     * Opens a new stream with the contents of the document.
+     *
+     * @return The stream, which the caller closes.
+     * @throws IOException If the document cannot be read.
+     */
+    InputStream open() throws IOException;
+  }
+
+}
@@ -0,0 +1,98 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.loader;
+
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLImportsDeclaration;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyIRIMapper;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+/**
+ * Utility methods shared by the ontology loaders.
+ */
+public class LoaderUtils {
+
+  /**
+   * Resolves the IRI of an ontology to the IRI of its document, using the IRI mappers registered
+   * in the ontology manager.
+   *
+   * @param manager The ontology manager.
+   * @param iri The ontology IRI.
+   * @return The document IRI, or the ontology IRI itself if no mapper knows about it.
+   */
+  public static IRI resolveDocumentIri(OWLOntologyManager manager, IRI iri) {
+    for (OWLOntologyIRIMapper mapper : manager.getIRIMappers()) {
+      final IRI documentIri = mapper.getDocumentIRI(iri);
+      if (documentIri != null) {
+        return documentIri;
+      }
+    }
+    return iri;
+  }
+
+  /**
+   * Returns the file a document IRI points to.
+   *
+   * @param documentIri The document IRI.
+   * @return The file or null if the IRI does not point to an existing file.
+   */
+  public static File toFile(IRI documentIri) {
+    if (documentIri == null || !"file".equalsIgnoreCase(documentIri.getScheme())) {
+      return null;
+    }
+    final File file = new File(documentIri.toURI());
+    return file.isFile() ? file : null;
+  }
+
+  /**
+   * Loads the imports of a document that was not parsed by the OWL API. Imports that resolve to
+   * local files are loaded with the given loader and the rest are loaded by the ontology manager.
+   * Imports that are already loaded are skipped.
+   *
+   * @param manager The ontology manager.
+   * @param imports The IRIs in the import declarations of the document.
+   * @param localLoader The loader used for imports that resolve to local files.
+   * @param visited The files that have already been loaded, to avoid cycles.
+   * @throws OWLOntologyCreationException If an import cannot be loaded.
+   */
+  public static void loadImports(OWLOntologyManager manager, List<IRI> imports,
+      OntologyLoader localLoader, Set<File> visited) throws OWLOntologyCreationException {
+    for (IRI imp : imports) {
+      final OWLImportsDeclaration decl = manager.getOWLDataFactory().getOWLImportsDeclaration(imp);
+      if (manager.getImportedOntology(decl) != null) {
+        continue;
+      }
+      final File importDocument = toFile(resolveDocumentIri(manager, imp));
+      if (importDocument != null && !visited.contains(importDocument.getAbsoluteFile())) {
+        localLoader.load(manager, importDocument);
+      } else {
+        manager.makeLoadImportRequest(decl, manager.getOntologyLoaderConfiguration());
+      }
+    }
+  }
+
+  /**
+   * Returns a factory of daemon threads, so that worker threads never keep the JVM alive.
+   *
+   * @param prefix The prefix of the thread names.
+   * @return The thread factory.
+   */
+  public static ThreadFactory daemonThreadFactory(String prefix) {
+    final AtomicInteger count = new AtomicInteger();
+    return r -> {
+      final Thread t = new Thread(r, prefix + "-" + count.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    };
+  }
+
+}
@@ -0,0 +1,488 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.loader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+/**
+ * A parallel loader for N-Triples and N-Quads documents. Both formats have one statement per line,
+ * so the document is memory-mapped, split into chunks at line boundaries and the chunks are parsed
+ * concurrently. Each task keeps the statements it parses in its own buffer, discarding those that
+ * are not needed to create the code system, and the buffers are then merged in document order into
+ * a {@link ReducedOntologyBuilder}. The graph of N-Quads statements is ignored.
+ *
+ * <p>As with {@link StaxRdfXmlLoader}, documents that define classes using anonymous class
+ * expressions are loaded with the fallback loader. Blank nodes can span chunks, so this is also
+ * the case for documents with anonymous superclasses, property chains, disjointness axioms with
+ * more than two classes and anonymous class expressions in domains, ranges or disjointness axioms.
+ * Documents that are not N-Triples or N-Quads (determined by their extension) and documents that
+ * cannot be parsed are also loaded with the fallback loader.
+ */
+public class NTriplesLoader implements OntologyLoader {
+
+  private static final Log log = LogFactory.getLog(NTriplesLoader.class);
+
+  /**
+   * The smallest chunk that is parsed by a task. Smaller documents are parsed by a single task.
+   */
+  private static final long MIN_CHUNK_SIZE = 1 << 22;
+
+  /**
+   * The largest chunk that is parsed by a task. A mapped buffer cannot be larger than 2GB.
+   */
+  private static final long MAX_CHUNK_SIZE = 1 << 30;
+
+  private static final Set<String> DEFINITION_PREDICATES = new HashSet<>();
+
+  static {
+    DEFINITION_PREDICATES.add("http://www.w3.org/2002/07/owl#equivalentClass");
+    DEFINITION_PREDICATES.add("http://www.w3.org/2002/07/owl#disjointUnionOf");
+    DEFINITION_PREDICATES.add("http://www.w3.org/2002/07/owl#disjointWith");
+    DEFINITION_PREDICATES.add("http://www.w3.org/2000/01/rdf-schema#domain");
+    DEFINITION_PREDICATES.add("http://www.w3.org/2000/01/rdf-schema#range");
+    // Blank nodes can span chunks, so anonymous superclasses and chains are not rebuilt
+    DEFINITION_PREDICATES.add("http://www.w3.org/2000/01/rdf-schema#subClassOf");
+    DEFINITION_PREDICATES.add("http://www.w3.org/2002/07/owl#propertyChainAxiom");
+  }
+
+  private static final String OWL_ALL_DISJOINT_CLASSES =
+      "http://www.w3.org/2002/07/owl#AllDisjointClasses";
+
+  private final Set<IRI> annotationProperties;
+
+  private final int threads;
+
+  private final OntologyLoader fallback;
+
+  private final long minChunkSize;
+
+  /**
+   * Creates a new loader.
+   *
+   * @param annotationProperties The annotation properties that are kept.
+   * @param threads The number of chunks that are parsed concurrently.
+   * @param fallback The loader used for documents that this loader cannot handle.
+   */
+  public NTriplesLoader(Set<IRI> annotationProperties, int threads, OntologyLoader fallback) {
+    this(annotationProperties, threads, fallback, MIN_CHUNK_SIZE);
+  }
+
+  /**
+   * Creates a new loader with a custom minimum chunk size. Used in tests.
+   */
+  NTriplesLoader(Set<IRI> annotationProperties, int threads, OntologyLoader fallback,
+      long minChunkSize) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("The number of threads must be positive.");
+    }
+    this.annotationProperties = annotationProperties;
+    this.threads = threads;
+    this.fallback = fallback;
+    this.minChunkSize = minChunkSize;
+  }
+
+  /**
+   * Indicates if a file is an N-Triples or N-Quads document, based on its extension.
+   *
+   * @param file The file.
+   * @return True if the file is an N-Triples or N-Quads document.
+   */
+  public static boolean isLineBased(File file) {
+    final String name = file.getName().toLowerCase(Locale.ROOT);
+    return name.endsWith(".nt") || name.endsWith(".nq");
+  }
+
+  @Override
+  public OWLOntology load(OWLOntologyManager manager, File input)
+      throws OWLOntologyCreationException {
+    return load(manager, input, new HashSet<>());
+  }
+
+  private OWLOntology load(OWLOntologyManager manager, File input, Set<File> visited)
+      throws OWLOntologyCreationException {
+    if (!isLineBased(input)) {
+      return fallback.load(manager, input);
+    }
+    visited.add(input.getAbsoluteFile());
+    final long start = System.currentTimeMillis();
+    final ReducedOntologyBuilder builder = new ReducedOntologyBuilder(
+        manager.getOWLDataFactory(), annotationProperties);
+    final int chunks;
+    try {
+      chunks = parse(input, builder);
+    } catch (UnsupportedDocumentException e) {
+      log.info("Using standard parser for " + input.getAbsolutePath() + ": " + e.getMessage());
+      return fallback.load(manager, input);
+    } catch (IOException e) {
+      log.info("Using standard parser for " + input.getAbsolutePath() + ": "
+          + e.getLocalizedMessage());
+      return fallback.load(manager, input);
+    }
+
+    LoaderUtils.loadImports(manager, builder.getImports(), (m, f) -> load(m, f, visited), visited);
+
+    final OWLOntology ont = builder.build(manager, input);
+    log.info("Loaded " + ont.getAxiomCount() + " axioms from " + input.getAbsolutePath()
+        + " in " + (System.currentTimeMillis() - start) + "ms using " + chunks + " chunks");
+    return ont;
+  }
+
+  /**
+   * Parses a document in chunks and adds the statements to the builder.
+   *
+   * @return The number of chunks.
+   */
+  private int parse(File input, ReducedOntologyBuilder builder)
+      throws IOException, UnsupportedDocumentException, OWLOntologyCreationException {
+    try (FileChannel channel = FileChannel.open(input.toPath(), StandardOpenOption.READ)) {
+      final List<long[]> chunks = split(channel);
+      final List<Future<TripleBuffer>> futures = new ArrayList<>();
+      final ExecutorService executor = Executors.newFixedThreadPool(
+          Math.min(threads, Math.max(1, chunks.size())),
+          LoaderUtils.daemonThreadFactory("ntriples-loader"));
+      try {
+        for (long[] chunk : chunks) {
+          futures.add(executor.submit(() -> parseChunk(channel, chunk[0], chunk[1], builder)));
+        }
+        // Merged in document order so the result does not depend on the scheduling
+        for (Future<TripleBuffer> future : futures) {
+          get(future).addTo(builder);
+        }
+      } finally {
+        executor.shutdownNow();
+      }
+      return chunks.size();
+    }
+  }
+
+  private TripleBuffer get(Future<TripleBuffer> future)
+      throws IOException, UnsupportedDocumentException, OWLOntologyCreationException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new OWLOntologyCreationException("Interrupted while parsing.", e);
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof UnsupportedDocumentException) {
+        throw (UnsupportedDocumentException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else {
+        throw new OWLOntologyCreationException(cause);
+      }
+    }
+  }
+
+  /**
+   * Splits a document into chunks that start and end at line boundaries.
+   *
+   * @return The start and end positions of the chunks.
+   */
+  private List<long[]> split(FileChannel channel) throws IOException {
+    final long size = channel.size();
+    final long chunkSize = Math.min(MAX_CHUNK_SIZE,
+        Math.max(minChunkSize, size / (threads * 4L)));
+    final List<long[]> chunks = new ArrayList<>();
+    long start = 0;
+    while (start < size) {
+      long end = Math.min(size, start + chunkSize);
+      if (end < size) {
+        end = nextLineStart(channel, end);
+      }
+      if (end - start > Integer.MAX_VALUE) {
+        throw new IOException("Line starting near position " + start + " is too long.");
+      }
+      chunks.add(new long[] { start, end });
+      start = end;
+    }
+    return chunks;
+  }
+
+  private long nextLineStart(FileChannel channel, long position) throws IOException {
+    final ByteBuffer buf = ByteBuffer.allocate(8192);
+    long pos = position;
+    while (true) {
+      buf.clear();
+      final int read = channel.read(buf, pos);
+      if (read < 0) {
+        return channel.size();
+      }
+      for (int i = 0; i < read; i++) {
+        if (buf.get(i) == '\n') {
+          return pos + i + 1;
+        }
+      }
+      pos += read;
+    }
+  }
+
+  private TripleBuffer parseChunk(FileChannel channel, long start, long end,
+      ReducedOntologyBuilder builder) throws IOException, UnsupportedDocumentException {
+    final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+    final TripleBuffer res = new TripleBuffer();
+    final LineParser parser = new LineParser(builder, res);
+    byte[] line = new byte[1024];
+    int len = 0;
+    while (mapped.hasRemaining()) {
+      final byte b = mapped.get();
+      if (b == '\n') {
+        parser.parse(new String(line, 0, len, StandardCharsets.UTF_8), start);
+        len = 0;
+      } else {
+        if (len == line.length) {
+          final byte[] tmp = new byte[line.length * 2];
+          System.arraycopy(line, 0, tmp, 0, len);
+          line = tmp;
+        }
+        line[len++] = b;
+      }
+    }
+    if (len > 0) {
+      parser.parse(new String(line, 0, len, StandardCharsets.UTF_8), start);
+    }
+    return res;
+  }
+
+  /**
+   * The statements parsed by a single task.
+   */
+  private static class TripleBuffer {
+    private final List<IRI> subjects = new ArrayList<>();
+    private final List<IRI> predicates = new ArrayList<>();
+    /**
+     * Either an {@link IRI} or a {@link String} with the lexical value of a literal.
+     */
+    private final List<Object> objects = new ArrayList<>();
+    private final List<IRI> datatypes = new ArrayList<>();
+    private final List<String> langs = new ArrayList<>();
+
+    private void add(IRI subject, IRI predicate, Object object, IRI datatype, String lang) {
+      subjects.add(subject);
+      predicates.add(predicate);
+      objects.add(object);
+      datatypes.add(datatype);
+      langs.add(lang);
+    }
+
+    private void addTo(ReducedOntologyBuilder builder) {
+      for (int i = 0; i < subjects.size(); i++) {
+        final Object object = objects.get(i);
+        if (object instanceof IRI) {
+          builder.addStatement(subjects.get(i), predicates.get(i), (IRI) object);
+        } else {
+          builder.addStatement(subjects.get(i), predicates.get(i), (String) object,
+              datatypes.get(i), langs.get(i));
+        }
+      }
+    }
+  }
+
+  /**
+   * Parses single N-Triples or N-Quads lines.
+   */
+  private static class LineParser {
+    private final ReducedOntologyBuilder builder;
+    private final TripleBuffer buffer;
+    private String line;
+    private int pos;
+
+    private LineParser(ReducedOntologyBuilder builder, TripleBuffer buffer) {
+      this.builder = builder;
+      this.buffer = buffer;
+    }
+
+    private void parse(String line, long chunkStart)
+        throws IOException, UnsupportedDocumentException {
+      this.line = line;
+      this.pos = 0;
+      skipWhitespace();
+      if (pos == line.length() || line.charAt(pos) == '#') {
+        return;
+      }
+
+      final String subject = readResource(chunkStart);
+      skipWhitespace();
+      final IRI predicate = IRI.create(readIri(chunkStart));
+      if (!builder.accepts(predicate) && !DEFINITION_PREDICATES.contains(predicate.toString())) {
+        return;
+      }
+      skipWhitespace();
+      if (pos == line.length()) {
+        throw error(chunkStart);
+      }
+
+      final char c = line.charAt(pos);
+      if (c == '"') {
+        final String lexicalValue = readString(chunkStart);
+        IRI datatype = null;
+        String lang = null;
+        if (pos < line.length() && line.charAt(pos) == '@') {
+          final int langStart = ++pos;
+          while (pos < line.length() && !isWhitespace(line.charAt(pos))
+              && line.charAt(pos) != '.') {
+            pos++;
+          }
+          lang = line.substring(langStart, pos);
+        } else if (line.startsWith("^^", pos)) {
+          pos += 2;
+          datatype = IRI.create(readIri(chunkStart));
+        }
+        if (subject != null) {
+          buffer.add(IRI.create(subject), predicate, lexicalValue, datatype, lang);
+        }
+      } else {
+        final String object = readResource(chunkStart);
+        if (subject == null) {
+          if (OWL_ALL_DISJOINT_CLASSES.equals(object)) {
+            throw new UnsupportedDocumentException("disjointness axioms with more than two "
+                + "classes are not supported");
+          }
+          return;
+        }
+        if (object == null) {
+          if (DEFINITION_PREDICATES.contains(predicate.toString())) {
+            throw new UnsupportedDocumentException(subject + " uses an anonymous "
+                + predicate.getShortForm() + " expression");
+          }
+          return;
+        }
+        buffer.add(IRI.create(subject), predicate, IRI.create(object), null, null);
+      }
+    }
+
+    /**
+     * Reads an IRI or a blank node.
+     *
+     * @return The IRI or null if it is a blank node.
+     */
+    private String readResource(long chunkStart) throws IOException {
+      if (line.startsWith("_:", pos)) {
+        while (pos < line.length() && !isWhitespace(line.charAt(pos))) {
+          pos++;
+        }
+        return null;
+      }
+      return readIri(chunkStart);
+    }
+
+    private String readIri(long chunkStart) throws IOException {
+      if (pos == line.length() || line.charAt(pos) != '<') {
+        throw error(chunkStart);
+      }
+      final int end = line.indexOf('>', pos);
+      if (end < 0) {
+        throw error(chunkStart);
+      }
+      final String value = line.substring(pos + 1, end);
+      pos = end + 1;
+      return value.indexOf('\\') < 0 ? value : unescape(value, chunkStart);
+    }
+
+    private String readString(long chunkStart) throws IOException {
+      final int start = ++pos;
+      boolean escaped = false;
+      while (pos < line.length()) {
+        final char c = line.charAt(pos);
+        if (c == '\\') {
+          escaped = true;
+          pos += 2;
+        } else if (c == '"') {
+          final String value = line.substring(start, pos++);
+          return escaped ? unescape(value, chunkStart) : value;
+        } else {
+          pos++;
+        }
+      }
+      throw error(chunkStart);
+    }
+
+    private String unescape(String value, long chunkStart) throws IOException {
+      final StringBuilder sb = new StringBuilder(value.length());
+      for (int i = 0; i < value.length(); i++) {
+        final char c = value.charAt(i);
+        if (c != '\\' || i + 1 == value.length()) {
+          sb.append(c);
+          continue;
+        }
+        final char e = value.charAt(++i);
+        switch (e) {
+          case 't':
+            sb.append('\t');
+            break;
+          case 'b':
+            sb.append('\b');
+            break;
+          case 'n':
+            sb.append('\n');
+            break;
+          case 'r':
+            sb.append('\r');
+            break;
+          case 'f':
+            sb.append('\f');
+            break;
+          case 'u':
+          case 'U':
+            final int digits = e == 'u' ? 4 : 8;
+            if (i + digits >= value.length()) {
+              throw error(chunkStart);
+            }
+            try {
+              sb.appendCodePoint(Integer.parseInt(value.substring(i + 1, i + 1 + digits), 16));
+            } catch (IllegalArgumentException ex) {
+              throw error(chunkStart);
+            }
+            i += digits;
+            break;
+          default:
+            // \", \' and \\
+            sb.append(e);
+        }
+      }
+      return sb.toString();
+    }
+
+    private void skipWhitespace() {
+      while (pos < line.length() && isWhitespace(line.charAt(pos))) {
+        pos++;
+      }
+    }
+
+    private static boolean isWhitespace(char c) {
+      return c == ' ' || c == '\t' || c == '\r';
+    }
+
+    private IOException error(long chunkStart) {
+      return new IOException("Invalid statement in chunk starting at position " + chunkStart
+          + ": " + line);
+    }
+  }
+
+}
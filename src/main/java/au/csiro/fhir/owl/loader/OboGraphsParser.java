@@ -0,0 +1,555 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.loader;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLClassExpression;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+
+/**
+ * Parses an OBO Graphs JSON document into a {@link ReducedOntologyBuilder}. The document is
+ * streamed, so only the edges are kept in memory until the end of the document, when it is known
+ * which nodes are properties. The nodes of all the graphs in the document are added to the same
+ * ontology, whose IRI is the id of the first graph.
+ */
+class OboGraphsParser {
+
+  private static final String IS_A = "is_a";
+
+  private final ReducedOntologyBuilder builder;
+
+  private final OWLDataFactory factory;
+
+  private IRI ontologyIri;
+
+  /**
+   * The nodes that are not classes, i.e. properties and individuals.
+   */
+  private final Set<IRI> notClasses = new HashSet<>();
+
+  /**
+   * The edges: subject, predicate and object.
+   */
+  private final List<String[]> edges = new ArrayList<>();
+
+  OboGraphsParser(ReducedOntologyBuilder builder, OWLDataFactory factory) {
+    this.builder = builder;
+    this.factory = factory;
+  }
+
+  void parse(Reader in) throws IOException, UnsupportedDocumentException {
+    final JsonReader reader = new JsonReader(in);
+    try {
+      if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+        throw new UnsupportedDocumentException("the document is not a JSON object");
+      }
+      boolean found = false;
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if ("graphs".equals(reader.nextName())) {
+          reader.beginArray();
+          while (reader.hasNext()) {
+            parseGraph(reader);
+            found = true;
+          }
+          reader.endArray();
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      if (!found) {
+        throw new UnsupportedDocumentException("the document is not an OBO Graphs document");
+      }
+    } catch (IllegalStateException | JsonParseException e) {
+      throw new UnsupportedDocumentException("the document is not an OBO Graphs document: "
+          + e.getMessage());
+    }
+    addEdges();
+  }
+
+  private void parseGraph(JsonReader reader) throws IOException {
+    String id = null;
+    Meta meta = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "id":
+          id = nextString(reader);
+          break;
+        case "meta":
+          meta = parseMeta(reader);
+          break;
+        case "nodes":
+          reader.beginArray();
+          while (reader.hasNext()) {
+            parseNode(reader);
+          }
+          reader.endArray();
+          break;
+        case "edges":
+          reader.beginArray();
+          while (reader.hasNext()) {
+            parseEdge(reader);
+          }
+          reader.endArray();
+          break;
+        case "equivalentNodesSets":
+          reader.beginArray();
+          while (reader.hasNext()) {
+            parseEquivalentNodes(reader);
+          }
+          reader.endArray();
+          break;
+        case "logicalDefinitionAxioms":
+          reader.beginArray();
+          while (reader.hasNext()) {
+            parseLogicalDefinition(reader);
+          }
+          reader.endArray();
+          break;
+        case "domainRangeAxioms":
+          reader.beginArray();
+          while (reader.hasNext()) {
+            parseDomainRange(reader);
+          }
+          reader.endArray();
+          break;
+        case "propertyChainAxioms":
+          reader.beginArray();
+          while (reader.hasNext()) {
+            parsePropertyChain(reader);
+          }
+          reader.endArray();
+          break;
+        default:
+          reader.skipValue();
+          break;
+      }
+    }
+    reader.endObject();
+
+    if (ontologyIri == null && id != null) {
+      ontologyIri = expand(id);
+      builder.addStatement(ontologyIri, OboLoader.RDF_TYPE, OboLoader.OWL_ONTOLOGY);
+      if (meta != null) {
+        if (meta.version != null) {
+          builder.addStatement(ontologyIri, OboLoader.OWL_VERSION_IRI, expand(meta.version));
+        }
+        addMeta(ontologyIri, meta);
+      }
+    }
+  }
+
+  private void parseNode(JsonReader reader) throws IOException {
+    String id = null;
+    String label = null;
+    String type = null;
+    String propertyType = null;
+    Meta meta = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "id":
+          id = nextString(reader);
+          break;
+        case "lbl":
+          label = nextString(reader);
+          break;
+        case "type":
+          type = nextString(reader);
+          break;
+        case "propertyType":
+          propertyType = nextString(reader);
+          break;
+        case "meta":
+          meta = parseMeta(reader);
+          break;
+        default:
+          reader.skipValue();
+          break;
+      }
+    }
+    reader.endObject();
+    if (id == null) {
+      return;
+    }
+
+    final IRI subject = expand(id);
+    if ("CLASS".equals(type)) {
+      builder.addStatement(subject, OboLoader.RDF_TYPE, OboLoader.OWL_CLASS);
+    } else if ("PROPERTY".equals(type)) {
+      notClasses.add(subject);
+      final IRI declaration;
+      if ("ANNOTATION".equals(propertyType)) {
+        declaration = OboLoader.OWL_ANNOTATION_PROPERTY;
+      } else if ("DATA".equals(propertyType)) {
+        declaration = OboLoader.OWL_DATA_PROPERTY;
+      } else {
+        declaration = OboLoader.OWL_OBJECT_PROPERTY;
+      }
+      builder.addStatement(subject, OboLoader.RDF_TYPE, declaration);
+    } else if (type != null) {
+      notClasses.add(subject);
+    }
+    if (label != null) {
+      builder.addStatement(subject, OboLoader.RDFS_LABEL, label, null, null);
+    }
+    if (meta != null) {
+      addMeta(subject, meta);
+    }
+  }
+
+  private void parseEdge(JsonReader reader) throws IOException {
+    final String[] edge = new String[3];
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "sub":
+          edge[0] = nextString(reader);
+          break;
+        case "pred":
+          edge[1] = nextString(reader);
+          break;
+        case "obj":
+          edge[2] = nextString(reader);
+          break;
+        default:
+          reader.skipValue();
+          break;
+      }
+    }
+    reader.endObject();
+    if (edge[0] != null && edge[1] != null && edge[2] != null) {
+      edges.add(edge);
+    }
+  }
+
+  private void parseEquivalentNodes(JsonReader reader) throws IOException {
+    final List<String> ids = new ArrayList<>();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if ("nodeIds".equals(reader.nextName())) {
+        ids.addAll(nextStrings(reader));
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    for (int i = 1; i < ids.size(); i++) {
+      builder.addStatement(expand(ids.get(0)), OboLoader.OWL_EQUIVALENT_CLASS,
+          expand(ids.get(i)));
+    }
+  }
+
+  private void parseDomainRange(JsonReader reader) throws IOException {
+    String predicate = null;
+    final List<String> domains = new ArrayList<>();
+    final List<String> ranges = new ArrayList<>();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "predicateId":
+          predicate = nextString(reader);
+          break;
+        case "domainClassIds":
+          domains.addAll(nextStrings(reader));
+          break;
+        case "rangeClassIds":
+          ranges.addAll(nextStrings(reader));
+          break;
+        default:
+          reader.skipValue();
+          break;
+      }
+    }
+    reader.endObject();
+    if (predicate == null) {
+      return;
+    }
+    final OWLObjectProperty prop = factory.getOWLObjectProperty(expand(predicate));
+    for (String domain : domains) {
+      builder.addAxiom(factory.getOWLObjectPropertyDomainAxiom(prop,
+          factory.getOWLClass(expand(domain))));
+    }
+    for (String range : ranges) {
+      builder.addAxiom(factory.getOWLObjectPropertyRangeAxiom(prop,
+          factory.getOWLClass(expand(range))));
+    }
+  }
+
+  private void parsePropertyChain(JsonReader reader) throws IOException {
+    String predicate = null;
+    final List<OWLObjectProperty> chain = new ArrayList<>();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "predicateId":
+          predicate = nextString(reader);
+          break;
+        case "chainPredicateIds":
+          for (String id : nextStrings(reader)) {
+            chain.add(factory.getOWLObjectProperty(expand(id)));
+          }
+          break;
+        default:
+          reader.skipValue();
+          break;
+      }
+    }
+    reader.endObject();
+    if (predicate != null && !chain.isEmpty()) {
+      builder.addAxiom(factory.getOWLSubPropertyChainOfAxiom(chain,
+          factory.getOWLObjectProperty(expand(predicate))));
+    }
+  }
+
+  private void parseLogicalDefinition(JsonReader reader) throws IOException {
+    String defined = null;
+    final List<String> genera = new ArrayList<>();
+    final Set<OWLClassExpression> restrictions = new LinkedHashSet<>();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "definedClassId":
+          defined = nextString(reader);
+          break;
+        case "genusIds":
+          genera.addAll(nextStrings(reader));
+          break;
+        case "restrictions":
+          reader.beginArray();
+          while (reader.hasNext()) {
+            String property = null;
+            String filler = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+              final String name = reader.nextName();
+              if ("propertyId".equals(name)) {
+                property = nextString(reader);
+              } else if ("fillerId".equals(name)) {
+                filler = nextString(reader);
+              } else {
+                reader.skipValue();
+              }
+            }
+            reader.endObject();
+            if (property != null && filler != null) {
+              restrictions.add(factory.getOWLObjectSomeValuesFrom(
+                  factory.getOWLObjectProperty(expand(property)),
+                  factory.getOWLClass(expand(filler))));
+            }
+          }
+          reader.endArray();
+          break;
+        default:
+          reader.skipValue();
+          break;
+      }
+    }
+    reader.endObject();
+    if (defined == null) {
+      return;
+    }
+
+    final IRI subject = expand(defined);
+    final Set<OWLClassExpression> operands = new LinkedHashSet<>();
+    for (String genus : genera) {
+      // The genus is always a superclass
+      builder.addStatement(subject, OboLoader.RDFS_SUBCLASS_OF, expand(genus));
+      operands.add(factory.getOWLClass(expand(genus)));
+    }
+    operands.addAll(restrictions);
+    if (operands.isEmpty()) {
+      return;
+    }
+    final OWLClass cls = factory.getOWLClass(subject);
+    builder.addAxiom(factory.getOWLEquivalentClassesAxiom(cls, operands.size() == 1
+        ? operands.iterator().next() : factory.getOWLObjectIntersectionOf(operands)));
+  }
+
+  /**
+   * Adds the edges, once it is known which nodes are properties. An <i>is_a</i> edge is a
+   * subclass or a subproperty relationship and any other edge between two classes is an
+   * existential restriction.
+   */
+  private void addEdges() {
+    for (String[] edge : edges) {
+      final IRI sub = expand(edge[0]);
+      final IRI obj = expand(edge[2]);
+      if (IS_A.equals(edge[1])) {
+        builder.addStatement(sub, notClasses.contains(sub) ? OboLoader.RDFS_SUB_PROPERTY_OF
+            : OboLoader.RDFS_SUBCLASS_OF, obj);
+      } else if (!notClasses.contains(sub) && !notClasses.contains(obj)
+          && !"inverseOf".equals(edge[1])) {
+        builder.addAxiom(factory.getOWLSubClassOfAxiom(factory.getOWLClass(sub),
+            factory.getOWLObjectSomeValuesFrom(factory.getOWLObjectProperty(expand(edge[1])),
+                factory.getOWLClass(obj))));
+      }
+    }
+  }
+
+  private void addMeta(IRI subject, Meta meta) {
+    if (meta.definition != null) {
+      builder.addStatement(subject, OboLoader.DEFINITION, meta.definition, null, null);
+    }
+    for (String comment : meta.comments) {
+      builder.addStatement(subject, OboLoader.RDFS_COMMENT, comment, null, null);
+    }
+    for (String[] synonym : meta.synonyms) {
+      final String pred = synonym[0] != null ? synonym[0] : "hasRelatedSynonym";
+      final IRI predicate = pred.contains("://") ? IRI.create(pred)
+          : IRI.create(OboLoader.OBO_IN_OWL + pred);
+      builder.addStatement(subject, predicate, synonym[1], null, null);
+    }
+    for (String xref : meta.xrefs) {
+      builder.addStatement(subject, OboLoader.DB_XREF, xref, null, null);
+    }
+    for (String[] value : meta.properties) {
+      builder.addStatement(subject, expand(value[0]), value[1], null, null);
+    }
+    if (meta.deprecated) {
+      builder.addStatement(subject, OboLoader.OWL_DEPRECATED, "true", OboLoader.XSD_BOOLEAN,
+          null);
+    }
+  }
+
+  private Meta parseMeta(JsonReader reader) throws IOException {
+    final Meta meta = new Meta();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "definition":
+          meta.definition = parseValue(reader)[1];
+          break;
+        case "comments":
+          meta.comments.addAll(nextStrings(reader));
+          break;
+        case "synonyms":
+          reader.beginArray();
+          while (reader.hasNext()) {
+            final String[] synonym = parseValue(reader);
+            if (synonym[1] != null) {
+              meta.synonyms.add(synonym);
+            }
+          }
+          reader.endArray();
+          break;
+        case "xrefs":
+          reader.beginArray();
+          while (reader.hasNext()) {
+            final String xref = parseValue(reader)[1];
+            if (xref != null) {
+              meta.xrefs.add(xref);
+            }
+          }
+          reader.endArray();
+          break;
+        case "basicPropertyValues":
+          reader.beginArray();
+          while (reader.hasNext()) {
+            final String[] value = parseValue(reader);
+            if (value[0] != null && value[1] != null) {
+              meta.properties.add(value);
+            }
+          }
+          reader.endArray();
+          break;
+        case "deprecated":
+          meta.deprecated = reader.peek() == JsonToken.BOOLEAN ? reader.nextBoolean()
+              : "true".equals(nextString(reader));
+          break;
+        case "version":
+          meta.version = nextString(reader);
+          break;
+        default:
+          reader.skipValue();
+          break;
+      }
+    }
+    reader.endObject();
+    return meta;
+  }
+
+  /**
+   * Parses an object with a <i>pred</i> and a <i>val</i>.
+   *
+   * @return An array with the predicate and the value. Either can be null.
+   */
+  private String[] parseValue(JsonReader reader) throws IOException {
+    final String[] res = new String[2];
+    reader.beginObject();
+    while (reader.hasNext()) {
+      final String name = reader.nextName();
+      if ("pred".equals(name)) {
+        res[0] = nextString(reader);
+      } else if ("val".equals(name)) {
+        res[1] = nextString(reader);
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return res;
+  }
+
+  private static String nextString(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+    return reader.nextString();
+  }
+
+  private static List<String> nextStrings(JsonReader reader) throws IOException {
+    if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+      reader.skipValue();
+      return Collections.emptyList();
+    }
+    final List<String> res = new ArrayList<>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      final String value = nextString(reader);
+      if (value != null) {
+        res.add(value);
+      }
+    }
+    reader.endArray();
+    return res;
+  }
+
+  private static IRI expand(String id) {
+    return OboLoader.expandId(id, null, Collections.emptyMap());
+  }
+
+  /**
+   * The metadata of a node or a graph.
+   */
+  private static class Meta {
+    private String definition;
+    private final List<String> comments = new ArrayList<>();
+    private final List<String[]> synonyms = new ArrayList<>();
+    private final List<String> xrefs = new ArrayList<>();
+    private final List<String[]> properties = new ArrayList<>();
+    private boolean deprecated;
+    private String version;
+  }
+
+}
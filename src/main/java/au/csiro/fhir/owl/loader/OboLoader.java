@@ -0,0 +1,177 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.loader;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.vocab.OWL2Datatype;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+
+/**
+ * A fast loader for OBO flat files (<i>.obo</i>) and OBO Graphs JSON documents (<i>.json</i>).
+ * These formats already contain what is needed to create a code system (ids, names, synonyms,
+ * definitions, <i>is_a</i> relationships and the obsolete flag) so they are read directly into a
+ * {@link ReducedOntologyBuilder}, which is much faster than translating them with the OWL API.
+ *
+ * <p>Logical definitions (<i>intersection_of</i>, <i>union_of</i> and the OBO Graphs logical
+ * definition axioms), the existential relationships between classes, disjoint classes and the
+ * logical characteristics of relations (transitivity, chains, inverses, domains and ranges) are
+ * also read, so the hierarchy computed by a reasoner is the same as the one computed for the full
+ * ontology. Documents with other extensions, and documents that cannot be read, are loaded with the
+ * fallback loader.
+ */
+public class OboLoader implements OntologyLoader {
+
+  private static final Log log = LogFactory.getLog(OboLoader.class);
+
+  static final String OBO_PREFIX = "http://purl.obolibrary.org/obo/";
+  static final String OBO_IN_OWL = "http://www.geneontology.org/formats/oboInOwl#";
+
+  static final IRI RDF_TYPE = OWLRDFVocabulary.RDF_TYPE.getIRI();
+  static final IRI RDFS_LABEL = OWLRDFVocabulary.RDFS_LABEL.getIRI();
+  static final IRI RDFS_COMMENT = OWLRDFVocabulary.RDFS_COMMENT.getIRI();
+  static final IRI RDFS_SUBCLASS_OF = OWLRDFVocabulary.RDFS_SUBCLASS_OF.getIRI();
+  static final IRI RDFS_SUB_PROPERTY_OF = OWLRDFVocabulary.RDFS_SUB_PROPERTY_OF.getIRI();
+  static final IRI OWL_CLASS = OWLRDFVocabulary.OWL_CLASS.getIRI();
+  static final IRI OWL_OBJECT_PROPERTY = OWLRDFVocabulary.OWL_OBJECT_PROPERTY.getIRI();
+  static final IRI OWL_DATA_PROPERTY = OWLRDFVocabulary.OWL_DATA_PROPERTY.getIRI();
+  static final IRI OWL_ANNOTATION_PROPERTY = OWLRDFVocabulary.OWL_ANNOTATION_PROPERTY.getIRI();
+  static final IRI OWL_ONTOLOGY = OWLRDFVocabulary.OWL_ONTOLOGY.getIRI();
+  static final IRI OWL_VERSION_IRI = OWLRDFVocabulary.OWL_VERSION_IRI.getIRI();
+  static final IRI OWL_IMPORTS = OWLRDFVocabulary.OWL_IMPORTS.getIRI();
+  static final IRI OWL_EQUIVALENT_CLASS = OWLRDFVocabulary.OWL_EQUIVALENT_CLASS.getIRI();
+  static final IRI OWL_DISJOINT_WITH = OWLRDFVocabulary.OWL_DISJOINT_WITH.getIRI();
+  static final IRI RDFS_DOMAIN = OWLRDFVocabulary.RDFS_DOMAIN.getIRI();
+  static final IRI RDFS_RANGE = OWLRDFVocabulary.RDFS_RANGE.getIRI();
+  static final IRI OWL_DEPRECATED = OWLRDFVocabulary.OWL_DEPRECATED.getIRI();
+  static final IRI XSD_BOOLEAN = OWL2Datatype.XSD_BOOLEAN.getIRI();
+
+  static final IRI DEFINITION = IRI.create(OBO_PREFIX + "IAO_0000115");
+  static final IRI OBO_ID = IRI.create(OBO_IN_OWL + "id");
+  static final IRI DB_XREF = IRI.create(OBO_IN_OWL + "hasDbXref");
+  static final IRI ALTERNATIVE_ID = IRI.create(OBO_IN_OWL + "hasAlternativeId");
+
+  private final Set<IRI> annotationProperties;
+
+  private final OntologyLoader fallback;
+
+  /**
+   * Creates a new loader.
+   *
+   * @param annotationProperties The annotation properties that are kept.
+   * @param fallback The loader used for documents that this loader cannot handle.
+   */
+  public OboLoader(Set<IRI> annotationProperties, OntologyLoader fallback) {
+    this.annotationProperties = annotationProperties;
+    this.fallback = fallback;
+  }
+
+  /**
+   * Indicates if a file is an OBO flat file, based on its extension.
+   *
+   * @param file The file.
+   * @return True if the file name ends in <i>.obo</i>.
+   */
+  public static boolean isObo(File file) {
+    return file.getName().toLowerCase(Locale.ROOT).endsWith(".obo");
+  }
+
+  /**
+   * Indicates if a file might be an OBO Graphs JSON document, based on its extension.
+   *
+   * @param file The file.
+   * @return True if the file name ends in <i>.json</i>.
+   */
+  public static boolean isOboGraphs(File file) {
+    return file.getName().toLowerCase(Locale.ROOT).endsWith(".json");
+  }
+
+  @Override
+  public OWLOntology load(OWLOntologyManager manager, File input)
+      throws OWLOntologyCreationException {
+    return load(manager, input, new HashSet<>());
+  }
+
+  private OWLOntology load(OWLOntologyManager manager, File input, Set<File> visited)
+      throws OWLOntologyCreationException {
+    final boolean obo = isObo(input);
+    if (!obo && !isOboGraphs(input)) {
+      return fallback.load(manager, input);
+    }
+
+    visited.add(input.getAbsoluteFile());
+    final long start = System.currentTimeMillis();
+    final ReducedOntologyBuilder builder = new ReducedOntologyBuilder(
+        manager.getOWLDataFactory(), annotationProperties);
+    try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(input),
+        StandardCharsets.UTF_8), 1 << 16)) {
+      if (obo) {
+        new OboParser(builder, manager.getOWLDataFactory()).parse(reader);
+      } else {
+        new OboGraphsParser(builder, manager.getOWLDataFactory()).parse(reader);
+      }
+    } catch (UnsupportedDocumentException e) {
+      log.info("Using standard parser for " + input.getAbsolutePath() + ": " + e.getMessage());
+      return fallback.load(manager, input);
+    } catch (IOException e) {
+      log.info("Using standard parser for " + input.getAbsolutePath() + ": "
+          + e.getLocalizedMessage());
+      return fallback.load(manager, input);
+    }
+
+    // Imports that are local files are also loaded with this loader
+    LoaderUtils.loadImports(manager, builder.getImports(), (m, f) -> load(m, f, visited), visited);
+
+    final OWLOntology ont = builder.build(manager, input);
+    log.info("Loaded " + ont.getAxiomCount() + " axioms from " + input.getAbsolutePath()
+        + " in " + (System.currentTimeMillis() - start) + "ms using the OBO loader");
+    return ont;
+  }
+
+  /**
+   * Expands an OBO identifier into an IRI, following the OBO 1.4 translation rules. Identifiers
+   * that are already IRIs are returned unchanged, prefixed identifiers such as GO:0008150 are
+   * expanded using the declared id spaces or the OBO PURL namespace, and unprefixed identifiers
+   * are expanded in the namespace of the ontology.
+   *
+   * @param id The identifier.
+   * @param ontologyId The id of the ontology. Can be null.
+   * @param idSpaces The id spaces declared in the document, by prefix.
+   * @return The IRI.
+   */
+  static IRI expandId(String id, String ontologyId, Map<String, String> idSpaces) {
+    if (id.contains("://") || id.startsWith("urn:")) {
+      return IRI.create(id);
+    }
+    final int colon = id.indexOf(':');
+    if (colon > 0) {
+      final String prefix = id.substring(0, colon);
+      final String local = id.substring(colon + 1);
+      final String base = idSpaces.get(prefix);
+      if (base != null) {
+        return IRI.create(base + local);
+      }
+      return IRI.create(OBO_PREFIX + prefix + "_" + local);
+    }
+    return IRI.create(OBO_PREFIX + (ontologyId != null ? ontologyId : "") + "#" + id);
+  }
+
+}
@@ -0,0 +1,574 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.loader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClassExpression;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+
+/**
+ * Parses an OBO flat file into a {@link ReducedOntologyBuilder}. Only the header and the
+ * <i>Term</i> and <i>Typedef</i> stanzas are read, and only the tags that are relevant for a code
+ * system or for classification, including the logical characteristics of relations such as
+ * <i>is_transitive</i>, <i>transitive_over</i> and <i>holds_over_chain</i>, their domains and
+ * ranges, and disjoint classes. Relations are resolved once the whole document has been read,
+ * because the <i>Typedef</i> stanzas, which can map shorthand relation ids such as
+ * <i>part_of</i> to OBO identifiers using an <i>xref</i>, usually come last.
+ */
+class OboParser {
+
+  private static final Map<String, String> SYNONYM_SCOPES = new HashMap<>();
+
+  static {
+    SYNONYM_SCOPES.put("EXACT", OboLoader.OBO_IN_OWL + "hasExactSynonym");
+    SYNONYM_SCOPES.put("BROAD", OboLoader.OBO_IN_OWL + "hasBroadSynonym");
+    SYNONYM_SCOPES.put("NARROW", OboLoader.OBO_IN_OWL + "hasNarrowSynonym");
+    SYNONYM_SCOPES.put("RELATED", OboLoader.OBO_IN_OWL + "hasRelatedSynonym");
+  }
+
+  private final ReducedOntologyBuilder builder;
+
+  private final OWLDataFactory factory;
+
+  private final Map<String, String> idSpaces = new HashMap<>();
+
+  /**
+   * Unprefixed relation ids mapped to the IRIs of the OBO identifiers in their <i>xref</i>.
+   */
+  private final Map<String, IRI> shorthands = new HashMap<>();
+
+  private String ontologyId;
+
+  private IRI ontologyIri;
+
+  private final List<String[]> header = new ArrayList<>();
+
+  private boolean inHeader = true;
+
+  /**
+   * Existential relationships: subject IRI, relation id and filler id.
+   */
+  private final List<Object[]> relationships = new ArrayList<>();
+
+  /**
+   * Subproperty relationships between relation ids.
+   */
+  private final List<String[]> subProperties = new ArrayList<>();
+
+  /**
+   * The logical characteristics of relations: tag, relation id and the ids of the related
+   * relations, if any.
+   */
+  private final List<String[]> characteristics = new ArrayList<>();
+
+  /**
+   * The elements of the intersection and union definitions, by class.
+   */
+  private final Map<IRI, List<String[]>> intersections = new HashMap<>();
+  private final Map<IRI, List<String>> unions = new HashMap<>();
+
+  OboParser(ReducedOntologyBuilder builder, OWLDataFactory factory) {
+    this.builder = builder;
+    this.factory = factory;
+  }
+
+  void parse(Reader in) throws IOException, UnsupportedDocumentException {
+    final BufferedReader reader = new BufferedReader(in);
+    String stanzaType = null;
+    List<String[]> stanza = new ArrayList<>();
+    String line;
+    int lineNumber = 0;
+    while ((line = reader.readLine()) != null) {
+      lineNumber++;
+      final String trimmed = (lineNumber == 1 ? line.replace("\uFEFF", "") : line).trim();
+      if (trimmed.isEmpty() || trimmed.startsWith("!")) {
+        continue;
+      }
+      if (trimmed.startsWith("[")) {
+        final int end = trimmed.indexOf(']');
+        if (end < 0) {
+          throw new UnsupportedDocumentException("invalid stanza header on line " + lineNumber);
+        }
+        if (inHeader) {
+          processHeader();
+        } else {
+          processStanza(stanzaType, stanza);
+        }
+        stanzaType = trimmed.substring(1, end).trim();
+        stanza = new ArrayList<>();
+        continue;
+      }
+      final int colon = trimmed.indexOf(':');
+      if (colon <= 0 || trimmed.substring(0, colon).contains(" ")) {
+        throw new UnsupportedDocumentException("line " + lineNumber + " is not a tag-value pair");
+      }
+      final String[] tag = new String[] { trimmed.substring(0, colon),
+          stripTrailing(trimmed.substring(colon + 1)) };
+      if (inHeader) {
+        header.add(tag);
+      } else {
+        stanza.add(tag);
+      }
+    }
+    if (inHeader) {
+      processHeader();
+    } else {
+      processStanza(stanzaType, stanza);
+    }
+    resolveRelations();
+  }
+
+  private void processHeader() {
+    inHeader = false;
+    for (String[] tag : header) {
+      if ("idspace".equals(tag[0])) {
+        final String[] parts = tag[1].split("\\s+");
+        if (parts.length >= 2) {
+          idSpaces.put(parts[0], parts[1]);
+        }
+      } else if ("ontology".equals(tag[0])) {
+        ontologyId = tag[1];
+      }
+    }
+    if (ontologyId == null) {
+      return;
+    }
+
+    ontologyIri = ontologyId.contains("://") ? IRI.create(ontologyId)
+        : IRI.create(OboLoader.OBO_PREFIX + ontologyId + ".owl");
+    builder.addStatement(ontologyIri, OboLoader.RDF_TYPE, OboLoader.OWL_ONTOLOGY);
+    for (String[] tag : header) {
+      switch (tag[0]) {
+        case "data-version":
+          builder.addStatement(ontologyIri, OboLoader.OWL_VERSION_IRI,
+              IRI.create(OboLoader.OBO_PREFIX + ontologyId + "/" + tag[1] + "/" + ontologyId
+                  + ".owl"));
+          break;
+        case "import":
+          builder.addStatement(ontologyIri, OboLoader.OWL_IMPORTS, expandImport(tag[1]));
+          break;
+        case "remark":
+          builder.addStatement(ontologyIri, OboLoader.RDFS_COMMENT, unescape(tag[1]), null, null);
+          break;
+        case "property_value":
+          addPropertyValue(ontologyIri, tag[1]);
+          break;
+        default:
+          break;
+      }
+    }
+  }
+
+  private void processStanza(String type, List<String[]> tags) {
+    final boolean term = "Term".equals(type);
+    if (!term && !"Typedef".equals(type)) {
+      return;
+    }
+    String id = null;
+    boolean metadata = false;
+    for (String[] tag : tags) {
+      if ("id".equals(tag[0]) && id == null) {
+        id = tag[1];
+      } else if ("is_metadata_tag".equals(tag[0])) {
+        metadata = "true".equals(tag[1]);
+      } else if (!term && "xref".equals(tag[0]) && id != null && !isPrefixed(id)) {
+        final String xref = firstToken(tag[1]);
+        if (isPrefixed(xref) && !shorthands.containsKey(id)) {
+          shorthands.put(id, expand(xref));
+        }
+      }
+    }
+    if (id == null) {
+      return;
+    }
+
+    final IRI subject;
+    if (term) {
+      subject = expand(id);
+      builder.addStatement(subject, OboLoader.RDF_TYPE, OboLoader.OWL_CLASS);
+    } else {
+      subject = expandRelation(id);
+      builder.addStatement(subject, OboLoader.RDF_TYPE, metadata
+          ? OboLoader.OWL_ANNOTATION_PROPERTY : OboLoader.OWL_OBJECT_PROPERTY);
+    }
+    builder.addStatement(subject, OboLoader.OBO_ID, id, null, null);
+
+    for (String[] tag : tags) {
+      final String value = tag[1];
+      switch (tag[0]) {
+        case "name":
+          builder.addStatement(subject, OboLoader.RDFS_LABEL, unescape(value), null, null);
+          break;
+        case "def":
+          builder.addStatement(subject, OboLoader.DEFINITION, quoted(value), null, null);
+          break;
+        case "comment":
+          builder.addStatement(subject, OboLoader.RDFS_COMMENT, unescape(value), null, null);
+          break;
+        case "synonym":
+          addSynonym(subject, value);
+          break;
+        case "xref":
+          builder.addStatement(subject, OboLoader.DB_XREF, firstToken(value), null, null);
+          break;
+        case "alt_id":
+          builder.addStatement(subject, OboLoader.ALTERNATIVE_ID, value, null, null);
+          break;
+        case "is_obsolete":
+          if ("true".equals(value)) {
+            builder.addStatement(subject, OboLoader.OWL_DEPRECATED, "true",
+                OboLoader.XSD_BOOLEAN, null);
+          }
+          break;
+        case "is_a":
+          if (term) {
+            builder.addStatement(subject, OboLoader.RDFS_SUBCLASS_OF, expand(firstToken(value)));
+          } else {
+            subProperties.add(new String[] { id, firstToken(value) });
+          }
+          break;
+        case "disjoint_from":
+          if (term) {
+            builder.addStatement(subject, OboLoader.OWL_DISJOINT_WITH, expand(firstToken(value)));
+          }
+          break;
+        case "domain":
+        case "range":
+          if (!term && !metadata) {
+            builder.addStatement(subject, "domain".equals(tag[0]) ? OboLoader.RDFS_DOMAIN
+                : OboLoader.RDFS_RANGE, expand(firstToken(value)));
+          }
+          break;
+        case "is_transitive":
+        case "is_reflexive":
+        case "is_symmetric":
+        case "is_asymmetric":
+        case "is_functional":
+        case "is_inverse_functional":
+          if (!term && !metadata && "true".equals(value)) {
+            characteristics.add(new String[] { tag[0], id });
+          }
+          break;
+        case "inverse_of":
+        case "transitive_over":
+        case "holds_over_chain":
+        case "equivalent_to_chain":
+          if (!term && !metadata && !value.isEmpty()) {
+            final String[] parts = value.split("\\s+");
+            final String[] characteristic = new String[parts.length + 2];
+            characteristic[0] = tag[0];
+            characteristic[1] = id;
+            System.arraycopy(parts, 0, characteristic, 2, parts.length);
+            characteristics.add(characteristic);
+          }
+          break;
+        case "equivalent_to":
+          if (term) {
+            builder.addStatement(subject, OboLoader.OWL_EQUIVALENT_CLASS,
+                expand(firstToken(value)));
+          }
+          break;
+        case "intersection_of":
+          if (term) {
+            final String[] parts = value.split("\\s+");
+            if (parts.length == 1) {
+              // The genus is always a superclass
+              builder.addStatement(subject, OboLoader.RDFS_SUBCLASS_OF, expand(parts[0]));
+            }
+            intersections.computeIfAbsent(subject, k -> new ArrayList<>()).add(parts);
+          }
+          break;
+        case "union_of":
+          if (term) {
+            unions.computeIfAbsent(subject, k -> new ArrayList<>()).add(firstToken(value));
+          }
+          break;
+        case "relationship":
+          if (term) {
+            final String[] parts = value.split("\\s+");
+            if (parts.length >= 2) {
+              relationships.add(new Object[] { subject, parts[0], parts[1] });
+            }
+          }
+          break;
+        case "property_value":
+          addPropertyValue(subject, value);
+          break;
+        default:
+          break;
+      }
+    }
+  }
+
+  /**
+   * Adds the axioms that refer to relations, once all the shorthand relation ids are known.
+   */
+  private void resolveRelations() {
+    for (String[] pair : subProperties) {
+      builder.addStatement(expandRelation(pair[0]), OboLoader.RDFS_SUB_PROPERTY_OF,
+          expandRelation(pair[1]));
+    }
+    for (String[] characteristic : characteristics) {
+      final OWLAxiom axiom = createCharacteristic(characteristic);
+      if (axiom != null) {
+        builder.addAxiom(axiom);
+      }
+    }
+    for (Object[] rel : relationships) {
+      builder.addAxiom(factory.getOWLSubClassOfAxiom(factory.getOWLClass((IRI) rel[0]),
+          existential((String) rel[1], (String) rel[2])));
+    }
+    for (Map.Entry<IRI, List<String[]>> entry : intersections.entrySet()) {
+      final Set<OWLClassExpression> operands = new LinkedHashSet<>();
+      for (String[] parts : entry.getValue()) {
+        if (parts.length == 1) {
+          operands.add(factory.getOWLClass(expand(parts[0])));
+        } else {
+          operands.add(existential(parts[0], parts[1]));
+        }
+      }
+      addDefinition(entry.getKey(), operands.size() == 1 ? operands.iterator().next()
+          : factory.getOWLObjectIntersectionOf(operands));
+    }
+    for (Map.Entry<IRI, List<String>> entry : unions.entrySet()) {
+      final Set<OWLClassExpression> operands = new LinkedHashSet<>();
+      for (String id : entry.getValue()) {
+        operands.add(factory.getOWLClass(expand(id)));
+      }
+      addDefinition(entry.getKey(), operands.size() == 1 ? operands.iterator().next()
+          : factory.getOWLObjectUnionOf(operands));
+    }
+  }
+
+  /**
+   * Creates the axiom for a logical characteristic of a relation, following the OBO 1.4
+   * translation rules. Chains are translated into property chain axioms whose superproperty is
+   * the relation, e.g. <i>regulates transitive_over part_of</i> means that regulates followed by
+   * part_of implies regulates.
+   *
+   * @return The axiom or null if the tag value is incomplete.
+   */
+  private OWLAxiom createCharacteristic(String[] characteristic) {
+    final OWLObjectProperty prop = factory.getOWLObjectProperty(
+        expandRelation(characteristic[1]));
+    switch (characteristic[0]) {
+      case "is_transitive":
+        return factory.getOWLTransitiveObjectPropertyAxiom(prop);
+      case "is_reflexive":
+        return factory.getOWLReflexiveObjectPropertyAxiom(prop);
+      case "is_symmetric":
+        return factory.getOWLSymmetricObjectPropertyAxiom(prop);
+      case "is_asymmetric":
+        return factory.getOWLAsymmetricObjectPropertyAxiom(prop);
+      case "is_functional":
+        return factory.getOWLFunctionalObjectPropertyAxiom(prop);
+      case "is_inverse_functional":
+        return factory.getOWLInverseFunctionalObjectPropertyAxiom(prop);
+      case "inverse_of":
+        return factory.getOWLInverseObjectPropertiesAxiom(prop, relation(characteristic[2]));
+      case "transitive_over":
+        return factory.getOWLSubPropertyChainOfAxiom(
+            Arrays.asList(prop, relation(characteristic[2])), prop);
+      default:
+        // holds_over_chain and equivalent_to_chain
+        if (characteristic.length < 4) {
+          return null;
+        }
+        return factory.getOWLSubPropertyChainOfAxiom(Arrays.asList(relation(characteristic[2]),
+            relation(characteristic[3])), prop);
+    }
+  }
+
+  private OWLObjectProperty relation(String id) {
+    return factory.getOWLObjectProperty(expandRelation(id));
+  }
+
+  private void addDefinition(IRI subject, OWLClassExpression definition) {
+    builder.addAxiom(factory.getOWLEquivalentClassesAxiom(factory.getOWLClass(subject),
+        definition));
+  }
+
+  private OWLClassExpression existential(String relation, String filler) {
+    return factory.getOWLObjectSomeValuesFrom(relation(relation),
+        factory.getOWLClass(expand(filler)));
+  }
+
+  private void addSynonym(IRI subject, String value) {
+    final String text = quoted(value);
+    final String rest = value.substring(closingQuote(value) + 1).trim();
+    final String scope = rest.isEmpty() ? "RELATED" : firstToken(rest);
+    final String predicate = SYNONYM_SCOPES.getOrDefault(scope,
+        SYNONYM_SCOPES.get("RELATED"));
+    builder.addStatement(subject, IRI.create(predicate), text, null, null);
+  }
+
+  /**
+   * Adds a <i>property_value</i> tag. The value is either a quoted literal followed by its
+   * datatype or an identifier.
+   */
+  private void addPropertyValue(IRI subject, String value) {
+    final int space = value.indexOf(' ');
+    if (space < 0) {
+      return;
+    }
+    final IRI predicate = expand(value.substring(0, space));
+    final String rest = value.substring(space + 1).trim();
+    if (rest.startsWith("\"")) {
+      final String datatype = firstToken(rest.substring(closingQuote(rest) + 1));
+      builder.addStatement(subject, predicate, quoted(rest), datatype.isEmpty() ? null
+          : expandDatatype(datatype), null);
+    } else {
+      final String[] parts = rest.split("\\s+");
+      if (parts.length > 1) {
+        // An unquoted literal with a datatype
+        builder.addStatement(subject, predicate, parts[0], expandDatatype(parts[1]), null);
+      } else {
+        builder.addStatement(subject, predicate, expand(parts[0]));
+      }
+    }
+  }
+
+  private IRI expand(String id) {
+    return OboLoader.expandId(id, ontologyId, idSpaces);
+  }
+
+  private IRI expandRelation(String id) {
+    final IRI iri = shorthands.get(id);
+    return iri != null ? iri : expand(id);
+  }
+
+  private IRI expandDatatype(String datatype) {
+    if (datatype.startsWith("xsd:")) {
+      return IRI.create("http://www.w3.org/2001/XMLSchema#" + datatype.substring(4));
+    }
+    return expand(datatype);
+  }
+
+  private IRI expandImport(String value) {
+    if (value.contains("://")) {
+      return IRI.create(value);
+    }
+    return IRI.create(OboLoader.OBO_PREFIX + (value.endsWith(".owl") || value.endsWith(".obo")
+        ? value : value + ".owl"));
+  }
+
+  private static boolean isPrefixed(String id) {
+    return id.indexOf(':') > 0 && !id.contains("://");
+  }
+
+  private static String firstToken(String value) {
+    final String trimmed = value.trim();
+    final int space = trimmed.indexOf(' ');
+    return space < 0 ? trimmed : trimmed.substring(0, space);
+  }
+
+  /**
+   * Returns the index of the quote that closes the quoted string at the start of a value, or the
+   * index of the last character if it is not closed.
+   */
+  private static int closingQuote(String value) {
+    for (int i = 1; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      if (c == '\\') {
+        i++;
+      } else if (c == '"') {
+        return i;
+      }
+    }
+    return value.length() - 1;
+  }
+
+  /**
+   * Returns the contents of the quoted string at the start of a value.
+   */
+  private static String quoted(String value) {
+    if (!value.startsWith("\"")) {
+      return unescape(value);
+    }
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 1; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      if (c == '\\' && i + 1 < value.length()) {
+        sb.append(unescape(value.charAt(++i)));
+      } else if (c == '"') {
+        break;
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+
+  private static String unescape(String value) {
+    if (value.indexOf('\\') < 0) {
+      return value;
+    }
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      if (c == '\\' && i + 1 < value.length()) {
+        sb.append(unescape(value.charAt(++i)));
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+
+  private static char unescape(char c) {
+    switch (c) {
+      case 'n':
+        return '\n';
+      case 't':
+        return '\t';
+      case 'W':
+        return ' ';
+      default:
+        return c;
+    }
+  }
+
+  /**
+   * Removes the trailing comment and modifiers from a tag value. Both are ignored inside quoted
+   * strings.
+   */
+  static String stripTrailing(String value) {
+    boolean quoted = false;
+    int modifiers = -1;
+    int end = value.length();
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      if (c == '\\') {
+        i++;
+      } else if (c == '"') {
+        quoted = !quoted;
+      } else if (!quoted && c == '!') {
+        end = i;
+        break;
+      } else if (!quoted && c == '{') {
+        modifiers = i;
+      }
+    }
+    String res = value.substring(0, end).trim();
+    if (modifiers >= 0 && modifiers < end && res.endsWith("}")) {
+      res = res.substring(0, modifiers).trim();
+    }
+    return res;
+  }
+
+}
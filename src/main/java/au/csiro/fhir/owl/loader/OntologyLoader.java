@@ -0,0 +1,49 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.loader;
+
+import java.io.File;
+
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+/**
+ * Loads an ontology document, and its imports closure, into an ontology manager. Loaders can be
+ * chained, so that a loader that cannot deal with an input can delegate to the next one.
+ */
+@FunctionalInterface
+public interface OntologyLoader {
+
+  /**
+   * The default loader, which lets the OWL API parse the document and resolve its imports.
+   */
+  OntologyLoader DEFAULT = OWLOntologyManager::loadOntologyFromOntologyDocument;
+
+  /**
+   * Returns a loader that, like the default loader, lets the OWL API parse the document, but only
+   * with the parser for the format of the document. A document that cannot be parsed in the given
+   * format fails straight away, while one whose format was detected from its header is parsed
+   * again with every parser.
+   *
+   * @param hint The format of the document or null to detect it from its header.
+   * @return The loader.
+   */
+  static OntologyLoader forFormat(InputFormat hint) {
+    return (manager, input) -> InputFormat.loadOntology(manager, input, hint,
+        manager.getOntologyLoaderConfiguration());
+  }
+
+  /**
+   * Loads an ontology document.
+   *
+   * @param manager The manager the ontology, and its imports, are loaded into.
+   * @param input The ontology document.
+   * @return The loaded ontology.
+   * @throws OWLOntologyCreationException If the ontology cannot be loaded.
+   */
+  OWLOntology load(OWLOntologyManager manager, File input) throws OWLOntologyCreationException;
+
+}
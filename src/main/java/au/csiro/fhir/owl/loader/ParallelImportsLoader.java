@@ -0,0 +1,392 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.loader;
+
+import au.csiro.fhir.owl.metrics.ImportResolutionEvent;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.io.IRIDocumentSource;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.MissingImportHandlingStrategy;
+import org.semanticweb.owlapi.model.OWLImportsDeclaration;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyIRIMapper;
+import org.semanticweb.owlapi.model.OWLOntologyLoaderConfiguration;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.parameters.OntologyCopy;
+
+/**
+ * Loads an ontology and its imports closure using a bounded thread pool. The header of each
+ * document is scanned to find its imports, which are resolved through the IRI mappers of the
+ * ontology manager and parsed concurrently, each one in its own ontology manager. Once all the
+ * documents have been parsed they are moved into the target manager, where the imports closure
+ * is assembled.
+ */
+public class ParallelImportsLoader implements OntologyLoader {
+
+  private static final Log log = LogFactory.getLog(ParallelImportsLoader.class);
+
+  private final int threads;
+
+  private final InputFormat rootFormat;
+
+  private final List<ImportTiming> timings = Collections.synchronizedList(new ArrayList<>());
+
+  /**
+   * Creates a new loader.
+   *
+   * @param threads The maximum number of documents that are parsed concurrently.
+   */
+  public ParallelImportsLoader(int threads) {
+    this(threads, null);
+  }
+
+  /**
+   * Creates a new loader. The format of the documents in the imports closure that are local files
+   * is detected from their headers, so only one parser is tried.
+   *
+   * @param threads The maximum number of documents that are parsed concurrently.
+   * @param rootFormat The format of the root document or null to detect it.
+   */
+  public ParallelImportsLoader(int threads, InputFormat rootFormat) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("The number of threads must be positive.");
+    }
+    this.threads = threads;
+    this.rootFormat = rootFormat;
+  }
+
+  @Override
+  public OWLOntology load(OWLOntologyManager manager, File input)
+      throws OWLOntologyCreationException {
+    timings.clear();
+    final ExecutorService executor = Executors.newFixedThreadPool(threads,
+        LoaderUtils.daemonThreadFactory("import-loader"));
+    try {
+      final Context ctx = new Context(manager, executor);
+      final Future<ParseResult> root = ctx.submit(null, IRI.create(input.getAbsoluteFile()),
+          rootFormat);
+
+      // Tasks enqueue their imports before they finish, so the queue is only empty once the
+      // whole closure has been parsed
+      final List<ParseResult> results = new ArrayList<>();
+      Future<ParseResult> next;
+      while ((next = ctx.pending.poll()) != null) {
+        final ParseResult res = get(next, ctx);
+        if (res != null) {
+          results.add(res);
+        }
+      }
+
+      final OWLOntology rootOnt = assemble(manager, results, get(root, ctx));
+      logTimings(ctx.start);
+      return rootOnt;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Returns the timings of the documents parsed during the last load.
+   *
+   * @return The timings, in the order the documents finished parsing.
+   */
+  public List<ImportTiming> getTimings() {
+    synchronized (timings) {
+      return new ArrayList<>(timings);
+    }
+  }
+
+  private ParseResult get(Future<ParseResult> future, Context ctx)
+      throws OWLOntologyCreationException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new OWLOntologyCreationException("Interrupted while loading imports.", e);
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof ImportFailure) {
+        final ImportFailure failure = (ImportFailure) cause;
+        if (failure.importIri != null && ctx.config.getMissingImportHandlingStrategy()
+            == MissingImportHandlingStrategy.SILENT) {
+          log.warn("Unable to load import " + failure.importIri + ": "
+              + failure.getCause().getLocalizedMessage());
+          return null;
+        }
+        throw (OWLOntologyCreationException) failure.getCause();
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else {
+        throw new OWLOntologyCreationException(cause);
+      }
+    }
+  }
+
+  /**
+   * Moves the parsed ontologies into the target manager, imports first.
+   */
+  private OWLOntology assemble(OWLOntologyManager manager, List<ParseResult> results,
+      ParseResult root) throws OWLOntologyCreationException {
+    final List<ParseResult> moved = new ArrayList<>();
+    for (ParseResult res : results) {
+      for (OWLOntology ont : new ArrayList<>(res.manager.getOntologies())) {
+        if (ont == root.ontology || manager.contains(ont.getOntologyID())) {
+          continue;
+        }
+        final OWLOntology copy = manager.copyOntology(ont, OntologyCopy.MOVE);
+        if (ont == res.ontology) {
+          res.ontology = copy;
+          moved.add(res);
+        }
+      }
+    }
+    final OWLOntology rootOnt = manager.copyOntology(root.ontology, OntologyCopy.MOVE);
+
+    // Imports are resolved by ontology IRI, version IRI or document IRI. If the IRI used in the
+    // import declaration is none of these then the document IRI is set to it.
+    for (ParseResult res : moved) {
+      final OWLImportsDeclaration decl = manager.getOWLDataFactory()
+          .getOWLImportsDeclaration(res.importIri);
+      if (manager.getImportedOntology(decl) == null) {
+        manager.setOntologyDocumentIRI(res.ontology, res.importIri);
+      }
+    }
+    return rootOnt;
+  }
+
+  private void logTimings(long start) {
+    final List<ImportTiming> sorted = getTimings();
+    sorted.sort(Comparator.comparingLong(ImportTiming::getStartMillis));
+    ImportTiming slowest = null;
+    for (ImportTiming t : sorted) {
+      log.info("Parsed " + (t.getImportIri() != null ? t.getImportIri() : "root ontology")
+          + " from " + t.getDocumentIri() + ": started at +" + t.getStartMillis() + "ms, took "
+          + t.getDurationMillis() + "ms, " + t.getAxiomCount() + " axioms");
+      if (slowest == null || t.getDurationMillis() > slowest.getDurationMillis()) {
+        slowest = t;
+      }
+    }
+    log.info("Loaded " + sorted.size() + " documents in " + (System.currentTimeMillis() - start)
+        + "ms using " + threads + " threads" + (slowest != null ? ", slowest document was "
+        + slowest.getDocumentIri() + " (" + slowest.getDurationMillis() + "ms)" : ""));
+  }
+
+  /**
+   * The state shared by the tasks of a single load.
+   */
+  private class Context {
+    private final OWLOntologyManager manager;
+    private final ExecutorService executor;
+    private final OWLOntologyLoaderConfiguration config;
+    private final Queue<Future<ParseResult>> pending = new ConcurrentLinkedQueue<>();
+    private final ConcurrentHashMap<IRI, Boolean> scheduled = new ConcurrentHashMap<>();
+    private final long start = System.currentTimeMillis();
+
+    private Context(OWLOntologyManager manager, ExecutorService executor) {
+      this.manager = manager;
+      this.executor = executor;
+      this.config = manager.getOntologyLoaderConfiguration();
+    }
+
+    private Future<ParseResult> submit(IRI importIri, IRI documentIri, InputFormat hint) {
+      final Future<ParseResult> future = executor.submit(() -> parse(this, importIri, documentIri,
+          hint));
+      pending.add(future);
+      return future;
+    }
+
+    /**
+     * Schedules the parsing of an import, unless it has already been scheduled or it has already
+     * been loaded into the target manager.
+     */
+    private void schedule(IRI importIri) {
+      if (scheduled.putIfAbsent(importIri, Boolean.TRUE) != null) {
+        return;
+      }
+      final OWLImportsDeclaration decl = manager.getOWLDataFactory()
+          .getOWLImportsDeclaration(importIri);
+      if (manager.getImportedOntology(decl) != null || config.isIgnoredImport(importIri)) {
+        return;
+      }
+      submit(importIri, LoaderUtils.resolveDocumentIri(manager, importIri), null);
+    }
+  }
+
+  private ParseResult parse(Context ctx, IRI importIri, IRI documentIri, InputFormat hint)
+      throws ImportFailure {
+    final long start = System.currentTimeMillis();
+    final ImportResolutionEvent event = new ImportResolutionEvent();
+    event.begin();
+
+    // Imports found in the header are parsed by other tasks, so this task ignores them
+    OWLOntologyLoaderConfiguration config = ctx.config;
+    final File document = LoaderUtils.toFile(documentIri);
+    if (document != null) {
+      try {
+        for (IRI imp : DocumentHeader.scan(document).getImports()) {
+          config = config.addIgnoredImport(imp);
+          ctx.schedule(imp);
+        }
+      } catch (IOException e) {
+        log.warn("Unable to scan imports of " + documentIri + ": " + e.getLocalizedMessage());
+      }
+    }
+
+    final OWLOntologyManager workerManager = OWLManager.createOWLOntologyManager();
+    for (OWLOntologyIRIMapper mapper : ctx.manager.getIRIMappers()) {
+      workerManager.getIRIMappers().add(mapper);
+    }
+    final OWLOntology ont;
+    try {
+      // Local documents are only parsed with the parser for their format
+      ont = document != null ? InputFormat.loadOntology(workerManager, document, hint, config)
+          : workerManager.loadOntologyFromOntologyDocument(new IRIDocumentSource(documentIri),
+              config);
+    } catch (OWLOntologyCreationException e) {
+      commit(event, importIri, documentIri, null);
+      throw new ImportFailure(importIri, e);
+    }
+
+    // Schedule any imports the scan missed, e.g. because the document is not a local file. Those
+    // that the worker manager already loaded are moved with the rest of its ontologies.
+    for (OWLImportsDeclaration decl : ont.getImportsDeclarations()) {
+      if (workerManager.getImportedOntology(decl) == null) {
+        ctx.schedule(decl.getIRI());
+      } else {
+        ctx.scheduled.putIfAbsent(decl.getIRI(), Boolean.TRUE);
+      }
+    }
+
+    final ParseResult res = new ParseResult(importIri, ont, workerManager);
+    timings.add(new ImportTiming(importIri, documentIri, start - ctx.start,
+        System.currentTimeMillis() - start, ont.getAxiomCount()));
+    commit(event, importIri, documentIri, ont);
+    return res;
+  }
+
+  private static void commit(ImportResolutionEvent event, IRI importIri, IRI documentIri,
+      OWLOntology ont) {
+    if (event.shouldCommit()) {
+      event.importIri = importIri != null ? importIri.toString() : null;
+      event.documentIri = documentIri.toString();
+      event.axioms = ont != null ? ont.getAxiomCount() : 0;
+      event.successful = ont != null;
+      event.commit();
+    }
+  }
+
+  /**
+   * An ontology parsed into its own manager.
+   */
+  private static class ParseResult {
+    private final IRI importIri;
+    private OWLOntology ontology;
+    private final OWLOntologyManager manager;
+
+    private ParseResult(IRI importIri, OWLOntology ontology, OWLOntologyManager manager) {
+      this.importIri = importIri;
+      this.ontology = ontology;
+      this.manager = manager;
+    }
+  }
+
+  /**
+   * Wraps the failure to load a document, remembering the import it was loaded for.
+   */
+  private static class ImportFailure extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private final IRI importIri;
+
+    private ImportFailure(IRI importIri, OWLOntologyCreationException cause) {
+      super(cause);
+      this.importIri = importIri;
+    }
+  }
+
+  /**
+   * The time it took to parse a document of the imports closure.
+   */
+  public static class ImportTiming {
+    private final IRI importIri;
+    private final IRI documentIri;
+    private final long startMillis;
+    private final long durationMillis;
+    private final int axiomCount;
+
+    ImportTiming(IRI importIri, IRI documentIri, long startMillis, long durationMillis,
+        int axiomCount) {
+      this.importIri = importIri;
+      this.documentIri = documentIri;
+      this.startMillis = startMillis;
+      this.durationMillis = durationMillis;
+      this.axiomCount = axiomCount;
+    }
+
+    /**
+     * Returns the IRI in the import declaration.
+     *
+     * @return the import IRI or null for the root ontology
+     */
+    public IRI getImportIri() {
+      return importIri;
+    }
+
+    /**
+     * Returns the IRI of the document that was parsed.
+     *
+     * @return the document IRI
+     */
+    public IRI getDocumentIri() {
+      return documentIri;
+    }
+
+    /**
+     * Returns when the document started parsing, relative to the start of the load.
+     *
+     * @return the start, in milliseconds
+     */
+    public long getStartMillis() {
+      return startMillis;
+    }
+
+    /**
+     * Returns how long it took to parse the document.
+     *
+     * @return the duration, in milliseconds
+     */
+    public long getDurationMillis() {
+      return durationMillis;
+    }
+
+    /**
+     * Returns the number of axioms in the document.
+     *
+     * @return the number of axioms
+     */
+    public int getAxiomCount() {
+      return axiomCount;
+    }
+  }
+
+}
@@ -0,0 +1,321 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.loader;
+
+import com.google.common.base.Optional;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.semanticweb.owlapi.model.AddImport;
+import org.semanticweb.owlapi.model.AddOntologyAnnotation;
+import org.semanticweb.owlapi.model.EntityType;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLAnnotationValue;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLDataProperty;
+import org.semanticweb.owlapi.model.OWLImportsDeclaration;
+import org.semanticweb.owlapi.model.OWLLiteral;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyID;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+
+/**
+ * Builds a reduced ontology from RDF statements. Only the statements that are needed to create a
+ * code system are kept: entity declarations, named subclass, equivalent class, disjoint class and
+ * subproperty relationships, property domains and ranges, transitive properties, annotations that
+ * use the configured annotation properties and the ontology header, together with the axioms added
+ * directly by the loaders, such as superclasses that are class expressions and property chains.
+ * Domains, ranges, transitivity and chains are kept because they can give classes inferred named
+ * parents, e.g. A is a subclass of D if it is a subclass of a restriction on a property whose
+ * domain is D. Everything else is dropped, which makes the resulting ontology much smaller than
+ * the one built by the OWL API's RDF parsers.
+ *
+ * <p>Statements with blank nodes are not supported and should not be passed to the builder.
+ * Loaders that read class definitions in other ways can add the corresponding axioms directly. The
+ * builder is not thread safe.
+ */
+public class ReducedOntologyBuilder {
+
+  /**
+   * The version of what the builder and the loaders that use it keep. Bump when it changes, so
+   * snapshots of reduced ontologies are not reused.
+   */
+  public static final int VERSION = 3;
+
+  private static final IRI RDF_TYPE = OWLRDFVocabulary.RDF_TYPE.getIRI();
+  private static final IRI RDFS_SUBCLASS_OF = OWLRDFVocabulary.RDFS_SUBCLASS_OF.getIRI();
+  private static final IRI RDFS_SUB_PROPERTY_OF = OWLRDFVocabulary.RDFS_SUB_PROPERTY_OF.getIRI();
+  private static final IRI OWL_EQUIVALENT_CLASS = OWLRDFVocabulary.OWL_EQUIVALENT_CLASS.getIRI();
+  private static final IRI OWL_DISJOINT_WITH = OWLRDFVocabulary.OWL_DISJOINT_WITH.getIRI();
+  private static final IRI RDFS_DOMAIN = OWLRDFVocabulary.RDFS_DOMAIN.getIRI();
+  private static final IRI RDFS_RANGE = OWLRDFVocabulary.RDFS_RANGE.getIRI();
+  private static final IRI OWL_TRANSITIVE_PROPERTY =
+      OWLRDFVocabulary.OWL_TRANSITIVE_PROPERTY.getIRI();
+  private static final IRI OWL_ONTOLOGY = OWLRDFVocabulary.OWL_ONTOLOGY.getIRI();
+  private static final IRI OWL_VERSION_IRI = OWLRDFVocabulary.OWL_VERSION_IRI.getIRI();
+  private static final IRI OWL_IMPORTS = OWLRDFVocabulary.OWL_IMPORTS.getIRI();
+
+  private static final Map<IRI, EntityType<?>> DECLARATION_TYPES = new HashMap<>();
+
+  static {
+    DECLARATION_TYPES.put(OWLRDFVocabulary.OWL_CLASS.getIRI(), EntityType.CLASS);
+    DECLARATION_TYPES.put(OWLRDFVocabulary.OWL_OBJECT_PROPERTY.getIRI(),
+        EntityType.OBJECT_PROPERTY);
+    DECLARATION_TYPES.put(OWLRDFVocabulary.OWL_DATA_PROPERTY.getIRI(), EntityType.DATA_PROPERTY);
+    DECLARATION_TYPES.put(OWLRDFVocabulary.OWL_ANNOTATION_PROPERTY.getIRI(),
+        EntityType.ANNOTATION_PROPERTY);
+  }
+
+  private final OWLDataFactory factory;
+
+  private final Set<IRI> annotationProperties;
+
+  private IRI ontologyIri;
+
+  private IRI versionIri;
+
+  private final List<IRI> imports = new ArrayList<>();
+
+  private final Set<OWLAxiom> axioms = new HashSet<>();
+
+  private final Map<IRI, EntityType<?>> types = new HashMap<>();
+
+  /**
+   * The subproperty, domain and range statements. They are turned into axioms when the ontology is
+   * built, once the types of the properties are known.
+   */
+  private final List<IRI[]> propertyStatements = new ArrayList<>();
+
+  /**
+   * The annotations that have been found so far. They are turned into axioms when the ontology is
+   * built, once it is known which subject is the ontology itself.
+   */
+  private final List<Object[]> annotations = new ArrayList<>();
+
+  /**
+   * Creates a new builder.
+   *
+   * @param factory The OWL data factory.
+   * @param annotationProperties The annotation properties to keep. Properties whose short form is
+   *     "deprecated" are always kept.
+   */
+  public ReducedOntologyBuilder(OWLDataFactory factory, Set<IRI> annotationProperties) {
+    this.factory = factory;
+    this.annotationProperties = annotationProperties;
+  }
+
+  /**
+   * Adds a statement whose object is a resource.
+   *
+   * @param subject The subject.
+   * @param predicate The predicate.
+   * @param object The object.
+   */
+  public void addStatement(IRI subject, IRI predicate, IRI object) {
+    if (RDF_TYPE.equals(predicate)) {
+      if (OWL_ONTOLOGY.equals(object)) {
+        if (ontologyIri == null) {
+          ontologyIri = subject;
+        }
+      } else if (OWL_TRANSITIVE_PROPERTY.equals(object)) {
+        // Only object properties can be transitive
+        types.putIfAbsent(subject, EntityType.OBJECT_PROPERTY);
+        axioms.add(factory.getOWLTransitiveObjectPropertyAxiom(
+            factory.getOWLObjectProperty(subject)));
+      } else {
+        final EntityType<?> type = DECLARATION_TYPES.get(object);
+        if (type != null) {
+          types.put(subject, type);
+          axioms.add(factory.getOWLDeclarationAxiom(factory.getOWLEntity(type, subject)));
+        }
+      }
+    } else if (RDFS_SUBCLASS_OF.equals(predicate)) {
+      axioms.add(factory.getOWLSubClassOfAxiom(factory.getOWLClass(subject),
+          factory.getOWLClass(object)));
+    } else if (OWL_EQUIVALENT_CLASS.equals(predicate)) {
+      axioms.add(factory.getOWLEquivalentClassesAxiom(factory.getOWLClass(subject),
+          factory.getOWLClass(object)));
+    } else if (OWL_DISJOINT_WITH.equals(predicate)) {
+      axioms.add(factory.getOWLDisjointClassesAxiom(factory.getOWLClass(subject),
+          factory.getOWLClass(object)));
+    } else if (RDFS_SUB_PROPERTY_OF.equals(predicate) || RDFS_DOMAIN.equals(predicate)
+        || RDFS_RANGE.equals(predicate)) {
+      propertyStatements.add(new IRI[] { subject, predicate, object });
+    } else if (OWL_VERSION_IRI.equals(predicate)) {
+      versionIri = object;
+    } else if (OWL_IMPORTS.equals(predicate)) {
+      if (!imports.contains(object)) {
+        imports.add(object);
+      }
+    } else if (isKept(predicate)) {
+      annotations.add(new Object[] { subject, predicate, object });
+    }
+  }
+
+  /**
+   * Adds a statement whose object is a literal.
+   *
+   * @param subject The subject.
+   * @param predicate The predicate.
+   * @param lexicalValue The lexical value of the literal.
+   * @param datatype The datatype of the literal. Can be null.
+   * @param lang The language tag of the literal. Can be null.
+   */
+  public void addStatement(IRI subject, IRI predicate, String lexicalValue, IRI datatype,
+      String lang) {
+    if (!isKept(predicate)) {
+      return;
+    }
+    final OWLLiteral literal;
+    if (lang != null && !lang.isEmpty()) {
+      literal = factory.getOWLLiteral(lexicalValue, lang);
+    } else if (datatype != null) {
+      literal = factory.getOWLLiteral(lexicalValue, factory.getOWLDatatype(datatype));
+    } else {
+      literal = factory.getOWLLiteral(lexicalValue, "");
+    }
+    annotations.add(new Object[] { subject, predicate, literal });
+  }
+
+  /**
+   * Adds an axiom that cannot be expressed as a single statement between named resources, such
+   * as a superclass that is a class expression.
+   *
+   * @param axiom The axiom.
+   */
+  public void addAxiom(OWLAxiom axiom) {
+    axioms.add(axiom);
+  }
+
+  /**
+   * Indicates if the builder does anything with the statements that use a predicate. Loaders can
+   * use this to discard statements early. This method is thread safe.
+   *
+   * @param predicate The predicate.
+   * @return True if the statements with this predicate should be passed to the builder.
+   */
+  public boolean accepts(IRI predicate) {
+    return RDF_TYPE.equals(predicate) || RDFS_SUBCLASS_OF.equals(predicate)
+        || OWL_EQUIVALENT_CLASS.equals(predicate) || OWL_DISJOINT_WITH.equals(predicate)
+        || RDFS_SUB_PROPERTY_OF.equals(predicate) || RDFS_DOMAIN.equals(predicate)
+        || RDFS_RANGE.equals(predicate) || OWL_VERSION_IRI.equals(predicate)
+        || OWL_IMPORTS.equals(predicate) || isKept(predicate);
+  }
+
+  /**
+   * Indicates if the statements that use a predicate are kept.
+   *
+   * @param predicate The predicate.
+   * @return True if the statements are kept.
+   */
+  public boolean isKept(IRI predicate) {
+    return annotationProperties.contains(predicate)
+        || "deprecated".equals(predicate.getShortForm());
+  }
+
+  /**
+   * Returns the IRIs of the ontologies imported by the ontology being built.
+   *
+   * @return The imports.
+   */
+  public List<IRI> getImports() {
+    return imports;
+  }
+
+  /**
+   * Creates the ontology in a manager. The imports are declared but not loaded.
+   *
+   * @param manager The ontology manager.
+   * @param document The document the statements were read from.
+   * @return The ontology.
+   * @throws OWLOntologyCreationException If the ontology cannot be created.
+   */
+  public OWLOntology build(OWLOntologyManager manager, File document)
+      throws OWLOntologyCreationException {
+    for (IRI[] statement : propertyStatements) {
+      final OWLAxiom axiom = createPropertyAxiom(statement[0], statement[1], statement[2]);
+      if (axiom != null) {
+        axioms.add(axiom);
+      }
+    }
+
+    final OWLOntologyID id = new OWLOntologyID(Optional.fromNullable(ontologyIri),
+        Optional.fromNullable(versionIri));
+    final OWLOntology ont = manager.createOntology(id);
+    manager.setOntologyDocumentIRI(ont, IRI.create(document));
+
+    final List<OWLOntologyChange> changes = new ArrayList<>();
+    for (IRI imp : imports) {
+      final OWLImportsDeclaration decl = factory.getOWLImportsDeclaration(imp);
+      changes.add(new AddImport(ont, decl));
+    }
+    for (Object[] ann : annotations) {
+      final IRI subject = (IRI) ann[0];
+      final OWLAnnotationProperty prop = factory.getOWLAnnotationProperty((IRI) ann[1]);
+      final OWLAnnotationValue value = (OWLAnnotationValue) ann[2];
+      if (subject.equals(ontologyIri)) {
+        changes.add(new AddOntologyAnnotation(ont, factory.getOWLAnnotation(prop, value)));
+      } else {
+        axioms.add(factory.getOWLAnnotationAssertionAxiom(prop, subject, value));
+      }
+    }
+    manager.applyChanges(changes);
+    manager.addAxioms(ont, axioms);
+    return ont;
+  }
+
+  /**
+   * Creates the axiom for a subproperty, domain or range statement, based on the type of the
+   * property.
+   *
+   * @return The axiom or null if the type of the property is not known.
+   */
+  private OWLAxiom createPropertyAxiom(IRI subject, IRI predicate, IRI object) {
+    final EntityType<?> type = types.get(subject);
+    if (type == EntityType.OBJECT_PROPERTY) {
+      final OWLObjectProperty prop = factory.getOWLObjectProperty(subject);
+      if (RDFS_SUB_PROPERTY_OF.equals(predicate)) {
+        return factory.getOWLSubObjectPropertyOfAxiom(prop, factory.getOWLObjectProperty(object));
+      } else if (RDFS_DOMAIN.equals(predicate)) {
+        return factory.getOWLObjectPropertyDomainAxiom(prop, factory.getOWLClass(object));
+      } else {
+        return factory.getOWLObjectPropertyRangeAxiom(prop, factory.getOWLClass(object));
+      }
+    } else if (type == EntityType.DATA_PROPERTY) {
+      final OWLDataProperty prop = factory.getOWLDataProperty(subject);
+      if (RDFS_SUB_PROPERTY_OF.equals(predicate)) {
+        return factory.getOWLSubDataPropertyOfAxiom(prop, factory.getOWLDataProperty(object));
+      } else if (RDFS_DOMAIN.equals(predicate)) {
+        return factory.getOWLDataPropertyDomainAxiom(prop, factory.getOWLClass(object));
+      } else {
+        return factory.getOWLDataPropertyRangeAxiom(prop, factory.getOWLDatatype(object));
+      }
+    } else if (type == EntityType.ANNOTATION_PROPERTY) {
+      final OWLAnnotationProperty prop = factory.getOWLAnnotationProperty(subject);
+      if (RDFS_SUB_PROPERTY_OF.equals(predicate)) {
+        return factory.getOWLSubAnnotationPropertyOfAxiom(prop,
+            factory.getOWLAnnotationProperty(object));
+      } else if (RDFS_DOMAIN.equals(predicate)) {
+        return factory.getOWLAnnotationPropertyDomainAxiom(prop, object);
+      } else {
+        return factory.getOWLAnnotationPropertyRangeAxiom(prop, object);
+      }
+    }
+    return null;
+  }
+
+}
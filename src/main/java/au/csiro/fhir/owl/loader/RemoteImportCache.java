@@ -0,0 +1,374 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.loader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLOntologyIRIMapper;
+
+/**
+ * An IRI mapper that downloads remote imports into a cache directory and maps them to the cached
+ * copies. The cache is content addressed: documents are stored in <code>objects/</code> by the
+ * SHA-256 of their contents and the metadata of every IRI (the document it maps to and the
+ * <code>ETag</code> and <code>Last-Modified</code> headers of the response) is stored in
+ * <code>meta/</code>. Cached documents are revalidated with conditional requests, unless the server
+ * indicated they are still fresh, so unchanged documents are never downloaded again. If the server
+ * cannot be reached the cached copy is used.
+ *
+ * <p>When the total size of the documents exceeds the maximum size, the least recently used ones
+ * are evicted. In offline mode the network is never used and imports that are not in the cache
+ * are treated as missing.
+ *
+ * <p>This mapper should be registered after any mappers that resolve IRIs to local files.
+ */
+public class RemoteImportCache implements OWLOntologyIRIMapper {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final Log log = LogFactory.getLog(RemoteImportCache.class);
+
+  private static final String ACCEPT = "application/rdf+xml, application/owl+xml;q=0.9, "
+      + "text/turtle;q=0.8, text/owl-functional;q=0.7, application/xml;q=0.5, text/plain;q=0.2, "
+      + "*/*;q=0.1";
+
+  private static final Pattern MAX_AGE = Pattern.compile("max-age\\s*=\\s*(\\d+)");
+
+  private static final int MAX_REDIRECTS = 5;
+
+  private static final int DEFAULT_TIMEOUT_MILLIS = 60000;
+
+  private final File objectsDir;
+
+  private final File metaDir;
+
+  private final long maxBytes;
+
+  private final boolean offline;
+
+  private final int timeoutMillis;
+
+  private final ConcurrentHashMap<IRI, Object> locks = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a new cache.
+   *
+   * @param dir The cache directory. Created if it does not exist.
+   * @param maxBytes The maximum total size of the cached documents.
+   * @param offline If true, the network is never used.
+   */
+  public RemoteImportCache(File dir, long maxBytes, boolean offline) {
+    this(dir, maxBytes, offline, DEFAULT_TIMEOUT_MILLIS);
+  }
+
+  /**
+   * Creates a new cache.
+   *
+   * @param dir The cache directory. Created if it does not exist.
+   * @param maxBytes The maximum total size of the cached documents.
+   * @param offline If true, the network is never used.
+   * @param timeoutMillis The connect and read timeouts used when downloading documents.
+   */
+  public RemoteImportCache(File dir, long maxBytes, boolean offline, int timeoutMillis) {
+    this.timeoutMillis = timeoutMillis;
+    this.objectsDir = new File(dir, "objects");
+    this.metaDir = new File(dir, "meta");
+    this.maxBytes = maxBytes;
+    this.offline = offline;
+    objectsDir.mkdirs();
+    metaDir.mkdirs();
+  }
+
+  @Override
+  public IRI getDocumentIRI(IRI ontologyIri) {
+    final String scheme = ontologyIri.getScheme();
+    if (scheme == null || !(scheme.equalsIgnoreCase("http") || scheme.equalsIgnoreCase("https"))) {
+      return null;
+    }
+    synchronized (locks.computeIfAbsent(ontologyIri, k -> new Object())) {
+      final File metaFile = new File(metaDir, sha256(ontologyIri.toString()) + ".properties");
+      final Properties meta = readMeta(metaFile);
+      final File cached = meta != null ? new File(objectsDir, meta.getProperty("object")) : null;
+      final boolean hit = cached != null && cached.isFile();
+
+      if (offline) {
+        if (!hit) {
+          // Mappers cannot throw checked exceptions and a null would send the OWL API to the
+          // network, so map the IRI to a file that does not exist. Loading it fails with an
+          // OWLOntologyCreationIOException and the missing import strategy applies.
+          log.warn("Import " + ontologyIri + " is not in the import cache and offline mode is "
+              + "enabled.");
+          return IRI.create(new File(metaDir, metaFile.getName() + ".missing"));
+        }
+        log.info("Import cache hit for " + ontologyIri + " (offline)");
+        return touch(metaFile, cached);
+      }
+
+      if (hit && System.currentTimeMillis() < Long.parseLong(
+          meta.getProperty("freshUntil", "0"))) {
+        log.info("Import cache hit for " + ontologyIri + " (fresh)");
+        return touch(metaFile, cached);
+      }
+
+      try {
+        final File fetched = fetch(ontologyIri, hit ? meta : null, metaFile);
+        return fetched != null ? IRI.create(fetched) : touch(metaFile, cached);
+      } catch (IOException e) {
+        if (hit) {
+          log.warn("Unable to revalidate " + ontologyIri + ", using cached copy: "
+              + e.getLocalizedMessage());
+          return touch(metaFile, cached);
+        }
+        log.warn("Unable to download " + ontologyIri + " into the import cache: "
+            + e.getLocalizedMessage());
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Downloads a document, using a conditional request if there is a cached copy.
+   *
+   * @return The downloaded document or null if the cached copy is still valid.
+   */
+  private File fetch(IRI iri, Properties cachedMeta, File metaFile) throws IOException {
+    URL url = iri.toURI().toURL();
+    HttpURLConnection conn = null;
+    for (int i = 0; i <= MAX_REDIRECTS; i++) {
+      conn = (HttpURLConnection) url.openConnection();
+      conn.setInstanceFollowRedirects(false);
+      conn.setConnectTimeout(timeoutMillis);
+      conn.setReadTimeout(timeoutMillis);
+      conn.setRequestProperty("Accept", ACCEPT);
+      conn.setRequestProperty("Accept-Encoding", "gzip");
+      if (cachedMeta != null) {
+        final String etag = cachedMeta.getProperty("etag");
+        if (etag != null) {
+          conn.setRequestProperty("If-None-Match", etag);
+        }
+        final String lastModified = cachedMeta.getProperty("lastModified");
+        if (lastModified != null) {
+          conn.setRequestProperty("If-Modified-Since", lastModified);
+        }
+      }
+      final int status = conn.getResponseCode();
+      // HttpURLConnection does not follow redirects between http and https
+      if (status >= 300 && status < 400 && status != HttpURLConnection.HTTP_NOT_MODIFIED) {
+        final String location = conn.getHeaderField("Location");
+        conn.disconnect();
+        if (location == null) {
+          throw new IOException("Redirect without location from " + url);
+        }
+        url = new URL(url, location);
+        continue;
+      }
+      break;
+    }
+
+    try {
+      final int status = conn.getResponseCode();
+      if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cachedMeta != null) {
+        log.info("Import cache hit for " + iri + " (not modified)");
+        updateFreshness(cachedMeta, conn);
+        writeMeta(metaFile, cachedMeta);
+        return null;
+      }
+      if (status != HttpURLConnection.HTTP_OK) {
+        throw new IOException("Server returned " + status + " for " + url);
+      }
+
+      final File tmp = File.createTempFile("download", ".tmp", objectsDir);
+      final String hash;
+      final MessageDigest digest = newDigest();
+      InputStream is = conn.getInputStream();
+      if ("gzip".equalsIgnoreCase(conn.getContentEncoding())) {
+        is = new GZIPInputStream(is);
+      }
+      try (InputStream dis = new DigestInputStream(is, digest);
+          OutputStream os = new FileOutputStream(tmp)) {
+        dis.transferTo(os);
+        hash = toHex(digest.digest());
+      } catch (IOException e) {
+        tmp.delete();
+        throw e;
+      }
+
+      final File object = new File(objectsDir, hash);
+      if (object.exists()) {
+        tmp.delete();
+      } else {
+        Files.move(tmp.toPath(), object.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      }
+
+      final Properties meta = new Properties();
+      meta.setProperty("iri", iri.toString());
+      meta.setProperty("object", hash);
+      meta.setProperty("size", String.valueOf(object.length()));
+      if (conn.getHeaderField("ETag") != null) {
+        meta.setProperty("etag", conn.getHeaderField("ETag"));
+      }
+      if (conn.getHeaderField("Last-Modified") != null) {
+        meta.setProperty("lastModified", conn.getHeaderField("Last-Modified"));
+      }
+      updateFreshness(meta, conn);
+      writeMeta(metaFile, meta);
+      log.info("Import cache miss for " + iri + ", downloaded " + object.length() + " bytes from "
+          + url);
+      evict(metaFile);
+      return object;
+    } finally {
+      conn.disconnect();
+    }
+  }
+
+  private void updateFreshness(Properties meta, HttpURLConnection conn) {
+    final String cacheControl = conn.getHeaderField("Cache-Control");
+    long freshUntil = 0;
+    if (cacheControl != null && !cacheControl.toLowerCase(Locale.ROOT).contains("no-cache")) {
+      final Matcher m = MAX_AGE.matcher(cacheControl);
+      if (m.find()) {
+        freshUntil = System.currentTimeMillis() + Long.parseLong(m.group(1)) * 1000;
+      }
+    }
+    meta.setProperty("freshUntil", String.valueOf(freshUntil));
+  }
+
+  /**
+   * Records that a cached document was used, for the least recently used eviction.
+   */
+  private IRI touch(File metaFile, File cached) {
+    metaFile.setLastModified(System.currentTimeMillis());
+    return IRI.create(cached);
+  }
+
+  /**
+   * Evicts the least recently used documents until the size of the cache is below the maximum.
+   * The document that was just downloaded is never evicted.
+   */
+  private synchronized void evict(File keep) {
+    final File[] metaFiles = metaDir.listFiles((dir, name) -> name.endsWith(".properties"));
+    if (metaFiles == null) {
+      return;
+    }
+    final List<File> entries = new ArrayList<>();
+    final Set<String> objects = new HashSet<>();
+    long total = 0;
+    for (File f : metaFiles) {
+      final Properties meta = readMeta(f);
+      if (meta != null && objects.add(meta.getProperty("object"))) {
+        total += Long.parseLong(meta.getProperty("size", "0"));
+      }
+      entries.add(f);
+    }
+    if (total <= maxBytes) {
+      return;
+    }
+
+    entries.sort((a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+    final Properties kept = readMeta(keep);
+    for (File f : entries) {
+      if (total <= maxBytes) {
+        break;
+      }
+      if (f.equals(keep)) {
+        continue;
+      }
+      final Properties meta = readMeta(f);
+      f.delete();
+      if (meta == null) {
+        continue;
+      }
+      final String object = meta.getProperty("object");
+      if ((kept != null && object.equals(kept.getProperty("object"))) || isReferenced(object)) {
+        continue;
+      }
+      new File(objectsDir, object).delete();
+      total -= Long.parseLong(meta.getProperty("size", "0"));
+      log.info("Evicted " + meta.getProperty("iri") + " from the import cache");
+    }
+  }
+
+  private boolean isReferenced(String object) {
+    final File[] metaFiles = metaDir.listFiles((dir, name) -> name.endsWith(".properties"));
+    if (metaFiles != null) {
+      for (File f : metaFiles) {
+        final Properties meta = readMeta(f);
+        if (meta != null && object.equals(meta.getProperty("object"))) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static Properties readMeta(File metaFile) {
+    if (!metaFile.isFile()) {
+      return null;
+    }
+    final Properties meta = new Properties();
+    try (InputStream is = new FileInputStream(metaFile)) {
+      meta.load(is);
+      return meta.getProperty("object") != null ? meta : null;
+    } catch (IOException | IllegalArgumentException e) {
+      log.warn("Ignoring invalid import cache entry " + metaFile);
+      return null;
+    }
+  }
+
+  private void writeMeta(File metaFile, Properties meta) throws IOException {
+    final File tmp = File.createTempFile("meta", ".tmp", metaDir);
+    try (OutputStream os = new FileOutputStream(tmp)) {
+      meta.store(os, null);
+    }
+    Files.move(tmp.toPath(), metaFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String sha256(String s) {
+    return toHex(newDigest().digest(s.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private static String toHex(byte[] bytes) {
+    final StringBuilder sb = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      sb.append(String.format("%02x", b));
+    }
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,391 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.loader;
+
+import com.google.common.base.Optional;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.semanticweb.owlapi.model.AddImport;
+import org.semanticweb.owlapi.model.AddOntologyAnnotation;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLImportsDeclaration;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyID;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+/**
+ * An on-disk cache of parsed ontology documents. Each document in the imports closure is stored
+ * as a snapshot of its header and axioms (see {@link SnapshotFormat}), keyed by the SHA-256 of the
+ * document's contents and the version of the OWL API. When a document has not changed since the
+ * last run its snapshot is loaded instead of parsing the document again. Documents that are not in
+ * the cache are loaded using the delegate loader and added to the cache afterwards. When the
+ * snapshots take more than the maximum size, the least recently used ones are evicted.
+ *
+ * <p>Only documents that live in the file system are cached. This includes the imports that are
+ * resolved to local files through the IRI mappers registered in the ontology manager.
+ */
+public class SnapshotCache implements OntologyLoader {
+
+  private static final Log log = LogFactory.getLog(SnapshotCache.class);
+
+  /**
+   * The default maximum size of the cache, in bytes.
+   */
+  public static final long DEFAULT_MAX_SIZE = 4096L * 1024 * 1024;
+
+  private static final String EXTENSION = ".snapshot";
+
+  private final File cacheDir;
+
+  private final long maxBytes;
+
+  private final OntologyLoader delegate;
+
+  private final String owlApiVersion;
+
+  private final String variant;
+
+  /**
+   * The keys computed during the current load, so each document is only hashed once.
+   */
+  private final Map<File, String> keys = new HashMap<>();
+
+  /**
+   * Creates a new snapshot cache.
+   *
+   * @param cacheDir The directory where the snapshots are stored. Created if it does not exist.
+   * @param delegate The loader used when a document is not in the cache.
+   */
+  public SnapshotCache(File cacheDir, OntologyLoader delegate) {
+    this(cacheDir, DEFAULT_MAX_SIZE, "", delegate);
+  }
+
+  /**
+   * Creates a new snapshot cache for a delegate loader that does not load the complete contents
+   * of the documents, e.g. a loader that only keeps some axioms. The variant is part of the cache
+   * key, so its snapshots are kept apart from those of other loaders.
+   *
+   * @param cacheDir The directory where the snapshots are stored. Created if it does not exist.
+   * @param maxBytes The maximum size of the snapshots, in bytes.
+   * @param variant A string that identifies what the delegate loader keeps.
+   * @param delegate The loader used when a document is not in the cache.
+   */
+  public SnapshotCache(File cacheDir, long maxBytes, String variant, OntologyLoader delegate) {
+    this.cacheDir = cacheDir;
+    this.maxBytes = maxBytes;
+    this.variant = variant;
+    this.delegate = delegate;
+    this.owlApiVersion = getOwlApiVersion();
+    if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+      throw new IllegalArgumentException("Unable to create snapshot cache directory " + cacheDir);
+    }
+  }
+
+  @Override
+  public OWLOntology load(OWLOntologyManager manager, File input)
+      throws OWLOntologyCreationException {
+    keys.clear();
+    try {
+      OWLOntology ont = loadSnapshot(manager, input, new HashSet<>());
+      if (ont == null) {
+        ont = delegate.load(manager, input);
+      }
+      storeSnapshots(manager, ont);
+      evict(new HashSet<>(keys.values()));
+      return ont;
+    } finally {
+      keys.clear();
+    }
+  }
+
+  /**
+   * Loads a document from its snapshot, if there is one. The imports of the document are loaded
+   * from their own snapshots when possible and using the OWL API otherwise. If the document is not
+   * in the cache, its imports are still loaded from their snapshots, so that only the documents
+   * that changed are parsed.
+   *
+   * @param manager The ontology manager.
+   * @param document The ontology document.
+   * @param visited The documents that have already been visited, used to avoid import cycles.
+   * @return The ontology or null if the document is not in the cache.
+   * @throws OWLOntologyCreationException If there is a problem loading the imports.
+   */
+  private OWLOntology loadSnapshot(OWLOntologyManager manager, File document, Set<File> visited)
+      throws OWLOntologyCreationException {
+    if (!visited.add(document.getAbsoluteFile())) {
+      return null;
+    }
+
+    final File snapshotFile;
+    try {
+      snapshotFile = getSnapshotFile(document);
+    } catch (IOException e) {
+      throw new OWLOntologyCreationException("Unable to read " + document.getAbsolutePath(), e);
+    }
+    if (!snapshotFile.exists()) {
+      log.info("Snapshot cache miss for " + document.getAbsolutePath());
+      loadImportSnapshots(manager, document, visited);
+      return null;
+    }
+
+    final SnapshotFormat.Snapshot snapshot;
+    try {
+      snapshot = readSnapshot(snapshotFile, manager.getOWLDataFactory());
+    } catch (IOException | RuntimeException e) {
+      log.warn("Discarding unreadable snapshot " + snapshotFile + ": " + e.getLocalizedMessage());
+      if (!snapshotFile.delete()) {
+        log.warn("Unable to delete snapshot " + snapshotFile);
+      }
+      loadImportSnapshots(manager, document, visited);
+      return null;
+    }
+    log.info("Snapshot cache hit for " + document.getAbsolutePath() + " ("
+        + snapshot.axioms.size() + " axioms)");
+    // Records that the snapshot was used, for the least recently used eviction
+    snapshotFile.setLastModified(System.currentTimeMillis());
+
+    // Load the imports first, so they are available when the imports closure is calculated
+    final OWLDataFactory factory = manager.getOWLDataFactory();
+    for (IRI importIri : snapshot.imports) {
+      final OWLImportsDeclaration decl = factory.getOWLImportsDeclaration(importIri);
+      if (loadImportSnapshot(manager, importIri, visited) == null) {
+        manager.makeLoadImportRequest(decl, manager.getOntologyLoaderConfiguration());
+      }
+    }
+
+    final OWLOntologyID id = new OWLOntologyID(Optional.fromNullable(snapshot.ontologyIri),
+        Optional.fromNullable(snapshot.versionIri));
+    final OWLOntology ont = manager.createOntology(id);
+    manager.setOntologyDocumentIRI(ont, IRI.create(document));
+
+    final List<OWLOntologyChange> changes = new ArrayList<>();
+    for (IRI importIri : snapshot.imports) {
+      changes.add(new AddImport(ont, factory.getOWLImportsDeclaration(importIri)));
+    }
+    for (OWLAnnotation ann : snapshot.annotations) {
+      changes.add(new AddOntologyAnnotation(ont, ann));
+    }
+    manager.applyChanges(changes);
+    manager.addAxioms(ont, snapshot.axioms);
+    return ont;
+  }
+
+  /**
+   * Loads the imports of a document that is not in the cache from their snapshots. The imports
+   * are found by scanning the header of the document. The imports that are not in the cache are
+   * left for the delegate loader, which parses the document.
+   *
+   * @param manager The ontology manager.
+   * @param document The ontology document.
+   * @param visited The documents that have already been visited, used to avoid import cycles.
+   * @throws OWLOntologyCreationException If there is a problem loading the imports.
+   */
+  private void loadImportSnapshots(OWLOntologyManager manager, File document, Set<File> visited)
+      throws OWLOntologyCreationException {
+    final DocumentHeader header;
+    try {
+      header = DocumentHeader.scan(document);
+    } catch (IOException e) {
+      throw new OWLOntologyCreationException("Unable to read " + document.getAbsolutePath(), e);
+    }
+    for (IRI importIri : header.getImports()) {
+      loadImportSnapshot(manager, importIri, visited);
+    }
+  }
+
+  /**
+   * Loads an import from its snapshot, if it resolves to a local file that is in the cache.
+   *
+   * @param manager The ontology manager.
+   * @param importIri The IRI in the import declaration.
+   * @param visited The documents that have already been visited, used to avoid import cycles.
+   * @return The imported ontology, or null if it has to be loaded using the OWL API.
+   * @throws OWLOntologyCreationException If there is a problem loading the imports.
+   */
+  private OWLOntology loadImportSnapshot(OWLOntologyManager manager, IRI importIri,
+      Set<File> visited) throws OWLOntologyCreationException {
+    final OWLImportsDeclaration decl = manager.getOWLDataFactory()
+        .getOWLImportsDeclaration(importIri);
+    final OWLOntology loaded = manager.getImportedOntology(decl);
+    if (loaded != null) {
+      return loaded;
+    }
+    final File importDocument = LoaderUtils.toFile(
+        LoaderUtils.resolveDocumentIri(manager, importIri));
+    return importDocument != null ? loadSnapshot(manager, importDocument, visited) : null;
+  }
+
+  /**
+   * Stores a snapshot of every document in the imports closure of an ontology that lives in the
+   * file system and is not in the cache yet.
+   *
+   * @param manager The ontology manager.
+   * @param root The root ontology.
+   */
+  private void storeSnapshots(OWLOntologyManager manager, OWLOntology root) {
+    for (OWLOntology ont : manager.getImportsClosure(root)) {
+      final File document = LoaderUtils.toFile(manager.getOntologyDocumentIRI(ont));
+      if (document == null) {
+        continue;
+      }
+      try {
+        final File snapshotFile = getSnapshotFile(document);
+        if (!snapshotFile.exists()) {
+          writeSnapshot(ont, snapshotFile);
+          log.info("Stored snapshot of " + document.getAbsolutePath());
+        }
+      } catch (IOException e) {
+        log.warn("Unable to store snapshot of " + document.getAbsolutePath() + ": "
+            + e.getLocalizedMessage());
+      }
+    }
+  }
+
+  private File getSnapshotFile(File document) throws IOException {
+    final File key = document.getAbsoluteFile();
+    String hash = keys.get(key);
+    if (hash == null) {
+      hash = computeKey(document);
+      keys.put(key, hash);
+    }
+    return new File(cacheDir, hash + EXTENSION);
+  }
+
+  /**
+   * Computes the cache key of a document. The key depends on the contents of the document, the
+   * version of the OWL API and the version of the snapshot format.
+   *
+   * @param document The ontology document.
+   * @return The key, as a hex string.
+   * @throws IOException If the document cannot be read.
+   */
+  String computeKey(File document) throws IOException {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+    final byte[] buffer = new byte[1 << 20];
+    try (InputStream is = new FileInputStream(document)) {
+      int read;
+      while ((read = is.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+    }
+    digest.update(owlApiVersion.getBytes(StandardCharsets.UTF_8));
+    digest.update(variant.getBytes(StandardCharsets.UTF_8));
+    digest.update((byte) SnapshotFormat.VERSION);
+
+    final StringBuilder sb = new StringBuilder();
+    for (byte b : digest.digest()) {
+      sb.append(String.format("%02x", b));
+    }
+    return sb.toString();
+  }
+
+  private void writeSnapshot(OWLOntology ont, File snapshotFile) throws IOException {
+    final File tmp = File.createTempFile("snapshot", ".tmp", cacheDir);
+    try {
+      try (DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+        SnapshotFormat.write(ont, out);
+      }
+      try {
+        Files.move(tmp.toPath(), snapshotFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(tmp.toPath());
+    }
+  }
+
+  private SnapshotFormat.Snapshot readSnapshot(File snapshotFile, OWLDataFactory factory)
+      throws IOException {
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(snapshotFile), 1 << 16))) {
+      return SnapshotFormat.read(in, snapshotFile.length(), factory);
+    }
+  }
+
+  /**
+   * Evicts the least recently used snapshots until the size of the cache is below the maximum.
+   * The snapshots used by the current load are never evicted.
+   *
+   * @param keep The keys of the snapshots used by the current load.
+   */
+  private void evict(Set<String> keep) {
+    final File[] files = cacheDir.listFiles((dir, name) -> name.endsWith(EXTENSION));
+    if (files == null) {
+      return;
+    }
+    long total = 0;
+    for (File f : files) {
+      total += f.length();
+    }
+    if (total <= maxBytes) {
+      return;
+    }
+    Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+    for (File f : files) {
+      if (total <= maxBytes) {
+        break;
+      }
+      final String name = f.getName();
+      if (keep.contains(name.substring(0, name.length() - EXTENSION.length()))) {
+        continue;
+      }
+      final long size = f.length();
+      if (f.delete()) {
+        total -= size;
+        log.info("Evicted snapshot " + f + " from the snapshot cache");
+      }
+    }
+  }
+
+  private static String getOwlApiVersion() {
+    final Package pkg = OWLOntology.class.getPackage();
+    if (pkg != null && pkg.getImplementationVersion() != null) {
+      return pkg.getImplementationVersion();
+    }
+    // Fall back to the location of the OWL API jar, which includes its version
+    try {
+      return String.valueOf(OWLOntology.class.getProtectionDomain().getCodeSource().getLocation());
+    } catch (SecurityException | NullPointerException e) {
+      return "unknown";
+    }
+  }
+
+}
@@ -0,0 +1,673 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.loader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.formats.FunctionalSyntaxDocumentFormat;
+import org.semanticweb.owlapi.io.StringDocumentSource;
+import org.semanticweb.owlapi.model.AddOntologyAnnotation;
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.EntityType;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAnnotationAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLAnnotationValue;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClassExpression;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLDeclarationAxiom;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLImportsDeclaration;
+import org.semanticweb.owlapi.model.OWLLiteral;
+import org.semanticweb.owlapi.model.OWLNaryClassAxiom;
+import org.semanticweb.owlapi.model.OWLNaryBooleanClassExpression;
+import org.semanticweb.owlapi.model.OWLObjectAllValuesFrom;
+import org.semanticweb.owlapi.model.OWLObjectComplementOf;
+import org.semanticweb.owlapi.model.OWLObjectIntersectionOf;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLObjectPropertyDomainAxiom;
+import org.semanticweb.owlapi.model.OWLObjectPropertyExpression;
+import org.semanticweb.owlapi.model.OWLObjectPropertyRangeAxiom;
+import org.semanticweb.owlapi.model.OWLObjectSomeValuesFrom;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyID;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.OWLOntologyStorageException;
+import org.semanticweb.owlapi.model.OWLSubAnnotationPropertyOfAxiom;
+import org.semanticweb.owlapi.model.OWLSubClassOfAxiom;
+import org.semanticweb.owlapi.model.OWLSubDataPropertyOfAxiom;
+import org.semanticweb.owlapi.model.OWLSubObjectPropertyOfAxiom;
+import org.semanticweb.owlapi.model.OWLSubPropertyChainOfAxiom;
+import org.semanticweb.owlapi.model.OWLTransitiveObjectPropertyAxiom;
+
+/**
+ * Reads and writes the snapshot files of the {@link SnapshotCache}. A snapshot starts with the
+ * ontology id and the imports, followed by the axioms that make up most of a typical ontology
+ * (declarations, annotation assertions, class axioms built from named classes and existential and
+ * universal restrictions, and the property axioms used by OBO ontologies), each one written as a
+ * tag followed by its parts. IRIs are written in full the first time they appear and as an index
+ * into the IRIs read so far afterwards. The ontology annotations and any other axioms are written
+ * as an embedded OWL functional syntax document, so every ontology can be stored, but only the
+ * common axioms avoid a parser.
+ *
+ * <p>The format only contains strings, numbers and tags, so reading a snapshot never
+ * instantiates classes named in the file.
+ */
+class SnapshotFormat {
+
+  private static final String MAGIC = "FHIR-OWL-SNAPSHOT";
+
+  /**
+   * Bump when the layout of the snapshot files changes.
+   */
+  static final int VERSION = 2;
+
+  private static final int DECLARATION = 1;
+  private static final int SUBCLASS_OF = 2;
+  private static final int EQUIVALENT_CLASSES = 3;
+  private static final int DISJOINT_CLASSES = 4;
+  private static final int ANNOTATION_ASSERTION = 5;
+  private static final int SUB_OBJECT_PROPERTY = 6;
+  private static final int SUB_DATA_PROPERTY = 7;
+  private static final int SUB_ANNOTATION_PROPERTY = 8;
+  private static final int OBJECT_PROPERTY_DOMAIN = 9;
+  private static final int OBJECT_PROPERTY_RANGE = 10;
+  private static final int TRANSITIVE_OBJECT_PROPERTY = 11;
+  private static final int SUB_PROPERTY_CHAIN = 12;
+
+  private static final int CLASS = 1;
+  private static final int SOME_VALUES_FROM = 2;
+  private static final int ALL_VALUES_FROM = 3;
+  private static final int INTERSECTION = 4;
+  private static final int UNION = 5;
+  private static final int COMPLEMENT = 6;
+
+  private static final int VALUE_IRI = 1;
+  private static final int VALUE_LITERAL = 2;
+  private static final int VALUE_LANG_LITERAL = 3;
+
+  private static final List<EntityType<?>> ENTITY_TYPES = EntityType.values();
+
+  private static final IRI DOCUMENT_IRI = IRI.create("urn:fhir-owl:snapshot");
+
+  private SnapshotFormat() {
+  }
+
+  /**
+   * The contents of a snapshot file.
+   */
+  static class Snapshot {
+    IRI ontologyIri;
+    IRI versionIri;
+    final List<IRI> imports = new ArrayList<>();
+    final List<OWLAnnotation> annotations = new ArrayList<>();
+    final Set<OWLAxiom> axioms = new HashSet<>();
+  }
+
+  /**
+   * Writes a snapshot of an ontology.
+   *
+   * @param ont The ontology.
+   * @param out The output. It is not closed.
+   * @throws IOException If the snapshot cannot be written.
+   */
+  static void write(OWLOntology ont, DataOutputStream out) throws IOException {
+    new Writer(out).write(ont);
+  }
+
+  /**
+   * Reads a snapshot.
+   *
+   * @param in The input. It is not closed.
+   * @param length The length of the snapshot, used to reject corrupt sizes.
+   * @param factory The data factory used to create the axioms.
+   * @return The contents of the snapshot.
+   * @throws IOException If the snapshot cannot be read or is not valid.
+   */
+  static Snapshot read(DataInputStream in, long length, OWLDataFactory factory)
+      throws IOException {
+    return new Reader(in, length, factory).read();
+  }
+
+  private static class Writer {
+    private final DataOutputStream out;
+    private final Map<IRI, Integer> iris = new HashMap<>();
+
+    private Writer(DataOutputStream out) {
+      this.out = out;
+    }
+
+    private void write(OWLOntology ont) throws IOException {
+      out.writeUTF(MAGIC);
+      out.writeInt(VERSION);
+      final OWLOntologyID id = ont.getOntologyID();
+      writeOptionalIri(id.getOntologyIRI().orNull());
+      writeOptionalIri(id.getVersionIRI().orNull());
+      final Set<OWLImportsDeclaration> imports = ont.getImportsDeclarations();
+      writeSize(imports.size());
+      for (OWLImportsDeclaration decl : imports) {
+        writeIri(decl.getIRI());
+      }
+
+      final List<OWLAxiom> tagged = new ArrayList<>();
+      final List<OWLAxiom> others = new ArrayList<>();
+      for (OWLAxiom axiom : ont.getAxioms()) {
+        (isSupported(axiom) ? tagged : others).add(axiom);
+      }
+      writeSize(tagged.size());
+      for (OWLAxiom axiom : tagged) {
+        writeAxiom(axiom);
+      }
+      writeFunctionalSyntax(ont.getAnnotations(), others);
+    }
+
+    private void writeAxiom(OWLAxiom axiom) throws IOException {
+      final AxiomType<?> type = axiom.getAxiomType();
+      if (type == AxiomType.DECLARATION) {
+        final OWLEntity entity = ((OWLDeclarationAxiom) axiom).getEntity();
+        out.writeByte(DECLARATION);
+        out.writeByte(ENTITY_TYPES.indexOf(entity.getEntityType()));
+        writeIri(entity.getIRI());
+      } else if (type == AxiomType.SUBCLASS_OF) {
+        final OWLSubClassOfAxiom ax = (OWLSubClassOfAxiom) axiom;
+        out.writeByte(SUBCLASS_OF);
+        writeClassExpression(ax.getSubClass());
+        writeClassExpression(ax.getSuperClass());
+      } else if (type == AxiomType.EQUIVALENT_CLASSES || type == AxiomType.DISJOINT_CLASSES) {
+        out.writeByte(type == AxiomType.EQUIVALENT_CLASSES ? EQUIVALENT_CLASSES
+            : DISJOINT_CLASSES);
+        writeClassExpressions(((OWLNaryClassAxiom) axiom).getClassExpressions());
+      } else if (type == AxiomType.ANNOTATION_ASSERTION) {
+        final OWLAnnotationAssertionAxiom ax = (OWLAnnotationAssertionAxiom) axiom;
+        out.writeByte(ANNOTATION_ASSERTION);
+        writeIri((IRI) ax.getSubject());
+        writeIri(ax.getProperty().getIRI());
+        writeValue(ax.getValue());
+      } else if (type == AxiomType.SUB_OBJECT_PROPERTY) {
+        final OWLSubObjectPropertyOfAxiom ax = (OWLSubObjectPropertyOfAxiom) axiom;
+        out.writeByte(SUB_OBJECT_PROPERTY);
+        writeIri(ax.getSubProperty().asOWLObjectProperty().getIRI());
+        writeIri(ax.getSuperProperty().asOWLObjectProperty().getIRI());
+      } else if (type == AxiomType.SUB_DATA_PROPERTY) {
+        final OWLSubDataPropertyOfAxiom ax = (OWLSubDataPropertyOfAxiom) axiom;
+        out.writeByte(SUB_DATA_PROPERTY);
+        writeIri(ax.getSubProperty().asOWLDataProperty().getIRI());
+        writeIri(ax.getSuperProperty().asOWLDataProperty().getIRI());
+      } else if (type == AxiomType.SUB_ANNOTATION_PROPERTY_OF) {
+        final OWLSubAnnotationPropertyOfAxiom ax = (OWLSubAnnotationPropertyOfAxiom) axiom;
+        out.writeByte(SUB_ANNOTATION_PROPERTY);
+        writeIri(ax.getSubProperty().getIRI());
+        writeIri(ax.getSuperProperty().getIRI());
+      } else if (type == AxiomType.OBJECT_PROPERTY_DOMAIN) {
+        final OWLObjectPropertyDomainAxiom ax = (OWLObjectPropertyDomainAxiom) axiom;
+        out.writeByte(OBJECT_PROPERTY_DOMAIN);
+        writeIri(ax.getProperty().asOWLObjectProperty().getIRI());
+        writeClassExpression(ax.getDomain());
+      } else if (type == AxiomType.OBJECT_PROPERTY_RANGE) {
+        final OWLObjectPropertyRangeAxiom ax = (OWLObjectPropertyRangeAxiom) axiom;
+        out.writeByte(OBJECT_PROPERTY_RANGE);
+        writeIri(ax.getProperty().asOWLObjectProperty().getIRI());
+        writeClassExpression(ax.getRange());
+      } else if (type == AxiomType.TRANSITIVE_OBJECT_PROPERTY) {
+        out.writeByte(TRANSITIVE_OBJECT_PROPERTY);
+        writeIri(((OWLTransitiveObjectPropertyAxiom) axiom).getProperty().asOWLObjectProperty()
+            .getIRI());
+      } else {
+        final OWLSubPropertyChainOfAxiom ax = (OWLSubPropertyChainOfAxiom) axiom;
+        out.writeByte(SUB_PROPERTY_CHAIN);
+        writeSize(ax.getPropertyChain().size());
+        for (OWLObjectPropertyExpression prop : ax.getPropertyChain()) {
+          writeIri(prop.asOWLObjectProperty().getIRI());
+        }
+        writeIri(ax.getSuperProperty().asOWLObjectProperty().getIRI());
+      }
+      writeAnnotations(axiom.getAnnotations());
+    }
+
+    private void writeClassExpression(OWLClassExpression ce) throws IOException {
+      switch (ce.getClassExpressionType()) {
+        case OWL_CLASS:
+          out.writeByte(CLASS);
+          writeIri(ce.asOWLClass().getIRI());
+          break;
+        case OBJECT_SOME_VALUES_FROM:
+          final OWLObjectSomeValuesFrom some = (OWLObjectSomeValuesFrom) ce;
+          out.writeByte(SOME_VALUES_FROM);
+          writeIri(some.getProperty().asOWLObjectProperty().getIRI());
+          writeClassExpression(some.getFiller());
+          break;
+        case OBJECT_ALL_VALUES_FROM:
+          final OWLObjectAllValuesFrom all = (OWLObjectAllValuesFrom) ce;
+          out.writeByte(ALL_VALUES_FROM);
+          writeIri(all.getProperty().asOWLObjectProperty().getIRI());
+          writeClassExpression(all.getFiller());
+          break;
+        case OBJECT_INTERSECTION_OF:
+        case OBJECT_UNION_OF:
+          out.writeByte(ce instanceof OWLObjectIntersectionOf
+              ? INTERSECTION : UNION);
+          writeClassExpressions(((OWLNaryBooleanClassExpression) ce).getOperands());
+          break;
+        default:
+          out.writeByte(COMPLEMENT);
+          writeClassExpression(((OWLObjectComplementOf) ce).getOperand());
+          break;
+      }
+    }
+
+    private void writeClassExpressions(Collection<OWLClassExpression> ces) throws IOException {
+      writeSize(ces.size());
+      for (OWLClassExpression ce : ces) {
+        writeClassExpression(ce);
+      }
+    }
+
+    private void writeAnnotations(Collection<OWLAnnotation> annotations) throws IOException {
+      writeSize(annotations.size());
+      for (OWLAnnotation ann : annotations) {
+        writeIri(ann.getProperty().getIRI());
+        writeValue(ann.getValue());
+        writeAnnotations(ann.getAnnotations());
+      }
+    }
+
+    private void writeValue(OWLAnnotationValue value) throws IOException {
+      if (value instanceof IRI) {
+        out.writeByte(VALUE_IRI);
+        writeIri((IRI) value);
+        return;
+      }
+      final OWLLiteral literal = (OWLLiteral) value;
+      if (literal.hasLang()) {
+        out.writeByte(VALUE_LANG_LITERAL);
+        writeString(literal.getLiteral());
+        writeString(literal.getLang());
+      } else {
+        out.writeByte(VALUE_LITERAL);
+        writeString(literal.getLiteral());
+        writeIri(literal.getDatatype().getIRI());
+      }
+    }
+
+    /**
+     * Writes the ontology annotations and the axioms that do not have a tag as an OWL functional
+     * syntax document.
+     */
+    private void writeFunctionalSyntax(Set<OWLAnnotation> annotations, List<OWLAxiom> axioms)
+        throws IOException {
+      if (annotations.isEmpty() && axioms.isEmpty()) {
+        writeSize(0);
+        return;
+      }
+      final OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+      final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+      try {
+        final OWLOntology ont = manager.createOntology();
+        for (OWLAnnotation ann : annotations) {
+          manager.applyChange(new AddOntologyAnnotation(ont, ann));
+        }
+        manager.addAxioms(ont, new LinkedHashSet<>(axioms));
+        manager.saveOntology(ont, new FunctionalSyntaxDocumentFormat(), buf);
+      } catch (OWLOntologyCreationException | OWLOntologyStorageException e) {
+        throw new IOException("Unable to write axioms in functional syntax", e);
+      }
+      writeSize(buf.size());
+      buf.writeTo(out);
+    }
+
+    private void writeOptionalIri(IRI iri) throws IOException {
+      out.writeBoolean(iri != null);
+      if (iri != null) {
+        writeIri(iri);
+      }
+    }
+
+    /**
+     * Writes an IRI as its index if it has already been written, or in full otherwise.
+     */
+    private void writeIri(IRI iri) throws IOException {
+      final Integer index = iris.get(iri);
+      if (index != null) {
+        writeSize(index + 1);
+      } else {
+        writeSize(0);
+        writeString(iri.toString());
+        iris.put(iri, iris.size());
+      }
+    }
+
+    private void writeString(String value) throws IOException {
+      final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      writeSize(bytes.length);
+      out.write(bytes);
+    }
+
+    /**
+     * Writes a non-negative number using one byte for each 7 bits.
+     */
+    private void writeSize(int value) throws IOException {
+      int v = value;
+      while ((v & ~0x7F) != 0) {
+        out.writeByte((v & 0x7F) | 0x80);
+        v >>>= 7;
+      }
+      out.writeByte(v);
+    }
+  }
+
+  /**
+   * Indicates if an axiom can be written with a tag, i.e. if it is one of the supported types, it
+   * only uses named properties and its annotations do not use anonymous individuals.
+   */
+  private static boolean isSupported(OWLAxiom axiom) {
+    if (!isSupported(axiom.getAnnotations())) {
+      return false;
+    }
+    final AxiomType<?> type = axiom.getAxiomType();
+    if (type == AxiomType.DECLARATION) {
+      return true;
+    } else if (type == AxiomType.SUBCLASS_OF) {
+      final OWLSubClassOfAxiom ax = (OWLSubClassOfAxiom) axiom;
+      return isSupported(ax.getSubClass()) && isSupported(ax.getSuperClass());
+    } else if (type == AxiomType.EQUIVALENT_CLASSES || type == AxiomType.DISJOINT_CLASSES) {
+      return ((OWLNaryClassAxiom) axiom).getClassExpressions().stream()
+          .allMatch(SnapshotFormat::isSupported);
+    } else if (type == AxiomType.ANNOTATION_ASSERTION) {
+      final OWLAnnotationAssertionAxiom ax = (OWLAnnotationAssertionAxiom) axiom;
+      return ax.getSubject() instanceof IRI && isSupported(ax.getValue());
+    } else if (type == AxiomType.SUB_OBJECT_PROPERTY) {
+      final OWLSubObjectPropertyOfAxiom ax = (OWLSubObjectPropertyOfAxiom) axiom;
+      return !ax.getSubProperty().isAnonymous() && !ax.getSuperProperty().isAnonymous();
+    } else if (type == AxiomType.SUB_DATA_PROPERTY
+        || type == AxiomType.SUB_ANNOTATION_PROPERTY_OF) {
+      return true;
+    } else if (type == AxiomType.SUB_PROPERTY_CHAIN_OF) {
+      final OWLSubPropertyChainOfAxiom ax = (OWLSubPropertyChainOfAxiom) axiom;
+      return !ax.getSuperProperty().isAnonymous() && ax.getPropertyChain().stream()
+          .noneMatch(OWLObjectPropertyExpression::isAnonymous);
+    } else if (type == AxiomType.OBJECT_PROPERTY_DOMAIN) {
+      final OWLObjectPropertyDomainAxiom ax = (OWLObjectPropertyDomainAxiom) axiom;
+      return !ax.getProperty().isAnonymous() && isSupported(ax.getDomain());
+    } else if (type == AxiomType.OBJECT_PROPERTY_RANGE) {
+      final OWLObjectPropertyRangeAxiom ax = (OWLObjectPropertyRangeAxiom) axiom;
+      return !ax.getProperty().isAnonymous() && isSupported(ax.getRange());
+    } else if (type == AxiomType.TRANSITIVE_OBJECT_PROPERTY) {
+      return !((OWLTransitiveObjectPropertyAxiom) axiom).getProperty().isAnonymous();
+    }
+    return false;
+  }
+
+  private static boolean isSupported(OWLClassExpression ce) {
+    switch (ce.getClassExpressionType()) {
+      case OWL_CLASS:
+        return true;
+      case OBJECT_SOME_VALUES_FROM:
+        final OWLObjectSomeValuesFrom some = (OWLObjectSomeValuesFrom) ce;
+        return !some.getProperty().isAnonymous() && isSupported(some.getFiller());
+      case OBJECT_ALL_VALUES_FROM:
+        final OWLObjectAllValuesFrom all = (OWLObjectAllValuesFrom) ce;
+        return !all.getProperty().isAnonymous() && isSupported(all.getFiller());
+      case OBJECT_INTERSECTION_OF:
+      case OBJECT_UNION_OF:
+        return ((OWLNaryBooleanClassExpression) ce).getOperands().stream()
+            .allMatch(SnapshotFormat::isSupported);
+      case OBJECT_COMPLEMENT_OF:
+        return isSupported(((OWLObjectComplementOf) ce).getOperand());
+      default:
+        return false;
+    }
+  }
+
+  private static boolean isSupported(Set<OWLAnnotation> annotations) {
+    for (OWLAnnotation ann : annotations) {
+      if (!isSupported(ann.getValue()) || !isSupported(ann.getAnnotations())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isSupported(OWLAnnotationValue value) {
+    return value instanceof IRI || value instanceof OWLLiteral;
+  }
+
+  private static class Reader {
+    private final DataInputStream in;
+    private final long length;
+    private final OWLDataFactory factory;
+    private final List<IRI> iris = new ArrayList<>();
+
+    private Reader(DataInputStream in, long length, OWLDataFactory factory) {
+      this.in = in;
+      this.length = length;
+      this.factory = factory;
+    }
+
+    private Snapshot read() throws IOException {
+      if (!MAGIC.equals(in.readUTF()) || in.readInt() != VERSION) {
+        throw new IOException("Invalid snapshot header");
+      }
+      final Snapshot res = new Snapshot();
+      res.ontologyIri = readOptionalIri();
+      res.versionIri = readOptionalIri();
+      int size = readSize();
+      for (int i = 0; i < size; i++) {
+        res.imports.add(readIri());
+      }
+      size = readSize();
+      for (int i = 0; i < size; i++) {
+        res.axioms.add(readAxiom());
+      }
+      readFunctionalSyntax(res);
+      return res;
+    }
+
+    private OWLAxiom readAxiom() throws IOException {
+      final int tag = in.readUnsignedByte();
+      final OWLAxiom axiom;
+      switch (tag) {
+        case DECLARATION:
+          final int type = in.readUnsignedByte();
+          if (type >= ENTITY_TYPES.size()) {
+            throw new IOException("Invalid entity type " + type);
+          }
+          axiom = factory.getOWLDeclarationAxiom(factory.getOWLEntity(ENTITY_TYPES.get(type),
+              readIri()));
+          break;
+        case SUBCLASS_OF:
+          axiom = factory.getOWLSubClassOfAxiom(readClassExpression(), readClassExpression());
+          break;
+        case EQUIVALENT_CLASSES:
+          axiom = factory.getOWLEquivalentClassesAxiom(readClassExpressions());
+          break;
+        case DISJOINT_CLASSES:
+          axiom = factory.getOWLDisjointClassesAxiom(readClassExpressions());
+          break;
+        case ANNOTATION_ASSERTION:
+          final IRI subject = readIri();
+          axiom = factory.getOWLAnnotationAssertionAxiom(
+              factory.getOWLAnnotationProperty(readIri()), subject, readValue());
+          break;
+        case SUB_OBJECT_PROPERTY:
+          axiom = factory.getOWLSubObjectPropertyOfAxiom(readObjectProperty(),
+              readObjectProperty());
+          break;
+        case SUB_DATA_PROPERTY:
+          axiom = factory.getOWLSubDataPropertyOfAxiom(factory.getOWLDataProperty(readIri()),
+              factory.getOWLDataProperty(readIri()));
+          break;
+        case SUB_ANNOTATION_PROPERTY:
+          axiom = factory.getOWLSubAnnotationPropertyOfAxiom(
+              factory.getOWLAnnotationProperty(readIri()),
+              factory.getOWLAnnotationProperty(readIri()));
+          break;
+        case OBJECT_PROPERTY_DOMAIN:
+          axiom = factory.getOWLObjectPropertyDomainAxiom(readObjectProperty(),
+              readClassExpression());
+          break;
+        case OBJECT_PROPERTY_RANGE:
+          axiom = factory.getOWLObjectPropertyRangeAxiom(readObjectProperty(),
+              readClassExpression());
+          break;
+        case TRANSITIVE_OBJECT_PROPERTY:
+          axiom = factory.getOWLTransitiveObjectPropertyAxiom(readObjectProperty());
+          break;
+        case SUB_PROPERTY_CHAIN:
+          final int size = readSize();
+          final List<OWLObjectProperty> chain = new ArrayList<>();
+          for (int i = 0; i < size; i++) {
+            chain.add(readObjectProperty());
+          }
+          axiom = factory.getOWLSubPropertyChainOfAxiom(chain, readObjectProperty());
+          break;
+        default:
+          throw new IOException("Invalid axiom tag " + tag);
+      }
+      final Set<OWLAnnotation> annotations = readAnnotations();
+      return annotations.isEmpty() ? axiom : axiom.getAnnotatedAxiom(annotations);
+    }
+
+    private OWLClassExpression readClassExpression() throws IOException {
+      final int tag = in.readUnsignedByte();
+      switch (tag) {
+        case CLASS:
+          return factory.getOWLClass(readIri());
+        case SOME_VALUES_FROM:
+          return factory.getOWLObjectSomeValuesFrom(readObjectProperty(), readClassExpression());
+        case ALL_VALUES_FROM:
+          return factory.getOWLObjectAllValuesFrom(readObjectProperty(), readClassExpression());
+        case INTERSECTION:
+          return factory.getOWLObjectIntersectionOf(readClassExpressions());
+        case UNION:
+          return factory.getOWLObjectUnionOf(readClassExpressions());
+        case COMPLEMENT:
+          return factory.getOWLObjectComplementOf(readClassExpression());
+        default:
+          throw new IOException("Invalid class expression tag " + tag);
+      }
+    }
+
+    private Set<OWLClassExpression> readClassExpressions() throws IOException {
+      final int size = readSize();
+      final Set<OWLClassExpression> res = new HashSet<>();
+      for (int i = 0; i < size; i++) {
+        res.add(readClassExpression());
+      }
+      return res;
+    }
+
+    private OWLObjectProperty readObjectProperty() throws IOException {
+      return factory.getOWLObjectProperty(readIri());
+    }
+
+    private Set<OWLAnnotation> readAnnotations() throws IOException {
+      final int size = readSize();
+      if (size == 0) {
+        return Collections.emptySet();
+      }
+      final Set<OWLAnnotation> res = new HashSet<>();
+      for (int i = 0; i < size; i++) {
+        final IRI prop = readIri();
+        final OWLAnnotationValue value = readValue();
+        res.add(factory.getOWLAnnotation(factory.getOWLAnnotationProperty(prop), value,
+            readAnnotations()));
+      }
+      return res;
+    }
+
+    private OWLAnnotationValue readValue() throws IOException {
+      final int tag = in.readUnsignedByte();
+      switch (tag) {
+        case VALUE_IRI:
+          return readIri();
+        case VALUE_LITERAL:
+          final String lexicalValue = readString();
+          return factory.getOWLLiteral(lexicalValue, factory.getOWLDatatype(readIri()));
+        case VALUE_LANG_LITERAL:
+          final String text = readString();
+          return factory.getOWLLiteral(text, readString());
+        default:
+          throw new IOException("Invalid annotation value tag " + tag);
+      }
+    }
+
+    private void readFunctionalSyntax(Snapshot snapshot) throws IOException {
+      final int size = readSize();
+      if (size == 0) {
+        return;
+      }
+      final byte[] bytes = new byte[size];
+      in.readFully(bytes);
+      final OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+      try {
+        final OWLOntology ont = manager.loadOntologyFromOntologyDocument(new StringDocumentSource(
+            new String(bytes, StandardCharsets.UTF_8), DOCUMENT_IRI,
+            new FunctionalSyntaxDocumentFormat(), null));
+        snapshot.annotations.addAll(ont.getAnnotations());
+        snapshot.axioms.addAll(ont.getAxioms());
+      } catch (OWLOntologyCreationException e) {
+        throw new IOException("Invalid functional syntax section", e);
+      }
+    }
+
+    private IRI readOptionalIri() throws IOException {
+      return in.readBoolean() ? readIri() : null;
+    }
+
+    private IRI readIri() throws IOException {
+      final int index = readSize();
+      if (index == 0) {
+        final IRI iri = IRI.create(readString());
+        iris.add(iri);
+        return iri;
+      } else if (index > iris.size()) {
+        throw new IOException("Invalid IRI index " + index);
+      }
+      return iris.get(index - 1);
+    }
+
+    private String readString() throws IOException {
+      final byte[] bytes = new byte[readSize()];
+      in.readFully(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a number written with {@link Writer#writeSize(int)}. Numbers larger than the snapshot
+     * can only come from a corrupt file, so they are rejected before anything is allocated.
+     */
+    private int readSize() throws IOException {
+      int res = 0;
+      for (int shift = 0; shift < 32; shift += 7) {
+        final int b = in.readUnsignedByte();
+        res |= (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          if (res < 0 || res > length) {
+            throw new IOException("Invalid size " + res);
+          }
+          return res;
+        }
+      }
+      throw new IOException("Invalid size");
+    }
+  }
+
+}
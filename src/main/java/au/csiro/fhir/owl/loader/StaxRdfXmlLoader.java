@@ -0,0 +1,527 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.loader;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClassExpression;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+
+/**
+ * A fast loader for OBO-style RDF/XML documents. The document is streamed with StAX and only the
+ * statements needed to create the code system are kept (see {@link ReducedOntologyBuilder}), so
+ * loading is much faster and uses much less memory than the OWL API's RDF/XML parser.
+ *
+ * <p>Superclasses that are anonymous class expressions are kept when they are built from
+ * existential and universal restrictions on object properties, intersections, unions and
+ * complements, because they can give a class inferred named parents, e.g. A is a subclass of B if
+ * it is a subclass of the intersection of B and a restriction. Property chains of named properties
+ * are kept for the same reason. If the document defines classes using anonymous class expressions
+ * (e.g. an equivalent class that is an intersection), uses any other kind of superclass
+ * expression, uses anonymous class expressions in domains, ranges or disjointness axioms or has
+ * disjointness axioms with more than two classes, the hierarchy computed by a reasoner could be
+ * different, so the document is loaded with the fallback loader instead. The fallback loader is
+ * also used for documents that are not RDF/XML.
+ */
+public class StaxRdfXmlLoader implements OntologyLoader {
+
+  private static final Log log = LogFactory.getLog(StaxRdfXmlLoader.class);
+
+  private static final String RDF_NS = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+
+  private static final String XML_NS = "http://www.w3.org/XML/1998/namespace";
+
+  private static final String OWL_NS = "http://www.w3.org/2002/07/owl#";
+
+  private static final String XSD_NS = "http://www.w3.org/2001/XMLSchema#";
+
+  private static final IRI RDF_TYPE = IRI.create(RDF_NS + "type");
+
+  private static final IRI RDFS_SUBCLASS_OF = OWLRDFVocabulary.RDFS_SUBCLASS_OF.getIRI();
+
+  private static final IRI OWL_CLASS = OWLRDFVocabulary.OWL_CLASS.getIRI();
+
+  private static final IRI OWL_RESTRICTION = OWLRDFVocabulary.OWL_RESTRICTION.getIRI();
+
+  private static final IRI OWL_ON_PROPERTY = OWLRDFVocabulary.OWL_ON_PROPERTY.getIRI();
+
+  private static final IRI OWL_SOME_VALUES_FROM = OWLRDFVocabulary.OWL_SOME_VALUES_FROM.getIRI();
+
+  private static final IRI OWL_ALL_VALUES_FROM = OWLRDFVocabulary.OWL_ALL_VALUES_FROM.getIRI();
+
+  private static final IRI OWL_INTERSECTION_OF = OWLRDFVocabulary.OWL_INTERSECTION_OF.getIRI();
+
+  private static final IRI OWL_UNION_OF = OWLRDFVocabulary.OWL_UNION_OF.getIRI();
+
+  private static final IRI OWL_COMPLEMENT_OF = OWLRDFVocabulary.OWL_COMPLEMENT_OF.getIRI();
+
+  private static final IRI OWL_PROPERTY_CHAIN_AXIOM =
+      OWLRDFVocabulary.OWL_PROPERTY_CHAIN_AXIOM.getIRI();
+
+  private static final IRI OWL_ALL_DISJOINT_CLASSES =
+      OWLRDFVocabulary.OWL_ALL_DISJOINT_CLASSES.getIRI();
+
+  private static final Set<String> DEFINITION_PREDICATES = new HashSet<>();
+
+  static {
+    DEFINITION_PREDICATES.add("http://www.w3.org/2002/07/owl#equivalentClass");
+    DEFINITION_PREDICATES.add("http://www.w3.org/2002/07/owl#disjointUnionOf");
+    DEFINITION_PREDICATES.add("http://www.w3.org/2002/07/owl#disjointWith");
+    DEFINITION_PREDICATES.add("http://www.w3.org/2000/01/rdf-schema#domain");
+    DEFINITION_PREDICATES.add("http://www.w3.org/2000/01/rdf-schema#range");
+    // Superclass expressions are only supported as nested nodes
+    DEFINITION_PREDICATES.add("http://www.w3.org/2000/01/rdf-schema#subClassOf");
+  }
+
+  private final Set<IRI> annotationProperties;
+
+  private final OntologyLoader fallback;
+
+  /**
+   * Creates a new loader.
+   *
+   * @param annotationProperties The annotation properties that are kept.
+   * @param fallback The loader used for documents that this loader cannot handle.
+   */
+  public StaxRdfXmlLoader(Set<IRI> annotationProperties, OntologyLoader fallback) {
+    this.annotationProperties = annotationProperties;
+    this.fallback = fallback;
+  }
+
+  @Override
+  public OWLOntology load(OWLOntologyManager manager, File input)
+      throws OWLOntologyCreationException {
+    return load(manager, input, new HashSet<>());
+  }
+
+  private OWLOntology load(OWLOntologyManager manager, File input, Set<File> visited)
+      throws OWLOntologyCreationException {
+    visited.add(input.getAbsoluteFile());
+    final long start = System.currentTimeMillis();
+    final ReducedOntologyBuilder builder = new ReducedOntologyBuilder(
+        manager.getOWLDataFactory(), annotationProperties);
+    try (InputStream is = new BufferedInputStream(new FileInputStream(input), 1 << 16)) {
+      new Parser(builder, manager.getOWLDataFactory(), IRI.create(input.getAbsoluteFile())
+          .toString()).parse(is);
+    } catch (UnsupportedDocumentException e) {
+      log.info("Using standard parser for " + input.getAbsolutePath() + ": " + e.getMessage());
+      return fallback.load(manager, input);
+    } catch (XMLStreamException | IOException e) {
+      log.info("Using standard parser for " + input.getAbsolutePath() + ": "
+          + e.getLocalizedMessage());
+      return fallback.load(manager, input);
+    }
+
+    // Imports that are local files are also loaded with this loader
+    LoaderUtils.loadImports(manager, builder.getImports(), (m, f) -> load(m, f, visited), visited);
+
+    final OWLOntology ont = builder.build(manager, input);
+    log.info("Loaded " + ont.getAxiomCount() + " axioms from " + input.getAbsolutePath()
+        + " in " + (System.currentTimeMillis() - start) + "ms using the fast loader");
+    return ont;
+  }
+
+  /**
+   * A streaming RDF/XML parser that passes the statements with named subjects and objects to a
+   * builder. Superclasses that are anonymous class expressions and property chains are passed as
+   * axioms. Other statements that involve blank nodes are parsed and discarded.
+   */
+  private static class Parser {
+    private final ReducedOntologyBuilder builder;
+    private final OWLDataFactory factory;
+    private final String documentBase;
+    private XMLStreamReader reader;
+
+    private Parser(ReducedOntologyBuilder builder, OWLDataFactory factory, String documentBase) {
+      this.builder = builder;
+      this.factory = factory;
+      this.documentBase = documentBase;
+    }
+
+    private void parse(InputStream is) throws XMLStreamException, UnsupportedDocumentException {
+      final XMLInputFactory xmlFactory = XMLInputFactory.newInstance();
+      xmlFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+      xmlFactory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, true);
+      xmlFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+      xmlFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+      reader = xmlFactory.createXMLStreamReader(is);
+      try {
+        if (nextElement() != XMLStreamConstants.START_ELEMENT
+            || !RDF_NS.equals(reader.getNamespaceURI())
+            || !"RDF".equals(reader.getLocalName())) {
+          throw new UnsupportedDocumentException("the root element is not rdf:RDF");
+        }
+        final String base = getBase(documentBase);
+        final String lang = getLang(null);
+        while (nextElement() == XMLStreamConstants.START_ELEMENT) {
+          parseNode(base, lang);
+        }
+      } finally {
+        reader.close();
+      }
+    }
+
+    /**
+     * Moves to the next start or end element, skipping everything else.
+     */
+    private int nextElement() throws XMLStreamException {
+      while (reader.hasNext()) {
+        final int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT || event == XMLStreamConstants.END_ELEMENT) {
+          return event;
+        }
+      }
+      return XMLStreamConstants.END_DOCUMENT;
+    }
+
+    /**
+     * Parses a node element. The reader must be positioned on its start tag and is left on its end
+     * tag.
+     *
+     * @return The subject of the node or null if it is a blank node.
+     */
+    private IRI parseNode(String parentBase, String parentLang)
+        throws XMLStreamException, UnsupportedDocumentException {
+      final String base = getBase(parentBase);
+      final String lang = getLang(parentLang);
+
+      IRI subject = null;
+      final String about = reader.getAttributeValue(RDF_NS, "about");
+      final String id = reader.getAttributeValue(RDF_NS, "ID");
+      if (about != null) {
+        subject = resolve(base, about);
+      } else if (id != null) {
+        subject = resolve(base, "#" + id);
+      }
+
+      if (subject == null && OWL_ALL_DISJOINT_CLASSES.equals(elementIri())) {
+        throw new UnsupportedDocumentException("disjointness axioms with more than two classes "
+            + "are not supported");
+      }
+      if (subject != null) {
+        if (!(RDF_NS.equals(reader.getNamespaceURI())
+            && "Description".equals(reader.getLocalName()))) {
+          builder.addStatement(subject, RDF_TYPE, elementIri());
+        }
+        // Property attributes
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+          final String ns = reader.getAttributeNamespace(i);
+          if (ns == null || RDF_NS.equals(ns) || XML_NS.equals(ns)) {
+            continue;
+          }
+          builder.addStatement(subject, IRI.create(ns + reader.getAttributeLocalName(i)),
+              reader.getAttributeValue(i), null, lang);
+        }
+      }
+
+      while (nextElement() == XMLStreamConstants.START_ELEMENT) {
+        parseProperty(subject, base, lang);
+      }
+      return subject;
+    }
+
+    /**
+     * Parses a property element. The reader must be positioned on its start tag and is left on its
+     * end tag.
+     */
+    private void parseProperty(IRI subject, String parentBase, String parentLang)
+        throws XMLStreamException, UnsupportedDocumentException {
+      final IRI predicate = elementIri();
+      final String base = getBase(parentBase);
+      final String lang = getLang(parentLang);
+
+      final String resource = reader.getAttributeValue(RDF_NS, "resource");
+      final String parseType = reader.getAttributeValue(RDF_NS, "parseType");
+      final String datatype = reader.getAttributeValue(RDF_NS, "datatype");
+
+      if (resource != null) {
+        if (subject != null) {
+          builder.addStatement(subject, predicate, resolve(base, resource));
+        }
+        skipElement();
+        return;
+      }
+      if (subject != null && OWL_PROPERTY_CHAIN_AXIOM.equals(predicate)) {
+        parsePropertyChain(subject, base, lang);
+        return;
+      }
+      if (parseType != null || reader.getAttributeValue(RDF_NS, "nodeID") != null) {
+        checkDefinition(subject, predicate);
+        skipElement();
+        return;
+      }
+
+      // Either a literal or a nested node
+      final StringBuilder text = new StringBuilder();
+      IRI object = null;
+      boolean nested = false;
+      boolean expression = false;
+      while (reader.hasNext()) {
+        final int event = reader.next();
+        if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+          text.append(reader.getText());
+        } else if (event == XMLStreamConstants.START_ELEMENT) {
+          nested = true;
+          if (subject != null && RDFS_SUBCLASS_OF.equals(predicate) && isBlankNode()) {
+            builder.addAxiom(factory.getOWLSubClassOfAxiom(factory.getOWLClass(subject),
+                parseClassExpression(base, lang)));
+            expression = true;
+          } else {
+            object = parseNode(base, lang);
+          }
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+          break;
+        }
+      }
+
+      if (nested) {
+        if (expression) {
+          return;
+        } else if (object == null) {
+          checkDefinition(subject, predicate);
+        } else if (subject != null) {
+          builder.addStatement(subject, predicate, object);
+        }
+      } else if (subject != null) {
+        builder.addStatement(subject, predicate, text.toString(),
+            datatype != null ? resolve(base, datatype) : null, lang);
+      }
+    }
+
+    /**
+     * Class definitions, domains, ranges and disjointness axioms that use anonymous class
+     * expressions cannot be represented in the reduced ontology.
+     */
+    private void checkDefinition(IRI subject, IRI predicate) throws UnsupportedDocumentException {
+      if (subject != null && DEFINITION_PREDICATES.contains(predicate.toString())) {
+        throw new UnsupportedDocumentException(subject + " uses an anonymous "
+            + predicate.getShortForm() + " expression");
+      }
+    }
+
+    /**
+     * Parses a property chain whose last element is a property. The reader must be positioned on
+     * the start tag of the property element and is left on its end tag.
+     *
+     * @throws UnsupportedDocumentException If the chain contains property expressions.
+     */
+    private void parsePropertyChain(IRI subject, String base, String lang)
+        throws XMLStreamException, UnsupportedDocumentException {
+      if (!"Collection".equals(reader.getAttributeValue(RDF_NS, "parseType"))) {
+        throw new UnsupportedDocumentException("only collections of properties are supported in "
+            + "property chains");
+      }
+      final List<OWLObjectProperty> chain = new ArrayList<>();
+      while (nextElement() == XMLStreamConstants.START_ELEMENT) {
+        if (isBlankNode()) {
+          throw new UnsupportedDocumentException("property chains with property expressions are "
+              + "not supported");
+        }
+        chain.add(factory.getOWLObjectProperty(parseNode(base, lang)));
+      }
+      builder.addAxiom(factory.getOWLSubPropertyChainOfAxiom(chain,
+          factory.getOWLObjectProperty(subject)));
+    }
+
+    private boolean isBlankNode() {
+      return reader.getAttributeValue(RDF_NS, "about") == null
+          && reader.getAttributeValue(RDF_NS, "ID") == null;
+    }
+
+    /**
+     * Parses a node element that is a class expression. The reader must be positioned on its
+     * start tag and is left on its end tag.
+     *
+     * @throws UnsupportedDocumentException If the class expression is not supported.
+     */
+    private OWLClassExpression parseClassExpression(String parentBase, String parentLang)
+        throws XMLStreamException, UnsupportedDocumentException {
+      if (!isBlankNode()) {
+        return factory.getOWLClass(parseNode(parentBase, parentLang));
+      }
+      if (reader.getAttributeValue(RDF_NS, "nodeID") != null) {
+        throw new UnsupportedDocumentException("class expressions with node ids are not "
+            + "supported");
+      }
+      final String base = getBase(parentBase);
+      final IRI type = elementIri();
+      if (OWL_RESTRICTION.equals(type)) {
+        return parseRestriction(base, parentLang);
+      } else if (OWL_CLASS.equals(type)) {
+        return parseAnonymousClass(base, parentLang);
+      }
+      throw new UnsupportedDocumentException("class expressions of type " + type
+          + " are not supported");
+    }
+
+    private OWLClassExpression parseRestriction(String base, String lang)
+        throws XMLStreamException, UnsupportedDocumentException {
+      IRI property = null;
+      OWLClassExpression filler = null;
+      boolean universal = false;
+      while (nextElement() == XMLStreamConstants.START_ELEMENT) {
+        final IRI predicate = elementIri();
+        if (OWL_ON_PROPERTY.equals(predicate)) {
+          final String resource = reader.getAttributeValue(RDF_NS, "resource");
+          if (resource == null) {
+            throw new UnsupportedDocumentException("restrictions on property expressions are "
+                + "not supported");
+          }
+          property = resolve(getBase(base), resource);
+          skipElement();
+        } else if (OWL_SOME_VALUES_FROM.equals(predicate)
+            || OWL_ALL_VALUES_FROM.equals(predicate)) {
+          universal = OWL_ALL_VALUES_FROM.equals(predicate);
+          filler = parseFiller(base, lang);
+        } else if (predicate.toString().startsWith(OWL_NS)) {
+          throw new UnsupportedDocumentException("restrictions with " + predicate
+              + " are not supported");
+        } else {
+          skipElement();
+        }
+      }
+      if (property == null || filler == null) {
+        throw new UnsupportedDocumentException("incomplete restriction");
+      }
+      final OWLObjectProperty prop = factory.getOWLObjectProperty(property);
+      return universal ? factory.getOWLObjectAllValuesFrom(prop, filler)
+          : factory.getOWLObjectSomeValuesFrom(prop, filler);
+    }
+
+    private OWLClassExpression parseAnonymousClass(String base, String lang)
+        throws XMLStreamException, UnsupportedDocumentException {
+      OWLClassExpression res = null;
+      while (nextElement() == XMLStreamConstants.START_ELEMENT) {
+        final IRI predicate = elementIri();
+        if (OWL_INTERSECTION_OF.equals(predicate) || OWL_UNION_OF.equals(predicate)) {
+          if (!"Collection".equals(reader.getAttributeValue(RDF_NS, "parseType"))) {
+            throw new UnsupportedDocumentException("only collections of class expressions are "
+                + "supported");
+          }
+          final String listBase = getBase(base);
+          final Set<OWLClassExpression> operands = new HashSet<>();
+          while (nextElement() == XMLStreamConstants.START_ELEMENT) {
+            operands.add(parseClassExpression(listBase, lang));
+          }
+          res = OWL_INTERSECTION_OF.equals(predicate) ? factory.getOWLObjectIntersectionOf(operands)
+              : factory.getOWLObjectUnionOf(operands);
+        } else if (OWL_COMPLEMENT_OF.equals(predicate)) {
+          res = factory.getOWLObjectComplementOf(parseFiller(base, lang));
+        } else if (predicate.toString().startsWith(OWL_NS)) {
+          throw new UnsupportedDocumentException("anonymous classes with " + predicate
+              + " are not supported");
+        } else {
+          skipElement();
+        }
+      }
+      if (res == null) {
+        throw new UnsupportedDocumentException("anonymous class without a definition");
+      }
+      return res;
+    }
+
+    /**
+     * Parses a property element whose object is a class expression. The reader must be positioned
+     * on its start tag and is left on its end tag.
+     */
+    private OWLClassExpression parseFiller(String parentBase, String lang)
+        throws XMLStreamException, UnsupportedDocumentException {
+      final String base = getBase(parentBase);
+      final String resource = reader.getAttributeValue(RDF_NS, "resource");
+      if (resource != null) {
+        final IRI iri = resolve(base, resource);
+        skipElement();
+        if (iri.toString().startsWith(XSD_NS)
+            || OWLRDFVocabulary.RDFS_LITERAL.getIRI().equals(iri)) {
+          throw new UnsupportedDocumentException("data property restrictions are not supported");
+        }
+        return factory.getOWLClass(iri);
+      }
+      if (reader.getAttributeValue(RDF_NS, "parseType") != null
+          || reader.getAttributeValue(RDF_NS, "nodeID") != null
+          || nextElement() != XMLStreamConstants.START_ELEMENT) {
+        throw new UnsupportedDocumentException("unsupported class expression in " + elementIri());
+      }
+      final OWLClassExpression res = parseClassExpression(base, lang);
+      if (nextElement() != XMLStreamConstants.END_ELEMENT) {
+        throw new UnsupportedDocumentException("more than one class expression in a property");
+      }
+      return res;
+    }
+
+    private void skipElement() throws XMLStreamException {
+      int depth = 1;
+      while (depth > 0 && reader.hasNext()) {
+        final int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          depth++;
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+          depth--;
+        }
+      }
+    }
+
+    private IRI elementIri() {
+      final String ns = reader.getNamespaceURI();
+      return IRI.create((ns != null ? ns : "") + reader.getLocalName());
+    }
+
+    private String getBase(String parentBase) {
+      final String base = reader.getAttributeValue(XML_NS, "base");
+      if (base == null) {
+        return parentBase;
+      }
+      final IRI resolved = resolve(parentBase, base);
+      return resolved.toString();
+    }
+
+    private String getLang(String parentLang) {
+      final String lang = reader.getAttributeValue(XML_NS, "lang");
+      return lang != null ? lang : parentLang;
+    }
+
+    private IRI resolve(String base, String value) {
+      try {
+        final URI uri = new URI(value);
+        if (uri.isAbsolute()) {
+          return IRI.create(value);
+        }
+        final URI baseUri = new URI(base);
+        if (value.startsWith("#")) {
+          // Resolving a fragment against a base that has a fragment replaces it
+          final String b = base.contains("#") ? base.substring(0, base.indexOf('#')) : base;
+          return IRI.create(b + value);
+        }
+        return IRI.create(baseUri.resolve(uri));
+      } catch (URISyntaxException e) {
+        return IRI.create(value);
+      }
+    }
+  }
+
+}
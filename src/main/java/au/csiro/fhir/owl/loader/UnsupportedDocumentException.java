@@ -0,0 +1,19 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.loader;
+
+/**
+ * Thrown when a document uses a construct that a fast loader cannot handle. The loaders that throw
+ * it catch it themselves and use their fallback loader instead.
+ */
+class UnsupportedDocumentException extends Exception {
+
+  private static final long serialVersionUID = 1L;
+
+  UnsupportedDocumentException(String message) {
+    super(message);
+  }
+
+}
@@ -0,0 +1,35 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for the creation of the reasoner and the classification of the ontology.
+ */
+@Name("au.csiro.fhir.owl.Classification")
+@Label("Classification")
+@Category("FHIR OWL")
+@Description("Creation of the reasoner and classification of the ontology")
+@StackTrace(false)
+public class ClassificationEvent extends Event {
+
+  @Label("Reasoner")
+  public String reasoner;
+
+  @Label("Classes")
+  @Description("Number of classes in the imports closure")
+  public int classes;
+
+  @Label("Axioms")
+  @Description("Number of axioms in the imports closure")
+  public long axioms;
+
+}
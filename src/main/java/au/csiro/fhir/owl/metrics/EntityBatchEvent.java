@@ -0,0 +1,87 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for a batch of entities turned into concepts. Entities are grouped in
+ * batches of {@link #BATCH_SIZE} so the event does not add to the cost of each entity. Usage:
+ *
+ * <pre>
+ * EntityBatchEvent batch = new EntityBatchEvent("class");
+ * for (...) {
+ *   batch = batch.processed(added);
+ * }
+ * batch.finish();
+ * </pre>
+ */
+@Name("au.csiro.fhir.owl.EntityBatch")
+@Label("Entity Batch")
+@Category("FHIR OWL")
+@Description("Creation of the concepts of a batch of entities")
+@StackTrace(false)
+public class EntityBatchEvent extends Event {
+
+  /**
+   * The maximum number of entities in a batch.
+   */
+  public static final int BATCH_SIZE = 1000;
+
+  @Label("Entity Type")
+  public String entityType;
+
+  @Label("Entities")
+  @Description("Number of entities processed")
+  public int entities;
+
+  @Label("Concepts")
+  @Description("Number of concepts added to the code system")
+  public int concepts;
+
+  /**
+   * Creates a new event and starts timing it.
+   *
+   * @param entityType The type of the entities in the batch.
+   */
+  public EntityBatchEvent(String entityType) {
+    this.entityType = entityType;
+    begin();
+  }
+
+  /**
+   * Records that an entity was processed. When the batch is full the event is committed and a new
+   * one is returned.
+   *
+   * @param added True if the entity was added to the code system as a concept.
+   * @return The event for the next entity.
+   */
+  public EntityBatchEvent processed(boolean added) {
+    entities++;
+    if (added) {
+      concepts++;
+    }
+    if (entities < BATCH_SIZE) {
+      return this;
+    }
+    finish();
+    return new EntityBatchEvent(entityType);
+  }
+
+  /**
+   * Commits the event, if it contains any entities.
+   */
+  public void finish() {
+    if (entities > 0 && shouldCommit()) {
+      commit();
+    }
+  }
+
+}
@@ -0,0 +1,223 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.metrics;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Samples the heap at the boundaries of the phases of a transformation and estimates the size of
+ * its main intermediate structures, so it is possible to tell which of them dominates the heap.
+ *
+ * <p>At each checkpoint a garbage collection is requested before the heap is sampled, so the
+ * used heap approximates the live set, and the bytes allocated by each thread since the previous
+ * checkpoint are recorded. Structures are measured with an {@link ObjectSizeEstimator}, and every
+ * structure that is measured becomes a boundary for the ones measured after it, so, for example,
+ * the ontology is not counted again as part of the reasoner that references it. This is
+ * expensive and is only meant to be used to size JVMs and to check memory optimisations.
+ */
+public class HeapProfiler {
+
+  private static final Log log = LogFactory.getLog(HeapProfiler.class);
+
+  private static final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+  private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+  private final ObjectSizeEstimator estimator = new ObjectSizeEstimator();
+
+  private final List<Checkpoint> checkpoints = new ArrayList<>();
+
+  private final List<Structure> structures = new ArrayList<>();
+
+  private Map<Long, Long> lastAllocated;
+
+  /**
+   * Creates a new profiler. The allocations of the first checkpoint are counted from here.
+   */
+  public HeapProfiler() {
+    lastAllocated = allocatedBytes();
+  }
+
+  /**
+   * Samples the heap and the bytes allocated by each thread since the previous checkpoint.
+   *
+   * @param phase The phase that just finished.
+   */
+  public void checkpoint(String phase) {
+    System.gc();
+    final MemoryUsage heap = memory.getHeapMemoryUsage();
+    final Checkpoint checkpoint = new Checkpoint(phase, heap.getUsed(), heap.getCommitted(),
+        heap.getMax());
+
+    final Map<Long, Long> allocated = allocatedBytes();
+    if (allocated != null && lastAllocated != null) {
+      for (Map.Entry<Long, Long> e : allocated.entrySet()) {
+        final long bytes = e.getValue() - lastAllocated.getOrDefault(e.getKey(), 0L);
+        if (bytes > 0) {
+          final ThreadInfo info = threads.getThreadInfo(e.getKey());
+          final String name = info != null ? info.getThreadName() : "thread-" + e.getKey();
+          checkpoint.allocatedBytes.merge(name, bytes, Long::sum);
+        }
+      }
+    }
+    lastAllocated = allocated;
+    checkpoints.add(checkpoint);
+    log.info("Heap after " + phase + ": " + TransformationMetrics.formatBytes(heap.getUsed())
+        + " used, " + TransformationMetrics.formatBytes(heap.getCommitted()) + " committed");
+  }
+
+  /**
+   * Estimates the size of a structure. The traversal stops at the structures measured before.
+   *
+   * @param name The name of the structure.
+   * @param root The root of the structure.
+   * @param parts Objects inside the structure that other structures might reference directly.
+   *     The traversal of the structures measured after this one also stops at them.
+   */
+  public void measure(String name, Object root, Object... parts) {
+    if (root == null) {
+      return;
+    }
+    final long start = System.currentTimeMillis();
+    final ObjectSizeEstimator.Estimate estimate = estimator.estimate(root);
+    estimator.addBoundary(root);
+    for (Object part : parts) {
+      estimator.addBoundary(part);
+    }
+    structures.add(new Structure(name, estimate.getBytes(), estimate.getObjects()));
+    log.info("Estimated size of " + name + ": " + TransformationMetrics.formatBytes(
+        estimate.getBytes()) + " in " + estimate.getObjects() + " objects (took "
+        + TransformationMetrics.formatMillis(System.currentTimeMillis() - start) + ")");
+  }
+
+  /**
+   * Returns the measured structures, largest first.
+   *
+   * @return The names of the structures.
+   */
+  public List<String> getRanking() {
+    final List<String> res = new ArrayList<>();
+    for (Structure structure : ranked()) {
+      res.add(structure.name);
+    }
+    return res;
+  }
+
+  /**
+   * Returns a one line summary of the largest structures.
+   *
+   * @return The summary.
+   */
+  public String getSummary() {
+    final StringBuilder sb = new StringBuilder("Largest structures: ");
+    String sep = "";
+    for (Structure structure : ranked()) {
+      sb.append(sep).append(structure.name).append(" ")
+        .append(TransformationMetrics.formatBytes(structure.bytes));
+      sep = ", ";
+    }
+    long peak = 0;
+    for (Checkpoint checkpoint : checkpoints) {
+      peak = Math.max(peak, checkpoint.heapUsedBytes);
+    }
+    sb.append(sep).append("largest live heap ").append(TransformationMetrics.formatBytes(peak));
+    return sb.toString();
+  }
+
+  /**
+   * Writes the profile as JSON.
+   *
+   * @param file The file to write to.
+   * @throws IOException If there is a problem writing the file.
+   */
+  public void writeReport(File file) throws IOException {
+    final Map<String, Object> report = new LinkedHashMap<>();
+    report.put("checkpoints", checkpoints);
+    report.put("structures", ranked());
+    final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+      gson.toJson(report, writer);
+    }
+  }
+
+  private List<Structure> ranked() {
+    final List<Structure> res = new ArrayList<>(structures);
+    res.sort(Comparator.comparingLong((Structure s) -> s.bytes).reversed());
+    return res;
+  }
+
+  private static Map<Long, Long> allocatedBytes() {
+    if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+      return null;
+    }
+    final com.sun.management.ThreadMXBean tmx = (com.sun.management.ThreadMXBean) threads;
+    if (!tmx.isThreadAllocatedMemorySupported() || !tmx.isThreadAllocatedMemoryEnabled()) {
+      return null;
+    }
+    final long[] ids = tmx.getAllThreadIds();
+    final long[] bytes = tmx.getThreadAllocatedBytes(ids);
+    final Map<Long, Long> res = new HashMap<>();
+    for (int i = 0; i < ids.length; i++) {
+      if (bytes[i] >= 0) {
+        res.put(ids[i], bytes[i]);
+      }
+    }
+    return res;
+  }
+
+  /*
+   * The classes below are serialised by Gson to create the JSON report.
+   */
+
+  private static class Checkpoint {
+    private final String phase;
+    private final long heapUsedBytes;
+    private final long heapCommittedBytes;
+    private final long heapMaxBytes;
+    private final Map<String, Long> allocatedBytes = new LinkedHashMap<>();
+
+    private Checkpoint(String phase, long heapUsedBytes, long heapCommittedBytes,
+        long heapMaxBytes) {
+      this.phase = phase;
+      this.heapUsedBytes = heapUsedBytes;
+      this.heapCommittedBytes = heapCommittedBytes;
+      this.heapMaxBytes = heapMaxBytes;
+    }
+  }
+
+  private static class Structure {
+    private final String name;
+    private final long bytes;
+    private final long objects;
+
+    private Structure(String name, long bytes, long objects) {
+      this.name = name;
+      this.bytes = bytes;
+      this.objects = objects;
+    }
+  }
+
+}
@@ -0,0 +1,39 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for the resolution and parsing of a single document of the imports
+ * closure. When imports are loaded sequentially the event of an ontology includes its own
+ * imports.
+ */
+@Name("au.csiro.fhir.owl.ImportResolution")
+@Label("Import Resolution")
+@Category("FHIR OWL")
+@Description("Resolution and parsing of a document of the imports closure")
+@StackTrace(false)
+public class ImportResolutionEvent extends Event {
+
+  @Label("Import IRI")
+  @Description("The IRI in the import declaration, not set for the root ontology")
+  public String importIri;
+
+  @Label("Document IRI")
+  public String documentIri;
+
+  @Label("Axioms")
+  public int axioms;
+
+  @Label("Successful")
+  public boolean successful;
+
+}
@@ -0,0 +1,234 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.metrics;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Estimates the deep size of an object graph, i.e. the size of an object and all the objects
+ * reachable from it. The estimate assumes a 64-bit JVM with compressed references: 12 byte object
+ * headers, 4 byte references and objects aligned to 8 bytes.
+ *
+ * <p>Classes of the application and its libraries are traversed using reflection. The internals
+ * of JDK classes cannot be accessed reflectively, so strings, arrays, collections and maps are
+ * estimated from their contents and any other JDK object is counted as a small object without
+ * traversing it. The result is an estimate, good enough to tell which structures dominate the
+ * heap, not an exact measurement.
+ */
+public class ObjectSizeEstimator {
+
+  private static final int HEADER = 12;
+
+  private static final int ARRAY_HEADER = 16;
+
+  private static final int REFERENCE = 4;
+
+  /**
+   * Approximate size of an entry of a hash map or hash set: the node plus its share of the table.
+   */
+  private static final int HASH_ENTRY = 40;
+
+  private static final int COLLECTION = 48;
+
+  private static final Map<Class<?>, List<Field>> fieldCache = new ConcurrentHashMap<>();
+
+  private static final Map<Class<?>, Long> shallowCache = new ConcurrentHashMap<>();
+
+  private final Set<Object> boundaries = Collections.newSetFromMap(new IdentityHashMap<>());
+
+  /**
+   * Adds an object where traversal stops. Used to exclude structures that have already been
+   * measured, such as the ontology when measuring the reasoner that references it.
+   *
+   * @param boundary The object.
+   */
+  public void addBoundary(Object boundary) {
+    if (boundary != null) {
+      boundaries.add(boundary);
+    }
+  }
+
+  /**
+   * Estimates the deep size of an object, without traversing the boundaries.
+   *
+   * @param root The object.
+   * @return The estimate.
+   */
+  public Estimate estimate(Object root) {
+    final Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+    final Deque<Object> stack = new ArrayDeque<>();
+    long bytes = 0;
+    long objects = 0;
+    push(root, visited, stack);
+    while (!stack.isEmpty()) {
+      final Object obj = stack.pop();
+      objects++;
+      bytes += visit(obj, visited, stack);
+    }
+    return new Estimate(bytes, objects);
+  }
+
+  private void push(Object obj, Set<Object> visited, Deque<Object> stack) {
+    if (obj == null || obj instanceof Class || boundaries.contains(obj) || !visited.add(obj)) {
+      return;
+    }
+    stack.push(obj);
+  }
+
+  /**
+   * Returns the shallow size of an object, plus the overhead of its entries if it is a collection,
+   * and pushes the objects it references.
+   */
+  private long visit(Object obj, Set<Object> visited, Deque<Object> stack) {
+    final Class<?> type = obj.getClass();
+    if (type.isArray()) {
+      final Class<?> component = type.getComponentType();
+      final int length = Array.getLength(obj);
+      if (!component.isPrimitive()) {
+        for (Object element : (Object[]) obj) {
+          push(element, visited, stack);
+        }
+      }
+      return align(ARRAY_HEADER + (long) length * fieldSize(component));
+    } else if (obj instanceof String) {
+      final String s = (String) obj;
+      boolean latin1 = true;
+      for (int i = 0; i < s.length() && latin1; i++) {
+        latin1 = s.charAt(i) < 256;
+      }
+      return align(HEADER + 12) + align(ARRAY_HEADER + (long) s.length() * (latin1 ? 1 : 2));
+    } else if (obj instanceof Map) {
+      final Map<?, ?> map = (Map<?, ?>) obj;
+      for (Map.Entry<?, ?> e : map.entrySet()) {
+        push(e.getKey(), visited, stack);
+        push(e.getValue(), visited, stack);
+      }
+      return COLLECTION + (long) map.size() * HASH_ENTRY;
+    } else if (obj instanceof Collection) {
+      final Collection<?> collection = (Collection<?>) obj;
+      for (Object element : collection) {
+        push(element, visited, stack);
+      }
+      return COLLECTION + (long) collection.size()
+          * (obj instanceof Set ? HASH_ENTRY : REFERENCE);
+    } else if (isJdkClass(type)) {
+      return shallowSize(type);
+    }
+
+    for (Field field : getReferenceFields(type)) {
+      try {
+        push(field.get(obj), visited, stack);
+      } catch (IllegalAccessException | RuntimeException e) {
+        // Fields that cannot be read are not counted
+      }
+    }
+    return shallowSize(type);
+  }
+
+  private static boolean isJdkClass(Class<?> type) {
+    final String name = type.getName();
+    return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("jdk.")
+        || name.startsWith("sun.") || name.startsWith("com.sun.");
+  }
+
+  /**
+   * Returns the non-static reference fields of a class and its superclasses that can be read,
+   * i.e. those that are not declared by JDK classes.
+   */
+  private static List<Field> getReferenceFields(Class<?> type) {
+    return fieldCache.computeIfAbsent(type, t -> {
+      final List<Field> res = new ArrayList<>();
+      for (Class<?> c = t; c != null && !isJdkClass(c); c = c.getSuperclass()) {
+        for (Field field : c.getDeclaredFields()) {
+          if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) {
+            continue;
+          }
+          try {
+            field.setAccessible(true);
+            res.add(field);
+          } catch (RuntimeException e) {
+            // Not accessible, e.g. because of the module system
+          }
+        }
+      }
+      return res;
+    });
+  }
+
+  private static long shallowSize(Class<?> type) {
+    return shallowCache.computeIfAbsent(type, t -> {
+      long size = HEADER;
+      for (Class<?> c = t; c != null; c = c.getSuperclass()) {
+        for (Field field : c.getDeclaredFields()) {
+          if (!Modifier.isStatic(field.getModifiers())) {
+            size += fieldSize(field.getType());
+          }
+        }
+      }
+      return align(size);
+    });
+  }
+
+  private static int fieldSize(Class<?> type) {
+    if (type == long.class || type == double.class) {
+      return 8;
+    } else if (type == int.class || type == float.class) {
+      return 4;
+    } else if (type == short.class || type == char.class) {
+      return 2;
+    } else if (type == byte.class || type == boolean.class) {
+      return 1;
+    }
+    return REFERENCE;
+  }
+
+  private static long align(long size) {
+    return (size + 7) & ~7L;
+  }
+
+  /**
+   * The estimated size of an object graph.
+   */
+  public static class Estimate {
+    private final long bytes;
+    private final long objects;
+
+    Estimate(long bytes, long objects) {
+      this.bytes = bytes;
+      this.objects = objects;
+    }
+
+    /**
+     * Returns the estimated size.
+     *
+     * @return The size in bytes.
+     */
+    public long getBytes() {
+      return bytes;
+    }
+
+    /**
+     * Returns the number of objects in the graph.
+     *
+     * @return The number of objects.
+     */
+    public long getObjects() {
+      return objects;
+    }
+  }
+
+}
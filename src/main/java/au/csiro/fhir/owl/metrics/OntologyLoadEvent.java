@@ -0,0 +1,40 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for the loading of the input ontology and its imports closure.
+ */
+@Name("au.csiro.fhir.owl.OntologyLoad")
+@Label("Ontology Load")
+@Category("FHIR OWL")
+@Description("Loading of the input ontology and its imports closure")
+@StackTrace(false)
+public class OntologyLoadEvent extends Event {
+
+  @Label("Input")
+  public String input;
+
+  @Label("Input Size")
+  @DataAmount
+  public long inputSize;
+
+  @Label("Ontologies")
+  @Description("Number of ontologies in the imports closure")
+  public int ontologies;
+
+  @Label("Axioms")
+  @Description("Number of axioms in the imports closure")
+  public long axioms;
+
+}
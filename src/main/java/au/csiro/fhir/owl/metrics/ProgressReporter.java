@@ -0,0 +1,320 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.metrics;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.semanticweb.owlapi.reasoner.ReasonerProgressMonitor;
+
+/**
+ * Reports the progress of the current task of a transformation at a fixed interval. The progress
+ * is logged, with the throughput, percentage complete and an estimate of the remaining time, only
+ * if the application is attached to a terminal. If a status file is configured then it is
+ * rewritten at every interval, whether there is a terminal or not, so that a scheduler can tell a
+ * stuck transformation from a slow one by comparing the {@code updated} and {@code lastProgress}
+ * timestamps.
+ *
+ * <p>Tasks are started with {@link #startTask(String, long)} and their progress is updated from
+ * the thread doing the work, which is cheap because the reporting is done by a background thread.
+ * The progress of the reasoner is reported with the monitor returned by
+ * {@link #getReasonerMonitor()}. Reasoners cannot always tell how far along a task is; while one is
+ * busy with such a task the status file records it, with how long the task has been running, so
+ * that a scheduler can apply its own deadline. Only a change in the number of items processed
+ * counts as progress.
+ */
+public class ProgressReporter implements Closeable {
+
+  private static final Log log = LogFactory.getLog(ProgressReporter.class);
+
+  private final File statusFile;
+
+  private final boolean console;
+
+  private final ScheduledExecutorService executor;
+
+  private final long startMillis = System.currentTimeMillis();
+
+  private volatile String task = "starting";
+
+  private volatile long total;
+
+  private final AtomicLong done = new AtomicLong();
+
+  private volatile long taskStartNanos = System.nanoTime();
+
+  private volatile long lastProgressMillis = startMillis;
+
+  private long lastDone;
+
+  private volatile String state = "running";
+
+  private volatile boolean busy;
+
+  /**
+   * Creates a new progress reporter and starts reporting.
+   *
+   * @param intervalSeconds The interval between reports, in seconds.
+   * @param statusFile The status file. Can be null.
+   */
+  public ProgressReporter(int intervalSeconds, File statusFile) {
+    this(intervalSeconds, statusFile, System.console() != null);
+  }
+
+  ProgressReporter(int intervalSeconds, File statusFile, boolean console) {
+    this.statusFile = statusFile;
+    this.console = console;
+    if (intervalSeconds > 0 && (console || statusFile != null)) {
+      executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread t = new Thread(r, "progress-reporter");
+        t.setDaemon(true);
+        return t;
+      });
+      executor.scheduleAtFixedRate(this::report, intervalSeconds, intervalSeconds,
+          TimeUnit.SECONDS);
+    } else {
+      executor = null;
+    }
+    writeStatus();
+  }
+
+  /**
+   * Creates a progress reporter that does not report anything.
+   *
+   * @return The progress reporter.
+   */
+  public static ProgressReporter none() {
+    return new ProgressReporter(0, null, false);
+  }
+
+  /**
+   * Starts a new task.
+   *
+   * @param name The name of the task.
+   * @param total The number of items the task will process, or 0 if it is not known.
+   */
+  public void startTask(String name, long total) {
+    this.task = name;
+    this.total = total;
+    this.done.set(0);
+    this.busy = false;
+    this.taskStartNanos = System.nanoTime();
+    this.lastProgressMillis = System.currentTimeMillis();
+  }
+
+  /**
+   * Sets the number of items of the current task that have been processed.
+   *
+   * @param done The number of items processed.
+   */
+  public void setProgress(long done) {
+    this.done.set(done);
+  }
+
+  /**
+   * Increments the number of items of the current task that have been processed. This is called
+   * once per entity, so it only updates a counter; the time of the last progress is worked out
+   * when the status is reported.
+   */
+  public void increment() {
+    done.incrementAndGet();
+  }
+
+  /**
+   * Returns a monitor that reports the progress of a reasoner as tasks of this reporter. The name
+   * of each task is the name of the reasoner task, prefixed with "classification".
+   *
+   * @return The reasoner progress monitor.
+   */
+  public ReasonerProgressMonitor getReasonerMonitor() {
+    return new ReasonerProgressMonitor() {
+      @Override
+      public void reasonerTaskStarted(String taskName) {
+        startTask("classification: " + taskName, 0);
+      }
+
+      @Override
+      public void reasonerTaskProgressChanged(int value, int max) {
+        busy = false;
+        total = max;
+        setProgress(value);
+      }
+
+      @Override
+      public void reasonerTaskBusy() {
+        total = 0;
+        busy = true;
+      }
+
+      @Override
+      public void reasonerTaskStopped() {
+        // The next task, if any, starts a new one
+        busy = false;
+      }
+    };
+  }
+
+  /**
+   * Marks the transformation as failed and stops reporting.
+   */
+  public void fail() {
+    state = "failed";
+    close();
+  }
+
+  /**
+   * Stops reporting. The status file is updated one last time, with the state set to
+   * {@code finished} unless the transformation failed.
+   */
+  @Override
+  public void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    if ("running".equals(state)) {
+      state = "finished";
+    }
+    writeStatus();
+  }
+
+  /**
+   * Returns a line that describes the progress of the current task.
+   *
+   * @return The progress line.
+   */
+  String getProgressLine() {
+    final Status status = createStatus();
+    final StringBuilder sb = new StringBuilder();
+    if (status.busy) {
+      return sb.append(status.task).append(": busy for ")
+          .append(formatSeconds(status.taskElapsedSeconds)).toString();
+    }
+    sb.append(status.task).append(": ").append(status.done);
+    if (status.total > 0) {
+      sb.append("/").append(status.total).append(String.format(Locale.ROOT, " (%.1f%%)",
+          status.percent));
+    }
+    sb.append(String.format(Locale.ROOT, ", %.1f/s", status.perSecond));
+    if (status.etaSeconds >= 0) {
+      sb.append(", ETA ").append(formatSeconds(status.etaSeconds));
+    }
+    return sb.toString();
+  }
+
+  private void report() {
+    try {
+      if (console) {
+        log.info(getProgressLine());
+      }
+      writeStatus();
+    } catch (RuntimeException e) {
+      // Reporting should never stop the transformation
+      log.debug("Could not report progress", e);
+    }
+  }
+
+  private synchronized Status createStatus() {
+    final Status status = new Status();
+    status.pid = ProcessHandle.current().pid();
+    status.state = state;
+    status.task = task;
+    status.done = done.get();
+    status.busy = busy;
+    if (status.done != lastDone) {
+      lastDone = status.done;
+      lastProgressMillis = System.currentTimeMillis();
+    }
+    status.total = total;
+    final double elapsed = (System.nanoTime() - taskStartNanos) / 1e9;
+    status.taskElapsedSeconds = (long) elapsed;
+    status.perSecond = elapsed > 0 ? status.done / elapsed : 0;
+    if (status.total > 0) {
+      status.percent = Math.min(100.0, status.done * 100.0 / status.total);
+      status.etaSeconds = status.perSecond > 0
+          ? (long) (Math.max(0, status.total - status.done) / status.perSecond) : -1;
+    } else {
+      status.etaSeconds = -1;
+    }
+    status.elapsedSeconds = (System.currentTimeMillis() - startMillis) / 1000;
+    status.started = Instant.ofEpochMilli(startMillis).toString();
+    status.updated = Instant.now().toString();
+    status.lastProgress = Instant.ofEpochMilli(lastProgressMillis).toString();
+    return status;
+  }
+
+  /**
+   * Writes the status file, if there is one. The file is written to a temporary file first and
+   * then moved, so readers never see a partial file.
+   */
+  private synchronized void writeStatus() {
+    if (statusFile == null) {
+      return;
+    }
+    final Path target = statusFile.toPath().toAbsolutePath();
+    final Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+    try {
+      final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+      try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+        gson.toJson(createStatus(), writer);
+      }
+      try {
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (IOException e) {
+      log.warn("Could not write status file " + target + ": " + e.getLocalizedMessage());
+    }
+  }
+
+  static String formatSeconds(long seconds) {
+    if (seconds < 60) {
+      return seconds + "s";
+    } else if (seconds < 3600) {
+      return String.format(Locale.ROOT, "%dm%02ds", seconds / 60, seconds % 60);
+    }
+    return String.format(Locale.ROOT, "%dh%02dm", seconds / 3600, (seconds % 3600) / 60);
+  }
+
+  /**
+   * The contents of the status file, serialised by Gson.
+   */
+  private static class Status {
+    private long pid;
+    private String state;
+    private String task;
+    private boolean busy;
+    private long done;
+    private long total;
+    private double percent;
+    private double perSecond;
+    private long etaSeconds;
+    private long taskElapsedSeconds;
+    private long elapsedSeconds;
+    private String started;
+    private String updated;
+    private String lastProgress;
+  }
+
+}
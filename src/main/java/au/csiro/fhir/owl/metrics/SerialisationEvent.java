@@ -0,0 +1,35 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for the serialisation of the code system to the output file.
+ */
+@Name("au.csiro.fhir.owl.Serialisation")
+@Label("Serialisation")
+@Category("FHIR OWL")
+@Description("Serialisation of the code system to the output file")
+@StackTrace(false)
+public class SerialisationEvent extends Event {
+
+  @Label("Output")
+  public String output;
+
+  @Label("Concepts")
+  public int concepts;
+
+  @Label("Output Size")
+  @DataAmount
+  public long outputSize;
+
+}
@@ -0,0 +1,476 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.metrics;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records the wall time, CPU time, allocated bytes and entity counts of each phase of a
+ * transformation, and the imports that were loaded. The results are written as a JSON report
+ * and summarised in a single log line.
+ *
+ * <p>Phases are timed with {@link #startPhase(String)}, which is meant to be used in a
+ * try-with-resources block. A phase can be started more than once, for example to time the
+ * hierarchy of the classes and of the properties separately, and the measurements are added up.
+ * Phases are not meant to overlap.
+ *
+ * <p>The CPU time is the CPU time of the whole process, so it includes the threads used to load
+ * imports in parallel and the garbage collector. The allocated bytes are those allocated by the
+ * threads that are still running when a phase ends, which always includes the thread running the
+ * transformation. Both are reported as -1 if the JVM does not support measuring them.
+ */
+public class TransformationMetrics {
+
+  /**
+   * Loading the input ontology and its imports.
+   */
+  public static final String LOAD = "load";
+
+  /**
+   * Assigning ids to entities and extracting their labels.
+   */
+  public static final String LABELS = "labels";
+
+  /**
+   * Creating the reasoner and classifying the ontology.
+   */
+  public static final String CLASSIFICATION = "classification";
+
+  /**
+   * Calculating the transitive reduction of the class and property hierarchies.
+   */
+  public static final String REDUCTION = "reduction";
+
+  /**
+   * Creating the concepts of the code system.
+   */
+  public static final String ENTITIES = "entities";
+
+  /**
+   * Writing the code system to the output file.
+   */
+  public static final String SERIALISATION = "serialisation";
+
+  private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+  private static final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+
+  private final Instant startTime = Instant.now();
+
+  private final Usage start;
+
+  private Usage end;
+
+  private final Map<String, String> attributes = new LinkedHashMap<>();
+
+  private final Map<String, Long> counts = new LinkedHashMap<>();
+
+  private final Map<String, PhaseReport> phases = new LinkedHashMap<>();
+
+  private final Map<String, Long> importMillis = new ConcurrentHashMap<>();
+
+  private final List<ImportReport> imports = new ArrayList<>();
+
+  private HeapProfiler profiler;
+
+  /**
+   * Creates a new instance and starts measuring the transformation.
+   */
+  public TransformationMetrics() {
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+        pool.resetPeakUsage();
+      }
+    }
+    start = Usage.now();
+  }
+
+  /**
+   * Starts timing a phase.
+   *
+   * @param name The name of the phase.
+   * @return The phase, which stops being timed when it is closed.
+   */
+  public Phase startPhase(String name) {
+    return new Phase(name);
+  }
+
+  /**
+   * Sets the heap profiler. When set, the heap is sampled every time a phase ends and the
+   * structures passed to {@link #measure(String, Object)} are measured.
+   *
+   * @param profiler The heap profiler. Can be null.
+   */
+  public void setProfiler(HeapProfiler profiler) {
+    this.profiler = profiler;
+  }
+
+  /**
+   * Returns the heap profiler.
+   *
+   * @return The heap profiler, or null if the heap is not being profiled.
+   */
+  public HeapProfiler getProfiler() {
+    return profiler;
+  }
+
+  /**
+   * Estimates the size of an intermediate structure of the transformation, if the heap is being
+   * profiled. Does nothing otherwise.
+   *
+   * @param name The name of the structure.
+   * @param root The root of the structure.
+   * @param parts Objects inside the structure that other structures might reference directly.
+   */
+  public void measure(String name, Object root, Object... parts) {
+    if (profiler != null) {
+      profiler.measure(name, root, parts);
+    }
+  }
+
+  /**
+   * Sets a value that describes the transformation, such as the input file or the reasoner.
+   *
+   * @param name The name of the attribute.
+   * @param value The value.
+   */
+  public void setAttribute(String name, Object value) {
+    attributes.put(name, value != null ? value.toString() : null);
+  }
+
+  /**
+   * Adds to a count of the whole transformation, such as the number of concepts.
+   *
+   * @param name The name of the count.
+   * @param value The value to add.
+   */
+  public void addCount(String name, long value) {
+    counts.merge(name, value, Long::sum);
+  }
+
+  /**
+   * Returns a count of the whole transformation.
+   *
+   * @param name The name of the count.
+   * @return The count, or 0 if nothing has been counted.
+   */
+  public long getCount(String name) {
+    return counts.getOrDefault(name, 0L);
+  }
+
+  /**
+   * Records the time it took to load an ontology document. This method can be called from any
+   * thread.
+   *
+   * @param documentIri The IRI of the document.
+   * @param millis The time in milliseconds.
+   */
+  public void recordImportTime(String documentIri, long millis) {
+    importMillis.merge(documentIri, millis, Long::sum);
+  }
+
+  /**
+   * Adds an ontology in the imports closure of the input ontology to the report. The time it took
+   * to load it is taken from {@link #recordImportTime(String, long)}, if it was recorded.
+   *
+   * @param ontologyIri The IRI of the ontology. Can be null if the ontology is anonymous.
+   * @param documentIri The IRI of the document it was loaded from.
+   * @param axioms The number of axioms in the ontology.
+   */
+  public void addImport(String ontologyIri, String documentIri, int axioms) {
+    imports.add(new ImportReport(ontologyIri, documentIri, axioms,
+        documentIri != null ? importMillis.get(documentIri) : null));
+  }
+
+  /**
+   * Returns the wall time of a phase.
+   *
+   * @param name The name of the phase.
+   * @return The wall time in milliseconds, or 0 if the phase did not run.
+   */
+  public long getPhaseMillis(String name) {
+    final PhaseReport phase = phases.get(name);
+    return phase != null ? phase.wallMillis : 0;
+  }
+
+  /**
+   * Stops measuring the transformation. Called automatically when the report is written or the
+   * summary is created, if it has not been called before.
+   */
+  public void finish() {
+    if (end == null) {
+      end = Usage.now();
+    }
+  }
+
+  /**
+   * Writes the JSON report.
+   *
+   * @param file The file to write to.
+   * @throws IOException If there is a problem writing the file.
+   */
+  public void writeReport(File file) throws IOException {
+    final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+      gson.toJson(createReport(), writer);
+    }
+  }
+
+  /**
+   * Returns a one line summary of the report.
+   *
+   * @return The summary.
+   */
+  public String getSummary() {
+    final Report report = createReport();
+    final StringBuilder sb = new StringBuilder();
+    sb.append("Transformation took ").append(formatMillis(report.wallMillis));
+    if (report.cpuMillis >= 0) {
+      sb.append(" (cpu ").append(formatMillis(report.cpuMillis));
+      if (report.allocatedBytes >= 0) {
+        sb.append(", allocated ").append(formatBytes(report.allocatedBytes));
+      }
+      sb.append(")");
+    }
+    String sep = ": ";
+    for (PhaseReport phase : report.phases) {
+      sb.append(sep).append(phase.name).append(" ").append(formatMillis(phase.wallMillis));
+      sep = ", ";
+    }
+    for (Map.Entry<String, Long> count : report.counts.entrySet()) {
+      sb.append(sep).append(count.getValue()).append(" ").append(count.getKey());
+      sep = ", ";
+    }
+    if (!report.imports.isEmpty()) {
+      sb.append(sep).append(report.imports.size()).append(" ontologies");
+    }
+    return sb.toString();
+  }
+
+  private Report createReport() {
+    finish();
+    final Report report = new Report();
+    report.startTime = startTime.toString();
+    report.attributes = attributes;
+    report.wallMillis = (end.wallNanos - start.wallNanos) / 1000000;
+    report.cpuMillis = Usage.cpuMillis(start, end);
+    report.allocatedBytes = Usage.allocatedBytes(start, end);
+    report.peakHeapBytes = peakHeapBytes();
+    report.counts = counts;
+    report.phases = new ArrayList<>(phases.values());
+    report.imports = imports;
+    return report;
+  }
+
+  private static long peakHeapBytes() {
+    long res = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+        res += pool.getPeakUsage().getUsed();
+      }
+    }
+    return res;
+  }
+
+  static String formatMillis(long millis) {
+    if (millis < 1000) {
+      return millis + " ms";
+    }
+    return String.format(Locale.ROOT, "%.1f s", millis / 1000.0);
+  }
+
+  static String formatBytes(long bytes) {
+    if (bytes < 1024 * 1024) {
+      return bytes / 1024 + " KB";
+    } else if (bytes < 1024L * 1024 * 1024) {
+      return bytes / (1024 * 1024) + " MB";
+    }
+    return String.format(Locale.ROOT, "%.1f GB", bytes / (1024.0 * 1024 * 1024));
+  }
+
+  /**
+   * A phase that is being timed.
+   */
+  public class Phase implements AutoCloseable {
+
+    private final String name;
+
+    private final Usage start;
+
+    private final Map<String, Long> phaseCounts = new LinkedHashMap<>();
+
+    private boolean closed;
+
+    private Phase(String name) {
+      this.name = name;
+      this.start = Usage.now();
+    }
+
+    /**
+     * Adds to a count of this phase, such as the number of entities processed. The throughput of
+     * the phase is reported for each count.
+     *
+     * @param name The name of the count.
+     * @param value The value to add.
+     */
+    public void addCount(String name, long value) {
+      phaseCounts.merge(name, value, Long::sum);
+    }
+
+    /**
+     * Stops timing the phase and adds its measurements to the report.
+     */
+    @Override
+    public void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      final Usage now = Usage.now();
+      final PhaseReport phase = phases.computeIfAbsent(name, PhaseReport::new);
+      phase.invocations++;
+      phase.wallNanos += now.wallNanos - start.wallNanos;
+      phase.wallMillis = phase.wallNanos / 1000000;
+      final long cpu = Usage.cpuMillis(start, now);
+      phase.cpuMillis = cpu < 0 || phase.cpuMillis < 0 ? -1 : phase.cpuMillis + cpu;
+      final long allocated = Usage.allocatedBytes(start, now);
+      phase.allocatedBytes = allocated < 0 || phase.allocatedBytes < 0 ? -1
+          : phase.allocatedBytes + allocated;
+      for (Map.Entry<String, Long> count : phaseCounts.entrySet()) {
+        phase.counts.merge(count.getKey(), count.getValue(), Long::sum);
+      }
+      phase.perSecond.clear();
+      if (phase.wallNanos > 0) {
+        for (Map.Entry<String, Long> count : phase.counts.entrySet()) {
+          phase.perSecond.put(count.getKey(), count.getValue() * 1e9 / phase.wallNanos);
+        }
+      }
+      if (profiler != null) {
+        profiler.checkpoint(name);
+      }
+    }
+  }
+
+  /**
+   * A snapshot of the resources used by the JVM.
+   */
+  private static class Usage {
+    private final long wallNanos;
+    private final long cpuNanos;
+    private final Map<Long, Long> allocatedBytes;
+
+    private Usage(long wallNanos, long cpuNanos, Map<Long, Long> allocatedBytes) {
+      this.wallNanos = wallNanos;
+      this.cpuNanos = cpuNanos;
+      this.allocatedBytes = allocatedBytes;
+    }
+
+    static Usage now() {
+      long cpu = -1;
+      if (os instanceof com.sun.management.OperatingSystemMXBean) {
+        cpu = ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+      }
+      Map<Long, Long> allocated = null;
+      if (threads instanceof com.sun.management.ThreadMXBean) {
+        final com.sun.management.ThreadMXBean tmx = (com.sun.management.ThreadMXBean) threads;
+        if (tmx.isThreadAllocatedMemorySupported() && tmx.isThreadAllocatedMemoryEnabled()) {
+          final long[] ids = tmx.getAllThreadIds();
+          final long[] bytes = tmx.getThreadAllocatedBytes(ids);
+          allocated = new HashMap<>();
+          for (int i = 0; i < ids.length; i++) {
+            if (bytes[i] >= 0) {
+              allocated.put(ids[i], bytes[i]);
+            }
+          }
+        }
+      }
+      return new Usage(System.nanoTime(), cpu, allocated);
+    }
+
+    static long cpuMillis(Usage start, Usage end) {
+      if (start.cpuNanos < 0 || end.cpuNanos < 0) {
+        return -1;
+      }
+      return (end.cpuNanos - start.cpuNanos) / 1000000;
+    }
+
+    static long allocatedBytes(Usage start, Usage end) {
+      if (start.allocatedBytes == null || end.allocatedBytes == null) {
+        return -1;
+      }
+      long res = 0;
+      for (Map.Entry<Long, Long> e : end.allocatedBytes.entrySet()) {
+        res += e.getValue() - start.allocatedBytes.getOrDefault(e.getKey(), 0L);
+      }
+      return res;
+    }
+  }
+
+  /*
+   * The classes below are serialised by Gson to create the JSON report.
+   */
+
+  private static class Report {
+    private String startTime;
+    private Map<String, String> attributes;
+    private long wallMillis;
+    private long cpuMillis;
+    private long allocatedBytes;
+    private long peakHeapBytes;
+    private Map<String, Long> counts;
+    private List<PhaseReport> phases;
+    private List<ImportReport> imports;
+  }
+
+  private static class PhaseReport {
+    private final String name;
+    private int invocations;
+    private transient long wallNanos;
+    private long wallMillis;
+    private long cpuMillis;
+    private long allocatedBytes;
+    private final Map<String, Long> counts = new LinkedHashMap<>();
+    private final Map<String, Double> perSecond = new LinkedHashMap<>();
+
+    private PhaseReport(String name) {
+      this.name = name;
+    }
+  }
+
+  private static class ImportReport {
+    private final String ontologyIri;
+    private final String documentIri;
+    private final int axioms;
+    private final Long loadMillis;
+
+    private ImportReport(String ontologyIri, String documentIri, int axioms, Long loadMillis) {
+      this.ontologyIri = ontologyIri;
+      this.documentIri = documentIri;
+      this.axioms = axioms;
+      this.loadMillis = loadMillis;
+    }
+  }
+
+}
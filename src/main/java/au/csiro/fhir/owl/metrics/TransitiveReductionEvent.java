@@ -0,0 +1,36 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for the calculation of the transitive reduction of a hierarchy.
+ */
+@Name("au.csiro.fhir.owl.TransitiveReduction")
+@Label("Transitive Reduction")
+@Category("FHIR OWL")
+@Description("Calculation of the direct parents of the nodes of a hierarchy")
+@StackTrace(false)
+public class TransitiveReductionEvent extends Event {
+
+  @Label("Nodes")
+  @Description("Number of nodes whose parents were requested")
+  public int nodes;
+
+  @Label("Processed Nodes")
+  @Description("Number of nodes processed, including the ancestors of the requested nodes")
+  public int processed;
+
+  @Label("Edges")
+  @Description("Number of edges in the reduced hierarchy")
+  public long edges;
+
+}
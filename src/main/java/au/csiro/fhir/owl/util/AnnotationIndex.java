@@ -0,0 +1,291 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.util;
+
+import com.google.common.base.Optional;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotationAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLAnnotationSubject;
+import org.semanticweb.owlapi.model.OWLAnnotationValue;
+import org.semanticweb.owlapi.model.OWLLiteral;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+/**
+ * The annotations of the entities of an ontology that are used to create concepts: the code, the
+ * display candidates, the synonyms, the definition and the deprecated flag. The index is filled in
+ * a single pass over the annotation assertion axioms and only keeps the values of the configured
+ * annotation properties, in arrays indexed by the ids of an {@link IriDictionary}.
+ *
+ * <p>The deprecation of all the entities is kept in a bit set indexed by id. If deprecation
+ * properties are configured, an entity is deprecated if it has one of them with a boolean value of
+ * true or with any other value, as obsolescence markers usually have a reason as value. Otherwise,
+ * an entity is deprecated if it has an annotation with a property whose short form is
+ * <code>deprecated</code>, such as <code>owl:deprecated</code>, and a boolean value of true.
+ *
+ * <p>This class is not thread safe for writing, but it can be read concurrently once it has been
+ * filled.
+ */
+public class AnnotationIndex {
+
+  private static final Log log = LogFactory.getLog(AnnotationIndex.class);
+
+  private static final String[] NONE = new String[0];
+
+  private final IriDictionary dictionary;
+
+  private final IRI codeProp;
+
+  private final IRI displayProp;
+
+  private final IRI definitionProp;
+
+  private final Set<IRI> synonymProps = new HashSet<>();
+
+  private final Set<IRI> deprecationProps = new HashSet<>();
+
+  /**
+   * The arrays of the properties that are not configured are null.
+   */
+  private final String[] codes;
+
+  private final String[][] displays;
+
+  private final String[] definitions;
+
+  private final String[][] synonyms;
+
+  private final BitSet deprecated;
+
+  /**
+   * Caches whether each annotation property has the short form <code>deprecated</code>, so it is
+   * only computed once.
+   */
+  private final Map<IRI, Boolean> deprecatedShortForms = new HashMap<>();
+
+  /**
+   * Creates an empty index.
+   *
+   * @param dictionary The dictionary with the ids of the entities. Annotations of other subjects
+   *     are ignored.
+   * @param codeProp The annotation property that contains the code, or null.
+   * @param displayProp The annotation property that contains the display, or null.
+   * @param definitionProp The annotation property that contains the definition, or null.
+   * @param synonymProps The annotation properties that contain the synonyms. Might be empty.
+   * @param deprecationProps The annotation properties that indicate that an entity is
+   *     deprecated. If empty, any property whose short form is <code>deprecated</code> is used.
+   */
+  public AnnotationIndex(IriDictionary dictionary, OWLAnnotationProperty codeProp,
+      OWLAnnotationProperty displayProp, OWLAnnotationProperty definitionProp,
+      Collection<OWLAnnotationProperty> synonymProps,
+      Collection<OWLAnnotationProperty> deprecationProps) {
+    this.dictionary = dictionary;
+    this.codeProp = codeProp != null ? codeProp.getIRI() : null;
+    this.displayProp = displayProp != null ? displayProp.getIRI() : null;
+    this.definitionProp = definitionProp != null ? definitionProp.getIRI() : null;
+    for (OWLAnnotationProperty prop : synonymProps) {
+      this.synonymProps.add(prop.getIRI());
+    }
+    for (OWLAnnotationProperty prop : deprecationProps) {
+      this.deprecationProps.add(prop.getIRI());
+    }
+
+    final int size = dictionary.size();
+    codes = codeProp != null ? new String[size] : null;
+    displays = displayProp != null ? new String[size][] : null;
+    definitions = definitionProp != null ? new String[size] : null;
+    synonyms = !synonymProps.isEmpty() ? new String[size][] : null;
+    deprecated = new BitSet(size);
+  }
+
+  /**
+   * Adds the annotations of the entities in an ontology. The imports are not included.
+   *
+   * @param ont The ontology.
+   * @return The number of annotation assertion axioms that were read.
+   */
+  public int addAll(OWLOntology ont) {
+    int count = 0;
+    for (OWLAnnotationAssertionAxiom ax : ont.getAxioms(AxiomType.ANNOTATION_ASSERTION)) {
+      count++;
+      final OWLAnnotationSubject subject = ax.getSubject();
+      if (!(subject instanceof IRI)) {
+        continue;
+      }
+      final int id = dictionary.getId((IRI) subject);
+      if (id == IriDictionary.NO_ID) {
+        continue;
+      }
+      final IRI prop = ax.getProperty().getIRI();
+      final OWLAnnotationValue val = ax.getValue();
+
+      if (isDeprecationProperty(prop)) {
+        setDeprecated(id, val);
+      }
+
+      if (!(val instanceof OWLLiteral)) {
+        continue;
+      }
+      final String literal = ((OWLLiteral) val).getLiteral();
+      // A property can have more than one role, e.g. rdfs:label is used for the display and the
+      // synonyms by default
+      if (prop.equals(codeProp) && codes[id] == null) {
+        codes[id] = literal;
+      }
+      if (prop.equals(displayProp)) {
+        displays[id] = append(displays[id], literal);
+      }
+      if (prop.equals(definitionProp) && definitions[id] == null) {
+        definitions[id] = literal;
+      }
+      if (synonyms != null && synonymProps.contains(prop)) {
+        synonyms[id] = append(synonyms[id], literal);
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Returns the code of an entity.
+   *
+   * @param id The id of the entity.
+   * @return The first value of the code property or null if the entity has none or the property
+   *     is not configured.
+   */
+  public String getCode(int id) {
+    return codes != null ? codes[id] : null;
+  }
+
+  /**
+   * Returns the preferred term of an entity, which is the first value of the display property in
+   * alphabetical order, so it does not depend on the order of the axioms.
+   *
+   * @param id The id of the entity.
+   * @param labelsToExclude The values that cannot be used.
+   * @return The preferred term or null if the entity has none.
+   */
+  public String getPreferredTerm(int id, List<String> labelsToExclude) {
+    String res = null;
+    for (String label : getDisplayCandidates(id)) {
+      if ((res == null || label.compareTo(res) < 0) && !labelsToExclude.contains(label)) {
+        res = label;
+      }
+    }
+    return res;
+  }
+
+  /**
+   * Returns all the values of the display property of an entity.
+   *
+   * @param id The id of the entity.
+   * @return The values, in no particular order.
+   */
+  public String[] getDisplayCandidates(int id) {
+    return displays != null && displays[id] != null ? displays[id] : NONE;
+  }
+
+  /**
+   * Returns the synonyms of an entity, i.e. the values of the synonym properties.
+   *
+   * @param id The id of the entity.
+   * @param preferredTerm The preferred term, which is not included. Might be null.
+   * @param labelsToExclude The values that cannot be used.
+   * @return The synonyms. The set can be modified.
+   */
+  public Set<String> getSynonyms(int id, String preferredTerm, List<String> labelsToExclude) {
+    final Set<String> res = new HashSet<>();
+    if (synonyms != null && synonyms[id] != null) {
+      for (String label : synonyms[id]) {
+        if (!labelsToExclude.contains(label)) {
+          res.add(label);
+        }
+      }
+    }
+    res.remove(preferredTerm);
+    return res;
+  }
+
+  /**
+   * Returns the definition of an entity.
+   *
+   * @param id The id of the entity.
+   * @return The first value of the definition property or null if the entity has none or the
+   *     property is not configured.
+   */
+  public String getDefinition(int id) {
+    return definitions != null ? definitions[id] : null;
+  }
+
+  /**
+   * Indicates if an entity is deprecated.
+   *
+   * @param id The id of the entity.
+   * @return True if the entity is deprecated.
+   */
+  public boolean isDeprecated(int id) {
+    return deprecated.get(id);
+  }
+
+  /**
+   * Returns the ids of the deprecated entities. The bit set is shared and should not be modified.
+   *
+   * @return The ids of the deprecated entities.
+   */
+  public BitSet getDeprecated() {
+    return deprecated;
+  }
+
+  private boolean isDeprecationProperty(IRI prop) {
+    if (!deprecationProps.isEmpty()) {
+      return deprecationProps.contains(prop);
+    }
+    return deprecatedShortForms.computeIfAbsent(prop, p -> p.getShortForm().equals("deprecated"));
+  }
+
+  private void setDeprecated(int id, OWLAnnotationValue val) {
+    final Optional<OWLLiteral> lit = val.asLiteral();
+    if (lit.isPresent()) {
+      final OWLLiteral l = lit.get();
+      final String literal = l.getLiteral();
+      if (l.isBoolean()) {
+        deprecated.set(id, l.parseBoolean());
+        return;
+      } else if (!deprecationProps.isEmpty() && (literal.equalsIgnoreCase("true") 
+          || literal.equalsIgnoreCase("false"))) {
+        deprecated.set(id, Boolean.parseBoolean(literal));
+        return;
+      }
+    }
+    if (!deprecationProps.isEmpty()) {
+      // Obsolescence markers have a reason or a replacement as value
+      deprecated.set(id);
+    } else if (lit.isPresent()) {
+      log.warn("Found deprecated attribute but it is not boolean: " + lit.get().toString());
+    }
+  }
+
+  private static String[] append(String[] values, String value) {
+    if (values == null) {
+      return new String[] { value };
+    }
+    final String[] res = Arrays.copyOf(values, values.length + 1);
+    res[values.length] = value;
+    return res;
+  }
+
+}
@@ -1,7 +1,10 @@
 package au.csiro.fhir.owl.util;
 
+import au.csiro.fhir.owl.metrics.TransitiveReductionEvent;
+
 import java.util.*;
 import java.util.function.Function;
+import java.util.function.IntFunction;
 
 /**
  * Miscellaneous graph utilities.
@@ -67,6 +70,105 @@ public class GraphUtils {
     return tr.parentMap;
   }
 
+  /**
+   * Computes the transitive reduction of a hierarchy whose nodes are identified by dense int ids,
+   * e.g. the ids assigned by an {@link IriDictionary}. The ancestors of each node are only requested
+   * once and all the intermediate data is kept in arrays, so this uses much less memory than
+   * {@link #transitiveReduction(Set, Function)} for large hierarchies.
+   *
+   * <p>The ancestors of a node must be transitively closed, like the ones returned by a reasoner,
+   * and must not include any of its equivalents. The node itself is ignored if it is included.
+   * Ancestors that are not in the set of nodes are added to it.
+   *
+   * @param size The number of ids. All ids must be lower than this value.
+   * @param nodes The ids of the nodes.
+   * @param getAncestors Returns the ids of the ancestors of a node, without duplicates.
+   * @return An array indexed by id that contains the ids of the direct parents of each node, or
+   *     null for the ids that are not nodes.
+   */
+  public static int[][] transitiveReduction(int size, int[] nodes, IntFunction<int[]> getAncestors) {
+    final TransitiveReductionEvent event = new TransitiveReductionEvent();
+    event.begin();
+    
+    // Include all things that are parents (ancestors)
+    final int[][] ancestors = new int[size][];
+    final int[] queue = new int[size];
+    int head = 0;
+    int tail = 0;
+    for (int node : nodes) {
+      if (ancestors[node] == null) {
+        ancestors[node] = getStrictAncestors(node, getAncestors);
+        queue[tail++] = node;
+      }
+    }
+    while (head < tail) {
+      for (int ancestor : ancestors[queue[head++]]) {
+        if (ancestors[ancestor] == null) {
+          ancestors[ancestor] = getStrictAncestors(ancestor, getAncestors);
+          queue[tail++] = ancestor;
+        }
+      }
+    }
+
+    // A proper ancestor always has fewer ancestors than its descendants, so if the nodes are
+    // sorted by their number of ancestors the parents of every ancestor of a node are known by
+    // the time the node is reduced
+    final long[] order = new long[tail];
+    for (int i = 0; i < tail; i++) {
+      order[i] = ((long) ancestors[queue[i]].length << 32) | queue[i];
+    }
+    Arrays.sort(order);
+
+    final int[][] parents = new int[size][];
+    final BitSet notParents = new BitSet(size);
+    long edges = 0;
+    for (long key : order) {
+      final int node = (int) key;
+      final int[] nodeAncestors = ancestors[node];
+      for (int ancestor : nodeAncestors) {
+        if (parents[ancestor] == null) {
+          throw new RuntimeException("Cycle found in hierarchy between nodes " + node + " and "
+              + ancestor);
+        }
+        for (int parent : parents[ancestor]) {
+          notParents.set(parent);
+        }
+      }
+      int count = 0;
+      final int[] nodeParents = new int[nodeAncestors.length];
+      for (int ancestor : nodeAncestors) {
+        if (!notParents.get(ancestor)) {
+          nodeParents[count++] = ancestor;
+        }
+      }
+      for (int ancestor : nodeAncestors) {
+        for (int parent : parents[ancestor]) {
+          notParents.clear(parent);
+        }
+      }
+      parents[node] = Arrays.copyOf(nodeParents, count);
+      edges += count;
+    }
+    
+    if (event.shouldCommit()) {
+      event.nodes = nodes.length;
+      event.processed = tail;
+      event.edges = edges;
+      event.commit();
+    }
+    return parents;
+  }
+
+  private static int[] getStrictAncestors(int node, IntFunction<int[]> getAncestors) {
+    final int[] ancestors = getAncestors.apply(node);
+    for (int ancestor : ancestors) {
+      if (ancestor == node) {
+        return Arrays.stream(ancestors).filter(a -> a != node).toArray();
+      }
+    }
+    return ancestors;
+  }
+
   public static abstract class TransitiveReduction<T> {
 
     private final Map<T, Set<T>> equivalentsMap = new HashMap<>();
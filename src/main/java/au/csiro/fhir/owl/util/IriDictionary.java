@@ -0,0 +1,225 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.util;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+
+/**
+ * Assigns dense int ids to IRIs, so that the data computed for each entity during a
+ * transformation can be kept in arrays and bit sets indexed by id instead of in hash maps and sets
+ * keyed by IRI. Ids are assigned in order, starting at 0.
+ *
+ * <p>The dictionary is an open addressing hash table of ids, so looking up an IRI does not create
+ * any objects and each entry uses two array slots. This class is not thread safe for writing, but
+ * it can be read concurrently once all the ids have been assigned.
+ */
+public class IriDictionary {
+
+  /**
+   * The id returned for IRIs that are not in the dictionary.
+   */
+  public static final int NO_ID = -1;
+
+  private IRI[] iris;
+
+  /**
+   * The hash table. Each slot contains an id plus one, or zero if it is empty.
+   */
+  private int[] table;
+
+  private int size;
+
+  /**
+   * Creates an empty dictionary.
+   *
+   * @param expectedSize The number of IRIs the dictionary is expected to hold.
+   */
+  public IriDictionary(int expectedSize) {
+    iris = new IRI[Math.max(expectedSize, 16)];
+    table = new int[tableSize(iris.length)];
+  }
+
+  /**
+   * Creates a dictionary with the classes, object properties and data properties in the signature
+   * of an ontology and its imports closure, and the top and bottom entities.
+   *
+   * @param ont The ontology.
+   * @return The dictionary.
+   */
+  public static IriDictionary forOntology(OWLOntology ont) {
+    final Collection<? extends OWLEntity> classes = ont.getClassesInSignature(Imports.INCLUDED);
+    final Collection<? extends OWLEntity> objectProps =
+        ont.getObjectPropertiesInSignature(Imports.INCLUDED);
+    final Collection<? extends OWLEntity> dataProps =
+        ont.getDataPropertiesInSignature(Imports.INCLUDED);
+
+    final IriDictionary res = new IriDictionary(classes.size() + objectProps.size()
+        + dataProps.size() + 6);
+    res.add(OWLRDFVocabulary.OWL_THING.getIRI());
+    res.add(OWLRDFVocabulary.OWL_NOTHING.getIRI());
+    res.add(OWLRDFVocabulary.OWL_TOP_OBJECT_PROPERTY.getIRI());
+    res.add(OWLRDFVocabulary.OWL_BOTTOM_OBJECT_PROPERTY.getIRI());
+    res.add(OWLRDFVocabulary.OWL_TOP_DATA_PROPERTY.getIRI());
+    res.add(OWLRDFVocabulary.OWL_BOTTOM_DATA_PROPERTY.getIRI());
+    res.addAll(classes);
+    res.addAll(objectProps);
+    res.addAll(dataProps);
+    return res;
+  }
+
+  /**
+   * Adds an IRI to the dictionary, if it is not already there.
+   *
+   * @param iri The IRI.
+   * @return The id of the IRI.
+   */
+  public int add(IRI iri) {
+    final int slot = slot(iri);
+    if (table[slot] != 0) {
+      return table[slot] - 1;
+    }
+    if (size == iris.length) {
+      iris = Arrays.copyOf(iris, size * 2);
+    }
+    iris[size] = iri;
+    table[slot] = ++size;
+    if (table.length < tableSize(size)) {
+      rehash();
+    }
+    return size - 1;
+  }
+
+  /**
+   * Adds the IRIs of a collection of entities to the dictionary.
+   *
+   * @param entities The entities.
+   */
+  public void addAll(Collection<? extends OWLEntity> entities) {
+    for (OWLEntity entity : entities) {
+      add(entity.getIRI());
+    }
+  }
+
+  /**
+   * Returns the id of an IRI.
+   *
+   * @param iri The IRI.
+   * @return The id or {@link #NO_ID} if the IRI is not in the dictionary.
+   */
+  public int getId(IRI iri) {
+    return table[slot(iri)] - 1;
+  }
+
+  /**
+   * Returns the ids of a collection of entities. Entities that are not in the dictionary are
+   * skipped and duplicates are removed.
+   *
+   * @param entities The entities.
+   * @return The ids.
+   */
+  public int[] getIds(Collection<? extends OWLEntity> entities) {
+    final int[] res = new int[entities.size()];
+    int count = 0;
+    for (OWLEntity entity : entities) {
+      final int id = getId(entity.getIRI());
+      if (id != NO_ID) {
+        res[count++] = id;
+      }
+    }
+    return Arrays.stream(res, 0, count).distinct().toArray();
+  }
+
+  /**
+   * Returns the ids of a collection of IRIs as a bit set. IRIs that are not in the dictionary are
+   * skipped.
+   *
+   * @param iris The IRIs.
+   * @return The bit set.
+   */
+  public BitSet toBitSet(Collection<IRI> iris) {
+    final BitSet res = new BitSet(size);
+    for (IRI iri : iris) {
+      final int id = getId(iri);
+      if (id != NO_ID) {
+        res.set(id);
+      }
+    }
+    return res;
+  }
+
+  /**
+   * Returns the IRI with a given id.
+   *
+   * @param id The id.
+   * @return The IRI.
+   * @throws IndexOutOfBoundsException If there is no IRI with this id.
+   */
+  public IRI getIri(int id) {
+    if (id < 0 || id >= size) {
+      throw new IndexOutOfBoundsException("Invalid IRI id " + id);
+    }
+    return iris[id];
+  }
+
+  /**
+   * Returns the number of IRIs in the dictionary. The ids go from 0 to this value minus one.
+   *
+   * @return The size of the dictionary.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the slot of the table that contains an IRI or, if the IRI is not in the table, the
+   * empty slot where it should go.
+   */
+  private int slot(IRI iri) {
+    final int mask = table.length - 1;
+    int slot = mix(iri.hashCode()) & mask;
+    while (table[slot] != 0 && !iris[table[slot] - 1].equals(iri)) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private void rehash() {
+    table = new int[table.length * 2];
+    final int mask = table.length - 1;
+    for (int id = 0; id < size; id++) {
+      int slot = mix(iris[id].hashCode()) & mask;
+      while (table[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      table[slot] = id + 1;
+    }
+  }
+
+  /**
+   * Returns the size of a table with a load factor of at most 0.5 for a number of entries. The
+   * size is always a power of two.
+   */
+  private static int tableSize(int entries) {
+    return Integer.highestOneBit(Math.max(entries, 8) * 2 - 1) << 1;
+  }
+
+  /**
+   * Spreads the bits of a hash code, because linear probing does not deal well with the clustered
+   * hash codes of strings with common prefixes.
+   */
+  private static int mix(int hash) {
+    final int h = hash * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+}
@@ -0,0 +1,191 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import au.csiro.fhir.owl.util.CodeSystemDiff;
+import ca.uhn.fhir.context.FhirContext;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hl7.fhir.r4.model.CodeSystem;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+
+/**
+ * Differential tests that transform each fixture with the default options, which are the
+ * reference, and with each of the alternative pipeline configurations, and check that they
+ * produce the same concepts, parents, designations and properties. New fast paths should be added
+ * to {@link #VARIANTS}.
+ *
+ * <p>Additional ontologies can be tested by setting the <code>differential.corpus</code> system
+ * property to a directory. Each <code>.owl</code> file in it is classified with ELK, and its
+ * imports are resolved with the <code>catalog-v001.xml</code> in the directory, if present.
+ */
+public class DifferentialTest {
+
+  private static final Log log = LogFactory.getLog(DifferentialTest.class);
+
+  private static final int MAX_DIFFERENCES = 20;
+
+  /**
+   * The alternative pipeline configurations that are compared with the reference.
+   */
+  private static final List<Variant> VARIANTS = Arrays.asList(
+      new Variant("fast load", csp -> csp.setFastLoad(true), 1),
+      // The reference uses one thread per processor
+      new Variant("single thread", csp -> csp.setThreads("1"), 1),
+      new Variant("parallel imports", csp -> {
+        csp.setParallelImports(true);
+        csp.setThreads("4");
+      }, 1),
+      // The first run writes the snapshot and the second one reads it
+      new Variant("snapshot cache", csp -> csp.setSnapshotCache(new File(
+          csp.getOutput().getParentFile(), "snapshots")), 2)
+  );
+
+  private final FhirContext ctx = FhirContext.forR4();
+
+  @TempDir
+  File dir;
+
+  /**
+   * Tests the pizza ontology.
+   */
+  @Test
+  public void testPizza() throws IOException, OWLOntologyCreationException {
+    check(Fixture.pizza());
+  }
+
+  /**
+   * Tests the DUO ontology.
+   */
+  @Test
+  public void testDuo() throws IOException, OWLOntologyCreationException {
+    check(Fixture.duo(new File(dir, "duo")));
+  }
+
+  /**
+   * Tests a generated ontology with imports.
+   */
+  @Test
+  public void testGenerated() throws IOException, OWLOntologyCreationException {
+    check(Fixture.generated(new File(dir, "generated")));
+  }
+
+  /**
+   * Tests an OBO flat file whose hierarchy depends on transitive relations, property chains and
+   * domains.
+   */
+  @Test
+  public void testObo() throws IOException, OWLOntologyCreationException {
+    check(Fixture.obo(new File(dir, "obo")));
+  }
+
+  /**
+   * Tests the ontologies in the directory set in the <code>differential.corpus</code> system
+   * property, if any.
+   */
+  @Test
+  public void testCorpus() throws IOException, OWLOntologyCreationException {
+    final String corpus = System.getProperty("differential.corpus");
+    assumeTrue(corpus != null && !corpus.isEmpty(), "No differential corpus set");
+    final File corpusDir = new File(corpus);
+    final File[] files = corpusDir.listFiles((d, name) -> name.endsWith(".owl"));
+    assumeTrue(files != null && files.length > 0, "No ontologies found in " + corpus);
+    Arrays.sort(files);
+    final File catalog = new File(corpusDir, "catalog-v001.xml");
+    final List<String> failures = new ArrayList<>();
+    for (File file : files) {
+      final String name = file.getName().substring(0, file.getName().length() - 4);
+      failures.addAll(compare(new Fixture(name, file, "elk", catalog.isFile() ? catalog : null,
+          null)));
+    }
+    assertTrue(failures.isEmpty(), String.join("\n", failures));
+  }
+
+  private void check(Fixture fixture) throws IOException, OWLOntologyCreationException {
+    final List<String> failures = compare(fixture);
+    assertTrue(failures.isEmpty(), String.join("\n", failures));
+  }
+
+  /**
+   * Transforms a fixture with the reference configuration and with each variant.
+   *
+   * @return A description of the differences of each variant that does not match the reference.
+   */
+  private List<String> compare(Fixture fixture) throws IOException,
+      OWLOntologyCreationException {
+    final String name = fixture.getName();
+    final File fixtureDir = new File(dir, name + "-out");
+    fixtureDir.mkdirs();
+    final FhirOwlService service = new FhirOwlService();
+    service.setCtx(ctx);
+    final ConceptProperties cp = fixture.createConceptProperties();
+
+    final File referenceOutput = new File(fixtureDir, "reference.json");
+    service.transform(fixture.createCodeSystemProperties(referenceOutput), cp);
+    final CodeSystem reference = readCodeSystem(referenceOutput);
+
+    final CodeSystemDiff diff = new CodeSystemDiff(ctx);
+    final List<String> res = new ArrayList<>();
+    for (Variant variant : VARIANTS) {
+      for (int i = 0; i < variant.runs; i++) {
+        final File output = new File(fixtureDir, variant.name.replace(' ', '-') + "-" + i
+            + ".json");
+        final CodeSystemProperties csp = fixture.createCodeSystemProperties(output);
+        variant.configuration.accept(csp);
+        service.transform(csp, cp);
+
+        final List<String> differences = diff.compare(reference, readCodeSystem(output));
+        final String description = name + " with " + variant.name
+            + (variant.runs > 1 ? " (run " + (i + 1) + ")" : "");
+        if (differences.isEmpty()) {
+          log.info(description + " matches the reference");
+        } else {
+          res.add(description + " differs from the reference, "
+              + CodeSystemDiff.format(differences, MAX_DIFFERENCES));
+        }
+      }
+    }
+    return res;
+  }
+
+  private CodeSystem readCodeSystem(File file) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      return ctx.newJsonParser().parseResource(CodeSystem.class, reader);
+    }
+  }
+
+  /**
+   * An alternative pipeline configuration.
+   */
+  private static class Variant {
+
+    private final String name;
+
+    private final Consumer<CodeSystemProperties> configuration;
+
+    private final int runs;
+
+    Variant(String name, Consumer<CodeSystemProperties> configuration, int runs) {
+      this.name = name;
+      this.configuration = configuration;
+      this.runs = runs;
+    }
+  }
+
+}
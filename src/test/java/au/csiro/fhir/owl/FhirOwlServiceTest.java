@@ -4,21 +4,33 @@
  */
 package au.csiro.fhir.owl;
 
+import au.csiro.fhir.owl.util.IriDictionary;
 import ca.uhn.fhir.context.FhirContext;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hl7.fhir.r4.model.CodeSystem;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.semanticweb.elk.owlapi.ElkReasonerFactory;
 import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.formats.RDFXMLDocumentFormat;
+import org.semanticweb.owlapi.model.AddImport;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLDataFactory;
 import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.model.OWLOntologyCreationException;
 import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.OWLOntologyStorageException;
 import org.semanticweb.owlapi.reasoner.OWLReasoner;
 import org.semanticweb.owlapi.reasoner.OWLReasonerFactory;
 import uk.ac.manchester.cs.jfact.JFactFactory;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -138,12 +150,15 @@ public class FhirOwlServiceTest {
     csp.setUseFhirExtension(true);
     csp.setDateRegex("(?<year>\\d{4})-(?<month>\\d{2})-(?<day>\\d{2})");
     ConceptProperties cp = new ConceptProperties();
+    IriDictionary dictionary = IriDictionary.forOntology(rootOnt);
+    Set<IRI> irisInMain = fos.calculateIrisInMain(Collections.emptySet(), rootOnt, dictionary)
+        .stream().mapToObj(dictionary::getIri).collect(Collectors.toSet());
     CodeSystem cs = fos.createCodeSystem(
       rootOnt,
       manager.getOWLDataFactory(),
       reasoner,
       Collections.emptySet(),
-      fos.calculateIrisInMain(Collections.emptySet(), rootOnt),
+      irisInMain,
       Collections.emptyMap(),
       csp,
       cp
@@ -175,6 +190,114 @@ public class FhirOwlServiceTest {
     assertTrue(isDirectParent(generalResearchUse, dataUsePermission));
   }
 
+  /**
+   * Tests that the label of a class that is labelled in several imported ontologies comes from the
+   * ontology with the highest precedence, regardless of the number of threads.
+   */
+  @Test
+  public void testLabelPrecedence(@TempDir File dir) throws IOException, 
+      OWLOntologyCreationException, OWLOntologyStorageException {
+    final String ns = "http://example.org/";
+    final OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    final OWLDataFactory factory = manager.getOWLDataFactory();
+    final OWLOntology deep = manager.createOntology(IRI.create(ns + "deep"));
+    final OWLOntology first = manager.createOntology(IRI.create(ns + "first"));
+    final OWLOntology second = manager.createOntology(IRI.create(ns + "second"));
+    final OWLOntology root = manager.createOntology(IRI.create(ns + "root"));
+    manager.applyChange(new AddImport(first, 
+        factory.getOWLImportsDeclaration(IRI.create(ns + "deep"))));
+    // Declared in reverse order, so the order of the declarations is not the precedence
+    manager.applyChange(new AddImport(root, 
+        factory.getOWLImportsDeclaration(IRI.create(ns + "second"))));
+    manager.applyChange(new AddImport(root, 
+        factory.getOWLImportsDeclaration(IRI.create(ns + "first"))));
+    
+    // X is labelled by first and by deep, which is imported by first
+    label(deep, ns + "X", "Deep X");
+    label(first, ns + "X", "First X");
+    // Y is labelled by first and second, which are imported by root
+    label(second, ns + "Y", "Second Y");
+    label(first, ns + "Y", "First Y");
+    // Z is only labelled by deep
+    label(deep, ns + "Z", "Deep Z");
+    manager.addAxiom(root, factory.getOWLSubClassOfAxiom(
+        factory.getOWLClass(IRI.create(ns + "A")), factory.getOWLClass(IRI.create(ns + "Y"))));
+    
+    final StringBuilder catalog = new StringBuilder(
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<catalog prefer=\"public\" xmlns=\"urn:oasis:names:tc:entity:xmlns:xml:catalog\">\n");
+    for (OWLOntology ont : Arrays.asList(deep, first, second, root)) {
+      final String name = ont.getOntologyID().getOntologyIRI().get().getShortForm();
+      manager.saveOntology(ont, new RDFXMLDocumentFormat(), 
+          IRI.create(new File(dir, name + ".owl")));
+      catalog.append("  <uri name=\"" + ns + name + "\" uri=\"" + name + ".owl\"/>\n");
+    }
+    catalog.append("</catalog>\n");
+    final File catalogFile = new File(dir, "catalog-v001.xml");
+    Files.write(catalogFile.toPath(), catalog.toString().getBytes(StandardCharsets.UTF_8));
+    
+    final FhirContext ctx = FhirContext.forR4();
+    final FhirOwlService fos = new FhirOwlService();
+    fos.setCtx(ctx);
+    for (String threads : Arrays.asList("1", "4")) {
+      final File output = new File(dir, "root-" + threads + ".json");
+      final CodeSystemProperties csp = new CodeSystemProperties();
+      csp.setInput(new File(dir, "root.owl"));
+      csp.setOutput(output);
+      csp.setReasoner("elk");
+      csp.setCatalog(catalogFile);
+      csp.setThreads(threads);
+      fos.transform(csp, new ConceptProperties());
+      
+      final CodeSystem cs;
+      try (BufferedReader reader = Files.newBufferedReader(output.toPath(), 
+          StandardCharsets.UTF_8)) {
+        cs = ctx.newJsonParser().parseResource(CodeSystem.class, reader);
+      }
+      assertEquals("First X", getConcept(ns + "X", cs).getDisplay());
+      assertEquals("First Y", getConcept(ns + "Y", cs).getDisplay());
+      assertEquals("Deep Z", getConcept(ns + "Z", cs).getDisplay());
+    }
+  }
+
+  /**
+   * Tests that the concept definitions are read from the property set with -definition, and that
+   * there are none by default.
+   */
+  @Test
+  public void testDefinition(@TempDir File dir) throws IOException, OWLOntologyCreationException {
+    final FhirContext ctx = FhirContext.forR4();
+    final FhirOwlService fos = new FhirOwlService();
+    fos.setCtx(ctx);
+    for (String definitionProp : Arrays.asList(null,
+        "http://www.w3.org/2004/02/skos/core#definition")) {
+      final File output = new File(dir, "pizza.json");
+      final CodeSystemProperties csp = new CodeSystemProperties();
+      csp.setInput(new File("src/test/resources/pizza.owl"));
+      csp.setOutput(output);
+      csp.setReasoner("elk");
+      final ConceptProperties cp = new ConceptProperties();
+      cp.setDefinition(definitionProp);
+      fos.transform(csp, cp);
+
+      final CodeSystem cs;
+      try (BufferedReader reader = Files.newBufferedReader(output.toPath(),
+          StandardCharsets.UTF_8)) {
+        cs = ctx.newJsonParser().parseResource(CodeSystem.class, reader);
+      }
+      assertEquals(definitionProp != null ? "Any pizza that has at least 1 cheese topping." : null,
+          getConcept("CheeseyPizza", cs).getDefinition());
+    }
+  }
+
+  private void label(OWLOntology ont, String iri, String label) {
+    final OWLOntologyManager manager = ont.getOWLOntologyManager();
+    final OWLDataFactory factory = manager.getOWLDataFactory();
+    manager.addAxiom(ont, factory.getOWLDeclarationAxiom(factory.getOWLClass(IRI.create(iri))));
+    manager.addAxiom(ont, factory.getOWLAnnotationAssertionAxiom(factory.getRDFSLabel(), 
+        IRI.create(iri), factory.getOWLLiteral(label)));
+  }
+
   private boolean isDirectParent(CodeSystem.ConceptDefinitionComponent child,
                                  CodeSystem.ConceptDefinitionComponent parent) {
     return !child.getProperty().stream()
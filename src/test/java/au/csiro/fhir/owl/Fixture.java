@@ -0,0 +1,203 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl;
+
+import au.csiro.fhir.owl.util.OntologyGenerator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * An ontology used by the regression and differential tests, together with the options needed to
+ * transform it reproducibly.
+ */
+public class Fixture {
+
+  private static final String IAO = "http://purl.obolibrary.org/obo/iao.owl";
+
+  private final String name;
+
+  private final File input;
+
+  private final String reasoner;
+
+  private final File catalog;
+
+  private final String designations;
+
+  /**
+   * Creates a new fixture.
+   *
+   * @param name The name of the fixture.
+   * @param input The input ontology.
+   * @param reasoner The reasoner used to classify it.
+   * @param catalog The catalog used to resolve its imports, or null.
+   * @param designations The designation properties, or null to use the defaults.
+   */
+  public Fixture(String name, File input, String reasoner, File catalog, String designations) {
+    this.name = name;
+    this.input = input;
+    this.reasoner = reasoner;
+    this.catalog = catalog;
+    this.designations = designations;
+  }
+
+  /**
+   * Returns the pizza ontology, classified with JFact.
+   *
+   * @return The fixture.
+   */
+  public static Fixture pizza() {
+    return new Fixture("pizza", new File("src/test/resources/pizza.owl"), "jfact", null, null);
+  }
+
+  /**
+   * Returns the DUO ontology, classified with ELK. IAO is replaced with an empty ontology so that
+   * the output does not depend on the network.
+   *
+   * @param dir The directory where the replacement and its catalog are written.
+   * @return The fixture.
+   * @throws IOException If the files cannot be written.
+   */
+  public static Fixture duo(File dir) throws IOException {
+    dir.mkdirs();
+    write(new File(dir, "iao.owl"), "<?xml version=\"1.0\"?>\n"
+        + "<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\"\n"
+        + "    xmlns:owl=\"http://www.w3.org/2002/07/owl#\">\n"
+        + "  <owl:Ontology rdf:about=\"" + IAO + "\"/>\n"
+        + "</rdf:RDF>\n");
+    final File catalog = new File(dir, "catalog-v001.xml");
+    write(catalog, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<catalog prefer=\"public\" xmlns=\"urn:oasis:names:tc:entity:xmlns:xml:catalog\">\n"
+        + "  <uri name=\"" + IAO + "\" uri=\"iao.owl\"/>\n"
+        + "</catalog>\n");
+    return new Fixture("duo", new File("src/test/resources/duo.owl"), "elk", catalog, null);
+  }
+
+  /**
+   * Returns a generated ontology of 3,000 classes with two imports, synonyms, deprecated classes
+   * and existential restrictions, classified with ELK.
+   *
+   * @param dir The directory where the ontology is generated.
+   * @return The fixture.
+   * @throws IOException If the ontology cannot be written.
+   */
+  public static Fixture generated(File dir) throws IOException {
+    final OntologyGenerator generator = new OntologyGenerator(42);
+    generator.setClasses(3000);
+    generator.setDepth(8);
+    generator.setSynonyms(1);
+    generator.setDeprecated(0.02);
+    generator.setImports(2);
+    generator.setObjectProperties(4);
+    final File input = generator.generate(dir, "generated");
+    return new Fixture("generated", input, "elk", new File(dir, "catalog-v001.xml"),
+        OntologyGenerator.SYNONYM_PROPERTY);
+  }
+
+  /**
+   * Returns an OBO flat file whose classified hierarchy depends on the logical characteristics of
+   * its relations: a transitive relation, a relation that is transitive over another one and a
+   * relation with a domain. Classified with ELK.
+   *
+   * @param dir The directory where the file is written.
+   * @return The fixture.
+   * @throws IOException If the file cannot be written.
+   */
+  public static Fixture obo(File dir) throws IOException {
+    dir.mkdirs();
+    final File input = new File(dir, "relations.obo");
+    write(input, "format-version: 1.2\n"
+        + "ontology: relations\n"
+        + "\n"
+        + term("0000001", "root")
+        + term("0000002", "organ", "is_a: REL:0000001")
+        + term("0000003", "cell", "is_a: REL:0000001", "relationship: part_of REL:0000004")
+        + term("0000004", "tissue", "is_a: REL:0000001", "relationship: part_of REL:0000002")
+        // Only a subclass of organ part if part_of is transitive
+        + term("0000005", "organ part", "intersection_of: REL:0000001",
+            "intersection_of: part_of REL:0000002")
+        + term("0000006", "regulator", "is_a: REL:0000001", "relationship: regulates REL:0000003")
+        // Only a subclass of tissue regulator if regulates is transitive over part_of
+        + term("0000007", "tissue regulator", "intersection_of: REL:0000001",
+            "intersection_of: regulates REL:0000004")
+        // Only a subclass of located if located_in has a domain
+        + term("0000008", "located")
+        + term("0000009", "resident", "relationship: located_in REL:0000002")
+        + term("0000010", "disjoint", "is_a: REL:0000001", "disjoint_from: REL:0000002")
+        + "[Typedef]\n"
+        + "id: part_of\n"
+        + "name: part of\n"
+        + "xref: BFO:0000050\n"
+        + "is_transitive: true\n"
+        + "\n"
+        + "[Typedef]\n"
+        + "id: regulates\n"
+        + "name: regulates\n"
+        + "xref: RO:0002211\n"
+        + "transitive_over: part_of\n"
+        + "\n"
+        + "[Typedef]\n"
+        + "id: located_in\n"
+        + "name: located in\n"
+        + "xref: RO:0001025\n"
+        + "domain: REL:0000008\n");
+    return new Fixture("obo", input, "elk", null, null);
+  }
+
+  private static String term(String id, String name, String... tags) {
+    final StringBuilder sb = new StringBuilder("[Term]\nid: REL:").append(id)
+        .append("\nname: ").append(name).append("\n");
+    for (String tag : tags) {
+      sb.append(tag).append("\n");
+    }
+    return sb.append("\n").toString();
+  }
+
+  /**
+   * Returns the name of the fixture.
+   *
+   * @return The name.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Creates the code system properties used to transform this fixture.
+   *
+   * @param output The output file.
+   * @return The code system properties.
+   */
+  public CodeSystemProperties createCodeSystemProperties(File output) {
+    final CodeSystemProperties csp = new CodeSystemProperties();
+    csp.setInput(input);
+    csp.setOutput(output);
+    csp.setReasoner(reasoner);
+    if (catalog != null) {
+      csp.setCatalog(catalog);
+    }
+    return csp;
+  }
+
+  /**
+   * Creates the concept properties used to transform this fixture.
+   *
+   * @return The concept properties.
+   */
+  public ConceptProperties createConceptProperties() {
+    final ConceptProperties cp = new ConceptProperties();
+    if (designations != null) {
+      cp.setDesignations(designations);
+    }
+    return cp;
+  }
+
+  private static void write(File file, String content) throws IOException {
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+  }
+
+}
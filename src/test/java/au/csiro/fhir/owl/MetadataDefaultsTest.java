@@ -51,6 +51,7 @@ public class MetadataDefaultsTest {
   @AfterAll
   private void cleanup(){
     OutputFileManager.deleteFileIfExists(OUTPUT_FILE);
+    OutputFileManager.deleteFileIfExists(OUTPUT_FILE + ".metrics.json");
   }
   
 }
@@ -96,5 +96,6 @@ public class MetadataFromInputTest {
   @AfterAll
   private void cleanup(){
     OutputFileManager.deleteFileIfExists(OUTPUT_FILE);
+    OutputFileManager.deleteFileIfExists(OUTPUT_FILE + ".metrics.json");
   }
 }
@@ -0,0 +1,246 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import au.csiro.fhir.owl.util.CodeSystemDiff;
+import ca.uhn.fhir.context.FhirContext;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hl7.fhir.r4.model.CodeSystem;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+
+/**
+ * Regression tests that transform a fixed set of ontologies and compare the results with golden
+ * code systems and the run time and allocation with stored baselines. The comparison of the code
+ * systems ignores the order of the concepts, designations and properties, and the date.
+ *
+ * <p>These tests only run in the <code>regression</code> Maven profile. The golden code systems
+ * and the allocation baselines are stored in <code>src/test/resources/regression</code>, and a
+ * fixture without either fails. They are only replaced when the <code>regression.bootstrap</code>
+ * system property is <code>goldens</code> or <code>baselines</code>. The wall time depends on the
+ * machine, so it is only checked once it has been recorded in
+ * <code>src/test/resources/regression/timings.json</code>, which is not committed, by setting the
+ * property to <code>timings</code>.
+ */
+@Tag("regression")
+public class RegressionTest {
+
+  private static final Log log = LogFactory.getLog(RegressionTest.class);
+
+  private static final File REGRESSION_DIR = new File("src/test/resources/regression");
+
+  private static final File BASELINES = new File(REGRESSION_DIR, "baselines.json");
+
+  private static final File TIMINGS = new File(REGRESSION_DIR, "timings.json");
+
+  /**
+   * "goldens" replaces the golden code systems, which should only be done after an intended change
+   * of the output, "baselines" replaces the allocation baselines and "timings" records the wall
+   * time on this machine. Anything else checks them.
+   */
+  private static final String BOOTSTRAP = System.getProperty("regression.bootstrap", "");
+
+  private static final int RUNS = Integer.getInteger("regression.runs", 3);
+
+  private static final double TIME_TOLERANCE = Double.parseDouble(
+      System.getProperty("regression.timeTolerance", "0.25"));
+
+  private static final double ALLOCATION_TOLERANCE = Double.parseDouble(
+      System.getProperty("regression.allocationTolerance", "0.10"));
+
+  /**
+   * Added to the wall time limit so that small fixtures do not fail because of timer noise.
+   */
+  private static final long MIN_SLACK_MILLIS = 100;
+
+  private static final int MAX_DIFFERENCES = 20;
+
+  private final FhirContext ctx = FhirContext.forR4();
+
+  @TempDir
+  File dir;
+
+  /**
+   * Tests the pizza ontology.
+   */
+  @Test
+  public void testPizza() throws IOException, OWLOntologyCreationException {
+    check(Fixture.pizza());
+  }
+
+  /**
+   * Tests the DUO ontology.
+   */
+  @Test
+  public void testDuo() throws IOException, OWLOntologyCreationException {
+    check(Fixture.duo(new File(dir, "duo")));
+  }
+
+  /**
+   * Tests a generated ontology with imports.
+   */
+  @Test
+  public void testGenerated() throws IOException, OWLOntologyCreationException {
+    check(Fixture.generated(new File(dir, "generated")));
+  }
+
+  /**
+   * Transforms a fixture several times, keeping the fastest wall time and the lowest allocation,
+   * and compares the last code system with the golden one and the measurements with the
+   * baselines.
+   */
+  private void check(Fixture fixture) throws IOException, OWLOntologyCreationException {
+    final String name = fixture.getName();
+    final FhirOwlService service = new FhirOwlService();
+    service.setCtx(ctx);
+    final ConceptProperties cp = fixture.createConceptProperties();
+
+    long wallMillis = Long.MAX_VALUE;
+    long allocatedBytes = Long.MAX_VALUE;
+    File output = null;
+    for (int i = 0; i < Math.max(1, RUNS); i++) {
+      output = new File(dir, name + "-" + i + ".json");
+      service.transform(fixture.createCodeSystemProperties(output), cp);
+      final JsonObject report = readJson(new File(dir, output.getName() + ".metrics.json"));
+      wallMillis = Math.min(wallMillis, report.get("wallMillis").getAsLong());
+      allocatedBytes = Math.min(allocatedBytes, report.get("allocatedBytes").getAsLong());
+    }
+    log.info(name + ": " + wallMillis + "ms, " + allocatedBytes + " bytes allocated");
+
+    final CodeSystem actual = readCodeSystem(output);
+    final File golden = new File(REGRESSION_DIR, name + ".json");
+    if ("goldens".equals(BOOTSTRAP)) {
+      if (golden.isFile()) {
+        log.info("Replacing golden code system " + golden + ", "
+            + CodeSystemDiff.format(new CodeSystemDiff(ctx).compare(readCodeSystem(golden),
+                actual), MAX_DIFFERENCES));
+      }
+      writeGolden(golden, actual);
+      log.info("Wrote golden code system " + golden);
+      return;
+    }
+
+    assertTrue(golden.isFile(), "Golden code system " + golden + " does not exist, run with "
+        + "-Dregression.bootstrap=goldens to create it");
+    final List<String> differences = new CodeSystemDiff(ctx).compare(readCodeSystem(golden),
+        actual);
+    assertTrue(differences.isEmpty(), name + " differs from the golden code system, "
+        + CodeSystemDiff.format(differences, MAX_DIFFERENCES));
+
+    if ("baselines".equals(BOOTSTRAP)) {
+      final JsonObject previous = read(BASELINES).getAsJsonObject(name);
+      write(BASELINES, name, "allocatedBytes", allocatedBytes);
+      log.info("Wrote allocation baseline of " + allocatedBytes + " bytes for " + name + " to "
+          + BASELINES + (previous != null ? ", replacing "
+          + previous.get("allocatedBytes").getAsLong() + " bytes" : ""));
+      return;
+    } else if ("timings".equals(BOOTSTRAP)) {
+      write(TIMINGS, name, "wallMillis", wallMillis);
+      log.info("Wrote wall time for " + name + " to " + TIMINGS);
+      return;
+    }
+
+    final JsonObject baseline = read(BASELINES).getAsJsonObject(name);
+    assertNotNull(baseline, "There is no allocation baseline for " + name + " in " + BASELINES
+        + ", run with -Dregression.bootstrap=baselines to create it");
+    final long baselineBytes = baseline.get("allocatedBytes").getAsLong();
+    if (allocatedBytes >= 0) {
+      checkLimit(name, "allocated bytes", allocatedBytes, baselineBytes, ALLOCATION_TOLERANCE, 0);
+    } else {
+      log.warn("Allocation is not measured on this JVM, skipping check for " + name);
+    }
+
+    final JsonObject timing = read(TIMINGS).getAsJsonObject(name);
+    if (timing != null) {
+      checkLimit(name, "wall time (ms)", wallMillis, timing.get("wallMillis").getAsLong(),
+          TIME_TOLERANCE, MIN_SLACK_MILLIS);
+    } else {
+      log.info("The wall time of " + name + " has not been recorded on this machine, run with "
+          + "-Dregression.bootstrap=timings to check it");
+    }
+  }
+
+  /**
+   * Fails if a measurement exceeds its baseline by more than the tolerance.
+   */
+  private static void checkLimit(String name, String measure, long value, long baseline,
+      double tolerance, long slack) {
+    final long limit = (long) (baseline * (1 + tolerance)) + slack;
+    assertTrue(value <= limit, name + ": " + measure + " regressed to " + value
+        + " from a baseline of " + baseline + " (limit " + limit + ")");
+    if (value < baseline * (1 - tolerance)) {
+      log.info(name + ": " + measure + " improved to " + value + " from a baseline of "
+          + baseline + ", consider updating the baselines");
+    }
+  }
+
+  private CodeSystem readCodeSystem(File file) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      return ctx.newJsonParser().parseResource(CodeSystem.class, reader);
+    }
+  }
+
+  private void writeGolden(File file, CodeSystem cs) throws IOException {
+    file.getParentFile().mkdirs();
+    // The date changes on every run and would only add noise to the diffs
+    final CodeSystem golden = cs.copy();
+    golden.setDate(null);
+    try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+      ctx.newJsonParser().setPrettyPrint(true).encodeResourceToWriter(golden, writer);
+    }
+  }
+
+  private static JsonObject readJson(File file) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      return JsonParser.parseReader(reader).getAsJsonObject();
+    }
+  }
+
+  private static JsonObject read(File file) throws IOException {
+    return file.isFile() ? readJson(file) : new JsonObject();
+  }
+
+  /**
+   * Records a measurement of a fixture, keeping the fixtures sorted so the diffs are small.
+   */
+  private static synchronized void write(File file, String name, String measure, long value)
+      throws IOException {
+    final JsonObject entry = new JsonObject();
+    entry.addProperty(measure, value);
+
+    final Map<String, JsonElement> sorted = new TreeMap<>();
+    for (Map.Entry<String, JsonElement> e : read(file).entrySet()) {
+      sorted.put(e.getKey(), e.getValue());
+    }
+    sorted.put(name, entry);
+    final JsonObject measurements = new JsonObject();
+    sorted.forEach(measurements::add);
+
+    file.getParentFile().mkdirs();
+    try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+      new GsonBuilder().setPrettyPrinting().create().toJson(measurements, writer);
+    }
+  }
+
+}
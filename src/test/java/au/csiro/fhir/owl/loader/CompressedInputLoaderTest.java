@@ -0,0 +1,139 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.loader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.parameters.Imports;
+
+/**
+ * Unit tests for {@link CompressedInputLoader}.
+ */
+public class CompressedInputLoaderTest {
+
+  private static final String ROOT = "Prefix(:=<http://example.org/root#>)\n"
+      + "Ontology(<http://example.org/root>\n"
+      + "Import(<http://example.org/base>)\n"
+      + "Declaration(Class(:A))\n"
+      + "SubClassOf(:A <http://example.org/base#B>)\n"
+      + ")\n";
+
+  private static final String BASE = "Prefix(:=<http://example.org/base#>)\n"
+      + "Ontology(<http://example.org/base>\n"
+      + "Declaration(Class(:B))\n"
+      + ")\n";
+
+  private static final OntologyLoader NO_DELEGATE = (m, file) -> {
+    fail("The delegate loader should not be used for " + file);
+    return null;
+  };
+
+  @TempDir
+  File dir;
+
+  /**
+   * Tests loading a gzipped document.
+   */
+  @Test
+  public void testGzip() throws IOException, OWLOntologyCreationException {
+    final File input = new File(dir, "pizza.owl.gz");
+    try (OutputStream os = new GZIPOutputStream(new FileOutputStream(input))) {
+      Files.copy(new File("src/test/resources/pizza.owl").toPath(), os);
+    }
+    final OWLOntology ont = new CompressedInputLoader(NO_DELEGATE)
+        .load(OWLManager.createOWLOntologyManager(), input);
+    assertEquals(IRI.create("http://www.co-ode.org/ontologies/pizza"),
+        ont.getOntologyID().getOntologyIRI().get());
+    assertEquals(IRI.create("http://www.co-ode.org/ontologies/pizza/2.0.0"),
+        ont.getOntologyID().getVersionIRI().get());
+    assertFalse(ont.getClassesInSignature().isEmpty());
+  }
+
+  /**
+   * Tests that the format hint applies to compressed documents, so only the parser for that
+   * format is used.
+   */
+  @Test
+  public void testGzipWithHint() throws IOException, OWLOntologyCreationException {
+    final File input = new File(dir, "base.ofn.gz");
+    try (OutputStream os = new GZIPOutputStream(new FileOutputStream(input))) {
+      os.write(BASE.getBytes(StandardCharsets.UTF_8));
+    }
+    final OWLOntology ont = new CompressedInputLoader(NO_DELEGATE, InputFormat.FUNCTIONAL)
+        .load(OWLManager.createOWLOntologyManager(), input);
+    assertEquals(IRI.create("http://example.org/base"), ont.getOntologyID().getOntologyIRI().get());
+
+    // The functional syntax parser is not tried if the hint is wrong
+    assertThrows(OWLOntologyCreationException.class,
+        () -> new CompressedInputLoader(NO_DELEGATE, InputFormat.OWLXML)
+            .load(OWLManager.createOWLOntologyManager(), input));
+  }
+
+  /**
+   * Tests that the root ontology of an archive is found and that its imports are loaded from the
+   * archive.
+   */
+  @Test
+  public void testArchive() throws IOException, OWLOntologyCreationException {
+    final File input = new File(dir, "bundle.zip");
+    try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(input))) {
+      zos.putNextEntry(new ZipEntry("imports/base.ofn.gz"));
+      final GZIPOutputStream gz = new GZIPOutputStream(zos);
+      gz.write(BASE.getBytes(StandardCharsets.UTF_8));
+      gz.finish();
+      zos.closeEntry();
+      zos.putNextEntry(new ZipEntry("root.ofn"));
+      zos.write(ROOT.getBytes(StandardCharsets.UTF_8));
+      zos.closeEntry();
+    }
+
+    final OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    final OWLOntology ont = new CompressedInputLoader(NO_DELEGATE).load(manager, input);
+    assertEquals(IRI.create("http://example.org/root"),
+        ont.getOntologyID().getOntologyIRI().get());
+    assertEquals(2, manager.getImportsClosure(ont).size());
+    assertTrue(ont.containsClassInSignature(IRI.create("http://example.org/base#B"),
+        Imports.INCLUDED));
+
+    // The root can also be selected explicitly
+    final OWLOntology base = new CompressedInputLoader(NO_DELEGATE).load(
+        OWLManager.createOWLOntologyManager(), new File(input.getPath() + "!/imports/base.ofn.gz"));
+    assertEquals(IRI.create("http://example.org/base"),
+        base.getOntologyID().getOntologyIRI().get());
+  }
+
+  /**
+   * Tests that archive entries are recognised and resolved to the archive on disk.
+   */
+  @Test
+  public void testArchiveEntryFile() {
+    final File archive = new File(dir, "bundle.zip");
+    final File entry = new File(archive.getPath() + "!/imports/base.ofn.gz");
+    assertTrue(CompressedInputLoader.isCompressed(entry));
+    assertTrue(CompressedInputLoader.isCompressed(archive));
+    assertTrue(CompressedInputLoader.isCompressed(new File(dir, "pizza.owl.zst")));
+    assertFalse(CompressedInputLoader.isCompressed(new File(dir, "pizza.owl")));
+    assertEquals(archive, CompressedInputLoader.getFile(entry));
+    assertEquals(archive, CompressedInputLoader.getFile(archive));
+  }
+
+}
@@ -0,0 +1,80 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.loader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.semanticweb.owlapi.model.IRI;
+
+/**
+ * Unit tests for {@link DocumentHeader}.
+ */
+public class DocumentHeaderTest {
+
+  @Test
+  public void testScanRdfXml() throws IOException {
+    final DocumentHeader header = DocumentHeader.scan(new File("src/test/resources/duo.owl"));
+    assertEquals(IRI.create("http://purl.obolibrary.org/obo/duo.owl"), header.getOntologyIri());
+    assertEquals(IRI.create("http://purl.obolibrary.org/obo/duo/releases/2021-02-23/duo.owl"),
+        header.getVersionIri());
+    assertEquals(Collections.singletonList(IRI.create("http://purl.obolibrary.org/obo/iao.owl")),
+        header.getImports());
+  }
+
+  @Test
+  public void testScanFunctional() throws IOException {
+    final String doc = "Prefix(:=<http://example.org/a#>)\n"
+        + "Ontology(<http://example.org/a> <http://example.org/a/1.0>\n"
+        + "Import(<http://example.org/b>)\n"
+        + "Import(<http://example.org/c>)\n"
+        + "Declaration(Class(:A))\n"
+        + ")\n";
+    final DocumentHeader header = DocumentHeader.scan(new StringReader(doc));
+    assertEquals(IRI.create("http://example.org/a"), header.getOntologyIri());
+    assertEquals(IRI.create("http://example.org/a/1.0"), header.getVersionIri());
+    assertEquals(2, header.getImports().size());
+    assertEquals(IRI.create("http://example.org/c"), header.getImports().get(1));
+  }
+
+  /**
+   * Tests that a document without line breaks is not read past the limit. The reader never ends,
+   * so the scan would not finish otherwise.
+   */
+  @Test
+  public void testScanSingleLine() throws IOException {
+    final String header = "<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\" "
+        + "xmlns:owl=\"http://www.w3.org/2002/07/owl#\">"
+        + "<owl:Ontology rdf:about=\"http://example.org/a\">"
+        + "<owl:imports rdf:resource=\"http://example.org/b\"/></owl:Ontology>";
+    final String element = "<owl:Class rdf:about=\"http://example.org/a#A\"/>";
+    final long[] count = new long[1];
+    final Reader reader = new Reader() {
+      @Override
+      public int read(char[] cbuf, int off, int len) {
+        for (int i = 0; i < len; i++, count[0]++) {
+          cbuf[off + i] = count[0] < header.length() ? header.charAt((int) count[0])
+              : element.charAt((int) ((count[0] - header.length()) % element.length()));
+        }
+        return len;
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+    final DocumentHeader res = DocumentHeader.scan(reader);
+    assertEquals(IRI.create("http://example.org/a"), res.getOntologyIri());
+    assertEquals(Collections.singletonList(IRI.create("http://example.org/b")), res.getImports());
+    assertTrue(count[0] <= 1 << 20);
+  }
+
+}
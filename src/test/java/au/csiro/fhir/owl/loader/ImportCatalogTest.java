@@ -0,0 +1,102 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.loader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.semanticweb.owlapi.model.IRI;
+
+/**
+ * Unit tests for {@link ImportCatalog}.
+ */
+public class ImportCatalogTest {
+
+  private static final IRI DUO = IRI.create("http://purl.obolibrary.org/obo/duo.owl");
+
+  private static final IRI DUO_VERSION = IRI.create(
+      "http://purl.obolibrary.org/obo/duo/releases/2021-02-23/duo.owl");
+
+  @TempDir
+  File dir;
+
+  /**
+   * Tests that the ontologies in a directory are found by ontology and version IRI, and that the
+   * index is reused.
+   */
+  @Test
+  public void testDirectory() throws IOException {
+    final File sub = new File(dir, "obo");
+    assertTrue(sub.mkdirs());
+    final File duo = new File(sub, "duo.owl");
+    Files.copy(new File("src/test/resources/duo.owl").toPath(), duo.toPath());
+
+    final ImportCatalog catalog = new ImportCatalog();
+    catalog.addCatalog(dir);
+    assertEquals(IRI.create(duo.getAbsoluteFile()), catalog.getDocumentIRI(DUO));
+    assertEquals(IRI.create(duo.getAbsoluteFile()), catalog.getDocumentIRI(DUO_VERSION));
+    assertNull(catalog.getDocumentIRI(IRI.create("http://purl.obolibrary.org/obo/iao.owl")));
+    assertTrue(new File(dir, CatalogIndex.DIRECTORY_INDEX_NAME).isFile());
+
+    // A new file in an indexed directory is found when the index is opened again
+    final File pizza = new File(sub, "pizza.owl");
+    Files.copy(new File("src/test/resources/pizza.owl").toPath(), pizza.toPath());
+    sub.setLastModified(sub.lastModified() + 2000);
+    final ImportCatalog reopened = new ImportCatalog();
+    reopened.addCatalog(dir);
+    assertEquals(IRI.create(pizza.getAbsoluteFile()), reopened.getDocumentIRI(
+        IRI.create("http://www.co-ode.org/ontologies/pizza")));
+    assertEquals(IRI.create(pizza.getAbsoluteFile()), reopened.getDocumentIRI(
+        IRI.create("http://www.co-ode.org/ontologies/pizza/2.0.0")));
+    assertEquals(IRI.create(duo.getAbsoluteFile()), reopened.getDocumentIRI(DUO));
+  }
+
+  /**
+   * Tests that the entries of an XML catalog are resolved relative to the catalog and that the
+   * version IRIs of the files are also indexed.
+   */
+  @Test
+  public void testXmlCatalog() throws IOException {
+    final File duo = new File(dir, "mirror/duo-local.owl");
+    assertTrue(duo.getParentFile().mkdirs());
+    Files.copy(new File("src/test/resources/duo.owl").toPath(), duo.toPath());
+    final File xml = new File(dir, "catalog-v001.xml");
+    final String contents = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n"
+        + "<catalog prefer=\"public\" xmlns=\"urn:oasis:names:tc:entity:xmlns:xml:catalog\">\n"
+        + "  <uri name=\"http://example.org/duo-alias.owl\" uri=\"mirror/duo-local.owl\"/>\n"
+        + "  <uri name=\"http://example.org/missing.owl\" uri=\"mirror/missing.owl\"/>\n"
+        + "</catalog>\n";
+    Files.write(xml.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+
+    final ImportCatalog catalog = new ImportCatalog();
+    catalog.addCatalog(xml);
+    final IRI expected = IRI.create(duo.getAbsoluteFile());
+    assertEquals(expected, catalog.getDocumentIRI(IRI.create("http://example.org/duo-alias.owl")));
+    assertEquals(expected, catalog.getDocumentIRI(DUO));
+    assertEquals(expected, catalog.getDocumentIRI(DUO_VERSION));
+    assertNull(catalog.getDocumentIRI(IRI.create("http://example.org/missing.owl")));
+    assertTrue(new File(xml.getPath() + ".index").isFile());
+  }
+
+  /**
+   * Tests that individual mappings are only checked when they are resolved.
+   */
+  @Test
+  public void testMappings() throws IOException {
+    final ImportCatalog catalog = new ImportCatalog();
+    final File file = new File(dir, "later.owl");
+    catalog.addMapping(DUO, file);
+    assertNull(catalog.getDocumentIRI(DUO));
+    Files.copy(new File("src/test/resources/duo.owl").toPath(), file.toPath());
+    assertEquals(IRI.create(file), catalog.getDocumentIRI(DUO));
+  }
+
+}
@@ -0,0 +1,105 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.loader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.io.UnparsableOntologyException;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+/**
+ * Unit tests for {@link InputFormat}.
+ */
+public class InputFormatTest {
+
+  @TempDir
+  File dir;
+
+  private static InputFormat detect(String contents) throws IOException {
+    return InputFormat.detect(new StringReader(contents));
+  }
+
+  /**
+   * Tests that the format of the common syntaxes is detected from their first lines.
+   */
+  @Test
+  public void testDetect() throws IOException {
+    assertEquals(InputFormat.RDFXML, InputFormat.detect(new File("src/test/resources/pizza.owl")));
+    assertEquals(InputFormat.RDFXML, InputFormat.detect(new File("src/test/resources/duo.owl")));
+    assertEquals(InputFormat.OWLXML, detect("<?xml version=\"1.0\"?>\n"
+        + "<Ontology xmlns=\"http://www.w3.org/2002/07/owl#\" "
+        + "ontologyIRI=\"http://example.org/test\">\n"));
+    assertEquals(InputFormat.FUNCTIONAL, detect("\uFEFFPrefix(:=<http://example.org/test#>)\n"
+        + "Ontology(<http://example.org/test>\n"));
+    assertEquals(InputFormat.MANCHESTER, detect("Prefix: : <http://example.org/test#>\n"
+        + "Ontology: <http://example.org/test>\n"));
+    assertEquals(InputFormat.TURTLE, detect("# A comment\n\n"
+        + "@prefix owl: <http://www.w3.org/2002/07/owl#> .\n"));
+    assertEquals(InputFormat.TURTLE, detect("<http://example.org/test> "
+        + "<http://www.w3.org/1999/02/22-rdf-syntax-ns#type> "
+        + "<http://www.w3.org/2002/07/owl#Ontology> .\n"));
+    assertEquals(InputFormat.OBO, detect("format-version: 1.2\nontology: test\n"));
+    assertNull(detect("This is not an ontology"));
+  }
+
+  /**
+   * Tests that RDF/XML documents whose root element is in the default namespace are not mistaken
+   * for OWL/XML because they contain an owl:Ontology element.
+   */
+  @Test
+  public void testDetectDefaultNamespace() throws IOException {
+    assertEquals(InputFormat.RDFXML, detect("<?xml version=\"1.0\"?>\n"
+        + "<!-- The Ontology element below is not the root -->\n"
+        + "<RDF xmlns=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\"\n"
+        + "    xmlns:owl=\"http://www.w3.org/2002/07/owl#\">\n"
+        + "  <owl:Ontology about=\"http://example.org/test\"/>\n"));
+    assertEquals(InputFormat.OWLXML, detect("<?xml version=\"1.0\"?>\n"
+        + "<owl:Ontology xmlns:owl=\"http://www.w3.org/2002/07/owl#\" "
+        + "ontologyIRI=\"http://example.org/test\">\n"));
+  }
+
+  /**
+   * Tests that a document that cannot be parsed in its detected format is parsed with every parser,
+   * while one that cannot be parsed in the format given by the user fails.
+   */
+  @Test
+  public void testLoadDetectedFormatFallback() throws IOException, OWLOntologyCreationException {
+    // A Turtle document that starts with a relative IRI looks like XML
+    final File file = new File(dir, "test.ttl");
+    Files.write(file.toPath(), ("<test> a <http://www.w3.org/2002/07/owl#Ontology> .\n"
+        + "<test#A> a <http://www.w3.org/2002/07/owl#Class> .\n")
+        .getBytes(StandardCharsets.UTF_8));
+    assertEquals(InputFormat.RDFXML, InputFormat.detect(file));
+
+    final OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    final OWLOntology ont = OntologyLoader.forFormat(null).load(manager, file);
+    assertEquals(1, ont.getClassesInSignature().size());
+
+    assertThrows(UnparsableOntologyException.class, () -> OntologyLoader
+        .forFormat(InputFormat.RDFXML).load(OWLManager.createOWLOntologyManager(), file));
+  }
+
+  /**
+   * Tests that formats are found by their command line names.
+   */
+  @Test
+  public void testFromName() {
+    assertEquals(InputFormat.MANCHESTER, InputFormat.fromName("manchester"));
+    assertEquals(InputFormat.RDFXML, InputFormat.fromName("RDFXML"));
+    assertNull(InputFormat.fromName("csv"));
+  }
+
+}
@@ -0,0 +1,163 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.loader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+
+/**
+ * Unit tests for {@link NTriplesLoader}.
+ */
+public class NTriplesLoaderTest {
+
+  private static final String NS = "http://example.org/test#";
+
+  private static final String RDF_TYPE = "<http://www.w3.org/1999/02/22-rdf-syntax-ns#type>";
+
+  private static final String SUBCLASS_OF = "<http://www.w3.org/2000/01/rdf-schema#subClassOf>";
+
+  private static final String LABEL = "<http://www.w3.org/2000/01/rdf-schema#label>";
+
+  @TempDir
+  File dir;
+
+  /**
+   * Tests that a document split into many chunks produces the hierarchy and labels of every line.
+   */
+  @Test
+  public void testChunkedLoad() throws IOException, OWLOntologyCreationException {
+    final int classes = 2000;
+    final StringBuilder sb = new StringBuilder();
+    sb.append("<http://example.org/test> ").append(RDF_TYPE)
+        .append(" <http://www.w3.org/2002/07/owl#Ontology> .\n");
+    sb.append("# A comment\n\n");
+    for (int i = 0; i < classes; i++) {
+      sb.append("<").append(NS).append("C").append(i).append("> ").append(RDF_TYPE)
+          .append(" <http://www.w3.org/2002/07/owl#Class> .\n");
+      if (i > 0) {
+        sb.append("<").append(NS).append("C").append(i).append("> ").append(SUBCLASS_OF)
+            .append(" <").append(NS).append("C").append(i / 2).append("> .\n");
+      }
+      sb.append("<").append(NS).append("C").append(i).append("> ").append(LABEL)
+          .append(" \"class \\\"").append(i).append("\\\" \\u00e9\"@en .\n");
+    }
+    final File input = new File(dir, "test.nt");
+    Files.write(input.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+
+    final OntologyLoader fallback = (m, file) -> {
+      fail("The fallback loader should not be used for " + file);
+      return null;
+    };
+    final IRI label = OWLRDFVocabulary.RDFS_LABEL.getIRI();
+    final OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    final OWLOntology ont = new NTriplesLoader(Collections.singleton(label), 4, fallback, 1024)
+        .load(manager, input);
+
+    final OWLDataFactory factory = manager.getOWLDataFactory();
+    assertEquals(IRI.create("http://example.org/test"), ont.getOntologyID().getOntologyIRI().get());
+    assertEquals(classes, ont.getClassesInSignature().size());
+    assertEquals(classes - 1, ont.getAxioms(AxiomType.SUBCLASS_OF).size());
+    final OWLClass c = factory.getOWLClass(IRI.create(NS + "C1999"));
+    assertTrue(ont.containsAxiom(factory.getOWLSubClassOfAxiom(c,
+        factory.getOWLClass(IRI.create(NS + "C999")))));
+    assertTrue(ont.containsAxiom(factory.getOWLAnnotationAssertionAxiom(
+        factory.getOWLAnnotationProperty(label), c.getIRI(),
+        factory.getOWLLiteral("class \"1999\" \u00e9", "en"))));
+  }
+
+  /**
+   * Tests that documents with anonymous class definitions are loaded with the fallback loader.
+   */
+  @Test
+  public void testFallback() throws IOException, OWLOntologyCreationException {
+    checkFallback("<" + NS + "A> <http://www.w3.org/2002/07/owl#equivalentClass> _:b0 .\n");
+  }
+
+  /**
+   * Tests that documents with anonymous superclasses are loaded with the fallback loader, rather
+   * than dropping the superclasses.
+   */
+  @Test
+  public void testFallbackSuperclass() throws IOException, OWLOntologyCreationException {
+    checkFallback("<" + NS + "A> <http://www.w3.org/2000/01/rdf-schema#subClassOf> _:b0 .\n");
+  }
+
+  /**
+   * Tests that domains, ranges, disjoint classes and transitive properties are kept.
+   */
+  @Test
+  public void testPropertyAxioms() throws IOException, OWLOntologyCreationException {
+    final String owl = "http://www.w3.org/2002/07/owl#";
+    final String rdfs = "http://www.w3.org/2000/01/rdf-schema#";
+    final String doc = "<" + NS + "r> " + RDF_TYPE + " <" + owl + "ObjectProperty> .\n"
+        + "<" + NS + "r> <" + rdfs + "domain> <" + NS + "D> .\n"
+        + "<" + NS + "r> <" + rdfs + "range> <" + NS + "E> .\n"
+        + "<" + NS + "t> " + RDF_TYPE + " <" + owl + "TransitiveProperty> .\n"
+        + "<" + NS + "A> <" + owl + "disjointWith> <" + NS + "B> .\n";
+    final File input = new File(dir, "test.nt");
+    Files.write(input.toPath(), doc.getBytes(StandardCharsets.UTF_8));
+
+    final OntologyLoader fallback = (m, file) -> {
+      fail("The fallback loader should not be used for " + file);
+      return null;
+    };
+    final OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    final OWLOntology ont = new NTriplesLoader(Collections.emptySet(), 2, fallback)
+        .load(manager, input);
+
+    final OWLDataFactory factory = manager.getOWLDataFactory();
+    final OWLObjectProperty r = factory.getOWLObjectProperty(IRI.create(NS + "r"));
+    assertTrue(ont.containsAxiom(factory.getOWLObjectPropertyDomainAxiom(r,
+        factory.getOWLClass(IRI.create(NS + "D")))));
+    assertTrue(ont.containsAxiom(factory.getOWLObjectPropertyRangeAxiom(r,
+        factory.getOWLClass(IRI.create(NS + "E")))));
+    assertTrue(ont.containsAxiom(factory.getOWLTransitiveObjectPropertyAxiom(
+        factory.getOWLObjectProperty(IRI.create(NS + "t")))));
+    assertTrue(ont.containsAxiom(factory.getOWLDisjointClassesAxiom(
+        factory.getOWLClass(IRI.create(NS + "A")), factory.getOWLClass(IRI.create(NS + "B")))));
+  }
+
+  /**
+   * Tests that documents with property chains are loaded with the fallback loader, because the
+   * lists can span chunks.
+   */
+  @Test
+  public void testFallbackPropertyChain() throws IOException, OWLOntologyCreationException {
+    checkFallback("<" + NS + "r> <http://www.w3.org/2002/07/owl#propertyChainAxiom> _:b0 .\n");
+  }
+
+  private void checkFallback(String doc) throws IOException, OWLOntologyCreationException {
+    final File input = new File(dir, "test.nt");
+    Files.write(input.toPath(), doc.getBytes(StandardCharsets.UTF_8));
+
+    final File[] loaded = new File[1];
+    final OntologyLoader fallback = (m, file) -> {
+      loaded[0] = file;
+      return m.createOntology();
+    };
+    new NTriplesLoader(Collections.emptySet(), 2, fallback)
+        .load(OWLManager.createOWLOntologyManager(), input);
+    assertEquals(input, loaded[0]);
+  }
+
+}
@@ -0,0 +1,259 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.loader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+
+/**
+ * Unit tests for {@link OboLoader}.
+ */
+public class OboLoaderTest {
+
+  private static final String OBO = "http://purl.obolibrary.org/obo/";
+
+  private static final IRI LABEL = OWLRDFVocabulary.RDFS_LABEL.getIRI();
+
+  private static final IRI EXACT_SYNONYM = IRI.create(
+      "http://www.geneontology.org/formats/oboInOwl#hasExactSynonym");
+
+  private static final Set<IRI> PROPS = new HashSet<>(Arrays.asList(LABEL, EXACT_SYNONYM,
+      OboLoader.DEFINITION));
+
+  private static final OntologyLoader NO_FALLBACK = (m, file) -> {
+    fail("The fallback loader should not be used for " + file);
+    return null;
+  };
+
+  @TempDir
+  File dir;
+
+  private File write(String name, String contents) throws IOException {
+    final File file = new File(dir, name);
+    Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  /**
+   * Tests that the header, the terms and the logical definitions of an OBO flat file are read.
+   */
+  @Test
+  public void testObo() throws IOException, OWLOntologyCreationException {
+    final File obo = write("test.obo", "format-version: 1.2\n"
+        + "data-version: 2021-01-01\n"
+        + "ontology: test\n"
+        + "\n"
+        + "[Term]\n"
+        + "id: TEST:0000001\n"
+        + "name: root\n"
+        + "\n"
+        + "[Term]\n"
+        + "id: TEST:0000002\n"
+        + "name: child one ! a comment\n"
+        + "def: \"The first \\\"child\\\".\" [PMID:1]\n"
+        + "synonym: \"first child\" EXACT []\n"
+        + "synonym: \"kid\" RELATED []\n"
+        + "is_a: TEST:0000001 ! root\n"
+        + "\n"
+        + "[Term]\n"
+        + "id: TEST:0000003\n"
+        + "name: defined\n"
+        + "intersection_of: TEST:0000001\n"
+        + "intersection_of: part_of TEST:0000002 {cardinality=\"1\"}\n"
+        + "\n"
+        + "[Term]\n"
+        + "id: TEST:0000004\n"
+        + "name: old\n"
+        + "is_obsolete: true\n"
+        + "\n"
+        + "[Typedef]\n"
+        + "id: part_of\n"
+        + "name: part of\n"
+        + "xref: BFO:0000050\n");
+
+    final OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    final OWLOntology ont = new OboLoader(PROPS, NO_FALLBACK).load(manager, obo);
+    final OWLDataFactory factory = manager.getOWLDataFactory();
+
+    assertEquals(IRI.create(OBO + "test.owl"), ont.getOntologyID().getOntologyIRI().get());
+    assertEquals(IRI.create(OBO + "test/2021-01-01/test.owl"),
+        ont.getOntologyID().getVersionIRI().get());
+
+    final OWLClass root = factory.getOWLClass(IRI.create(OBO + "TEST_0000001"));
+    final OWLClass child = factory.getOWLClass(IRI.create(OBO + "TEST_0000002"));
+    final OWLClass defined = factory.getOWLClass(IRI.create(OBO + "TEST_0000003"));
+    assertTrue(ont.containsAxiom(factory.getOWLSubClassOfAxiom(child, root)));
+    assertTrue(ont.containsAxiom(factory.getOWLAnnotationAssertionAxiom(
+        factory.getOWLAnnotationProperty(LABEL), child.getIRI(),
+        factory.getOWLLiteral("child one", ""))));
+    assertTrue(ont.containsAxiom(factory.getOWLAnnotationAssertionAxiom(
+        factory.getOWLAnnotationProperty(OboLoader.DEFINITION), child.getIRI(),
+        factory.getOWLLiteral("The first \"child\".", ""))));
+    assertTrue(ont.containsAxiom(factory.getOWLAnnotationAssertionAxiom(
+        factory.getOWLAnnotationProperty(EXACT_SYNONYM), child.getIRI(),
+        factory.getOWLLiteral("first child", ""))));
+
+    // Related synonyms were not requested
+    assertEquals(3, ont.getAnnotationAssertionAxioms(child.getIRI()).size());
+
+    // The genus is a superclass and the shorthand relation is expanded using its xref
+    assertTrue(ont.containsAxiom(factory.getOWLSubClassOfAxiom(defined, root)));
+    assertTrue(ont.containsAxiom(factory.getOWLEquivalentClassesAxiom(defined,
+        factory.getOWLObjectIntersectionOf(root, factory.getOWLObjectSomeValuesFrom(
+            factory.getOWLObjectProperty(IRI.create(OBO + "BFO_0000050")), child)))));
+
+    assertTrue(ont.getAnnotationAssertionAxioms(IRI.create(OBO + "TEST_0000004")).stream()
+        .anyMatch(a -> a.isDeprecatedIRIAssertion()));
+  }
+
+  /**
+   * Tests that the logical characteristics of relations and disjoint classes are read, since they
+   * can change the classified hierarchy.
+   */
+  @Test
+  public void testRelationCharacteristics() throws IOException, OWLOntologyCreationException {
+    final File obo = write("relations.obo", "format-version: 1.2\n"
+        + "ontology: test\n"
+        + "\n"
+        + "[Term]\n"
+        + "id: TEST:0000001\n"
+        + "disjoint_from: TEST:0000002\n"
+        + "\n"
+        + "[Typedef]\n"
+        + "id: regulates\n"
+        + "xref: RO:0002211\n"
+        + "domain: TEST:0000001\n"
+        + "range: TEST:0000002\n"
+        + "transitive_over: part_of\n"
+        + "holds_over_chain: regulates part_of\n"
+        + "\n"
+        + "[Typedef]\n"
+        + "id: part_of\n"
+        + "xref: BFO:0000050\n"
+        + "is_transitive: true\n"
+        + "inverse_of: has_part\n"
+        + "\n"
+        + "[Typedef]\n"
+        + "id: has_part\n"
+        + "xref: BFO:0000051\n");
+
+    final OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    final OWLOntology ont = new OboLoader(PROPS, NO_FALLBACK).load(manager, obo);
+    final OWLDataFactory factory = manager.getOWLDataFactory();
+
+    final OWLClass first = factory.getOWLClass(IRI.create(OBO + "TEST_0000001"));
+    final OWLClass second = factory.getOWLClass(IRI.create(OBO + "TEST_0000002"));
+    final OWLObjectProperty regulates = factory.getOWLObjectProperty(
+        IRI.create(OBO + "RO_0002211"));
+    final OWLObjectProperty partOf = factory.getOWLObjectProperty(IRI.create(OBO + "BFO_0000050"));
+    assertTrue(ont.containsAxiom(factory.getOWLDisjointClassesAxiom(first, second)));
+    assertTrue(ont.containsAxiom(factory.getOWLObjectPropertyDomainAxiom(regulates, first)));
+    assertTrue(ont.containsAxiom(factory.getOWLObjectPropertyRangeAxiom(regulates, second)));
+    assertTrue(ont.containsAxiom(factory.getOWLSubPropertyChainOfAxiom(
+        Arrays.asList(regulates, partOf), regulates)));
+    assertTrue(ont.containsAxiom(factory.getOWLTransitiveObjectPropertyAxiom(partOf)));
+    assertTrue(ont.containsAxiom(factory.getOWLInverseObjectPropertiesAxiom(partOf,
+        factory.getOWLObjectProperty(IRI.create(OBO + "BFO_0000051")))));
+  }
+
+  /**
+   * Tests that the nodes and edges of an OBO Graphs JSON document are read.
+   */
+  @Test
+  public void testOboGraphs() throws IOException, OWLOntologyCreationException {
+    final File json = write("test.json", "{\"graphs\": [{\n"
+        + "  \"id\": \"http://purl.obolibrary.org/obo/test.owl\",\n"
+        + "  \"meta\": {\"version\":"
+        + " \"http://purl.obolibrary.org/obo/test/2021-01-01/test.owl\"},\n"
+        + "  \"nodes\": [\n"
+        + "    {\"id\": \"http://purl.obolibrary.org/obo/TEST_0000001\", \"lbl\": \"root\","
+        + " \"type\": \"CLASS\"},\n"
+        + "    {\"id\": \"http://purl.obolibrary.org/obo/TEST_0000002\", \"lbl\": \"child\","
+        + " \"type\": \"CLASS\", \"meta\": {\"definition\": {\"val\": \"A child.\"},"
+        + " \"synonyms\": [{\"pred\": \"hasExactSynonym\", \"val\": \"kid\"}],"
+        + " \"deprecated\": true}},\n"
+        + "    {\"id\": \"http://purl.obolibrary.org/obo/BFO_0000050\", \"lbl\": \"part of\","
+        + " \"type\": \"PROPERTY\"},\n"
+        + "    {\"id\": \"http://purl.obolibrary.org/obo/BFO_0000062\", \"type\": \"PROPERTY\"}\n"
+        + "  ],\n"
+        + "  \"edges\": [\n"
+        + "    {\"sub\": \"http://purl.obolibrary.org/obo/TEST_0000002\", \"pred\": \"is_a\","
+        + " \"obj\": \"http://purl.obolibrary.org/obo/TEST_0000001\"},\n"
+        + "    {\"sub\": \"http://purl.obolibrary.org/obo/BFO_0000062\", \"pred\": \"is_a\","
+        + " \"obj\": \"http://purl.obolibrary.org/obo/BFO_0000050\"}\n"
+        + "  ],\n"
+        + "  \"domainRangeAxioms\": [{\"predicateId\":"
+        + " \"http://purl.obolibrary.org/obo/BFO_0000050\","
+        + " \"domainClassIds\": [\"http://purl.obolibrary.org/obo/TEST_0000001\"]}],\n"
+        + "  \"propertyChainAxioms\": [{\"predicateId\":"
+        + " \"http://purl.obolibrary.org/obo/BFO_0000050\", \"chainPredicateIds\":"
+        + " [\"http://purl.obolibrary.org/obo/BFO_0000062\","
+        + " \"http://purl.obolibrary.org/obo/BFO_0000050\"]}]\n"
+        + "}]}\n");
+
+    final OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    final OWLOntology ont = new OboLoader(PROPS, NO_FALLBACK).load(manager, json);
+    final OWLDataFactory factory = manager.getOWLDataFactory();
+
+    assertEquals(IRI.create(OBO + "test.owl"), ont.getOntologyID().getOntologyIRI().get());
+    assertEquals(IRI.create(OBO + "test/2021-01-01/test.owl"),
+        ont.getOntologyID().getVersionIRI().get());
+
+    final OWLClass root = factory.getOWLClass(IRI.create(OBO + "TEST_0000001"));
+    final OWLClass child = factory.getOWLClass(IRI.create(OBO + "TEST_0000002"));
+    assertTrue(ont.containsAxiom(factory.getOWLSubClassOfAxiom(child, root)));
+    final OWLObjectProperty partOf = factory.getOWLObjectProperty(IRI.create(OBO + "BFO_0000050"));
+    final OWLObjectProperty properPartOf = factory.getOWLObjectProperty(
+        IRI.create(OBO + "BFO_0000062"));
+    assertTrue(ont.containsAxiom(factory.getOWLSubObjectPropertyOfAxiom(properPartOf, partOf)));
+    assertTrue(ont.containsAxiom(factory.getOWLObjectPropertyDomainAxiom(partOf, root)));
+    assertTrue(ont.containsAxiom(factory.getOWLSubPropertyChainOfAxiom(
+        Arrays.asList(properPartOf, partOf), partOf)));
+    assertTrue(ont.containsAxiom(factory.getOWLAnnotationAssertionAxiom(
+        factory.getOWLAnnotationProperty(EXACT_SYNONYM), child.getIRI(),
+        factory.getOWLLiteral("kid", ""))));
+    assertTrue(ont.getAnnotationAssertionAxioms(child.getIRI()).stream()
+        .anyMatch(a -> a.isDeprecatedIRIAssertion()));
+  }
+
+  /**
+   * Tests that JSON documents that are not OBO Graphs and other files are loaded with the fallback
+   * loader.
+   */
+  @Test
+  public void testFallback() throws IOException, OWLOntologyCreationException {
+    final AtomicInteger fallbacks = new AtomicInteger();
+    final OntologyLoader fallback = (m, file) -> {
+      fallbacks.incrementAndGet();
+      return m.createOntology();
+    };
+    final OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    final OboLoader loader = new OboLoader(PROPS, fallback);
+    loader.load(manager, write("other.json", "{\"resourceType\": \"CodeSystem\"}"));
+    loader.load(manager, new File("src/test/resources/duo.owl"));
+    assertEquals(2, fallbacks.get());
+  }
+
+}
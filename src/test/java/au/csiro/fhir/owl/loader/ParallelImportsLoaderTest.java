@@ -0,0 +1,114 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.loader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.formats.RDFXMLDocumentFormat;
+import org.semanticweb.owlapi.model.AddImport;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.OWLOntologyStorageException;
+import org.semanticweb.owlapi.util.SimpleIRIMapper;
+
+/**
+ * Unit tests for {@link ParallelImportsLoader}.
+ */
+public class ParallelImportsLoaderTest {
+
+  private static final String NS = "http://example.org/";
+
+  /**
+   * The imports closure: root imports left and right, which both import base.
+   */
+  private static final String[] NAMES = new String[] { "base", "left", "right", "root" };
+
+  @TempDir
+  File dir;
+
+  @BeforeEach
+  public void setUp() throws OWLOntologyCreationException, OWLOntologyStorageException {
+    final OWLOntologyManager manager = createManager();
+    final OWLDataFactory factory = manager.getOWLDataFactory();
+    for (String name : NAMES) {
+      final OWLOntology ont = manager.createOntology(IRI.create(NS + name));
+      if (name.equals("left") || name.equals("right")) {
+        addImport(ont, "base");
+      } else if (name.equals("root")) {
+        addImport(ont, "left");
+        addImport(ont, "right");
+      }
+      manager.addAxiom(ont, factory.getOWLSubClassOfAxiom(
+          factory.getOWLClass(IRI.create(NS + name + "#A")),
+          factory.getOWLClass(IRI.create(NS + "base#A"))));
+      manager.saveOntology(ont, new RDFXMLDocumentFormat(), IRI.create(getFile(name)));
+    }
+  }
+
+  /**
+   * Tests that the imports closure is the same as the one loaded by the OWL API, and that each
+   * document is only parsed once.
+   */
+  @Test
+  public void testLoadClosure() throws OWLOntologyCreationException {
+    final OWLOntologyManager expectedManager = createManager();
+    final OWLOntology expected = expectedManager.loadOntologyFromOntologyDocument(
+        getFile("root"));
+
+    final ParallelImportsLoader loader = new ParallelImportsLoader(4);
+    final OWLOntologyManager manager = createManager();
+    final OWLOntology actual = loader.load(manager, getFile("root"));
+
+    assertEquals(expected.getOntologyID(), actual.getOntologyID());
+    assertEquals(4, actual.getImportsClosure().size());
+    for (OWLOntology ont : expected.getImportsClosure()) {
+      final OWLOntology loaded = manager.getOntology(ont.getOntologyID());
+      assertNotNull(loaded, "Missing " + ont.getOntologyID());
+      assertEquals(ont.getAxioms(), loaded.getAxioms());
+      assertEquals(ont.getImportsDeclarations(), loaded.getImportsDeclarations());
+    }
+    assertEquals(4, loader.getTimings().size());
+  }
+
+  /**
+   * Tests that a missing import fails the load.
+   */
+  @Test
+  public void testMissingImport() {
+    assertTrue(getFile("base").delete());
+    final OWLOntologyManager manager = createManager();
+    assertThrows(OWLOntologyCreationException.class,
+        () -> new ParallelImportsLoader(2).load(manager, getFile("root")));
+  }
+
+  private File getFile(String name) {
+    return new File(dir, name + ".owl");
+  }
+
+  private void addImport(OWLOntology ont, String name) {
+    final OWLOntologyManager manager = ont.getOWLOntologyManager();
+    manager.applyChange(new AddImport(ont,
+        manager.getOWLDataFactory().getOWLImportsDeclaration(IRI.create(NS + name))));
+  }
+
+  private OWLOntologyManager createManager() {
+    final OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    for (String name : NAMES) {
+      manager.getIRIMappers().add(new SimpleIRIMapper(IRI.create(NS + name),
+          IRI.create(getFile(name))));
+    }
+    return manager;
+  }
+
+}
@@ -0,0 +1,168 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.loader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.io.StringDocumentSource;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.MissingImportHandlingStrategy;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyLoaderConfiguration;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.UnloadableImportException;
+
+/**
+ * Unit tests for {@link RemoteImportCache}, using a local HTTP server.
+ */
+public class RemoteImportCacheTest {
+
+  private static final String ETAG = "\"v1\"";
+
+  @TempDir
+  File cacheDir;
+
+  private HttpServer server;
+
+  private final AtomicInteger requests = new AtomicInteger();
+
+  private final AtomicInteger downloads = new AtomicInteger();
+
+  private byte[] pizza;
+
+  @BeforeEach
+  public void startServer() throws IOException {
+    pizza = Files.readAllBytes(new File("src/test/resources/pizza.owl").toPath());
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/", exchange -> {
+      requests.incrementAndGet();
+      final String path = exchange.getRequestURI().getPath();
+      if (path.equals("/redirect.owl")) {
+        exchange.getResponseHeaders().add("Location", "/pizza.owl");
+        exchange.sendResponseHeaders(302, -1);
+      } else if (!path.endsWith("pizza.owl")) {
+        exchange.sendResponseHeaders(404, -1);
+      } else if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+        exchange.sendResponseHeaders(304, -1);
+      } else {
+        downloads.incrementAndGet();
+        exchange.getResponseHeaders().add("ETag", ETAG);
+        exchange.sendResponseHeaders(200, pizza.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+          os.write(pizza);
+        }
+      }
+      exchange.close();
+    });
+    server.start();
+  }
+
+  @AfterEach
+  public void stopServer() {
+    server.stop(0);
+  }
+
+  private IRI iri(String path) {
+    return IRI.create("http://localhost:" + server.getAddress().getPort() + path);
+  }
+
+  /**
+   * Tests that a document is downloaded once and then revalidated with a conditional request.
+   */
+  @Test
+  public void testDownloadAndRevalidate() throws IOException {
+    final IRI first = new RemoteImportCache(cacheDir, Long.MAX_VALUE, false)
+        .getDocumentIRI(iri("/pizza.owl"));
+    assertNotNull(first);
+    assertArrayEquals(pizza, Files.readAllBytes(new File(first.toURI()).toPath()));
+    assertEquals(1, downloads.get());
+
+    final IRI second = new RemoteImportCache(cacheDir, Long.MAX_VALUE, false)
+        .getDocumentIRI(iri("/pizza.owl"));
+    assertEquals(first, second);
+    assertEquals(2, requests.get());
+    assertEquals(1, downloads.get());
+
+    // Redirects are followed and the content is only stored once
+    final IRI redirected = new RemoteImportCache(cacheDir, Long.MAX_VALUE, false)
+        .getDocumentIRI(iri("/redirect.owl"));
+    assertEquals(first, redirected);
+    assertEquals(1, new File(cacheDir, "objects").listFiles().length);
+
+    // Local files are not handled by the cache
+    assertNull(new RemoteImportCache(cacheDir, Long.MAX_VALUE, false)
+        .getDocumentIRI(IRI.create(new File("src/test/resources/pizza.owl"))));
+  }
+
+  /**
+   * Tests that offline mode only uses the cache.
+   */
+  @Test
+  public void testOffline() {
+    final IRI cached = new RemoteImportCache(cacheDir, Long.MAX_VALUE, false)
+        .getDocumentIRI(iri("/pizza.owl"));
+    final int before = requests.get();
+
+    final RemoteImportCache offline = new RemoteImportCache(cacheDir, Long.MAX_VALUE, true);
+    assertEquals(cached, offline.getDocumentIRI(iri("/pizza.owl")));
+    assertNotNull(offline.getDocumentIRI(iri("/other/pizza.owl")));
+    assertEquals(before, requests.get());
+  }
+
+  /**
+   * Tests that imports that are not in the cache are handled by the missing import strategy in
+   * offline mode.
+   */
+  @Test
+  public void testOfflineMissingImport() throws OWLOntologyCreationException {
+    final String document = "Ontology(<http://example.org/root>\n"
+        + "Import(<" + iri("/other/pizza.owl") + ">)\n)";
+
+    final OWLOntologyManager strict = OWLManager.createOWLOntologyManager();
+    strict.getIRIMappers().add(new RemoteImportCache(cacheDir, Long.MAX_VALUE, true));
+    assertThrows(UnloadableImportException.class,
+        () -> strict.loadOntologyFromOntologyDocument(new StringDocumentSource(document)));
+
+    final OWLOntologyManager silent = OWLManager.createOWLOntologyManager();
+    silent.getIRIMappers().add(new RemoteImportCache(cacheDir, Long.MAX_VALUE, true));
+    final AtomicInteger missing = new AtomicInteger();
+    silent.addMissingImportListener(event -> missing.incrementAndGet());
+    final OWLOntology ont = silent.loadOntologyFromOntologyDocument(
+        new StringDocumentSource(document), new OWLOntologyLoaderConfiguration()
+            .setMissingImportHandlingStrategy(MissingImportHandlingStrategy.SILENT));
+    assertEquals(IRI.create("http://example.org/root"), ont.getOntologyID().getOntologyIRI().get());
+    assertEquals(1, missing.get());
+    assertEquals(0, requests.get());
+  }
+
+  /**
+   * Tests that the least recently used documents are evicted when the cache is full.
+   */
+  @Test
+  public void testEviction() {
+    final RemoteImportCache cache = new RemoteImportCache(cacheDir, pizza.length, false);
+    assertNotNull(cache.getDocumentIRI(iri("/a/pizza.owl")));
+    pizza[pizza.length - 2] = ' ';
+    assertNotNull(cache.getDocumentIRI(iri("/b/pizza.owl")));
+    assertEquals(1, new File(cacheDir, "objects").listFiles().length);
+    assertEquals(1, new File(cacheDir, "meta").listFiles().length);
+  }
+
+}
@@ -0,0 +1,223 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.loader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.formats.RDFXMLDocumentFormat;
+import org.semanticweb.owlapi.model.AddImport;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyLoaderListener;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.OWLOntologyStorageException;
+import org.semanticweb.owlapi.util.SimpleIRIMapper;
+
+/**
+ * Unit tests for {@link SnapshotCache}.
+ */
+public class SnapshotCacheTest {
+
+  private static final String NS = "http://example.org/";
+
+  @TempDir
+  File cacheDir;
+
+  @TempDir
+  File ontologyDir;
+
+  /**
+   * Tests that the second load of an unchanged document is served from the cache and produces the
+   * same ontology.
+   */
+  @Test
+  public void testLoadFromSnapshot() throws OWLOntologyCreationException {
+    final File input = new File("src/test/resources/pizza.owl");
+    final AtomicInteger parses = new AtomicInteger();
+    final OntologyLoader counting = (manager, file) -> {
+      parses.incrementAndGet();
+      return OntologyLoader.DEFAULT.load(manager, file);
+    };
+
+    final OWLOntologyManager firstManager = OWLManager.createOWLOntologyManager();
+    final OWLOntology first = new SnapshotCache(cacheDir, counting).load(firstManager, input);
+    assertEquals(1, parses.get());
+    assertEquals(1, cacheDir.listFiles((dir, name) -> name.endsWith(".snapshot")).length);
+
+    final OWLOntologyManager secondManager = OWLManager.createOWLOntologyManager();
+    final OWLOntology second = new SnapshotCache(cacheDir, counting).load(secondManager, input);
+    assertEquals(1, parses.get());
+
+    assertEquals(first.getOntologyID(), second.getOntologyID());
+    assertEquals(first.getAnnotations(), second.getAnnotations());
+    assertEquals(first.getAxioms(), second.getAxioms());
+  }
+
+  /**
+   * Tests that the imports of a document that changed are still loaded from their snapshots.
+   */
+  @Test
+  public void testImportsOfChangedDocument() throws OWLOntologyCreationException,
+      OWLOntologyStorageException {
+    final File importFile = new File(ontologyDir, "import.owl");
+    final File rootFile = new File(ontologyDir, "root.owl");
+    final OWLOntologyManager manager = createManager(importFile);
+    final OWLDataFactory factory = manager.getOWLDataFactory();
+    final OWLOntology imported = manager.createOntology(IRI.create(NS + "import"));
+    manager.addAxiom(imported, factory.getOWLSubClassOfAxiom(
+        factory.getOWLClass(IRI.create(NS + "B")), factory.getOWLClass(IRI.create(NS + "A"))));
+    manager.saveOntology(imported, new RDFXMLDocumentFormat(), IRI.create(importFile));
+    final OWLOntology root = manager.createOntology(IRI.create(NS + "root"));
+    manager.applyChange(new AddImport(root,
+        factory.getOWLImportsDeclaration(IRI.create(NS + "import"))));
+    manager.addAxiom(root, factory.getOWLSubClassOfAxiom(
+        factory.getOWLClass(IRI.create(NS + "C")), factory.getOWLClass(IRI.create(NS + "B"))));
+    manager.saveOntology(root, new RDFXMLDocumentFormat(), IRI.create(rootFile));
+
+    final OWLOntologyManager firstManager = createManager(importFile);
+    new SnapshotCache(cacheDir, OntologyLoader.DEFAULT).load(firstManager, rootFile);
+    assertEquals(2, cacheDir.listFiles((dir, name) -> name.endsWith(".snapshot")).length);
+
+    // Changing the root invalidates its snapshot but not the one of its import
+    manager.addAxiom(root, factory.getOWLSubClassOfAxiom(
+        factory.getOWLClass(IRI.create(NS + "D")), factory.getOWLClass(IRI.create(NS + "C"))));
+    manager.saveOntology(root, new RDFXMLDocumentFormat(), IRI.create(rootFile));
+
+    final OWLOntologyManager secondManager = createManager(importFile);
+    final List<IRI> parsed = new ArrayList<>();
+    secondManager.addOntologyLoaderListener(new OWLOntologyLoaderListener() {
+      @Override
+      public void startedLoadingOntology(LoadingStartedEvent event) {
+        parsed.add(event.getDocumentIRI());
+      }
+
+      @Override
+      public void finishedLoadingOntology(LoadingFinishedEvent event) {
+      }
+    });
+    final OWLOntology second = new SnapshotCache(cacheDir, OntologyLoader.DEFAULT)
+        .load(secondManager, rootFile);
+    assertEquals(1, parsed.size());
+    assertEquals(rootFile.getAbsoluteFile(), new File(parsed.get(0).toURI()));
+    assertEquals(2, second.getImportsClosure().size());
+    assertTrue(second.containsAxiom(factory.getOWLSubClassOfAxiom(
+        factory.getOWLClass(IRI.create(NS + "D")), factory.getOWLClass(IRI.create(NS + "C")))));
+    assertTrue(secondManager.getOntology(IRI.create(NS + "import")).containsAxiom(
+        factory.getOWLSubClassOfAxiom(factory.getOWLClass(IRI.create(NS + "B")),
+        factory.getOWLClass(IRI.create(NS + "A")))));
+    assertEquals(3, cacheDir.listFiles((dir, name) -> name.endsWith(".snapshot")).length);
+  }
+
+  /**
+   * Tests that every kind of axiom that has its own tag in the snapshot format, and an axiom that
+   * is stored as functional syntax, are read back unchanged.
+   */
+  @Test
+  public void testRoundTrip() throws OWLOntologyCreationException, OWLOntologyStorageException {
+    final File input = new File(ontologyDir, "axioms.owl");
+    final OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    final OWLDataFactory factory = manager.getOWLDataFactory();
+    final OWLOntology ont = manager.createOntology(IRI.create(NS + "axioms"));
+    final OWLClass a = factory.getOWLClass(IRI.create(NS + "A"));
+    final OWLClass b = factory.getOWLClass(IRI.create(NS + "B"));
+    final OWLClass c = factory.getOWLClass(IRI.create(NS + "C"));
+    final OWLObjectProperty r = factory.getOWLObjectProperty(IRI.create(NS + "r"));
+    final OWLObjectProperty s = factory.getOWLObjectProperty(IRI.create(NS + "s"));
+    final OWLAnnotationProperty label = factory.getRDFSLabel();
+    manager.addAxiom(ont, factory.getOWLSubClassOfAxiom(a,
+        factory.getOWLObjectIntersectionOf(b, factory.getOWLObjectSomeValuesFrom(r, c))));
+    manager.addAxiom(ont, factory.getOWLEquivalentClassesAxiom(c,
+        factory.getOWLObjectUnionOf(a, factory.getOWLObjectComplementOf(b))));
+    manager.addAxiom(ont, factory.getOWLSubClassOfAxiom(b,
+        factory.getOWLObjectAllValuesFrom(s, a)));
+    manager.addAxiom(ont, factory.getOWLDisjointClassesAxiom(a, c));
+    manager.addAxiom(ont, factory.getOWLSubObjectPropertyOfAxiom(s, r));
+    manager.addAxiom(ont, factory.getOWLObjectPropertyDomainAxiom(r, a));
+    manager.addAxiom(ont, factory.getOWLObjectPropertyRangeAxiom(r, b));
+    manager.addAxiom(ont, factory.getOWLTransitiveObjectPropertyAxiom(r));
+    manager.addAxiom(ont, factory.getOWLSubPropertyChainOfAxiom(Arrays.asList(r, s), r));
+    manager.addAxiom(ont, factory.getOWLAnnotationAssertionAxiom(label, a.getIRI(),
+        factory.getOWLLiteral("A class", "en")));
+    manager.addAxiom(ont, factory.getOWLAnnotationAssertionAxiom(label, b.getIRI(),
+        factory.getOWLLiteral("B class")));
+    // Not tagged, so it is stored in the functional syntax section
+    manager.addAxiom(ont, factory.getOWLFunctionalObjectPropertyAxiom(s));
+    manager.saveOntology(ont, new RDFXMLDocumentFormat(), IRI.create(input));
+
+    final OWLOntology first = new SnapshotCache(cacheDir, OntologyLoader.DEFAULT)
+        .load(OWLManager.createOWLOntologyManager(), input);
+    final OWLOntology second = new SnapshotCache(cacheDir, OntologyLoader.DEFAULT)
+        .load(OWLManager.createOWLOntologyManager(), input);
+    assertEquals(first.getOntologyID(), second.getOntologyID());
+    assertEquals(first.getAxioms(), second.getAxioms());
+    assertTrue(second.containsAxiom(factory.getOWLFunctionalObjectPropertyAxiom(s)));
+  }
+
+  /**
+   * Tests that a snapshot that cannot be read is discarded and the document is parsed again.
+   */
+  @Test
+  public void testCorruptSnapshot() throws OWLOntologyCreationException, IOException {
+    final File input = new File("src/test/resources/pizza.owl");
+    final AtomicInteger parses = new AtomicInteger();
+    final OntologyLoader counting = (manager, file) -> {
+      parses.incrementAndGet();
+      return OntologyLoader.DEFAULT.load(manager, file);
+    };
+    final OWLOntology first = new SnapshotCache(cacheDir, counting)
+        .load(OWLManager.createOWLOntologyManager(), input);
+    final File snapshotFile = cacheDir.listFiles((dir, name) -> name.endsWith(".snapshot"))[0];
+    Files.write(snapshotFile.toPath(), "not a snapshot".getBytes(StandardCharsets.UTF_8));
+
+    final OWLOntology second = new SnapshotCache(cacheDir, counting)
+        .load(OWLManager.createOWLOntologyManager(), input);
+    assertEquals(2, parses.get());
+    assertEquals(first.getAxioms(), second.getAxioms());
+    assertTrue(snapshotFile.length() > 100);
+  }
+
+  /**
+   * Tests that the least recently used snapshots are evicted when the cache is over its maximum
+   * size, but not the one that was just used.
+   */
+  @Test
+  public void testEviction() throws OWLOntologyCreationException, IOException {
+    final File stale = new File(cacheDir, "0000.snapshot");
+    Files.write(stale.toPath(), new byte[1024]);
+    stale.setLastModified(0);
+
+    final File input = new File("src/test/resources/pizza.owl");
+    new SnapshotCache(cacheDir, 1, "", OntologyLoader.DEFAULT)
+        .load(OWLManager.createOWLOntologyManager(), input);
+    final File[] files = cacheDir.listFiles((dir, name) -> name.endsWith(".snapshot"));
+    assertEquals(1, files.length);
+    assertNotEquals(stale, files[0]);
+  }
+
+  private OWLOntologyManager createManager(File importFile) {
+    final OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    manager.getIRIMappers().add(new SimpleIRIMapper(IRI.create(NS + "import"),
+        IRI.create(importFile)));
+    return manager;
+  }
+
+}
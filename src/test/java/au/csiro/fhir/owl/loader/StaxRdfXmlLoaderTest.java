@@ -0,0 +1,265 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.loader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.semanticweb.elk.owlapi.ElkReasonerFactory;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.reasoner.InferenceType;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+
+/**
+ * Unit tests for {@link StaxRdfXmlLoader}.
+ */
+public class StaxRdfXmlLoaderTest {
+
+  private static final String OBO = "http://purl.obolibrary.org/obo/";
+
+  private static final String NS = "http://example.org/test#";
+
+  @TempDir
+  File dir;
+
+  /**
+   * Tests that an OBO-style ontology is loaded with the fast loader and contains the hierarchy and
+   * the requested labels.
+   */
+  @Test
+  public void testFastLoad() throws OWLOntologyCreationException {
+    final OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    manager.setOntologyLoaderConfiguration(manager.getOntologyLoaderConfiguration()
+        .addIgnoredImport(IRI.create(OBO + "iao.owl")));
+    final OntologyLoader fallback = (m, file) -> {
+      fail("The fallback loader should not be used for " + file);
+      return null;
+    };
+
+    final IRI label = OWLRDFVocabulary.RDFS_LABEL.getIRI();
+    final OWLOntology ont = new StaxRdfXmlLoader(Collections.singleton(label), fallback)
+        .load(manager, new File("src/test/resources/duo.owl"));
+
+    assertEquals(IRI.create(OBO + "duo.owl"), ont.getOntologyID().getOntologyIRI().get());
+    assertEquals(IRI.create(OBO + "duo/releases/2021-02-23/duo.owl"),
+        ont.getOntologyID().getVersionIRI().get());
+    assertTrue(ont.getImportsDeclarations().stream()
+        .anyMatch(d -> d.getIRI().equals(IRI.create(OBO + "iao.owl"))));
+
+    final OWLDataFactory factory = manager.getOWLDataFactory();
+    assertTrue(ont.containsAxiom(factory.getOWLSubClassOfAxiom(
+        factory.getOWLClass(IRI.create(OBO + "DUO_0000004")),
+        factory.getOWLClass(IRI.create(OBO + "DUO_0000001")))));
+    assertTrue(ont.containsAxiom(factory.getOWLAnnotationAssertionAxiom(
+        factory.getOWLAnnotationProperty(label), IRI.create(OBO + "DUO_0000001"),
+        factory.getOWLLiteral("data use permission", "en"))));
+
+    // Superclasses that are restrictions are kept
+    assertTrue(ont.containsAxiom(factory.getOWLSubClassOfAxiom(
+        factory.getOWLClass(IRI.create(OBO + "DUO_0000007")),
+        factory.getOWLObjectSomeValuesFrom(
+            factory.getOWLObjectProperty(IRI.create(OBO + "DUO_0000010")),
+            factory.getOWLClass(IRI.create(OBO + "MONDO_0000001"))))));
+
+    // Annotations that were not requested are dropped
+    assertFalse(ont.getAnnotationAssertionAxioms(IRI.create(OBO + "DUO_0000001")).stream()
+        .anyMatch(a -> a.getProperty().getIRI().equals(IRI.create(OBO + "IAO_0000115"))));
+  }
+
+  /**
+   * Tests that documents with anonymous class definitions are loaded with the fallback loader.
+   */
+  @Test
+  public void testFallback() throws OWLOntologyCreationException {
+    final AtomicInteger fallbacks = new AtomicInteger();
+    final OntologyLoader fallback = (m, file) -> {
+      fallbacks.incrementAndGet();
+      return OntologyLoader.DEFAULT.load(m, file);
+    };
+    final OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    final OWLOntology ont = new StaxRdfXmlLoader(Collections.emptySet(), fallback)
+        .load(manager, new File("src/test/resources/pizza.owl"));
+    assertEquals(1, fallbacks.get());
+    assertFalse(ont.getAxioms().isEmpty());
+  }
+
+  /**
+   * Tests that a superclass that is an intersection with a restriction is kept, since it gives the
+   * class an inferred named parent.
+   */
+  @Test
+  public void testSuperclassExpression() throws IOException, OWLOntologyCreationException {
+    final File input = write("expression.owl", "<owl:Class rdf:about=\"" + NS + "A\">\n"
+        + "  <rdfs:subClassOf>\n"
+        + "    <owl:Class>\n"
+        + "      <owl:intersectionOf rdf:parseType=\"Collection\">\n"
+        + "        <rdf:Description rdf:about=\"" + NS + "B\"/>\n"
+        + "        <owl:Restriction>\n"
+        + "          <owl:onProperty rdf:resource=\"" + NS + "r\"/>\n"
+        + "          <owl:someValuesFrom rdf:resource=\"" + NS + "C\"/>\n"
+        + "        </owl:Restriction>\n"
+        + "      </owl:intersectionOf>\n"
+        + "    </owl:Class>\n"
+        + "  </rdfs:subClassOf>\n"
+        + "</owl:Class>\n");
+    final OntologyLoader fallback = (m, file) -> {
+      fail("The fallback loader should not be used for " + file);
+      return null;
+    };
+    final OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    final OWLOntology ont = new StaxRdfXmlLoader(Collections.emptySet(), fallback)
+        .load(manager, input);
+
+    final OWLDataFactory factory = manager.getOWLDataFactory();
+    final OWLClass b = factory.getOWLClass(IRI.create(NS + "B"));
+    final OWLObjectProperty r = factory.getOWLObjectProperty(IRI.create(NS + "r"));
+    final OWLClass c = factory.getOWLClass(IRI.create(NS + "C"));
+    assertTrue(ont.containsAxiom(factory.getOWLSubClassOfAxiom(
+        factory.getOWLClass(IRI.create(NS + "A")), factory.getOWLObjectIntersectionOf(
+            new HashSet<>(Arrays.asList(b, factory.getOWLObjectSomeValuesFrom(r, c)))))));
+  }
+
+  /**
+   * Tests that a document with a superclass expression that is not supported, such as a
+   * cardinality restriction, is loaded with the fallback loader rather than dropping the axiom.
+   */
+  @Test
+  public void testUnsupportedSuperclassExpression() throws IOException,
+      OWLOntologyCreationException {
+    final File input = write("cardinality.owl", "<owl:Class rdf:about=\"" + NS + "A\">\n"
+        + "  <rdfs:subClassOf>\n"
+        + "    <owl:Restriction>\n"
+        + "      <owl:onProperty rdf:resource=\"" + NS + "r\"/>\n"
+        + "      <owl:minQualifiedCardinality rdf:datatype=\"http://www.w3.org/2001/XMLSchema#"
+        + "nonNegativeInteger\">2</owl:minQualifiedCardinality>\n"
+        + "      <owl:onClass rdf:resource=\"" + NS + "C\"/>\n"
+        + "    </owl:Restriction>\n"
+        + "  </rdfs:subClassOf>\n"
+        + "</owl:Class>\n");
+    final AtomicInteger fallbacks = new AtomicInteger();
+    final OntologyLoader fallback = (m, file) -> {
+      fallbacks.incrementAndGet();
+      return OntologyLoader.DEFAULT.load(m, file);
+    };
+    final OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    new StaxRdfXmlLoader(Collections.emptySet(), fallback).load(manager, input);
+    assertEquals(1, fallbacks.get());
+  }
+
+  /**
+   * Tests that domains, ranges, disjoint classes, transitive properties and property chains are
+   * kept, since they can give classes inferred named parents.
+   */
+  @Test
+  public void testPropertyAxioms() throws IOException, OWLOntologyCreationException {
+    final File input = write("properties.owl", "<owl:ObjectProperty rdf:about=\"" + NS + "r\">\n"
+        + "  <rdfs:domain rdf:resource=\"" + NS + "D\"/>\n"
+        + "  <rdfs:range rdf:resource=\"" + NS + "E\"/>\n"
+        + "  <owl:propertyChainAxiom rdf:parseType=\"Collection\">\n"
+        + "    <rdf:Description rdf:about=\"" + NS + "p\"/>\n"
+        + "    <rdf:Description rdf:about=\"" + NS + "q\"/>\n"
+        + "  </owl:propertyChainAxiom>\n"
+        + "</owl:ObjectProperty>\n"
+        + "<owl:TransitiveProperty rdf:about=\"" + NS + "t\"/>\n"
+        + "<owl:Class rdf:about=\"" + NS + "A\">\n"
+        + "  <owl:disjointWith rdf:resource=\"" + NS + "B\"/>\n"
+        + "  <rdfs:subClassOf>\n"
+        + "    <owl:Restriction>\n"
+        + "      <owl:onProperty rdf:resource=\"" + NS + "r\"/>\n"
+        + "      <owl:someValuesFrom rdf:resource=\"" + NS + "B\"/>\n"
+        + "    </owl:Restriction>\n"
+        + "  </rdfs:subClassOf>\n"
+        + "</owl:Class>\n");
+    final OntologyLoader fallback = (m, file) -> {
+      fail("The fallback loader should not be used for " + file);
+      return null;
+    };
+    final OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    final OWLOntology ont = new StaxRdfXmlLoader(Collections.emptySet(), fallback)
+        .load(manager, input);
+
+    final OWLDataFactory factory = manager.getOWLDataFactory();
+    final OWLObjectProperty r = factory.getOWLObjectProperty(IRI.create(NS + "r"));
+    final OWLClass a = factory.getOWLClass(IRI.create(NS + "A"));
+    final OWLClass d = factory.getOWLClass(IRI.create(NS + "D"));
+    assertTrue(ont.containsAxiom(factory.getOWLObjectPropertyDomainAxiom(r, d)));
+    assertTrue(ont.containsAxiom(factory.getOWLObjectPropertyRangeAxiom(r,
+        factory.getOWLClass(IRI.create(NS + "E")))));
+    assertTrue(ont.containsAxiom(factory.getOWLSubPropertyChainOfAxiom(Arrays.asList(
+        factory.getOWLObjectProperty(IRI.create(NS + "p")),
+        factory.getOWLObjectProperty(IRI.create(NS + "q"))), r)));
+    assertTrue(ont.containsAxiom(factory.getOWLTransitiveObjectPropertyAxiom(
+        factory.getOWLObjectProperty(IRI.create(NS + "t")))));
+    assertTrue(ont.containsAxiom(factory.getOWLDisjointClassesAxiom(a,
+        factory.getOWLClass(IRI.create(NS + "B")))));
+
+    // The domain gives A an inferred named parent
+    final OWLReasoner reasoner = new ElkReasonerFactory().createReasoner(ont);
+    try {
+      reasoner.precomputeInferences(InferenceType.CLASS_HIERARCHY);
+      assertTrue(reasoner.getSuperClasses(a, true).containsEntity(d));
+    } finally {
+      reasoner.dispose();
+    }
+  }
+
+  /**
+   * Tests that a document with a range that is an anonymous class expression is loaded with the
+   * fallback loader rather than dropping the axiom.
+   */
+  @Test
+  public void testAnonymousRange() throws IOException, OWLOntologyCreationException {
+    final File input = write("range.owl", "<owl:ObjectProperty rdf:about=\"" + NS + "r\">\n"
+        + "  <rdfs:range>\n"
+        + "    <owl:Class>\n"
+        + "      <owl:unionOf rdf:parseType=\"Collection\">\n"
+        + "        <rdf:Description rdf:about=\"" + NS + "B\"/>\n"
+        + "        <rdf:Description rdf:about=\"" + NS + "C\"/>\n"
+        + "      </owl:unionOf>\n"
+        + "    </owl:Class>\n"
+        + "  </rdfs:range>\n"
+        + "</owl:ObjectProperty>\n");
+    final AtomicInteger fallbacks = new AtomicInteger();
+    final OntologyLoader fallback = (m, file) -> {
+      fallbacks.incrementAndGet();
+      return OntologyLoader.DEFAULT.load(m, file);
+    };
+    final OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    new StaxRdfXmlLoader(Collections.emptySet(), fallback).load(manager, input);
+    assertEquals(1, fallbacks.get());
+  }
+
+  private File write(String name, String classes) throws IOException {
+    final File file = new File(dir, name);
+    final String doc = "<?xml version=\"1.0\"?>\n"
+        + "<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\"\n"
+        + "    xmlns:rdfs=\"http://www.w3.org/2000/01/rdf-schema#\"\n"
+        + "    xmlns:owl=\"http://www.w3.org/2002/07/owl#\">\n"
+        + "<owl:Ontology rdf:about=\"http://example.org/test\"/>\n"
+        + classes
+        + "</rdf:RDF>\n";
+    Files.write(file.toPath(), doc.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+}
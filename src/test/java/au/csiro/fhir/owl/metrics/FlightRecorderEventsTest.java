@@ -0,0 +1,75 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import au.csiro.fhir.owl.util.GraphUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for the Flight Recorder events.
+ */
+public class FlightRecorderEventsTest {
+
+  @TempDir
+  File dir;
+
+  /**
+   * Tests that entity batches are committed when they are full and at the end, and that the
+   * transitive reduction emits its event.
+   */
+  @Test
+  public void testEvents() throws IOException {
+    final File file = new File(dir, "test.jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable(EntityBatchEvent.class);
+      recording.enable(TransitiveReductionEvent.class);
+      recording.start();
+
+      EntityBatchEvent batch = new EntityBatchEvent("class");
+      for (int i = 0; i < EntityBatchEvent.BATCH_SIZE + 10; i++) {
+        batch = batch.processed(i % 2 == 0);
+      }
+      batch.finish();
+
+      // 0 is the top, 1 is a child of 0 and 2 is a child of 0 and 1
+      GraphUtils.transitiveReduction(3, new int[] { 2 },
+          id -> id == 2 ? new int[] { 0, 1 } : id == 1 ? new int[] { 0 } : new int[0]);
+
+      recording.stop();
+      recording.dump(file.toPath());
+    }
+
+    final List<RecordedEvent> events = RecordingFile.readAllEvents(file.toPath());
+    final List<RecordedEvent> batches = events.stream()
+        .filter(e -> e.getEventType().getName().equals("au.csiro.fhir.owl.EntityBatch"))
+        .collect(Collectors.toList());
+    assertEquals(2, batches.size());
+    assertEquals(EntityBatchEvent.BATCH_SIZE, batches.get(0).getInt("entities"));
+    assertEquals(EntityBatchEvent.BATCH_SIZE / 2, batches.get(0).getInt("concepts"));
+    assertEquals(10, batches.get(1).getInt("entities"));
+    assertEquals("class", batches.get(1).getString("entityType"));
+
+    final RecordedEvent reduction = events.stream()
+        .filter(e -> e.getEventType().getName().equals("au.csiro.fhir.owl.TransitiveReduction"))
+        .findFirst().orElseThrow();
+    assertEquals(1, reduction.getInt("nodes"));
+    assertEquals(3, reduction.getInt("processed"));
+    assertEquals(2, reduction.getLong("edges"));
+  }
+
+}
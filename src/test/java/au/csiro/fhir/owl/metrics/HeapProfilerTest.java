@@ -0,0 +1,100 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for {@link HeapProfiler} and {@link ObjectSizeEstimator}.
+ */
+public class HeapProfilerTest {
+
+  @TempDir
+  File dir;
+
+  private static class Node {
+    private final String name;
+    private final List<Node> children = new ArrayList<>();
+    private int depth;
+
+    private Node(String name) {
+      this.name = name;
+    }
+  }
+
+  /**
+   * Tests the estimates of arrays, strings and graphs with shared objects.
+   */
+  @Test
+  public void testEstimates() {
+    final ObjectSizeEstimator estimator = new ObjectSizeEstimator();
+    assertEquals(16 + 8000, estimator.estimate(new long[1000]).getBytes());
+    assertEquals(16 + 4000, estimator.estimate(new int[1000]).getBytes());
+    assertEquals(24 + 24, estimator.estimate("abcdefgh").getBytes());
+
+    // Shared objects are only counted once
+    final Node root = new Node("root");
+    final Node shared = new Node("shared");
+    root.children.add(shared);
+    root.children.add(shared);
+    final ObjectSizeEstimator.Estimate estimate = estimator.estimate(root);
+    assertEquals(6, estimate.getObjects());
+
+    // Boundaries are not traversed
+    estimator.addBoundary(shared);
+    assertEquals(3, estimator.estimate(root).getObjects());
+  }
+
+  /**
+   * Tests that structures are ranked by size and that each excludes the ones measured before.
+   */
+  @Test
+  public void testRanking() throws IOException {
+    final HeapProfiler profiler = new HeapProfiler();
+    final int[] small = new int[100];
+    final Map<String, Object> big = new HashMap<>();
+    for (int i = 0; i < 1000; i++) {
+      big.put("key" + i, new long[10]);
+    }
+    big.put("small", small);
+    profiler.measure("small", small);
+    profiler.measure("big", big);
+    profiler.measure("wrapper", Arrays.asList(big, small));
+    profiler.checkpoint("test");
+
+    assertEquals(Arrays.asList("big", "small", "wrapper"), profiler.getRanking());
+    assertTrue(profiler.getSummary().startsWith("Largest structures: big "));
+
+    final File file = new File(dir, "out.json.profile.json");
+    profiler.writeReport(file);
+    final JsonObject report;
+    try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      report = JsonParser.parseReader(reader).getAsJsonObject();
+    }
+    assertEquals(1, report.getAsJsonArray("checkpoints").size());
+    final JsonObject checkpoint = report.getAsJsonArray("checkpoints").get(0).getAsJsonObject();
+    assertEquals("test", checkpoint.get("phase").getAsString());
+    assertTrue(checkpoint.get("heapUsedBytes").getAsLong() > 0);
+    assertEquals(3, report.getAsJsonArray("structures").size());
+  }
+
+}
@@ -0,0 +1,122 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.semanticweb.owlapi.reasoner.ReasonerProgressMonitor;
+
+/**
+ * Unit tests for {@link ProgressReporter}.
+ */
+public class ProgressReporterTest {
+
+  @TempDir
+  File dir;
+
+  private JsonObject read(File file) throws IOException {
+    try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      return JsonParser.parseReader(reader).getAsJsonObject();
+    }
+  }
+
+  /**
+   * Tests that the status file is written when reporting starts and stops.
+   */
+  @Test
+  public void testStatusFile() throws IOException {
+    final File status = new File(dir, "status.json");
+    final ProgressReporter progress = new ProgressReporter(60, status, false);
+    JsonObject json = read(status);
+    assertEquals("running", json.get("state").getAsString());
+    assertEquals(ProcessHandle.current().pid(), json.get("pid").getAsLong());
+
+    progress.startTask("entities", 10);
+    for (int i = 0; i < 4; i++) {
+      progress.increment();
+    }
+    progress.close();
+    json = read(status);
+    assertEquals("finished", json.get("state").getAsString());
+    assertEquals("entities", json.get("task").getAsString());
+    assertEquals(4, json.get("done").getAsLong());
+    assertEquals(10, json.get("total").getAsLong());
+    assertEquals(40.0, json.get("percent").getAsDouble(), 0.001);
+    assertTrue(json.has("lastProgress"));
+    assertFalse(new File(dir, "status.json.tmp").exists());
+
+    final ProgressReporter failed = new ProgressReporter(60, status, false);
+    failed.fail();
+    assertEquals("failed", read(status).get("state").getAsString());
+  }
+
+  /**
+   * Tests that the progress of the reasoner is reported as a task.
+   */
+  @Test
+  public void testReasonerMonitor() {
+    final ProgressReporter progress = ProgressReporter.none();
+    final ReasonerProgressMonitor monitor = progress.getReasonerMonitor();
+    monitor.reasonerTaskStarted("Class Taxonomy Computation");
+    monitor.reasonerTaskProgressChanged(25, 100);
+    final String line = progress.getProgressLine();
+    assertTrue(line.startsWith("classification: Class Taxonomy Computation: 25/100 (25.0%)"),
+        line);
+
+    monitor.reasonerTaskBusy();
+    assertEquals("classification: Class Taxonomy Computation: busy for 0s",
+        progress.getProgressLine());
+    progress.close();
+  }
+
+  /**
+   * Tests that the status file keeps being updated while the reasoner is busy, without counting
+   * it as progress.
+   */
+  @Test
+  public void testReasonerBusyHeartbeat() throws IOException, InterruptedException {
+    final File status = new File(dir, "status.json");
+    final ProgressReporter progress = new ProgressReporter(1, status, false);
+    final ReasonerProgressMonitor monitor = progress.getReasonerMonitor();
+    monitor.reasonerTaskStarted("Class Taxonomy Computation");
+    monitor.reasonerTaskBusy();
+    final Instant busySince = Instant.now();
+    Thread.sleep(2500);
+
+    final JsonObject json = read(status);
+    assertTrue(json.get("busy").getAsBoolean());
+    assertEquals("classification: Class Taxonomy Computation", json.get("task").getAsString());
+    assertTrue(json.get("taskElapsedSeconds").getAsLong() >= 1);
+    assertTrue(Instant.parse(json.get("updated").getAsString()).isAfter(busySince));
+    assertFalse(Instant.parse(json.get("lastProgress").getAsString()).isAfter(busySince));
+
+    monitor.reasonerTaskStopped();
+    progress.close();
+    assertFalse(read(status).get("busy").getAsBoolean());
+  }
+
+  /**
+   * Tests the formatting of the estimated remaining time.
+   */
+  @Test
+  public void testFormatSeconds() {
+    assertEquals("59s", ProgressReporter.formatSeconds(59));
+    assertEquals("2m05s", ProgressReporter.formatSeconds(125));
+    assertEquals("1h01m", ProgressReporter.formatSeconds(3660));
+  }
+
+}
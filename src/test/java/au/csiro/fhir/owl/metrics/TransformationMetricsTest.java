@@ -0,0 +1,106 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for {@link TransformationMetrics}.
+ */
+public class TransformationMetricsTest {
+
+  @TempDir
+  File dir;
+
+  /**
+   * Tests that phases that run more than once are added up and that the report contains the
+   * phases, counts and imports.
+   */
+  @Test
+  public void testReport() throws IOException, InterruptedException {
+    final TransformationMetrics metrics = new TransformationMetrics();
+    metrics.setAttribute("reasoner", "elk");
+
+    try (TransformationMetrics.Phase phase = metrics.startPhase(TransformationMetrics.LOAD)) {
+      metrics.recordImportTime("file:/tmp/root.owl", 5);
+      phase.addCount("axioms", 10);
+      Thread.sleep(5);
+    }
+    metrics.addImport("http://example.org/root.owl", "file:/tmp/root.owl", 10);
+    metrics.addImport(null, "file:/tmp/other.owl", 3);
+
+    for (int i = 0; i < 2; i++) {
+      try (TransformationMetrics.Phase phase =
+          metrics.startPhase(TransformationMetrics.ENTITIES)) {
+        phase.addCount("classes", 100);
+        Thread.sleep(5);
+      }
+    }
+    metrics.addCount("concepts", 200);
+    metrics.finish();
+
+    assertTrue(metrics.getPhaseMillis(TransformationMetrics.ENTITIES) >= 10);
+    assertEquals(0, metrics.getPhaseMillis(TransformationMetrics.CLASSIFICATION));
+    assertEquals(200, metrics.getCount("concepts"));
+
+    final File file = new File(dir, "out.json.metrics.json");
+    metrics.writeReport(file);
+    final JsonObject report;
+    try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      report = JsonParser.parseReader(reader).getAsJsonObject();
+    }
+
+    assertEquals("elk", report.getAsJsonObject("attributes").get("reasoner").getAsString());
+    assertEquals(200, report.getAsJsonObject("counts").get("concepts").getAsLong());
+
+    final JsonArray phases = report.getAsJsonArray("phases");
+    assertEquals(2, phases.size());
+    final JsonObject load = phases.get(0).getAsJsonObject();
+    assertEquals("load", load.get("name").getAsString());
+    assertEquals(1, load.get("invocations").getAsInt());
+    final JsonObject entities = phases.get(1).getAsJsonObject();
+    assertEquals("entities", entities.get("name").getAsString());
+    assertEquals(2, entities.get("invocations").getAsInt());
+    assertEquals(200, entities.getAsJsonObject("counts").get("classes").getAsLong());
+    assertTrue(entities.getAsJsonObject("perSecond").get("classes").getAsDouble() > 0);
+
+    final JsonArray imports = report.getAsJsonArray("imports");
+    assertEquals(2, imports.size());
+    assertEquals(5, imports.get(0).getAsJsonObject().get("loadMillis").getAsLong());
+    assertFalse(imports.get(1).getAsJsonObject().has("ontologyIri"));
+    assertFalse(imports.get(1).getAsJsonObject().has("loadMillis"));
+
+    final String summary = metrics.getSummary();
+    assertTrue(summary.startsWith("Transformation took "), summary);
+    assertTrue(summary.contains("load "), summary);
+    assertTrue(summary.contains("200 concepts"), summary);
+  }
+
+  /**
+   * Tests the formatting of times and sizes in the summary.
+   */
+  @Test
+  public void testFormat() {
+    assertEquals("999 ms", TransformationMetrics.formatMillis(999));
+    assertEquals("2.5 s", TransformationMetrics.formatMillis(2500));
+    assertEquals("1 KB", TransformationMetrics.formatBytes(1024));
+    assertEquals("3 MB", TransformationMetrics.formatBytes(3 * 1024 * 1024));
+    assertEquals("1.5 GB", TransformationMetrics.formatBytes(3L * 512 * 1024 * 1024));
+  }
+
+}
@@ -0,0 +1,171 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLAnnotationValue;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+/**
+ * Unit tests for {@link AnnotationIndex}.
+ */
+public class AnnotationIndexTest {
+
+  private static final String NS = "http://example.org/test#";
+
+  private OWLDataFactory factory;
+
+  private OWLOntology ont;
+
+  private IriDictionary dictionary;
+
+  private OWLAnnotationProperty codeProp;
+
+  private OWLAnnotationProperty definitionProp;
+
+  private OWLAnnotationProperty synonymProp;
+
+  @BeforeEach
+  public void setUp() throws OWLOntologyCreationException {
+    final OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    factory = manager.getOWLDataFactory();
+    ont = manager.createOntology(IRI.create("http://example.org/test"));
+    codeProp = factory.getOWLAnnotationProperty(IRI.create(NS + "code"));
+    definitionProp = factory.getOWLAnnotationProperty(IRI.create(NS + "definition"));
+    synonymProp = factory.getOWLAnnotationProperty(IRI.create(NS + "synonym"));
+    for (String name : Arrays.asList("A", "B", "C")) {
+      manager.addAxiom(ont, factory.getOWLDeclarationAxiom(factory.getOWLClass(
+          IRI.create(NS + name))));
+    }
+
+    annotate("A", factory.getRDFSLabel(), factory.getOWLLiteral("Beta"));
+    annotate("A", factory.getRDFSLabel(), factory.getOWLLiteral("Alpha"));
+    annotate("A", synonymProp, factory.getOWLLiteral("Alpha"));
+    annotate("A", synonymProp, factory.getOWLLiteral("Other"));
+    annotate("A", codeProp, factory.getOWLLiteral("A1"));
+    annotate("A", definitionProp, factory.getOWLLiteral("The first class"));
+    annotate("A", factory.getOWLDeprecated(), factory.getOWLLiteral(true));
+
+    annotate("B", factory.getRDFSLabel(), factory.getOWLLiteral("Excluded"));
+    annotate("B", definitionProp, IRI.create(NS + "A"));
+    annotate("B", factory.getOWLDeprecated(), factory.getOWLLiteral(false));
+
+    // Any property with the short form deprecated indicates deprecation
+    annotate("C", factory.getOWLAnnotationProperty(IRI.create("http://example.org/deprecated")),
+        factory.getOWLLiteral(true));
+
+    // Not an entity of the ontology
+    annotate("D", factory.getRDFSLabel(), factory.getOWLLiteral("Unknown"));
+
+    dictionary = IriDictionary.forOntology(ont);
+  }
+
+  /**
+   * Tests the lookups of the configured properties.
+   */
+  @Test
+  public void testLookups() {
+    final AnnotationIndex index = new AnnotationIndex(dictionary, codeProp,
+        factory.getRDFSLabel(), definitionProp, Collections.singletonList(synonymProp),
+        Collections.emptyList());
+    assertEquals(12, index.addAll(ont));
+
+    final int a = id("A");
+    assertEquals("A1", index.getCode(a));
+    assertEquals("The first class", index.getDefinition(a));
+    assertEquals("Alpha", index.getPreferredTerm(a, Collections.emptyList()));
+    assertEquals("Beta", index.getPreferredTerm(a, Collections.singletonList("Alpha")));
+    assertEquals(2, index.getDisplayCandidates(a).length);
+    assertEquals(new HashSet<>(Collections.singletonList("Other")),
+        index.getSynonyms(a, "Alpha", Collections.emptyList()));
+    assertEquals(new HashSet<>(Arrays.asList("Alpha", "Other")),
+        index.getSynonyms(a, null, Collections.emptyList()));
+    assertTrue(index.getSynonyms(a, null, Arrays.asList("Alpha", "Other")).isEmpty());
+
+    final int b = id("B");
+    assertNull(index.getCode(b));
+    assertNull(index.getDefinition(b));
+    assertNull(index.getPreferredTerm(b, Collections.singletonList("Excluded")));
+    assertTrue(index.getSynonyms(b, null, Collections.emptyList()).isEmpty());
+  }
+
+  /**
+   * Tests that the properties that are not configured are not indexed.
+   */
+  @Test
+  public void testUnconfigured() {
+    final AnnotationIndex index = new AnnotationIndex(dictionary, null, factory.getRDFSLabel(),
+        null, Collections.emptyList(), Collections.emptyList());
+    index.addAll(ont);
+    final int a = id("A");
+    assertNull(index.getCode(a));
+    assertNull(index.getDefinition(a));
+    assertEquals("Alpha", index.getPreferredTerm(a, Collections.emptyList()));
+    assertTrue(index.getSynonyms(a, null, Collections.emptyList()).isEmpty());
+  }
+
+  /**
+   * Tests the deprecated flag when no deprecation properties are configured.
+   */
+  @Test
+  public void testDeprecated() {
+    final AnnotationIndex index = new AnnotationIndex(dictionary, null, null, null,
+        Collections.emptyList(), Collections.emptyList());
+    index.addAll(ont);
+    assertTrue(index.isDeprecated(id("A")));
+    assertFalse(index.isDeprecated(id("B")));
+    assertTrue(index.isDeprecated(id("C")));
+    assertFalse(index.isDeprecated(dictionary.getId(factory.getOWLThing().getIRI())));
+    assertEquals(2, index.getDeprecated().cardinality());
+  }
+
+  /**
+   * Tests the deprecated flag with an obsolescence marker, which has an IRI as value, and a
+   * property with string values.
+   */
+  @Test
+  public void testDeprecationProperties() {
+    final OWLAnnotationProperty reason = factory.getOWLAnnotationProperty(
+        IRI.create("http://purl.obolibrary.org/obo/IAO_0000231"));
+    final OWLAnnotationProperty obsolete = factory.getOWLAnnotationProperty(
+        IRI.create("http://www.geneontology.org/formats/oboInOwl#is_obsolete"));
+    annotate("B", reason, IRI.create("http://purl.obolibrary.org/obo/IAO_0000103"));
+    annotate("C", obsolete, factory.getOWLLiteral("false"));
+    annotate("E", obsolete, factory.getOWLLiteral("true"));
+    dictionary.add(IRI.create(NS + "E"));
+
+    final AnnotationIndex index = new AnnotationIndex(dictionary, null, null, null,
+        Collections.emptyList(), Arrays.asList(reason, obsolete));
+    index.addAll(ont);
+    // owl:deprecated and the other deprecated property are not configured
+    assertFalse(index.isDeprecated(id("A")));
+    assertTrue(index.isDeprecated(id("B")));
+    assertFalse(index.isDeprecated(id("C")));
+    assertTrue(index.isDeprecated(id("E")));
+  }
+
+  private int id(String name) {
+    return dictionary.getId(IRI.create(NS + name));
+  }
+
+  private void annotate(String name, OWLAnnotationProperty prop, OWLAnnotationValue value) {
+    ont.getOWLOntologyManager().addAxiom(ont, factory.getOWLAnnotationAssertionAxiom(prop,
+        IRI.create(NS + name), value));
+  }
+
+}
@@ -0,0 +1,202 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.util;
+
+import ca.uhn.fhir.context.FhirContext;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.hl7.fhir.r4.model.CodeSystem;
+import org.hl7.fhir.r4.model.CodeSystem.ConceptDefinitionComponent;
+import org.hl7.fhir.r4.model.CodeSystem.ConceptDefinitionDesignationComponent;
+import org.hl7.fhir.r4.model.CodeSystem.ConceptPropertyComponent;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.Extension;
+import org.hl7.fhir.r4.model.Type;
+
+/**
+ * Compares two code systems semantically and returns their differences as compact, one line
+ * entries. Concepts are matched by code and the order of the concepts, designations, properties
+ * and extensions is ignored, as is the date. For example:
+ *
+ * <pre>
+ * - Pizza                        missing concept
+ * + IceCream                     unexpected concept
+ * ~ Margherita display           "Margherita" -&gt; "Margarita"
+ * ~ Margherita property          -parent=NamedPizza +parent=Pizza
+ * </pre>
+ */
+public class CodeSystemDiff {
+
+  private final FhirContext ctx;
+
+  /**
+   * Creates a new instance.
+   *
+   * @param ctx The FHIR context, used to compare the code system headers.
+   */
+  public CodeSystemDiff(FhirContext ctx) {
+    this.ctx = ctx;
+  }
+
+  /**
+   * Compares two code systems.
+   *
+   * @param expected The expected code system.
+   * @param actual The actual code system.
+   * @return The differences, or an empty list if the code systems are equivalent.
+   */
+  public List<String> compare(CodeSystem expected, CodeSystem actual) {
+    final List<String> res = new ArrayList<>();
+    final String expectedHeader = encodeHeader(expected);
+    final String actualHeader = encodeHeader(actual);
+    if (!expectedHeader.equals(actualHeader)) {
+      res.add("~ header " + expectedHeader + " -> " + actualHeader);
+    }
+
+    final Map<String, Map<String, List<String>>> expectedConcepts = index(expected);
+    final Map<String, Map<String, List<String>>> actualConcepts = index(actual);
+    for (Map.Entry<String, Map<String, List<String>>> e : expectedConcepts.entrySet()) {
+      final String code = e.getKey();
+      final Map<String, List<String>> concept = actualConcepts.get(code);
+      if (concept == null) {
+        res.add(String.format("- %-30s missing concept", code));
+        continue;
+      }
+      for (Map.Entry<String, List<String>> field : e.getValue().entrySet()) {
+        final String name = field.getKey();
+        final List<String> expectedValues = field.getValue();
+        final List<String> actualValues = concept.get(name);
+        if (!expectedValues.equals(actualValues)) {
+          res.add(String.format("~ %-30s %s", code + " " + name,
+              diff(name, expectedValues, actualValues)));
+        }
+      }
+    }
+    for (String code : actualConcepts.keySet()) {
+      if (!expectedConcepts.containsKey(code)) {
+        res.add(String.format("+ %-30s unexpected concept", code));
+      }
+    }
+    return res;
+  }
+
+  /**
+   * Formats a list of differences, showing at most a maximum number of them.
+   *
+   * @param differences The differences.
+   * @param max The maximum number of differences to show.
+   * @return The formatted differences.
+   */
+  public static String format(List<String> differences, int max) {
+    final StringBuilder sb = new StringBuilder();
+    sb.append(differences.size()).append(differences.size() == 1 ? " difference"
+        : " differences");
+    for (int i = 0; i < Math.min(max, differences.size()); i++) {
+      sb.append('\n').append(differences.get(i));
+    }
+    if (differences.size() > max) {
+      sb.append("\n... ").append(differences.size() - max).append(" more");
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Describes the difference between the values of a field. Single valued fields are shown as
+   * <code>expected -&gt; actual</code> and multi valued fields as the values that were removed
+   * and added.
+   */
+  private static String diff(String name, List<String> expected, List<String> actual) {
+    if ("display".equals(name) || "definition".equals(name)) {
+      return quote(expected.get(0)) + " -> " + quote(actual.get(0));
+    }
+    final Map<String, Integer> counts = new HashMap<>();
+    for (String value : expected) {
+      counts.merge(value, 1, Integer::sum);
+    }
+    for (String value : actual) {
+      counts.merge(value, -1, Integer::sum);
+    }
+    final List<String> changes = new ArrayList<>();
+    for (Map.Entry<String, Integer> e : counts.entrySet()) {
+      final int count = e.getValue();
+      for (int i = 0; i < Math.abs(count); i++) {
+        changes.add((count > 0 ? "-" : "+") + e.getKey());
+      }
+    }
+    Collections.sort(changes);
+    return String.join(" ", changes);
+  }
+
+  private static String quote(String value) {
+    return value == null ? "null" : "\"" + value + "\"";
+  }
+
+  /**
+   * Encodes the code system without its concepts and the fields that change on every run.
+   */
+  private String encodeHeader(CodeSystem cs) {
+    final CodeSystem header = cs.copy();
+    header.setConcept(null);
+    header.setDate(null);
+    header.setMeta(null);
+    header.setText(null);
+    return ctx.newJsonParser().encodeResourceToString(header);
+  }
+
+  /**
+   * Returns the normalised fields of each concept, indexed by code. Nested concepts are
+   * included.
+   */
+  private static Map<String, Map<String, List<String>>> index(CodeSystem cs) {
+    final Map<String, Map<String, List<String>>> res = new LinkedHashMap<>();
+    final List<ConceptDefinitionComponent> pending = new ArrayList<>(cs.getConcept());
+    while (!pending.isEmpty()) {
+      final ConceptDefinitionComponent cdc = pending.remove(pending.size() - 1);
+      pending.addAll(cdc.getConcept());
+
+      final List<String> designations = new ArrayList<>();
+      for (ConceptDefinitionDesignationComponent d : cdc.getDesignation()) {
+        designations.add(d.getLanguage() + "|" + (d.hasUse() ? toString(d.getUse()) : "") + "|"
+            + d.getValue());
+      }
+      final List<String> properties = new ArrayList<>();
+      for (ConceptPropertyComponent p : cdc.getProperty()) {
+        properties.add(p.getCode() + "=" + toString(p.getValue()));
+      }
+      final List<String> extensions = new ArrayList<>();
+      for (Extension ext : cdc.getExtension()) {
+        extensions.add(ext.getUrl() + "=" + toString(ext.getValue()));
+      }
+      Collections.sort(designations);
+      Collections.sort(properties);
+      Collections.sort(extensions);
+
+      final Map<String, List<String>> fields = new LinkedHashMap<>();
+      fields.put("display", Collections.singletonList(cdc.getDisplay()));
+      fields.put("definition", Collections.singletonList(cdc.getDefinition()));
+      fields.put("designation", designations);
+      fields.put("property", properties);
+      fields.put("extension", extensions);
+      res.put(cdc.getCode(), fields);
+    }
+    return res;
+  }
+
+  private static String toString(Type value) {
+    if (value == null) {
+      return null;
+    } else if (value instanceof Coding) {
+      final Coding coding = (Coding) value;
+      return coding.getSystem() + "|" + coding.getCode();
+    } else {
+      return value.primitiveValue();
+    }
+  }
+
+}
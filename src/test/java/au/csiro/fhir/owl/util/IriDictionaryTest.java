@@ -0,0 +1,85 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.semanticweb.owlapi.model.IRI;
+
+/**
+ * Unit tests for {@link IriDictionary} and the int-specialised transitive reduction in
+ * {@link GraphUtils}.
+ */
+public class IriDictionaryTest {
+
+  /**
+   * Tests that ids are dense, stable and survive the table being resized.
+   */
+  @Test
+  public void testIds() {
+    final IriDictionary dictionary = new IriDictionary(1);
+    for (int i = 0; i < 10000; i++) {
+      assertEquals(i, dictionary.add(IRI.create("http://purl.obolibrary.org/obo/TEST_" + i)));
+    }
+    assertEquals(10000, dictionary.size());
+    assertEquals(42, dictionary.add(IRI.create("http://purl.obolibrary.org/obo/TEST_42")));
+    assertEquals(10000, dictionary.size());
+    for (int i = 0; i < 10000; i++) {
+      final IRI iri = IRI.create("http://purl.obolibrary.org/obo/TEST_" + i);
+      assertEquals(i, dictionary.getId(iri));
+      assertEquals(iri, dictionary.getIri(i));
+    }
+    assertEquals(IriDictionary.NO_ID, dictionary.getId(IRI.create("http://example.org/other")));
+    assertThrows(IndexOutOfBoundsException.class, () -> dictionary.getIri(10000));
+
+    final BitSet bits = dictionary.toBitSet(Arrays.asList(
+        IRI.create("http://purl.obolibrary.org/obo/TEST_7"), IRI.create("http://example.org/x")));
+    assertEquals(1, bits.cardinality());
+    assertTrue(bits.get(7));
+  }
+
+  /**
+   * Tests that the int-specialised transitive reduction gives the same result as the generic one.
+   */
+  @Test
+  public void testTransitiveReduction() {
+    // 0 is the top, 1 and 2 are children of 0, 3 is a child of 1 and 2, 4 is a child of 3 and 5 is
+    // a child of 1
+    final Map<Integer, Set<Integer>> ancestors = new HashMap<>();
+    ancestors.put(0, set());
+    ancestors.put(1, set(0));
+    ancestors.put(2, set(0));
+    ancestors.put(3, set(0, 1, 2));
+    ancestors.put(4, set(0, 1, 2, 3));
+    ancestors.put(5, set(0, 1));
+
+    final Map<Integer, Set<Integer>> expected = GraphUtils.transitiveReduction(
+        new HashSet<>(Arrays.asList(4, 5)), ancestors::get);
+    final int[][] parents = GraphUtils.transitiveReduction(7, new int[] { 4, 5 },
+        id -> ancestors.get(id).stream().mapToInt(Integer::intValue).toArray());
+
+    for (int id = 0; id < 6; id++) {
+      assertEquals(expected.get(id), set(parents[id]), "Parents of " + id);
+    }
+    assertNull(parents[6]);
+  }
+
+  private static Set<Integer> set(int... values) {
+    final Set<Integer> res = new HashSet<>();
+    for (int value : values) {
+      res.add(value);
+    }
+    return res;
+  }
+
+}
@@ -0,0 +1,801 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Generates large ontologies for scale testing, so the performance of the transformation can be
+ * checked without downloading real ontologies. The output only depends on the settings and the
+ * seed, so the same ontology can be generated again anywhere.
+ *
+ * <p>The classes form a hierarchy of a given depth under owl:Thing, where the number of classes
+ * grows by the fan-out from one level to the next. Every class has a parent in the level above
+ * and, with the polyhierarchy probability, a second parent from any level above. Every class has
+ * an rdfs:label, a number of synonyms in oboInOwl:hasExactSynonym and might be deprecated. When
+ * object properties are generated, they form a hierarchy and a fifth of the classes of the main
+ * ontology get an existential restriction on one of them. Axioms outside of the EL profile, i.e.
+ * universal restrictions, unions and disjoint siblings, can be added to give the reasoners more
+ * work, and some classes might become unsatisfiable, as in real ontologies.
+ *
+ * <p>When imports are generated, the classes in the top levels, a tenth of all the classes, are
+ * spread over the imported ontologies, which are imported by the main ontology. The documents are
+ * written in RDF/XML as the classes are generated, so ontologies with millions of classes can be
+ * generated in constant memory, together with a <code>catalog-v001.xml</code> that maps the
+ * imports to their files.
+ *
+ * <p>The class hierarchy can also be generated on its own with {@link #generateHierarchy()}, for
+ * the benchmarks of the hierarchy algorithms and the serialisation, which do not need an ontology.
+ */
+public class OntologyGenerator {
+
+  private static final Log log = LogFactory.getLog(OntologyGenerator.class);
+
+  /**
+   * Predefined shapes of class hierarchies. Each one sets the number of classes, the depth, the
+   * fan-out and the polyhierarchy of a generator.
+   */
+  public enum Shape {
+    /**
+     * Like the Gene Ontology: tens of thousands of classes, moderately deep and with a lot of
+     * multiple inheritance.
+     */
+    GO(45000, 15, 1.5, 0.6),
+
+    /**
+     * Like SNOMED CT: deep and with less multiple inheritance. The real thing has over 350,000
+     * concepts, which can be set with {@link OntologyGenerator#setClasses(int)}.
+     */
+    SNOMED(100000, 27, 1.35, 0.35),
+
+    /**
+     * A flat vocabulary, where every class is a child of owl:Thing.
+     */
+    FLAT(50000, 1, 1.0, 0.0);
+
+    private final int classes;
+    private final int depth;
+    private final double fanOut;
+    private final double polyhierarchy;
+
+    Shape(int classes, int depth, double fanOut, double polyhierarchy) {
+      this.classes = classes;
+      this.depth = depth;
+      this.fanOut = fanOut;
+      this.polyhierarchy = polyhierarchy;
+    }
+  }
+
+  /**
+   * The prefix of the IRIs of the generated ontologies.
+   */
+  public static final String BASE = "http://example.org/generated/";
+
+  /**
+   * The annotation property that contains the synonyms.
+   */
+  public static final String SYNONYM_PROPERTY =
+      "http://www.geneontology.org/formats/oboInOwl#hasExactSynonym";
+
+  private static final String RDF = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+
+  private static final String RDFS = "http://www.w3.org/2000/01/rdf-schema#";
+
+  private static final String OWL = "http://www.w3.org/2002/07/owl#";
+
+  private static final String OBO_IN_OWL = "http://www.geneontology.org/formats/oboInOwl#";
+
+  private static final String XSD_BOOLEAN = "http://www.w3.org/2001/XMLSchema#boolean";
+
+  private static final String[] WORDS = { "acute", "chronic", "structure", "disorder", "finding",
+      "procedure", "lesion", "process", "entity", "region", "organ", "cell", "binding", "activity",
+      "complex", "pathway", "left", "right", "upper", "lower", "primary", "secondary" };
+
+  private final long seed;
+
+  private int classes = 10000;
+
+  private int depth = 12;
+
+  private double fanOut = 1.5;
+
+  private double polyhierarchy = 0.2;
+
+  private double synonyms = 1.0;
+
+  private double deprecated = 0.01;
+
+  private int imports = 0;
+
+  private int objectProperties = 0;
+
+  private boolean alc = false;
+
+  /**
+   * Creates a generator with the default settings: 10,000 classes, 12 levels, a fan-out of 1.5,
+   * 20% of classes with two parents, one synonym per class, 1% of deprecated classes, no imports,
+   * no object properties and no axioms outside of EL.
+   *
+   * @param seed The seed of the random number generator.
+   */
+  public OntologyGenerator(long seed) {
+    this.seed = seed;
+  }
+
+  /**
+   * Sets the number of classes, depth, fan-out and polyhierarchy of a predefined shape. They can
+   * be changed afterwards, e.g. to generate a bigger hierarchy with the same shape.
+   *
+   * @param shape The shape.
+   */
+  public void setShape(Shape shape) {
+    this.classes = shape.classes;
+    this.depth = shape.depth;
+    this.fanOut = shape.fanOut;
+    this.polyhierarchy = shape.polyhierarchy;
+  }
+
+  /**
+   * Sets the number of classes, excluding owl:Thing.
+   *
+   * @param classes The number of classes.
+   */
+  public void setClasses(int classes) {
+    if (classes < 1) {
+      throw new IllegalArgumentException("The number of classes must be at least 1");
+    }
+    this.classes = classes;
+  }
+
+  /**
+   * Sets the number of levels of the hierarchy, excluding owl:Thing.
+   *
+   * @param depth The number of levels.
+   */
+  public void setDepth(int depth) {
+    if (depth < 1) {
+      throw new IllegalArgumentException("The depth must be at least 1");
+    }
+    this.depth = depth;
+  }
+
+  /**
+   * Sets how much the number of classes grows from one level to the next. A value of 1 puts the
+   * same number of classes in every level.
+   *
+   * @param fanOut The growth factor.
+   */
+  public void setFanOut(double fanOut) {
+    if (fanOut <= 0) {
+      throw new IllegalArgumentException("The fan-out must be positive");
+    }
+    this.fanOut = fanOut;
+  }
+
+  /**
+   * Sets the probability of a class having a second parent.
+   *
+   * @param polyhierarchy The probability, between 0 and 1.
+   */
+  public void setPolyhierarchy(double polyhierarchy) {
+    this.polyhierarchy = checkFraction(polyhierarchy, "polyhierarchy");
+  }
+
+  /**
+   * Sets the average number of synonyms of each class.
+   *
+   * @param synonyms The average number of synonyms.
+   */
+  public void setSynonyms(double synonyms) {
+    if (synonyms < 0) {
+      throw new IllegalArgumentException("The number of synonyms cannot be negative");
+    }
+    this.synonyms = synonyms;
+  }
+
+  /**
+   * Sets the fraction of deprecated classes.
+   *
+   * @param deprecated The fraction, between 0 and 1.
+   */
+  public void setDeprecated(double deprecated) {
+    this.deprecated = checkFraction(deprecated, "deprecated fraction");
+  }
+
+  /**
+   * Sets the number of imported ontologies.
+   *
+   * @param imports The number of imported ontologies.
+   */
+  public void setImports(int imports) {
+    if (imports < 0) {
+      throw new IllegalArgumentException("The number of imports cannot be negative");
+    }
+    this.imports = imports;
+  }
+
+  /**
+   * Sets the number of object properties.
+   *
+   * @param objectProperties The number of object properties.
+   */
+  public void setObjectProperties(int objectProperties) {
+    if (objectProperties < 0) {
+      throw new IllegalArgumentException("The number of object properties cannot be negative");
+    }
+    this.objectProperties = objectProperties;
+  }
+
+  /**
+   * Sets whether axioms outside of the EL profile are generated: universal restrictions, unions
+   * and disjoint siblings. The universal restrictions are only generated if there are object
+   * properties.
+   *
+   * @param alc True to generate the axioms.
+   */
+  public void setAlc(boolean alc) {
+    this.alc = alc;
+  }
+
+  /**
+   * Returns the IRI of a generated ontology.
+   *
+   * @param name The name of the ontology.
+   * @return The IRI.
+   */
+  public static String getOntologyIri(String name) {
+    return BASE + name + ".owl";
+  }
+
+  /**
+   * Generates an ontology, and its imports, in a directory. The main ontology is written to
+   * <code>name.owl</code>, the imported ontologies to <code>name-import-1.owl</code> and so on,
+   * and the catalog that maps the imports to their files to <code>catalog-v001.xml</code>.
+   *
+   * @param dir The directory, which is created if it does not exist.
+   * @param name The name of the ontology, used in the IRIs and file names.
+   * @return The file of the main ontology.
+   * @throws IOException If the files cannot be written.
+   */
+  public File generate(File dir, String name) throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Could not create directory " + dir.getAbsolutePath());
+    }
+    final File main = new File(dir, name + ".owl");
+    final Document[] docs = new Document[imports + 1];
+    try {
+      docs[0] = new Document(main, getOntologyIri(name), BASE + name + "#");
+      for (int i = 1; i <= imports; i++) {
+        final String importName = name + "-import-" + i;
+        docs[i] = new Document(new File(dir, importName + ".owl"), getOntologyIri(importName),
+            BASE + importName + "#");
+      }
+      write(name, docs);
+      for (Document doc : docs) {
+        doc.close();
+      }
+    } catch (XMLStreamException e) {
+      throw new IOException("Could not write ontology " + name, e);
+    } finally {
+      for (Document doc : docs) {
+        if (doc != null) {
+          doc.closeQuietly();
+        }
+      }
+    }
+    if (imports > 0) {
+      writeCatalog(new File(dir, "catalog-v001.xml"), name);
+    }
+    return main;
+  }
+
+  /**
+   * Generates the class hierarchy. It is the same hierarchy that {@link #generate(File, String)}
+   * writes with the same settings and seed.
+   *
+   * @return The hierarchy.
+   */
+  public Hierarchy generateHierarchy() {
+    final Random random = new Random(seed);
+
+    // The classes of level l are [levelStart[l], levelStart[l + 1]), node 0 is owl:Thing
+    final int[] levelStart = new int[Math.min(depth, classes) + 2];
+    final int levels = levelStart.length - 2;
+    double totalWeight = 0;
+    for (int l = 1; l <= levels; l++) {
+      totalWeight += Math.pow(fanOut, l);
+    }
+    levelStart[1] = 1;
+    int assigned = 0;
+    for (int l = 1; l <= levels; l++) {
+      final int remainingLevels = levels - l;
+      int levelSize = (int) Math.round(classes * Math.pow(fanOut, l) / totalWeight);
+      levelSize = Math.max(1, Math.min(levelSize, classes - assigned - remainingLevels));
+      if (remainingLevels == 0) {
+        levelSize = classes - assigned;
+      }
+      assigned += levelSize;
+      levelStart[l + 1] = assigned + 1;
+    }
+
+    final int[] nodeLevels = new int[classes + 1];
+    final int[] parents = new int[classes + 1];
+    final int[] otherParents = new int[classes + 1];
+    parents[0] = -1;
+    otherParents[0] = -1;
+    for (int l = 1; l <= levels; l++) {
+      for (int node = levelStart[l]; node < levelStart[l + 1]; node++) {
+        nodeLevels[node] = l;
+        otherParents[node] = -1;
+        if (l == 1) {
+          parents[node] = 0;
+          continue;
+        }
+        parents[node] = levelStart[l - 1] + random.nextInt(levelStart[l] - levelStart[l - 1]);
+        if (random.nextDouble() < polyhierarchy) {
+          final int other = 1 + random.nextInt(levelStart[l] - 1);
+          if (other != parents[node]) {
+            otherParents[node] = other;
+          }
+        }
+      }
+    }
+    return new Hierarchy(nodeLevels, parents, otherParents);
+  }
+
+  private void write(String name, Document[] docs) throws XMLStreamException {
+    final Hierarchy hierarchy = generateHierarchy();
+    // The rest of the ontology uses its own sequence, so the hierarchy does not depend on it
+    final Random random = new Random(seed + 1);
+
+    // The top classes go to the imported ontologies
+    final int importedEnd = imports == 0 ? 1 : Math.min(classes, Math.max(imports, classes / 10))
+        + 1;
+
+    final XMLStreamWriter main = docs[0].writer;
+    main.writeStartElement(OWL, "Ontology");
+    main.writeAttribute(RDF, "about", getOntologyIri(name));
+    for (int i = 1; i < docs.length; i++) {
+      writeResource(main, OWL, "imports", docs[i].ontologyIri);
+    }
+    writeLiteral(main, RDFS, "label", "Generated ontology " + name, null);
+    main.writeEndElement();
+    for (int i = 1; i < docs.length; i++) {
+      final XMLStreamWriter w = docs[i].writer;
+      w.writeStartElement(OWL, "Ontology");
+      w.writeAttribute(RDF, "about", docs[i].ontologyIri);
+      w.writeEndElement();
+    }
+    for (Document doc : docs) {
+      doc.writer.writeStartElement(OWL, "AnnotationProperty");
+      doc.writer.writeAttribute(RDF, "about", SYNONYM_PROPERTY);
+      doc.writer.writeEndElement();
+    }
+
+    final String propertyNs = docs[0].namespace;
+    for (int p = 0; p < objectProperties; p++) {
+      main.writeStartElement(OWL, "ObjectProperty");
+      main.writeAttribute(RDF, "about", propertyNs + "r" + p);
+      if (p > 0 && random.nextBoolean()) {
+        writeResource(main, RDFS, "subPropertyOf", propertyNs + "r" + random.nextInt(p));
+      }
+      writeLiteral(main, RDFS, "label", createLabel(random) + " relationship " + p, "en");
+      main.writeEndElement();
+    }
+
+    for (int node = 1; node < hierarchy.size(); node++) {
+      final int level = hierarchy.getLevel(node);
+      final XMLStreamWriter w = docs[getDocument(node, importedEnd)].writer;
+      w.writeStartElement(OWL, "Class");
+      w.writeAttribute(RDF, "about", getIri(docs, node, importedEnd));
+      if (level > 1) {
+        for (int parent : hierarchy.getParents(node)) {
+          writeResource(w, RDFS, "subClassOf", getIri(docs, parent, importedEnd));
+        }
+      }
+      // The properties are declared in the main ontology, so only its classes use them
+      if (objectProperties > 0 && node >= importedEnd && node > 1 && random.nextInt(5) == 0) {
+        writeRestriction(w, "someValuesFrom", propertyNs + "r" + random.nextInt(objectProperties),
+            getIri(docs, 1 + random.nextInt(node - 1), importedEnd));
+      }
+      if (alc && node >= importedEnd && node > 2) {
+        final int choice = random.nextInt(100);
+        if (choice < 5 && objectProperties > 0) {
+          writeRestriction(w, "allValuesFrom", propertyNs + "r" + random.nextInt(objectProperties),
+              getIri(docs, 1 + random.nextInt(node - 1), importedEnd));
+        } else if (choice < 8) {
+          writeUnion(w, getIri(docs, 1 + random.nextInt(node - 1), importedEnd),
+              getIri(docs, 1 + random.nextInt(node - 1), importedEnd));
+        } else if (choice < 10 && node - 1 >= importedEnd
+            && hierarchy.getLevel(node - 1) == level) {
+          writeResource(w, OWL, "disjointWith", getIri(docs, node - 1, importedEnd));
+        }
+      }
+      writeLiteral(w, RDFS, "label", createLabel(random) + " " + node, "en");
+      int count = (int) synonyms;
+      if (random.nextDouble() < synonyms - count) {
+        count++;
+      }
+      for (int s = 0; s < count; s++) {
+        writeLiteral(w, OBO_IN_OWL, "hasExactSynonym", createLabel(random) + " " + node + " "
+            + (s + 1), "en");
+      }
+      if (random.nextDouble() < deprecated) {
+        w.writeStartElement(OWL, "deprecated");
+        w.writeAttribute(RDF, "datatype", XSD_BOOLEAN);
+        w.writeCharacters("true");
+        w.writeEndElement();
+      }
+      w.writeEndElement();
+    }
+  }
+
+  private int getDocument(int node, int importedEnd) {
+    return node < importedEnd ? 1 + node % imports : 0;
+  }
+
+  private String getIri(Document[] docs, int node, int importedEnd) {
+    return docs[getDocument(node, importedEnd)].namespace + "C" + node;
+  }
+
+  private static String createLabel(Random random) {
+    final StringBuilder sb = new StringBuilder();
+    final int words = 1 + random.nextInt(4);
+    for (int i = 0; i < words; i++) {
+      if (i > 0) {
+        sb.append(' ');
+      }
+      sb.append(WORDS[random.nextInt(WORDS.length)]);
+    }
+    return sb.toString();
+  }
+
+  private static void writeResource(XMLStreamWriter w, String ns, String name, String iri)
+      throws XMLStreamException {
+    w.writeEmptyElement(ns, name);
+    w.writeAttribute(RDF, "resource", iri);
+  }
+
+  private static void writeRestriction(XMLStreamWriter w, String kind, String property,
+      String filler) throws XMLStreamException {
+    w.writeStartElement(RDFS, "subClassOf");
+    w.writeStartElement(OWL, "Restriction");
+    writeResource(w, OWL, "onProperty", property);
+    writeResource(w, OWL, kind, filler);
+    w.writeEndElement();
+    w.writeEndElement();
+  }
+
+  private static void writeUnion(XMLStreamWriter w, String... iris) throws XMLStreamException {
+    w.writeStartElement(RDFS, "subClassOf");
+    w.writeStartElement(OWL, "Class");
+    w.writeStartElement(OWL, "unionOf");
+    w.writeAttribute(RDF, "parseType", "Collection");
+    for (String iri : iris) {
+      w.writeEmptyElement(RDF, "Description");
+      w.writeAttribute(RDF, "about", iri);
+    }
+    w.writeEndElement();
+    w.writeEndElement();
+    w.writeEndElement();
+  }
+
+  private static void writeLiteral(XMLStreamWriter w, String ns, String name, String value,
+      String lang) throws XMLStreamException {
+    w.writeStartElement(ns, name);
+    if (lang != null) {
+      w.writeAttribute("xml", "http://www.w3.org/XML/1998/namespace", "lang", lang);
+    }
+    w.writeCharacters(value);
+    w.writeEndElement();
+  }
+
+  private void writeCatalog(File file, String name) throws IOException {
+    try (OutputStream os = new BufferedOutputStream(new FileOutputStream(file))) {
+      final XMLStreamWriter w = XMLOutputFactory.newInstance().createXMLStreamWriter(os, "UTF-8");
+      w.writeStartDocument("UTF-8", "1.0");
+      w.writeStartElement("catalog");
+      w.writeDefaultNamespace("urn:oasis:names:tc:entity:xmlns:xml:catalog");
+      for (int i = 1; i <= imports; i++) {
+        final String importName = name + "-import-" + i;
+        w.writeEmptyElement("uri");
+        w.writeAttribute("name", getOntologyIri(importName));
+        w.writeAttribute("uri", importName + ".owl");
+      }
+      w.writeEndElement();
+      w.writeEndDocument();
+      w.close();
+    } catch (XMLStreamException e) {
+      throw new IOException("Could not write catalog " + file.getAbsolutePath(), e);
+    }
+  }
+
+  private static double checkFraction(double value, String name) {
+    if (value < 0 || value > 1) {
+      throw new IllegalArgumentException("The " + name + " must be between 0 and 1");
+    }
+    return value;
+  }
+
+  /**
+   * A generated class hierarchy. Node 0 is owl:Thing and the other nodes are the classes, whose
+   * parents always have lower ids. Every class has one or two parents, which are stored in two
+   * arrays so large hierarchies need little memory.
+   */
+  public static class Hierarchy {
+    private final int[] levels;
+    private final int[] parents;
+    private final int[] otherParents;
+    private volatile int[][] ancestors;
+
+    private Hierarchy(int[] levels, int[] parents, int[] otherParents) {
+      this.levels = levels;
+      this.parents = parents;
+      this.otherParents = otherParents;
+    }
+
+    /**
+     * Returns the number of nodes, including owl:Thing.
+     *
+     * @return The number of nodes.
+     */
+    public int size() {
+      return levels.length;
+    }
+
+    /**
+     * Returns the ids of all the nodes.
+     *
+     * @return The ids.
+     */
+    public int[] nodes() {
+      final int[] res = new int[levels.length];
+      Arrays.setAll(res, i -> i);
+      return res;
+    }
+
+    /**
+     * Returns the level of a node. owl:Thing is in level 0.
+     *
+     * @param node The node.
+     * @return The level.
+     */
+    public int getLevel(int node) {
+      return levels[node];
+    }
+
+    /**
+     * Returns the asserted parents of a node. Some of them might be redundant.
+     *
+     * @param node The node.
+     * @return The parents.
+     */
+    public int[] getParents(int node) {
+      if (parents[node] < 0) {
+        return new int[0];
+      }
+      return otherParents[node] < 0 ? new int[] { parents[node] }
+          : new int[] { parents[node], otherParents[node] };
+    }
+
+    /**
+     * Returns the ancestors of a node, i.e. the transitive closure of its parents, like a reasoner
+     * would. The ancestors of all the nodes are computed the first time this is called.
+     *
+     * @param node The node.
+     * @return The ancestors.
+     */
+    public int[] getAncestors(int node) {
+      int[][] res = ancestors;
+      if (res == null) {
+        res = computeAncestors();
+      }
+      return res[node];
+    }
+
+    /**
+     * Returns the ancestors of every node as boxed sets, as used by the generic methods of
+     * {@link GraphUtils}.
+     *
+     * @return A map from each node to its ancestors.
+     */
+    public Map<Integer, Set<Integer>> getAncestorSets() {
+      final Map<Integer, Set<Integer>> res = new HashMap<>(levels.length * 2);
+      for (int node = 0; node < levels.length; node++) {
+        res.put(node, toSet(getAncestors(node)));
+      }
+      return res;
+    }
+
+    /**
+     * Returns the parents of every node as new boxed sets, which can be modified.
+     *
+     * @return A map from each node to its parents.
+     */
+    public Map<Integer, Set<Integer>> getParentSets() {
+      final Map<Integer, Set<Integer>> res = new HashMap<>(levels.length * 2);
+      for (int node = 0; node < levels.length; node++) {
+        res.put(node, toSet(getParents(node)));
+      }
+      return res;
+    }
+
+    private synchronized int[][] computeAncestors() {
+      if (ancestors == null) {
+        // Parents always have lower ids, so the ancestors can be computed in id order
+        final int[][] res = new int[levels.length][];
+        res[0] = new int[0];
+        final BitSet bits = new BitSet(levels.length);
+        for (int node = 1; node < levels.length; node++) {
+          bits.clear();
+          for (int parent : getParents(node)) {
+            bits.set(parent);
+            for (int ancestor : res[parent]) {
+              bits.set(ancestor);
+            }
+          }
+          res[node] = bits.stream().toArray();
+        }
+        ancestors = res;
+      }
+      return ancestors;
+    }
+
+    private static Set<Integer> toSet(int[] nodes) {
+      final Set<Integer> res = new HashSet<>();
+      for (int node : nodes) {
+        res.add(node);
+      }
+      return res;
+    }
+  }
+
+  /**
+   * An RDF/XML document that is being written.
+   */
+  private static class Document {
+    private final String ontologyIri;
+    private final String namespace;
+    private final OutputStream os;
+    private final XMLStreamWriter writer;
+
+    private Document(File file, String ontologyIri, String namespace) throws IOException,
+        XMLStreamException {
+      this.ontologyIri = ontologyIri;
+      this.namespace = namespace;
+      this.os = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+      this.writer = XMLOutputFactory.newInstance().createXMLStreamWriter(os, "UTF-8");
+      writer.writeStartDocument("UTF-8", "1.0");
+      writer.setPrefix("rdf", RDF);
+      writer.setPrefix("rdfs", RDFS);
+      writer.setPrefix("owl", OWL);
+      writer.setPrefix("oboInOwl", OBO_IN_OWL);
+      writer.writeStartElement(RDF, "RDF");
+      writer.writeNamespace("rdf", RDF);
+      writer.writeNamespace("rdfs", RDFS);
+      writer.writeNamespace("owl", OWL);
+      writer.writeNamespace("oboInOwl", OBO_IN_OWL);
+    }
+
+    private void close() throws XMLStreamException {
+      writer.writeEndElement();
+      writer.writeEndDocument();
+      writer.flush();
+    }
+
+    private void closeQuietly() {
+      try {
+        writer.close();
+      } catch (XMLStreamException e) {
+        // Ignore, the stream is closed below
+      }
+      try {
+        os.close();
+      } catch (IOException e) {
+        // Ignore, only called after the document has been written or failed
+      }
+    }
+  }
+
+  /**
+   * Main method.
+   *
+   * @param args Arguments.
+   * @throws IOException If the ontology cannot be written.
+   */
+  public static void main(String[] args) throws IOException {
+    final Options options = new Options();
+    options.addOption("name", true, "The name of the ontology. Defaults to generated.");
+    options.addOption("shape", true, "A predefined shape: GO, SNOMED or FLAT. Sets the classes, "
+        + "depth, fan-out and polyhierarchy, which can still be overridden.");
+    options.addOption("o", "output", true, "The output directory. Defaults to the current "
+        + "directory.");
+    options.addOption("seed", true, "The seed of the random number generator. Defaults to 42.");
+    options.addOption("classes", true, "The number of classes. Defaults to 10000.");
+    options.addOption("depth", true, "The number of levels of the hierarchy. Defaults to 12.");
+    options.addOption("fanOut", true, "The growth in the number of classes from one level to "
+        + "the next. Defaults to 1.5.");
+    options.addOption("polyhierarchy", true, "The probability of a class having a second "
+        + "parent. Defaults to 0.2.");
+    options.addOption("synonyms", true, "The average number of synonyms per class. Defaults to "
+        + "1.");
+    options.addOption("deprecated", true, "The fraction of deprecated classes. Defaults to "
+        + "0.01.");
+    options.addOption("imports", true, "The number of imported ontologies. Defaults to 0.");
+    options.addOption("objectProperties", true, "The number of object properties. Defaults to "
+        + "0.");
+    options.addOption("alc", false, "Generate universal restrictions, unions and disjoint "
+        + "siblings.");
+
+    final CommandLine line;
+    try {
+      line = new DefaultParser().parse(options, args);
+    } catch (ParseException e) {
+      System.err.println(e.getLocalizedMessage());
+      new HelpFormatter().printHelp("OntologyGenerator", options);
+      System.exit(1);
+      return;
+    }
+
+    final OntologyGenerator generator = new OntologyGenerator(
+        Long.parseLong(line.getOptionValue("seed", "42")));
+    if (line.hasOption("shape")) {
+      generator.setShape(Shape.valueOf(line.getOptionValue("shape").toUpperCase(Locale.ROOT)));
+    }
+    if (line.hasOption("classes")) {
+      generator.setClasses(Integer.parseInt(line.getOptionValue("classes")));
+    }
+    if (line.hasOption("depth")) {
+      generator.setDepth(Integer.parseInt(line.getOptionValue("depth")));
+    }
+    if (line.hasOption("fanOut")) {
+      generator.setFanOut(Double.parseDouble(line.getOptionValue("fanOut")));
+    }
+    if (line.hasOption("polyhierarchy")) {
+      generator.setPolyhierarchy(Double.parseDouble(line.getOptionValue("polyhierarchy")));
+    }
+    if (line.hasOption("synonyms")) {
+      generator.setSynonyms(Double.parseDouble(line.getOptionValue("synonyms")));
+    }
+    if (line.hasOption("deprecated")) {
+      generator.setDeprecated(Double.parseDouble(line.getOptionValue("deprecated")));
+    }
+    if (line.hasOption("imports")) {
+      generator.setImports(Integer.parseInt(line.getOptionValue("imports")));
+    }
+    if (line.hasOption("objectProperties")) {
+      generator.setObjectProperties(Integer.parseInt(line.getOptionValue("objectProperties")));
+    }
+    generator.setAlc(line.hasOption("alc"));
+    final File file = generator.generate(new File(line.getOptionValue("o", ".")),
+        line.getOptionValue("name", "generated"));
+    log.info("Generated " + file.getAbsolutePath());
+  }
+
+}
@@ -0,0 +1,158 @@
+/*
+  Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com). All rights reserved. Use is subject to
+  license terms and conditions.
+ */
+package au.csiro.fhir.owl.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import au.csiro.fhir.owl.loader.ImportCatalog;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.ClassExpressionType;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotationAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLClassExpression;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.parameters.Imports;
+
+/**
+ * Unit tests for {@link OntologyGenerator}.
+ */
+public class OntologyGeneratorTest {
+
+  @TempDir
+  File dir;
+
+  /**
+   * Tests that the same seed generates the same ontology.
+   */
+  @Test
+  public void testDeterministic() throws IOException {
+    final File first = createGenerator(42).generate(new File(dir, "first"), "test");
+    final File second = createGenerator(42).generate(new File(dir, "second"), "test");
+    final File other = createGenerator(43).generate(new File(dir, "other"), "test");
+    assertArrayEquals(Files.readAllBytes(first.toPath()), Files.readAllBytes(second.toPath()));
+    assertArrayEquals(Files.readAllBytes(new File(first.getParentFile(), "test-import-1.owl")
+        .toPath()), Files.readAllBytes(new File(second.getParentFile(), "test-import-1.owl")
+        .toPath()));
+    assertFalse(Arrays.equals(Files.readAllBytes(first.toPath()),
+        Files.readAllBytes(other.toPath())));
+  }
+
+  /**
+   * Tests that the generated ontology and its imports can be loaded and have the requested size.
+   */
+  @Test
+  public void testLoad() throws IOException, OWLOntologyCreationException {
+    final File file = createGenerator(42).generate(dir, "test");
+    final OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    final ImportCatalog catalog = new ImportCatalog();
+    catalog.addCatalog(new File(dir, "catalog-v001.xml"));
+    manager.getIRIMappers().add(catalog);
+    final OWLOntology ont = manager.loadOntologyFromOntologyDocument(file);
+
+    assertEquals(2, ont.getImports().size());
+    assertEquals(2000, ont.getClassesInSignature(Imports.INCLUDED).size());
+    assertEquals(3, ont.getObjectPropertiesInSignature(Imports.EXCLUDED).size());
+
+    int synonyms = 0;
+    int deprecated = 0;
+    for (OWLAnnotationAssertionAxiom ax : ont.getAxioms(AxiomType.ANNOTATION_ASSERTION,
+        Imports.INCLUDED)) {
+      final IRI prop = ax.getProperty().getIRI();
+      if (prop.toString().equals(OntologyGenerator.SYNONYM_PROPERTY)) {
+        synonyms++;
+      } else if (ax.isDeprecatedIRIAssertion()) {
+        deprecated++;
+      }
+    }
+    assertEquals(4000, synonyms);
+    assertTrue(deprecated > 120 && deprecated < 280, "Unexpected number of deprecated "
+        + deprecated);
+  }
+
+  /**
+   * Tests that the generated hierarchy is the one written to the ontology.
+   */
+  @Test
+  public void testHierarchy() throws IOException, OWLOntologyCreationException {
+    final OntologyGenerator generator = createGenerator(42);
+    generator.setImports(0);
+    final OntologyGenerator.Hierarchy hierarchy = generator.generateHierarchy();
+    assertEquals(2001, hierarchy.size());
+    assertEquals(0, hierarchy.getParents(0).length);
+    assertEquals(6, hierarchy.getLevel(2000));
+
+    final OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    final OWLOntology ont = manager.loadOntologyFromOntologyDocument(generator.generate(dir,
+        "test"));
+    final OWLDataFactory factory = manager.getOWLDataFactory();
+    final String ns = OntologyGenerator.BASE + "test#";
+    for (int node = 1; node < hierarchy.size(); node++) {
+      final Set<OWLClass> expected = new HashSet<>();
+      for (int parent : hierarchy.getParents(node)) {
+        assertTrue(parent < node);
+        if (parent != 0) {
+          expected.add(factory.getOWLClass(IRI.create(ns + "C" + parent)));
+        }
+      }
+      final Set<OWLClass> actual = ont.getSubClassAxiomsForSubClass(factory.getOWLClass(
+          IRI.create(ns + "C" + node))).stream()
+          .map(ax -> ax.getSuperClass())
+          .filter(ce -> !ce.isAnonymous())
+          .map(OWLClassExpression::asOWLClass)
+          .collect(Collectors.toSet());
+      assertEquals(expected, actual, "Unexpected parents of node " + node);
+      for (int ancestor : hierarchy.getAncestors(node)) {
+        assertTrue(ancestor < node);
+      }
+    }
+  }
+
+  /**
+   * Tests that the axioms outside of EL are generated.
+   */
+  @Test
+  public void testAlc() throws IOException, OWLOntologyCreationException {
+    final OntologyGenerator generator = createGenerator(42);
+    generator.setImports(0);
+    generator.setAlc(true);
+    final OWLOntology ont = OWLManager.createOWLOntologyManager()
+        .loadOntologyFromOntologyDocument(generator.generate(dir, "test"));
+    final Set<ClassExpressionType> types = ont.getAxioms(AxiomType.SUBCLASS_OF).stream()
+        .map(ax -> ax.getSuperClass().getClassExpressionType())
+        .collect(Collectors.toSet());
+    assertTrue(types.contains(ClassExpressionType.OBJECT_SOME_VALUES_FROM));
+    assertTrue(types.contains(ClassExpressionType.OBJECT_ALL_VALUES_FROM));
+    assertTrue(types.contains(ClassExpressionType.OBJECT_UNION_OF));
+    assertFalse(ont.getAxioms(AxiomType.DISJOINT_CLASSES).isEmpty());
+  }
+
+  private static OntologyGenerator createGenerator(long seed) {
+    final OntologyGenerator generator = new OntologyGenerator(seed);
+    generator.setClasses(2000);
+    generator.setDepth(6);
+    generator.setSynonyms(2);
+    generator.setDeprecated(0.1);
+    generator.setImports(2);
+    generator.setObjectProperties(3);
+    return generator;
+  }
+
+}